@@ -0,0 +1,681 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * A keyed, prefix-preserving pseudonymizer of the addresses and identities of a capture.
+ * <p>
+ * IPv4 and IPv6 addresses are pseudonymized with Crypto-PAn: bit {@code i} of an address is flipped according to
+ * the first bit of the AES encryption of its first {@code i} bits, so that two addresses sharing a prefix of
+ * {@code n} bits are mapped to addresses sharing a prefix of {@code n} bits, and the mapping is a bijection which
+ * cannot be inverted without the key. MAC addresses are pseudonymized the same way, keeping the group bit, so that
+ * the vendor prefixes stay grouped. The all-zeros and all-ones addresses are kept.
+ * <p>
+ * {@link #anonymize(Record)} rewrites the bytes of a record in place: the Ethernet addresses, the ARP sender and
+ * target addresses, the IPv4 or IPv6 source and destination addresses, the addresses of the packet embedded in an
+ * ICMP error, the Neighbor Discovery target addresses, link-layer address, prefix and DNS server options, the DHCP
+ * {@code ciaddr}, {@code yiaddr}, {@code siaddr}, {@code giaddr} and {@code chaddr}, the DHCP router, DNS server,
+ * requested address, server identifier, host name and Ethernet client identifier options and the RADIUS User-Name
+ * and Framed-IP-Address attributes. The IPv4 header checksum and the TCP, UDP, ICMP and ICMPv6 checksums are updated
+ * incrementally (RFC 1624), so that they remain as correct, or as incorrect, as they were, even for truncated records;
+ * the RADIUS authenticators cannot be recomputed without the shared secret. A record whose addresses cannot all be
+ * rewritten is rejected rather than partially rewritten: a frame which is neither IP nor ARP, a header cut short
+ * within an address, an IPv4 source route, record route or timestamp option, an IPv6 routing header, a tunnel such as
+ * IP-in-IP or GRE, an unknown Neighbor Discovery option, a DHCP client identifier which is not an Ethernet address or
+ * a DHCPv6 message.
+ * <p>
+ * Each pseudonym is computed once and memoized: a repeated address costs one lookup. This class is thread-safe and
+ * {@link #anonymize(Parser, PcapWriter, int)} rewrites the records on several threads.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Anonymizer {
+
+    /**
+     * The length of a key in octets: an AES-128 key followed by the secret padding.
+     */
+    public static final int KEY_LENGTH = 32;
+
+    /**
+     * The maximum number of memoized pseudonyms per address family, after which the memo is cleared.
+     */
+    public static final int MAX_MEMO_SIZE = 1 << 20;
+
+    private static final int BLOCK = 16;
+    private static final int ARP = 0x0806;
+    private static final int ROUTING = 43;
+    private static final int MAGIC_COOKIE = 0x63825363;
+    private static final byte NONCE = 14;
+    private static final byte RECURSIVE_DNS_SERVER = 25;
+
+    private final SecretKeySpec key;
+    private final byte[] pad = new byte[BLOCK];
+    private final ThreadLocal<Cipher> ciphers;
+    private final Map<Integer, Integer> ipv4 = new ConcurrentHashMap<>();
+    private final Map<Long, Long> macs = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, byte[]> ipv6 = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, byte[]> names = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new {@code Anonymizer} object.
+     *
+     * @param key the key, {@link #KEY_LENGTH} octets long
+     * @throws IllegalArgumentException if {@code key} is not set or is not {@link #KEY_LENGTH} octets long
+     */
+    public Anonymizer(final byte[] key) {
+        validateObject("key", key);
+        if (key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("key must be " + KEY_LENGTH + " octets long");
+        }
+        this.key = new SecretKeySpec(key, 0, BLOCK, "AES");
+        ciphers = ThreadLocal.withInitial(this::newCipher);
+        encrypt(ciphers.get(), Arrays.copyOfRange(key, BLOCK, KEY_LENGTH), pad);
+    }
+
+    /**
+     * Rewrites the records of the given parser on several threads and writes them in order.
+     *
+     * @param parser  the parser
+     * @param writer  the writer, whose global header has been copied from {@code parser}
+     * @param threads the number of rewriting threads
+     * @return the number of written records; a record which cannot be rewritten is not written
+     * @throws IllegalArgumentException if {@code parser} or {@code writer} is not set or {@code threads} is not
+     *                                  positive
+     * @throws IOException              if a file could not be read or written
+     */
+    public long anonymize(final Parser parser, final PcapWriter writer, final int threads) throws IOException {
+        validateObject("parser", parser);
+        validateObject("writer", writer);
+        final long[] written = new long[1];
+        // a record which could not be rewritten is dropped rather than written in clear
+        final Pipeline<Frame> pipeline = new Pipeline<>(Frame::new, this::rewrite, (record, frame) -> {
+            try {
+                writer.write(record);
+                written[0]++;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Pipeline.SIZE, threads);
+        try {
+            pipeline.run(parser);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return written[0];
+    }
+
+    /**
+     * Rewrites the addresses and identities of the given record in place.
+     *
+     * @param record the record
+     * @return {@code true} if the record was rewritten; {@code false} if it carries addresses which cannot be
+     * rewritten, in which case it may have been partially rewritten and must not be written
+     * @throws IllegalArgumentException if {@code record} or its bytes are not set
+     */
+    public boolean anonymize(final Record record) {
+        validateObject("record", record);
+        return rewrite(record.getBytes(), new Frame());
+    }
+
+    /**
+     * Returns the pseudonym of the given IPv4, MAC or IPv6 address.
+     *
+     * @param address the address, 4, 6 or 16 octets long
+     * @return the pseudonym, as long as the address
+     * @throws IllegalArgumentException if {@code address} is not set or its length is not valid
+     */
+    public byte[] anonymize(final byte[] address) {
+        validateObject("address", address);
+        final byte[] bytes = address.clone();
+        switch (address.length) {
+            case 4:
+                ByteBuffer.wrap(bytes).putInt(anonymizeIpv4(ByteBuffer.wrap(address).getInt()));
+                break;
+            case 6:
+                anonymizeMac(bytes, 0);
+                break;
+            case 16:
+                anonymizeIpv6(bytes, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("invalid address length " + address.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the pseudonym of the given IPv4 address.
+     *
+     * @param address the address
+     * @return the pseudonym
+     */
+    public int anonymizeIpv4(final int address) {
+        if (address == 0 || address == -1) {
+            return address;
+        }
+        Integer pseudonym = ipv4.get(address);
+        if (pseudonym == null) {
+            final byte[] bytes = ByteBuffer.allocate(4).putInt(address).array();
+            crypto(bytes);
+            pseudonym = ByteBuffer.wrap(bytes).getInt();
+            memo(ipv4).put(address, pseudonym);
+        }
+        return pseudonym;
+    }
+
+    private void rewrite(final Record record, final Frame frame) throws ParseException {
+        if (!rewrite(record.getBytes(), frame)) {
+            throw new ParseException("record cannot be anonymized", 0);
+        }
+    }
+
+    private boolean rewrite(final byte[] bytes, final Frame frame) {
+        validateObject("bytes", bytes);
+        if (bytes.length < 14) {
+            return false;
+        }
+        anonymizeMac(bytes, 0);
+        anonymizeMac(bytes, 6);
+        if (!frame.decode(bytes)) {
+            // the payload of anything but IP and ARP cannot be accounted for
+            return frame.getEtherType() == ARP && anonymizeArp(bytes, 0xe + 4 * frame.getTagCount());
+        }
+        if (!isRewritable(bytes, frame)) {
+            return false;
+        }
+        final int version = frame.getIpVersion();
+        final int protocol = frame.getProtocol();
+        final int l4 = frame.getL4Offset();
+        final int ports = frame.getSourcePort() << 16 | frame.getDestinationPort();
+        final int checksum = anonymizeIp(bytes, frame);
+        if (l4 < 0 || l4 + 4 > bytes.length) {
+            return true;
+        }
+        if (protocol == 0x11 && l4 + 8 <= bytes.length) {
+            if (version == 4 && (isPort(ports, 67) || isPort(ports, 68))) {
+                return anonymizeDhcp(bytes, l4, checksum);
+            } else if (version == 6 && (isPort(ports, 546) || isPort(ports, 547))) {
+                // the DUIDs and addresses of DHCPv6 cannot be accounted for
+                return false;
+            } else if (isPort(ports, 1812) || isPort(ports, 1813)) {
+                anonymizeRadius(bytes, l4, checksum);
+            }
+        } else if (protocol == 1 && version == 4 || protocol == 0x3a && version == 6) {
+            // the ICMP checksum covers the whole message
+            final int before = Checksum.sum(bytes, l4 + 4, bytes.length - l4 - 4);
+            if (!(version == 4 ? anonymizeIcmp(bytes, l4, frame) : anonymizeIcmpv6(bytes, l4, frame))) {
+                return false;
+            }
+            adjust(bytes, l4 + 2, before, Checksum.sum(bytes, l4 + 4, bytes.length - l4 - 4), false);
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code false} if the given decoded packet carries addresses beyond its source and destination, in its
+     * IPv4 options, its IPv6 routing header or an encapsulated packet.
+     */
+    private static boolean isRewritable(final byte[] bytes, final Frame frame) {
+        switch (frame.getProtocol()) {
+            case 4:
+            case 41:
+            case 47:
+            case 97:
+            case 115:
+            case 137:
+                // IP-in-IP, IPv6-in-IPv4, GRE, EtherIP, L2TPv3 and MPLS-in-IP
+                return false;
+            default:
+                break;
+        }
+        final int l3 = frame.getL3Offset();
+        if (frame.getIpVersion() == 6) {
+            return Ipv6Packet.walk(bytes, bytes[l3 + 6] & 0xff, l3 + 40, bytes.length, ROUTING) >>> 32 != ROUTING;
+        }
+        final int end = Math.min(bytes.length, l3 + (bytes[l3] & 0xf) * 4);
+        for (int i = l3 + 20; i < end && bytes[i] != 0; ) {
+            switch (bytes[i] & 0xff) {
+                case 1:
+                    i++;
+                    continue;
+                case 7:
+                case 0x44:
+                case 0x83:
+                case 0x89:
+                    // record route, timestamp, loose and strict source route
+                    return false;
+                default:
+                    break;
+            }
+            if (i + 2 > end) {
+                break;
+            }
+            final int length = bytes[i + 1] & 0xff;
+            if (length < 2) {
+                return false;
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the IP addresses of the given decoded packet and updates the checksums which cover them.
+     *
+     * @return the offset of the transport checksum or {@code -1} if there is none
+     */
+    private int anonymizeIp(final byte[] bytes, final Frame frame) {
+        final int l3 = frame.getL3Offset();
+        final int l4 = frame.getL4Offset();
+        final int protocol = frame.getProtocol();
+        final int field = l4 < 0 ? -1 : protocol == 6 ? l4 + 16 : protocol == 0x11 ? l4 + 6 :
+                protocol == 0x3a && frame.getIpVersion() == 6 ? l4 + 2 : -1;
+        final int checksum = field >= 0 && field + 2 <= bytes.length ? field : -1;
+        final int source = frame.getSourceOffset();
+        final int length = 2 * frame.getAddressLength();
+        final int before = Checksum.sum(bytes, source, length);
+        if (frame.getIpVersion() == 4) {
+            writeInt(bytes, source, anonymizeIpv4(readInt(bytes, source)));
+            writeInt(bytes, source + 4, anonymizeIpv4(readInt(bytes, source + 4)));
+            adjust(bytes, l3 + 10, before, Checksum.sum(bytes, source, length), false);
+        } else {
+            anonymizeIpv6(bytes, source);
+            anonymizeIpv6(bytes, source + 16);
+        }
+        adjust(bytes, checksum, before, Checksum.sum(bytes, source, length), protocol == 0x11);
+        return checksum;
+    }
+
+    private boolean anonymizeArp(final byte[] bytes, final int offset) {
+        // only Ethernet and IPv4 addresses can be rewritten
+        if (offset + 28 > bytes.length || readInt(bytes, offset) != 0x10800 || bytes[offset + 4] != 6 ||
+                bytes[offset + 5] != 4) {
+            return false;
+        }
+        for (int i = offset + 8; i <= offset + 18; i += 10) {
+            anonymizeMac(bytes, i);
+            writeInt(bytes, i + 6, anonymizeIpv4(readInt(bytes, i + 6)));
+        }
+        return true;
+    }
+
+    private boolean anonymizeIcmp(final byte[] bytes, final int l4, final Frame frame) {
+        switch (bytes[l4]) {
+            case 5:
+                // the gateway of a redirect
+                if (l4 + 8 > bytes.length) {
+                    return false;
+                }
+                writeInt(bytes, l4 + 4, anonymizeIpv4(readInt(bytes, l4 + 4)));
+                return anonymizeEmbedded(bytes, l4 + 8, frame);
+            case 3:
+            case 4:
+            case 11:
+            case 12:
+                return anonymizeEmbedded(bytes, l4 + 8, frame);
+            case 9:
+                // the addresses of a router advertisement
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private boolean anonymizeIcmpv6(final byte[] bytes, final int l4, final Frame frame) {
+        final int type = bytes[l4] & 0xff;
+        if (type < 0x80) {
+            return anonymizeEmbedded(bytes, l4 + 8, frame);
+        }
+        if (type < 133 || type > 137) {
+            return true;
+        }
+        // Neighbor Discovery: the target addresses, if any, precede the options
+        final int targets = type == 135 || type == 136 ? 1 : type == 137 ? 2 : 0;
+        final int options = type == 133 ? l4 + 8 : type == 134 ? l4 + 16 : l4 + 8 + 16 * targets;
+        if (options > bytes.length) {
+            return targets == 0;
+        }
+        for (int i = 0; i < targets; i++) {
+            anonymizeIpv6(bytes, l4 + 8 + 16 * i);
+        }
+        for (int i = options; i < bytes.length; ) {
+            final int length = i + 2 > bytes.length ? 0 : (bytes[i + 1] & 0xff) * 8;
+            if (length == 0 || i + length > bytes.length) {
+                return false;
+            }
+            switch (bytes[i]) {
+                case NeighborDiscoveryPacket.SOURCE_LINK_LAYER_ADDRESS:
+                case NeighborDiscoveryPacket.TARGET_LINK_LAYER_ADDRESS:
+                    if (length != 8) {
+                        return false;
+                    }
+                    anonymizeMac(bytes, i + 2);
+                    break;
+                case NeighborDiscoveryPacket.PREFIX_INFORMATION:
+                    if (length != 32) {
+                        return false;
+                    }
+                    anonymizePrefix(bytes, i + 16, bytes[i + 2] & 0xff);
+                    break;
+                case NeighborDiscoveryPacket.MTU:
+                case NONCE:
+                    break;
+                case RECURSIVE_DNS_SERVER:
+                    for (int j = i + 8; j + 16 <= i + length; j += 16) {
+                        anonymizeIpv6(bytes, j);
+                    }
+                    break;
+                default:
+                    return false;
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the IP packet embedded in an ICMP error, which the caller accounts for in the ICMP checksum.
+     */
+    private boolean anonymizeEmbedded(final byte[] bytes, final int offset, final Frame frame) {
+        if (offset >= bytes.length) {
+            return true;
+        }
+        if (!frame.decodeIp(bytes, offset) || !isRewritable(bytes, frame)) {
+            return false;
+        }
+        anonymizeIp(bytes, frame);
+        return true;
+    }
+
+    /**
+     * Rewrites an IPv6 prefix, keeping the bits beyond the prefix length clear.
+     */
+    private void anonymizePrefix(final byte[] bytes, final int offset, final int length) {
+        anonymizeIpv6(bytes, offset);
+        for (int i = Math.min(length, 128); i < 128; i++) {
+            bytes[offset + (i >> 3)] &= ~(0x80 >>> (i & 7));
+        }
+    }
+
+    private boolean anonymizeDhcp(final byte[] bytes, final int l4, final int checksum) {
+        final int dhcp = l4 + 8;
+        if (dhcp + 44 > bytes.length) {
+            // cut short within the addresses, if any
+            return dhcp + 12 >= bytes.length;
+        }
+        // ciaddr, yiaddr, siaddr and giaddr
+        for (int i = dhcp + 12; i <= dhcp + 24; i += 4) {
+            final int before = Checksum.sum(bytes, i, 4);
+            writeInt(bytes, i, anonymizeIpv4(readInt(bytes, i)));
+            adjust(bytes, checksum, before, Checksum.sum(bytes, i, 4), true);
+        }
+        // chaddr, if an Ethernet address
+        if (bytes[dhcp + 1] == 1 && bytes[dhcp + 2] == 6) {
+            final int before = Checksum.sum(bytes, dhcp + 28, 6);
+            anonymizeMac(bytes, dhcp + 28);
+            adjust(bytes, checksum, before, Checksum.sum(bytes, dhcp + 28, 6), true);
+        }
+        if (dhcp + 240 > bytes.length || readInt(bytes, dhcp + 236) != MAGIC_COOKIE) {
+            return true;
+        }
+        for (int i = dhcp + 240; i < bytes.length && bytes[i] != -1; ) {
+            if (bytes[i] == 0) {
+                i++;
+                continue;
+            }
+            final int value = i + 2;
+            final int length = value > bytes.length ? 0 : bytes[i + 1] & 0xff;
+            final boolean cut = value + length > bytes.length;
+            // the value may start at an odd offset from the start of the UDP header
+            final int before = cut ? 0 : sum(bytes, value, length, l4);
+            switch (bytes[i]) {
+                case 3:
+                case 6:
+                case 50:
+                case 54:
+                    // router, DNS server, requested address and server identifier
+                    if (cut || length % 4 != 0) {
+                        return false;
+                    }
+                    for (int j = value; j < value + length; j += 4) {
+                        writeInt(bytes, j, anonymizeIpv4(readInt(bytes, j)));
+                    }
+                    break;
+                case 12:
+                    // host name
+                    if (cut) {
+                        return false;
+                    }
+                    anonymizeName(bytes, value, length);
+                    break;
+                case 61:
+                    // client identifier, usually the Ethernet address of the client
+                    if (cut || length != 7 || bytes[value] != 1) {
+                        return false;
+                    }
+                    anonymizeMac(bytes, value + 1);
+                    break;
+                default:
+                    i = value + length;
+                    continue;
+            }
+            adjust(bytes, checksum, before, sum(bytes, value, length, l4), true);
+            i = value + length;
+        }
+        return true;
+    }
+
+    private void anonymizeRadius(final byte[] bytes, final int l4, final int checksum) {
+        final int radius = l4 + 8;
+        if (radius + 20 > bytes.length) {
+            return;
+        }
+        final int end = Math.min(bytes.length, radius + Parser.readChar(bytes[radius + 2], bytes[radius + 3]));
+        for (int i = radius + 20; i + 2 <= end; ) {
+            final int type = bytes[i] & 0xff;
+            final int length = bytes[i + 1] & 0xff;
+            if (length < 2 || i + length > end) {
+                break;
+            }
+            final int value = i + 2;
+            // the value may start at an odd offset from the start of the UDP header
+            final int before = sum(bytes, value, length - 2, l4);
+            if (type == 1) {
+                anonymizeName(bytes, value, length - 2);
+            } else if (type == 8 && length == 6) {
+                writeInt(bytes, value, anonymizeIpv4(readInt(bytes, value)));
+            } else {
+                i += length;
+                continue;
+            }
+            adjust(bytes, checksum, before, sum(bytes, value, length - 2, l4), true);
+            i += length;
+        }
+    }
+
+    private void anonymizeMac(final byte[] bytes, final int offset) {
+        long address = 0;
+        for (int i = 0; i < 6; i++) {
+            address = address << 8 | bytes[offset + i] & 0xff;
+        }
+        if (address == 0 || address == 0xffffffffffffL) {
+            return;
+        }
+        Long pseudonym = macs.get(address);
+        if (pseudonym == null) {
+            final byte[] mac = Arrays.copyOfRange(bytes, offset, offset + 6);
+            crypto(mac);
+            // keep the individual/group bit
+            mac[0] = (byte) (mac[0] & 0xfe | bytes[offset] & 1);
+            long value = 0;
+            for (int i = 0; i < 6; i++) {
+                value = value << 8 | mac[i] & 0xff;
+            }
+            pseudonym = value;
+            memo(macs).put(address, pseudonym);
+        }
+        for (int i = 5; i >= 0; i--) {
+            bytes[offset + 5 - i] = (byte) (pseudonym >>> 8 * i);
+        }
+    }
+
+    private void anonymizeIpv6(final byte[] bytes, final int offset) {
+        final ByteBuffer address = ByteBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + 16));
+        byte[] pseudonym = ipv6.get(address);
+        if (pseudonym == null) {
+            pseudonym = address.array().clone();
+            if (!isConstant(pseudonym)) {
+                crypto(pseudonym);
+            }
+            memo(ipv6).put(address, pseudonym);
+        }
+        System.arraycopy(pseudonym, 0, bytes, offset, 16);
+    }
+
+    /**
+     * Replaces a name with a keyed pseudonym of the same length made of lowercase letters and digits.
+     */
+    private void anonymizeName(final byte[] bytes, final int offset, final int length) {
+        final ByteBuffer name = ByteBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + length));
+        byte[] pseudonym = names.get(name);
+        if (pseudonym == null) {
+            pseudonym = new byte[length];
+            final Cipher cipher = ciphers.get();
+            final byte[] block = new byte[BLOCK];
+            final byte[] out = new byte[BLOCK];
+            // a CBC-MAC of the name, then a counter per block of the pseudonym
+            for (int i = 0; i < length; i++) {
+                block[i % BLOCK] ^= bytes[offset + i];
+                if (i % BLOCK == BLOCK - 1 || i == length - 1) {
+                    encrypt(cipher, block, block);
+                }
+            }
+            for (int i = 0; i < length; i += BLOCK) {
+                block[0] ^= (byte) (i / BLOCK + 1);
+                encrypt(cipher, block, out);
+                for (int j = 0; j < BLOCK && i + j < length; j++) {
+                    final int c = (out[j] & 0xff) % 36;
+                    pseudonym[i + j] = (byte) (c < 26 ? 'a' + c : '0' + c - 26);
+                }
+            }
+            memo(names).put(name, pseudonym);
+        }
+        System.arraycopy(pseudonym, 0, bytes, offset, length);
+    }
+
+    /**
+     * Crypto-PAn: flips each bit of the given address according to the encryption of the bits which precede it.
+     */
+    private void crypto(final byte[] address) {
+        final Cipher cipher = ciphers.get();
+        final byte[] block = pad.clone();
+        final byte[] out = new byte[BLOCK];
+        final byte[] otp = new byte[address.length];
+        for (int i = 0; i < address.length * 8; i++) {
+            encrypt(cipher, block, out);
+            otp[i >> 3] |= (out[0] & 0x80) >>> (i & 7);
+            // the first i + 1 bits of the block are the first i + 1 bits of the address
+            final int mask = 0x80 >>> (i & 7);
+            block[i >> 3] = (byte) (block[i >> 3] & ~mask | address[i >> 3] & mask);
+        }
+        for (int i = 0; i < address.length; i++) {
+            address[i] ^= otp[i];
+        }
+    }
+
+    private static void encrypt(final Cipher cipher, final byte[] in, final byte[] out) {
+        try {
+            cipher.doFinal(in, 0, BLOCK, out, 0);
+        } catch (final GeneralSecurityException e) {
+            // not reachable: the input is a single block
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Cipher newCipher() {
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher;
+        } catch (final GeneralSecurityException e) {
+            // not reachable: AES is supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <K, V> Map<K, V> memo(final Map<K, V> memo) {
+        if (memo.size() >= MAX_MEMO_SIZE) {
+            memo.clear();
+        }
+        return memo;
+    }
+
+    /**
+     * Updates the checksum at the given offset for a change of the sum of some of the octets (RFC 1624).
+     */
+    private static void adjust(final byte[] bytes, final int checksum, final int before, final int after,
+                               final boolean udp) {
+        if (checksum < 0 || checksum + 2 > bytes.length) {
+            return;
+        }
+        final int old = Parser.readChar(bytes[checksum], bytes[checksum + 1]);
+        if (udp && old == 0) {
+            // no checksum
+            return;
+        }
+        int sum = (~old & 0xffff) + (~before & 0xffff) + after;
+        sum = (sum >>> 16) + (sum & 0xffff);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        int value = ~sum & 0xffff;
+        if (udp && value == 0) {
+            value = 0xffff;
+        }
+        bytes[checksum] = (byte) (value >> 8);
+        bytes[checksum + 1] = (byte) value;
+    }
+
+    /**
+     * Returns the ones' complement sum of the given octets, as if it were computed from the given start.
+     */
+    private static int sum(final byte[] bytes, final int offset, final int length, final int start) {
+        final int sum = Checksum.sum(bytes, offset, length);
+        return (offset - start & 1) == 0 ? sum : (sum & 0xff) << 8 | sum >>> 8;
+    }
+
+    private static boolean isPort(final int ports, final int port) {
+        return ports >>> 16 == port || (ports & 0xffff) == port;
+    }
+
+    private static boolean isConstant(final byte[] address) {
+        for (final byte b : address) {
+            if (b != address[0]) {
+                return false;
+            }
+        }
+        return address[0] == 0 || address[0] == -1;
+    }
+
+    private static int readInt(final byte[] bytes, final int i) {
+        return Parser.readInt(bytes[i], bytes[i + 1], bytes[i + 2], bytes[i + 3]);
+    }
+
+    private static void writeInt(final byte[] bytes, final int i, final int value) {
+        bytes[i] = (byte) (value >>> 24);
+        bytes[i + 1] = (byte) (value >>> 16);
+        bytes[i + 2] = (byte) (value >>> 8);
+        bytes[i + 3] = (byte) value;
+    }
+}
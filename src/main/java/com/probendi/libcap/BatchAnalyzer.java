@@ -0,0 +1,336 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Runs the same analysis over many capture files concurrently and merges the partial results.
+ * <p>
+ * Each file is opened and analyzed by its own task. On a runtime with virtual threads the tasks run on virtual
+ * threads, which cost little while they are blocked on I/O; otherwise they run on a pool of platform threads. The
+ * number of files open at the same time is bounded by a permit, as is the memory: a file holds permits for its size,
+ * up to the whole budget, while it is analyzed. The partial results are merged in the order of the files once all
+ * of them have been analyzed, and the progress can be polled from another thread with {@link #getProgress()}.
+ * <p>
+ * A file which cannot be read does not stop the batch: its error is returned by {@link #getFailures()}.
+ *
+ * @param <R> the type of the result
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class BatchAnalyzer<R> {
+
+    /**
+     * The analysis of a single file.
+     *
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    public interface Analysis<R> {
+
+        /**
+         * Analyzes a file.
+         *
+         * @param file   the file
+         * @param parser the parser of the file, which is closed by the caller
+         * @return the partial result of the file
+         * @throws IOException if the file could not be read
+         */
+        R analyze(Path file, Parser parser) throws IOException;
+    }
+
+    /**
+     * A snapshot of the progress of a batch.
+     */
+    public static class Progress {
+        private final int files;
+        private final int completedFiles;
+        private final int failedFiles;
+        private final long bytes;
+        private final long completedBytes;
+        private final Duration elapsed;
+
+        Progress(final int files, final int completedFiles, final int failedFiles, final long bytes,
+                 final long completedBytes, final Duration elapsed) {
+            this.files = files;
+            this.completedFiles = completedFiles;
+            this.failedFiles = failedFiles;
+            this.bytes = bytes;
+            this.completedBytes = completedBytes;
+            this.elapsed = elapsed;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the number of analyzed files, including the failed ones.
+         *
+         * @return the number of analyzed files
+         */
+        public int getCompletedFiles() {
+            return completedFiles;
+        }
+
+        public int getFailedFiles() {
+            return failedFiles;
+        }
+
+        /**
+         * Returns the total size of the files.
+         *
+         * @return the total size of the files in octets
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the size of the analyzed files.
+         *
+         * @return the size of the analyzed files in octets
+         */
+        public long getCompletedBytes() {
+            return completedBytes;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Returns the estimated time to completion, assuming that the remaining octets are analyzed at the rate
+         * observed so far.
+         *
+         * @return the estimated time to completion or {@code null} if no file has been analyzed yet
+         */
+        public Duration getEta() {
+            if (completedFiles == files) {
+                return Duration.ZERO;
+            }
+            if (completedBytes == 0) {
+                return null;
+            }
+            return Duration.ofNanos((long) (elapsed.toNanos() * ((double) (bytes - completedBytes) / completedBytes)));
+        }
+
+        @Override
+        public String toString() {
+            final Duration eta = getEta();
+            return String.format("%d/%d files (%d failed), %d/%d octets, elapsed %ds, eta %s", completedFiles, files,
+                    failedFiles, completedBytes, bytes, elapsed.toSeconds(),
+                    eta == null ? "unknown" : eta.toSeconds() + "s");
+        }
+    }
+
+    /**
+     * The default maximum number of open files.
+     */
+    public static final int MAX_OPEN_FILES = 256;
+
+    /**
+     * The default memory budget in octets.
+     */
+    public static final long MAX_MEMORY = 1L << 30;
+
+    private final Analysis<R> analysis;
+    private final BinaryOperator<R> merger;
+    private final int maxOpenFiles;
+    private final int memoryPermits;
+    private final Map<Path, IOException> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicInteger completedFiles = new AtomicInteger();
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final AtomicLong completedBytes = new AtomicLong();
+    private volatile int files;
+    private volatile long bytes;
+    private volatile long start;
+
+    /**
+     * Creates a new {@code BatchAnalyzer} object with the default bounds.
+     *
+     * @param analysis the analysis of a single file
+     * @param merger   the function merging two partial results
+     * @throws IllegalArgumentException if any parameter is not set
+     */
+    public BatchAnalyzer(final Analysis<R> analysis, final BinaryOperator<R> merger) {
+        this(analysis, merger, MAX_OPEN_FILES, MAX_MEMORY);
+    }
+
+    /**
+     * Creates a new {@code BatchAnalyzer} object.
+     *
+     * @param analysis     the analysis of a single file
+     * @param merger       the function merging two partial results
+     * @param maxOpenFiles the maximum number of files open at the same time
+     * @param maxMemory    the memory budget in octets, shared by the open files in proportion to their size
+     * @throws IllegalArgumentException if {@code analysis} or {@code merger} is not set or {@code maxOpenFiles} or
+     *                                  {@code maxMemory} is not positive
+     */
+    public BatchAnalyzer(final Analysis<R> analysis, final BinaryOperator<R> merger, final int maxOpenFiles,
+                         final long maxMemory) {
+        validateObject("analysis", analysis);
+        validateObject("merger", merger);
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("max open files must be positive");
+        }
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("max memory must be positive");
+        }
+        this.analysis = analysis;
+        this.merger = merger;
+        this.maxOpenFiles = maxOpenFiles;
+        // a permit per KiB
+        memoryPermits = (int) Math.min(Integer.MAX_VALUE, (maxMemory + 1023) >> 10);
+    }
+
+    /**
+     * Analyzes the given files and merges their partial results.
+     *
+     * @param files the files
+     * @return the merged result or {@code null} if no file has been analyzed
+     * @throws IllegalArgumentException if {@code files} is not set
+     * @throws IOException              if the current thread or an analysis has been interrupted
+     */
+    public R run(final List<Path> files) throws IOException {
+        validateObject("files", files);
+        final long[] sizes = new long[files.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = size(files.get(i));
+            total += sizes[i];
+        }
+        failures.clear();
+        completedFiles.set(0);
+        failedFiles.set(0);
+        completedBytes.set(0);
+        this.files = sizes.length;
+        bytes = total;
+        start = System.nanoTime();
+
+        final Semaphore open = new Semaphore(maxOpenFiles);
+        final Semaphore memory = new Semaphore(memoryPermits);
+        final ExecutorService executor = newExecutor(maxOpenFiles);
+        final List<Future<R>> futures = new ArrayList<>(sizes.length);
+        try {
+            for (int i = 0; i < sizes.length; i++) {
+                final Path file = files.get(i);
+                final long size = sizes[i];
+                futures.add(executor.submit(() -> analyze(file, size, open, memory)));
+            }
+            R result = null;
+            for (final Future<R> future : futures) {
+                final R partial = future.get();
+                if (partial != null) {
+                    result = result == null ? partial : merger.apply(result, partial);
+                }
+            }
+            return result;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while analyzing");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            // e.g. a task interrupted while waiting for a permit
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the progress of the current or last batch. This method can be called from any thread.
+     *
+     * @return the progress
+     */
+    public Progress getProgress() {
+        final long elapsed = start == 0 ? 0 : System.nanoTime() - start;
+        return new Progress(files, completedFiles.get(), failedFiles.get(), bytes, completedBytes.get(),
+                Duration.ofNanos(elapsed));
+    }
+
+    /**
+     * Returns the files of the last batch which could not be read.
+     *
+     * @return the errors per file, in order of failure
+     */
+    public Map<Path, IOException> getFailures() {
+        synchronized (failures) {
+            return new LinkedHashMap<>(failures);
+        }
+    }
+
+    private R analyze(final Path file, final long size, final Semaphore open, final Semaphore memory)
+            throws InterruptedException {
+        final int permits = (int) Math.max(1, Math.min(memoryPermits, (size + 1023) >> 10));
+        open.acquire();
+        try {
+            memory.acquire(permits);
+            try (final Parser parser = new Parser(file)) {
+                return analysis.analyze(file, parser);
+            } catch (final IOException e) {
+                failures.put(file, e);
+                failedFiles.incrementAndGet();
+                return null;
+            } finally {
+                memory.release(permits);
+            }
+        } finally {
+            open.release();
+            completedBytes.addAndGet(size);
+            completedFiles.incrementAndGet();
+        }
+    }
+
+    private static long size(final Path file) {
+        validateObject("file", file);
+        try {
+            return Files.size(file);
+        } catch (final IOException e) {
+            // reported when the file is opened
+            return 0;
+        }
+    }
+
+    /**
+     * Returns an executor running each task on a virtual thread if the runtime supports them, or else a pool of
+     * platform threads.
+     *
+     * @param threads the number of platform threads
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(final int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, "libcap-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Splits the TCP payloads of a BGP session into BGP messages.
+ * <p>
+ * A TCP segment may carry several BGP messages, and a BGP message may be split across several segments. The framer
+ * walks the {@code length} field of each message and emits every complete message as a range of the segment's
+ * payload, without copying it. The bytes of a message which is not complete at the end of a segment are carried over
+ * to the next segment of the same session.
+ * <p>
+ * When segments are framed with their sequence numbers, the next expected sequence number is tracked per session: the
+ * bytes of a retransmitted segment which have already been framed are skipped, and a gap in the sequence numbers
+ * discards the incomplete message. After a gap or an invalid message the session is resynchronized on the next BGP
+ * marker, i.e. sixteen {@code 0xff} octets; the segments preceding it are dropped. At most a given number of sessions
+ * is kept: the least recently framed session is evicted first, so that connections whose {@code FIN} or {@code RST}
+ * was not captured do not accumulate.
+ * <p>
+ * A session identifies one direction of one TCP connection: any object implementing {@link Object#equals(Object)}
+ * and {@link Object#hashCode()} may be used. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class BgpFramer {
+
+    /**
+     * The default maximum number of sessions.
+     */
+    public static final int CAPACITY = 1024;
+
+    private static final int MARKER_LENGTH = 16;
+
+    /**
+     * Receives the messages emitted by a {@link BgpFramer}.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Invoked for each complete BGP message.
+         * <p>
+         * The bytes are only valid for the duration of the call.
+         *
+         * @param bytes  the bytes containing the message
+         * @param offset the offset of the first byte of the message
+         * @param length the length of the message in octets
+         * @throws ParseException if the message cannot be parsed
+         */
+        void onMessage(byte[] bytes, int offset, int length) throws ParseException;
+    }
+
+    /**
+     * The state of a session: the bytes of an incomplete message and the next expected sequence number.
+     */
+    private static class Session {
+        private byte[] buffer = new byte[BgpPacket.HEADER_LENGTH];
+        private int length;
+        private long next = -1;
+        private boolean lost;
+
+        private void append(final byte[] bytes, final int offset, final int length) {
+            if (this.length + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(this.length + length, buffer.length * 2));
+            }
+            System.arraycopy(bytes, offset, buffer, this.length, length);
+            this.length += length;
+        }
+
+        private void lose() {
+            length = 0;
+            lost = true;
+        }
+    }
+
+    private final int capacity;
+    // in access order, so that the least recently framed session is at the head
+    private final Map<Object, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long dropped;
+    private long evicted;
+
+    /**
+     * Creates a new {@code BgpFramer} object with the default capacity.
+     */
+    public BgpFramer() {
+        this(CAPACITY);
+    }
+
+    /**
+     * Creates a new {@code BgpFramer} object.
+     *
+     * @param capacity the maximum number of sessions
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public BgpFramer(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Emits the BGP messages carried by the given TCP segment, in sequence number order.
+     * <p>
+     * The session is closed once the segment has been framed if the {@code FIN} or {@code RST} flag is set.
+     *
+     * @param session  the session
+     * @param packet   the TCP segment
+     * @param listener the listener receiving the messages
+     * @return the number of emitted messages
+     * @throws ParseException           if the segment does not contain a valid BGP message; the session is
+     *                                  resynchronized on the next marker
+     * @throws IllegalArgumentException if {@code session}, {@code packet} or {@code listener} is not set
+     */
+    public int frame(final Object session, final TcpPacket packet, final Listener listener) throws ParseException {
+        validateObject("packet", packet);
+        validateObject("session", session);
+        validateObject("listener", listener);
+        final byte[] payload = packet.getPayload();
+        validateObject("payload", payload);
+        try {
+            final Session state = get(session);
+            final long sequence = packet.getSequenceNumber() & 0xffffffffL;
+            int offset = 0;
+            if (state.next >= 0) {
+                // the distance from the expected sequence number, modulo 2^32
+                final int delta = (int) (sequence - state.next);
+                if (delta > 0) {
+                    // a segment is missing: the message boundaries are lost
+                    state.lose();
+                } else if (delta < 0) {
+                    // a retransmission: skip the bytes already framed
+                    offset = -delta < payload.length ? -delta : payload.length;
+                }
+            }
+            if (offset < payload.length || state.next < 0) {
+                state.next = sequence + payload.length + (packet.isSyn() ? 1 : 0) & 0xffffffffL;
+            }
+            if (offset > 0 && offset == payload.length) {
+                dropped++;
+                return 0;
+            }
+            return frame(session, state, payload, offset, listener);
+        } finally {
+            if (packet.isFin() || packet.isRst()) {
+                close(session);
+            }
+        }
+    }
+
+    /**
+     * Emits the BGP messages carried by the given TCP payload, which is assumed to follow the previous payload of the
+     * same session.
+     *
+     * @param session  the session
+     * @param payload  the TCP payload
+     * @param listener the listener receiving the messages
+     * @return the number of emitted messages
+     * @throws ParseException           if the payload does not contain a valid BGP message; the session is
+     *                                  resynchronized on the next marker
+     * @throws IllegalArgumentException if {@code session}, {@code payload} or {@code listener} is not set
+     */
+    public int frame(final Object session, final byte[] payload, final Listener listener) throws ParseException {
+        validateObject("session", session);
+        validateObject("payload", payload);
+        validateObject("listener", listener);
+        return frame(session, get(session), payload, 0, listener);
+    }
+
+    /**
+     * Discards the state of the given session, if any.
+     *
+     * @param session the session
+     */
+    public void close(final Object session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Returns the number of sessions with an incomplete message.
+     *
+     * @return the number of sessions with an incomplete message
+     */
+    public int getPendingSessions() {
+        int n = 0;
+        for (final Session session : sessions.values()) {
+            if (session.length > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of sessions being tracked.
+     *
+     * @return the number of sessions being tracked
+     */
+    public int getSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of segments dropped, either because they were retransmitted or because they preceded the
+     * marker on which a session was resynchronized.
+     *
+     * @return the number of dropped segments
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the number of sessions evicted to keep the number of sessions within the capacity.
+     *
+     * @return the number of evicted sessions
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    private Session get(final Object session) {
+        Session state = sessions.get(session);
+        if (state == null) {
+            if (sessions.size() >= capacity) {
+                final Iterator<Session> it = sessions.values().iterator();
+                it.next();
+                it.remove();
+                evicted++;
+            }
+            state = new Session();
+            sessions.put(session, state);
+        }
+        return state;
+    }
+
+    private int frame(final Object session, final Session state, final byte[] payload, final int offset,
+                      final Listener listener) throws ParseException {
+        try {
+            return doFrame(state, payload, offset, listener);
+        } catch (final ParseException e) {
+            // the message boundaries are lost, unless the session is closed anyway
+            if (sessions.containsKey(session)) {
+                state.lose();
+            }
+            throw e;
+        }
+    }
+
+    private int doFrame(final Session state, final byte[] payload, final int offset, final Listener listener)
+            throws ParseException {
+        int i = offset;
+        int n = 0;
+        if (state.lost) {
+            i = findMarker(payload, i);
+            if (i < 0) {
+                dropped++;
+                return 0;
+            }
+            state.lost = false;
+        }
+        if (state.length > 0) {
+            // complete the header first, then the message
+            if (state.length < BgpPacket.HEADER_LENGTH) {
+                final int count = Math.min(BgpPacket.HEADER_LENGTH - state.length, payload.length - i);
+                state.append(payload, i, count);
+                i += count;
+                if (state.length < BgpPacket.HEADER_LENGTH) {
+                    return 0;
+                }
+            }
+            final int length = readLength(state.buffer, 0);
+            final int count = Math.min(length - state.length, payload.length - i);
+            state.append(payload, i, count);
+            i += count;
+            if (state.length < length) {
+                return 0;
+            }
+            state.length = 0;
+            listener.onMessage(state.buffer, 0, length);
+            n++;
+        }
+        while (payload.length - i >= BgpPacket.HEADER_LENGTH) {
+            final int length = readLength(payload, i);
+            if (payload.length - i < length) {
+                break;
+            }
+            listener.onMessage(payload, i, length);
+            i += length;
+            n++;
+        }
+        if (i < payload.length) {
+            state.append(payload, i, payload.length - i);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the offset of the first BGP marker at or after the given offset.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset from which to search
+     * @return the offset of the marker or {@code -1} if there is none
+     */
+    private static int findMarker(final byte[] bytes, final int offset) {
+        int run = 0;
+        for (int i = offset; i < bytes.length; i++) {
+            if (bytes[i] == (byte) 0xff) {
+                run++;
+            } else if (run >= MARKER_LENGTH) {
+                // the marker is followed by the length, whose first octet is not 0xff
+                return i - MARKER_LENGTH;
+            } else {
+                run = 0;
+            }
+        }
+        return run >= MARKER_LENGTH ? bytes.length - MARKER_LENGTH : -1;
+    }
+
+    /**
+     * Validates the marker of the message at the given offset and returns its length.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the message
+     * @return the length of the message
+     * @throws ParseException if the marker or the length is invalid
+     */
+    private static int readLength(final byte[] bytes, final int offset) throws ParseException {
+        for (int i = offset; i < offset + MARKER_LENGTH; i++) {
+            if (bytes[i] != (byte) 0xff) {
+                throw new ParseException("invalid marker", offset);
+            }
+        }
+        final int length = (bytes[offset + 16] & 0xff) << 8 | bytes[offset + 17] & 0xff;
+        if (length < BgpPacket.HEADER_LENGTH) {
+            throw new ParseException("invalid length", offset);
+        }
+        return length;
+    }
+}
@@ -13,6 +13,11 @@ import org.jetbrains.annotations.Contract;
  */
 public class BgpPacket {
 
+    /**
+     * The header's length in octets.
+     */
+    public static final int HEADER_LENGTH = 19;
+
     /**
      * A PPPoE packet's type.
      */
@@ -42,6 +47,7 @@ public class BgpPacket {
                 if (type.getType() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.BGP);
             throw new ParseException("invalid type", b);
         }
     }
@@ -56,11 +62,28 @@ public class BgpPacket {
      */
     public static BgpPacket parse(final byte[] bytes) throws ParseException {
         Validator.validateObject("payload", bytes);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a BGP packet from the given range of bytes, e.g. a message emitted by a {@link BgpFramer}.
+     *
+     * @param bytes  the bytes to be parsed
+     * @param offset the offset of the first byte of the message
+     * @param length the length of the message in octets
+     * @return a BGPv4 packet
+     * @throws ParseException           if the bytes cannot be parsed
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     */
+    public static BgpPacket parse(final byte[] bytes, final int offset, final int length) throws ParseException {
+        Validator.validateObject("payload", bytes);
+        final long start = Metrics.start();
         final BgpPacket packet = new BgpPacket();
-        packet.marker = Arrays.copyOfRange(bytes, 0, 16);
-        packet.length = Parser.readChar(bytes[16], bytes[17]);
-        packet.type = Type.parse(bytes[18]);
-        packet.payload = Arrays.copyOfRange(bytes, 19, bytes.length);
+        packet.marker = Arrays.copyOfRange(bytes, offset, offset + 16);
+        packet.length = Parser.readChar(bytes[offset + 16], bytes[offset + 17]);
+        packet.type = Type.parse(bytes[offset + 18]);
+        packet.payload = Arrays.copyOfRange(bytes, offset + HEADER_LENGTH, offset + length);
+        Metrics.stop(Metrics.Layer.BGP, start);
         return packet;
     }
 
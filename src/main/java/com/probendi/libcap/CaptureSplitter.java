@@ -0,0 +1,310 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Splits a {@code PCAP} file into several files according to a {@link Sharding} function.
+ * <p>
+ * Records are read by the calling thread, classified with a reusable {@link Frame} and handed in batches to one
+ * writer thread per output file through a bounded queue, so that the output files are written in parallel and a
+ * slow disk applies back-pressure to the reader. The output files are named {@code <prefix>-<shard>.pcap} and have
+ * the same global header as the input file.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class CaptureSplitter {
+
+    /**
+     * Assigns a record to a shard.
+     */
+    @FunctionalInterface
+    public interface Sharding {
+
+        /**
+         * Returns the shard of the given record.
+         *
+         * @param record the record
+         * @param frame  the decoded headers of the record
+         * @return the non-negative shard of the given record
+         */
+        long shard(Record record, Frame frame);
+
+        /**
+         * Returns whether shards only increase over time, so that a shard can be closed as soon as a higher shard
+         * is seen.
+         *
+         * @return {@code true} if shards only increase over time
+         */
+        default boolean isRolling() {
+            return false;
+        }
+    }
+
+    /**
+     * The default number of batches which can be queued for each output file.
+     */
+    public static final int QUEUE_SIZE = 64;
+
+    private static final int BATCH_SIZE = 256;
+    private static final List<Record> END = Collections.emptyList();
+
+    private final Path directory;
+    private final String prefix;
+    private final Sharding sharding;
+    private final int queueSize;
+
+    /**
+     * Returns a sharding function which keeps both directions of a flow in the same shard.
+     * <p>
+     * The shard is a symmetric hash of the IP addresses only: the ports are not hashed because the fragments of a
+     * datagram but the first do not carry them, so that all the fragments stay in the shard of their flow. Records
+     * without an IP header are assigned to shard {@code 0}.
+     *
+     * @param shards the number of shards
+     * @return a sharding function by symmetric hash of the IP addresses
+     * @throws IllegalArgumentException if {@code shards} is not positive
+     */
+    public static Sharding byFlow(final int shards) {
+        validateShards(shards);
+        return (record, frame) -> Long.remainderUnsigned(frame.getAddressHash(), shards);
+    }
+
+    /**
+     * Returns a sharding function by VLAN ID of the outermost Dot1Q tag.
+     * <p>
+     * Untagged records are assigned to shard {@code 0}.
+     *
+     * @param shards the number of shards
+     * @return a sharding function by VLAN ID modulo {@code shards}
+     * @throws IllegalArgumentException if {@code shards} is not positive
+     */
+    public static Sharding byVlan(final int shards) {
+        validateShards(shards);
+        return (record, frame) -> frame.getVlan() < 0 ? 0 : frame.getVlan() % shards;
+    }
+
+    /**
+     * Returns a sharding function by time window.
+     * <p>
+     * The shard of a record is the number of windows elapsed since the epoch. Records are expected in
+     * chronological order: a late record whose window has already been closed is written to the current window.
+     *
+     * @param window the length of a window in microseconds
+     * @return a sharding function by time window
+     * @throws IllegalArgumentException if {@code window} is not positive
+     */
+    public static Sharding byTime(final long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        return new Sharding() {
+            @Override
+            public long shard(final Record record, final Frame frame) {
+                return (record.getTs_sec() * 1_000_000L + record.getTs_usec()) / window;
+            }
+
+            @Override
+            public boolean isRolling() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a new {@code CaptureSplitter} object.
+     *
+     * @param directory the directory of the output files
+     * @param prefix    the prefix of the output files
+     * @param sharding  the sharding function
+     * @throws IllegalArgumentException if any parameter is not set
+     */
+    public CaptureSplitter(final Path directory, final String prefix, final Sharding sharding) {
+        this(directory, prefix, sharding, QUEUE_SIZE);
+    }
+
+    /**
+     * Creates a new {@code CaptureSplitter} object.
+     *
+     * @param directory the directory of the output files
+     * @param prefix    the prefix of the output files
+     * @param sharding  the sharding function
+     * @param queueSize the number of batches which can be queued for each output file
+     * @throws IllegalArgumentException if any parameter is not set or {@code queueSize} is not positive
+     */
+    public CaptureSplitter(final Path directory, final String prefix, final Sharding sharding, final int queueSize) {
+        validateObject("directory", directory);
+        validateObject("prefix", prefix);
+        validateObject("sharding", sharding);
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queue size must be positive");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.sharding = sharding;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns the output file of the given shard.
+     *
+     * @param shard the shard
+     * @return the output file of the given shard
+     */
+    public Path getFile(final long shard) {
+        return directory.resolve(String.format("%s-%04d.pcap", prefix, shard));
+    }
+
+    /**
+     * Splits the records read by the given parser.
+     *
+     * @param parser the parser
+     * @return the number of records written to each output file, in order of creation
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if a file could not be read or written
+     */
+    public Map<Path, Long> split(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "libcap-splitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Map<Long, Shard> open = new LinkedHashMap<>();
+        final List<Shard> shards = new ArrayList<>();
+        final Frame frame = new Frame();
+        long current = -1;
+        try {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                frame.decode(record);
+                long key = sharding.shard(record, frame);
+                if (sharding.isRolling()) {
+                    if (key > current) {
+                        // the previous windows are complete
+                        for (final Shard shard : open.values()) {
+                            shard.close();
+                        }
+                        open.clear();
+                        current = key;
+                    } else {
+                        key = current;
+                    }
+                }
+                Shard shard = open.get(key);
+                if (shard == null) {
+                    shard = new Shard(getFile(key), parser);
+                    shard.future = executor.submit(shard::write);
+                    open.put(key, shard);
+                    shards.add(shard);
+                }
+                shard.add(record);
+            }
+            for (final Shard shard : open.values()) {
+                shard.close();
+            }
+            final Map<Path, Long> result = new LinkedHashMap<>();
+            for (final Shard shard : shards) {
+                result.put(shard.file, shard.get());
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void validateShards(final int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+    }
+
+    /**
+     * An output file and its writer thread.
+     */
+    private final class Shard {
+        private final Path file;
+        private final Parser parser;
+        private final BlockingQueue<List<Record>> queue = new ArrayBlockingQueue<>(queueSize);
+        private List<Record> batch = new ArrayList<>(BATCH_SIZE);
+        private Future<Long> future;
+
+        Shard(final Path file, final Parser parser) {
+            this.file = file;
+            this.parser = parser;
+        }
+
+        void add(final Record record) throws IOException {
+            batch.add(record);
+            if (batch.size() == BATCH_SIZE) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        void close() throws IOException {
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+            batch = null;
+            put(END);
+        }
+
+        long get() throws IOException {
+            try {
+                return future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while writing " + file);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("could not write " + file, e.getCause());
+            }
+        }
+
+        long write() throws IOException, InterruptedException {
+            try (final PcapWriter writer = new PcapWriter(file, parser)) {
+                List<Record> records;
+                while ((records = queue.take()) != END) {
+                    for (final Record record : records) {
+                        writer.write(record);
+                    }
+                }
+                return writer.getRecords();
+            }
+        }
+
+        private void put(final List<Record> records) throws IOException {
+            try {
+                // the writer thread may have failed, in which case nobody will take from the queue
+                while (!queue.offer(records, 100, TimeUnit.MILLISECONDS)) {
+                    if (future.isDone()) {
+                        get();
+                        throw new IOException("writer of " + file + " stopped");
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while writing " + file);
+            }
+        }
+    }
+}
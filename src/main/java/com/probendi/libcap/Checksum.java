@@ -0,0 +1,220 @@
+package com.probendi.libcap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Verifies the Internet checksums (RFC 1071) of the IPv4 header and of the TCP, UDP, ICMP and ICMPv6 segments.
+ * <p>
+ * The ones' complement sum is computed eight octets at a time: each 64-bit big endian word is split into its two
+ * 32-bit halves, which are added to a 64-bit accumulator, and the accumulator is folded to 16 bits at the end. This
+ * yields the same sum as adding 16-bit words one at a time, because the end-around carry makes the ones' complement
+ * sum independent of the word size.
+ * <p>
+ * A transport checksum which equals the complement of the pseudo-header sum alone is reported as
+ * {@link Status#PARTIAL}: it has been left for the NIC to complete (checksum offload) and the packet was captured on
+ * the sending host before the NIC filled it in. This class is thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public final class Checksum {
+
+    /**
+     * The result of a verification.
+     */
+    public enum Status {
+        /**
+         * The checksum is correct.
+         */
+        VALID,
+        /**
+         * The checksum is not correct.
+         */
+        INVALID,
+        /**
+         * The checksum holds the pseudo-header sum only, as left by the sending host for checksum offload.
+         */
+        PARTIAL,
+        /**
+         * The checksum cannot be verified, e.g. because the packet is truncated, fragmented or not IP, or is
+         * absent, e.g. a zero UDP checksum over IPv4.
+         */
+        UNVERIFIED
+    }
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private Checksum() {
+    }
+
+    /**
+     * Returns the ones' complement sum of the given octets, folded to 16 bits.
+     *
+     * @param bytes  the octets
+     * @param offset the offset of the first octet
+     * @param length the number of octets; an odd last octet is padded with zero
+     * @return the ones' complement sum in the range {@code [0, 0xffff]}
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public static int sum(final byte[] bytes, final int offset, final int length) {
+        return fold(add(bytes, offset, length));
+    }
+
+    /**
+     * Returns the Internet checksum of the given octets, i.e. the complement of their ones' complement sum.
+     *
+     * @param bytes  the octets
+     * @param offset the offset of the first octet
+     * @param length the number of octets
+     * @return the checksum in the range {@code [0, 0xffff]}
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public static int checksum(final byte[] bytes, final int offset, final int length) {
+        return ~sum(bytes, offset, length) & 0xffff;
+    }
+
+    /**
+     * Verifies the IPv4 header checksum of the given frame.
+     *
+     * @param frame a decoded frame
+     * @return the result of the verification
+     * @throws IllegalArgumentException if {@code frame} is not set
+     */
+    public static Status verifyIpv4Header(final Frame frame) {
+        validateObject("frame", frame);
+        if (frame.getIpVersion() != 4) {
+            return Status.UNVERIFIED;
+        }
+        final byte[] bytes = frame.getBytes();
+        final int l3 = frame.getL3Offset();
+        final int length = (bytes[l3] & 0xf) * 4;
+        if (length < 20 || l3 + length > bytes.length) {
+            return Status.UNVERIFIED;
+        }
+        return sum(bytes, l3, length) == 0xffff ? Status.VALID : Status.INVALID;
+    }
+
+    /**
+     * Verifies the TCP, UDP, ICMP or ICMPv6 checksum of the given frame, including the pseudo-header for IPv4 and
+     * IPv6.
+     *
+     * @param frame a decoded frame
+     * @return the result of the verification
+     * @throws IllegalArgumentException if {@code frame} is not set
+     */
+    public static Status verifyTransport(final Frame frame) {
+        validateObject("frame", frame);
+        final int version = frame.getIpVersion();
+        final int protocol = frame.getProtocol();
+        final int l4 = frame.getL4Offset();
+        if (version == 0 || l4 < 0) {
+            return Status.UNVERIFIED;
+        }
+        final byte[] bytes = frame.getBytes();
+        final int l3 = frame.getL3Offset();
+        final int length;
+        if (version == 4) {
+            if ((bytes[l3 + 6] & 0x20) != 0) {
+                // the first fragment of a fragmented datagram: the checksum covers the whole datagram
+                return Status.UNVERIFIED;
+            }
+            length = Parser.readChar(bytes[l3 + 2], bytes[l3 + 3]) - (l4 - l3);
+        } else {
+            final long walk = l4 - l3 > 40 ? Ipv6Packet.walk(bytes, bytes[l3 + 6] & 0xff, l3 + 40, l4, 44) : 0;
+            if (walk >>> 32 == 44 && (bytes[(int) walk + 3] & 1) != 0) {
+                // the first fragment of a fragmented datagram: the checksum covers the whole datagram
+                return Status.UNVERIFIED;
+            }
+            length = Parser.readChar(bytes[l3 + 4], bytes[l3 + 5]) - (l4 - l3 - 40);
+        }
+        final int field;
+        if (protocol == 6) {
+            field = 16;
+        } else if (protocol == 0x11) {
+            field = 6;
+        } else if (protocol == 1 && version == 4 || protocol == 0x3a && version == 6) {
+            field = 2;
+        } else {
+            return Status.UNVERIFIED;
+        }
+        if (length < field + 2 || l4 + length > bytes.length) {
+            return Status.UNVERIFIED;
+        }
+        final int checksum = Parser.readChar(bytes[l4 + field], bytes[l4 + field + 1]);
+        if (protocol == 0x11 && version == 4 && checksum == 0) {
+            return Status.UNVERIFIED;
+        }
+        if (protocol == 1) {
+            // ICMP has no pseudo-header
+            return sum(bytes, l4, length) == 0xffff ? Status.VALID : Status.INVALID;
+        }
+        final long pseudo = add(bytes, frame.getSourceOffset(), 2 * frame.getAddressLength()) + protocol + length;
+        if (fold(pseudo + add(bytes, l4, length)) == 0xffff) {
+            return Status.VALID;
+        }
+        return checksum == fold(pseudo) || checksum == (~fold(pseudo) & 0xffff) ? Status.PARTIAL : Status.INVALID;
+    }
+
+    /**
+     * Verifies the IPv4 header and transport checksums of the given records, reusing a single {@link Frame}.
+     *
+     * @param records the records
+     * @param invalid the set of the indexes of the records with an invalid checksum, which is cleared first
+     * @return the number of records with an invalid checksum
+     * @throws IllegalArgumentException if {@code records} or {@code invalid} is not set
+     */
+    public static int verify(final List<Record> records, final BitSet invalid) {
+        validateObject("records", records);
+        validateObject("invalid", invalid);
+        invalid.clear();
+        final Frame frame = new Frame();
+        int n = 0;
+        for (int i = 0; i < records.size(); i++) {
+            if (frame.decode(records.get(i)) && (verifyIpv4Header(frame) == Status.INVALID ||
+                    verifyTransport(frame) == Status.INVALID)) {
+                invalid.set(i);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Adds the given octets as 32-bit big endian words, eight octets at a time, without folding.
+     */
+    private static long add(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        if (offset < 0 || length < 0 || end > bytes.length) {
+            throw new IndexOutOfBoundsException("range [" + offset + ", " + end + ") out of bounds for length " +
+                    bytes.length);
+        }
+        long sum = 0;
+        int i = offset;
+        // up to 2^31 words of at most 2^33 each cannot overflow 64 bits
+        for (; i + 8 <= end; i += 8) {
+            final long word = (long) LONG.get(bytes, i);
+            sum += (word >>> 32) + (word & 0xffffffffL);
+        }
+        for (; i + 2 <= end; i += 2) {
+            sum += (bytes[i] & 0xff) << 8 | bytes[i + 1] & 0xff;
+        }
+        if (i < end) {
+            sum += (bytes[i] & 0xff) << 8;
+        }
+        return sum;
+    }
+
+    private static int fold(long sum) {
+        sum = (sum >>> 32) + (sum & 0xffffffffL);
+        sum = (sum >>> 32) + (sum & 0xffffffffL);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        return (int) sum;
+    }
+}
@@ -0,0 +1,430 @@
+package com.probendi.libcap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Exports the header fields of the dissected packets to a columnar file.
+ * <p>
+ * Each record is decoded in place by a {@link Frame}, which walks the VLAN tags, the MPLS label stack, the PPPoE
+ * session and the IPv6 extension headers, into one value per {@link Column}; missing fields are exported as
+ * {@code -1}. Rows are buffered in primitive arrays and written in row groups, so the
+ * memory used is bounded by the size of a row group whatever the size of the capture.
+ * <p>
+ * Within a row group each column is encoded on its own: a column with at most {@link #MAX_DICTIONARY_SIZE}
+ * distinct values, such as the EtherType or the IP protocol, is dictionary encoded with one octet per row; other
+ * columns use their default encoding, either zigzag varints or, for monotonic columns such as timestamps, zigzag
+ * varint deltas. The layout of the file is:
+ * <pre>
+ * magic       "LCAPCOL1"
+ * row group*  varint rows, then for each column: encoding (1 octet), varint length, data
+ * footer      varint columns, column names (modified UTF-8), varint row groups, (offset (8 octets), varint rows)*
+ * trailer     footer offset (8 octets), "LCAPCOL1"
+ * </pre>
+ * Files are read back with {@link ColumnarReader}. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ColumnarExporter implements Closeable {
+
+    /**
+     * An exported column.
+     */
+    public enum Column {
+        FRAME(Encoding.DELTA),
+        TIMESTAMP(Encoding.DELTA),
+        INCL_LEN(Encoding.PLAIN),
+        ORIG_LEN(Encoding.PLAIN),
+        ETHER_TYPE(Encoding.PLAIN),
+        VLAN(Encoding.PLAIN),
+        INNER_VLAN(Encoding.PLAIN),
+        MPLS_LABEL(Encoding.PLAIN),
+        PPPOE_SESSION(Encoding.PLAIN),
+        IP_VERSION(Encoding.PLAIN),
+        PROTOCOL(Encoding.PLAIN),
+        TTL(Encoding.PLAIN),
+        SOURCE_HIGH(Encoding.PLAIN),
+        SOURCE_LOW(Encoding.PLAIN),
+        DESTINATION_HIGH(Encoding.PLAIN),
+        DESTINATION_LOW(Encoding.PLAIN),
+        SOURCE_PORT(Encoding.PLAIN),
+        DESTINATION_PORT(Encoding.PLAIN),
+        TCP_FLAGS(Encoding.PLAIN);
+
+        private final Encoding encoding;
+
+        Column(final Encoding encoding) {
+            this.encoding = encoding;
+        }
+
+        /**
+         * Returns the encoding used when the column has too many distinct values for a dictionary.
+         *
+         * @return the default encoding
+         */
+        public Encoding getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Returns the name of the column as written in the footer.
+         *
+         * @return the name of the column
+         */
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * The encoding of a column chunk.
+     */
+    public enum Encoding {
+        PLAIN,
+        DELTA,
+        DICTIONARY;
+
+        /**
+         * Returns the encoding for the given byte.
+         *
+         * @param b the byte
+         * @return the encoding for the given byte
+         * @throws ParseException if {@code b} is not a valid encoding
+         */
+        public static Encoding parse(final byte b) throws ParseException {
+            if (b < 0 || b >= values().length) {
+                throw new ParseException("invalid encoding", b);
+            }
+            return values()[b];
+        }
+    }
+
+    /**
+     * The magic number of a columnar file.
+     */
+    public static final byte[] MAGIC = "LCAPCOL1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The default number of rows in a row group.
+     */
+    public static final int ROW_GROUP_SIZE = 0x10000;
+
+    /**
+     * The maximum number of distinct values of a dictionary encoded column chunk.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 0x100;
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final long[][] columns;
+    private final long[] row = new long[COLUMNS.length];
+    private final Frame frame = new Frame();
+    private final LongIndex dictionary = new LongIndex(MAX_DICTIONARY_SIZE);
+    private final List<long[]> rowGroups = new ArrayList<>();
+    private byte[] chunk = new byte[0x1000];
+    private int rows;
+    private long total;
+
+    /**
+     * Creates a new {@code ColumnarExporter} object for the given file.
+     *
+     * @param file the file to be written, which is truncated if it exists
+     * @throws IllegalArgumentException if {@code file} is not set
+     * @throws IOException              if the file could not be written
+     */
+    public ColumnarExporter(final Path file) throws IOException {
+        this(file, ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Creates a new {@code ColumnarExporter} object for the given file.
+     *
+     * @param file         the file to be written, which is truncated if it exists
+     * @param rowGroupSize the number of rows in a row group
+     * @throws IllegalArgumentException if {@code file} is not set or {@code rowGroupSize} is not positive
+     * @throws IOException              if the file could not be written
+     */
+    public ColumnarExporter(final Path file, final int rowGroupSize) throws IOException {
+        validateObject("file", file);
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("row group size must be positive");
+        }
+        this.rowGroupSize = rowGroupSize;
+        columns = new long[COLUMNS.length][rowGroupSize];
+        counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file),
+                PcapWriter.BUFFER_SIZE));
+        out = new DataOutputStream(counter);
+        out.write(MAGIC);
+    }
+
+    /**
+     * Exports all the records read by the given parser.
+     *
+     * @param parser the parser
+     * @return the number of exported records
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if a file could not be read or written
+     */
+    public long export(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        long n = 0;
+        Record record;
+        while ((record = parser.readRecord()) != null) {
+            add(record);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Dissects and exports the given record.
+     *
+     * @param record the record
+     * @throws IllegalArgumentException if {@code record} is not set
+     * @throws IOException              if the file could not be written
+     */
+    public void add(final Record record) throws IOException {
+        validateObject("record", record);
+        dissect(record, frame, row);
+        for (int c = 0; c < row.length; c++) {
+            columns[c][rows] = row[c];
+        }
+        total++;
+        if (++rows == rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    /**
+     * Returns the number of exported rows.
+     *
+     * @return the number of exported rows
+     */
+    public long getRows() {
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                writeRowGroup();
+            }
+            final long footer = counter.count;
+            writeVarint(out, COLUMNS.length);
+            for (final Column column : COLUMNS) {
+                out.writeUTF(column.getName());
+            }
+            writeVarint(out, rowGroups.size());
+            for (final long[] rowGroup : rowGroups) {
+                out.writeLong(rowGroup[0]);
+                writeVarint(out, rowGroup[1]);
+            }
+            out.writeLong(footer);
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Dissects the given record into one value per column.
+     *
+     * @param record the record
+     * @param frame  the frame used to decode the record
+     * @param row    the values, indexed by column ordinal
+     */
+    static void dissect(final Record record, final Frame frame, final long[] row) {
+        Arrays.fill(row, -1);
+        row[Column.FRAME.ordinal()] = record.getFrame();
+        row[Column.TIMESTAMP.ordinal()] = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        row[Column.INCL_LEN.ordinal()] = record.getIncl_len();
+        row[Column.ORIG_LEN.ordinal()] = record.getOrig_len();
+        final byte[] bytes = record.getBytes();
+        if (bytes == null || bytes.length < 0xe) {
+            return;
+        }
+        final boolean ip = frame.decode(bytes);
+        row[Column.ETHER_TYPE.ordinal()] = frame.getEtherType();
+        row[Column.VLAN.ordinal()] = frame.getVlan();
+        row[Column.INNER_VLAN.ordinal()] = frame.getInnerVlan();
+        row[Column.MPLS_LABEL.ordinal()] = frame.getMplsLabel();
+        row[Column.PPPOE_SESSION.ordinal()] = frame.getPppoESession();
+        if (!ip) {
+            return;
+        }
+        final int version = frame.getIpVersion();
+        final int l3 = frame.getL3Offset();
+        final int source = frame.getSourceOffset();
+        final int destination = frame.getDestinationOffset();
+        row[Column.IP_VERSION.ordinal()] = version;
+        row[Column.PROTOCOL.ordinal()] = frame.getProtocol();
+        if (version == 4) {
+            row[Column.TTL.ordinal()] = bytes[l3 + 8] & 0xff;
+            row[Column.SOURCE_HIGH.ordinal()] = 0;
+            row[Column.SOURCE_LOW.ordinal()] = readLong(bytes, source, 4);
+            row[Column.DESTINATION_HIGH.ordinal()] = 0;
+            row[Column.DESTINATION_LOW.ordinal()] = readLong(bytes, destination, 4);
+        } else {
+            row[Column.TTL.ordinal()] = bytes[l3 + 7] & 0xff;
+            row[Column.SOURCE_HIGH.ordinal()] = readLong(bytes, source, 8);
+            row[Column.SOURCE_LOW.ordinal()] = readLong(bytes, source + 8, 8);
+            row[Column.DESTINATION_HIGH.ordinal()] = readLong(bytes, destination, 8);
+            row[Column.DESTINATION_LOW.ordinal()] = readLong(bytes, destination + 8, 8);
+        }
+        final int protocol = frame.getProtocol();
+        if ((protocol == 6 || protocol == 0x11) && frame.getSourcePort() >= 0) {
+            row[Column.SOURCE_PORT.ordinal()] = frame.getSourcePort();
+            row[Column.DESTINATION_PORT.ordinal()] = frame.getDestinationPort();
+            final int l4 = frame.getL4Offset();
+            if (protocol == 6 && l4 + 14 <= bytes.length) {
+                // NS is the lowest bit of the data offset octet, followed by the eight flags
+                row[Column.TCP_FLAGS.ordinal()] = (bytes[l4 + 12] & 1) << 8 | bytes[l4 + 13] & 0xff;
+            }
+        }
+    }
+
+    private static long readLong(final byte[] bytes, final int offset, final int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = value << 8 | bytes[i] & 0xff;
+        }
+        return value;
+    }
+
+    private void writeRowGroup() throws IOException {
+        rowGroups.add(new long[]{counter.count, rows});
+        writeVarint(out, rows);
+        for (int c = 0; c < COLUMNS.length; c++) {
+            final long[] values = columns[c];
+            Encoding encoding = Encoding.DICTIONARY;
+            int length = encodeDictionary(values);
+            if (length < 0) {
+                encoding = COLUMNS[c].getEncoding();
+                length = encoding == Encoding.DELTA ? encodeDelta(values) : encodePlain(values);
+            }
+            out.writeByte(encoding.ordinal());
+            writeVarint(out, length);
+            out.write(chunk, 0, length);
+        }
+        rows = 0;
+    }
+
+    private int encodeDictionary(final long[] values) {
+        dictionary.clear();
+        for (int i = 0; i < rows; i++) {
+            if (dictionary.get(values[i]) < 0) {
+                if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                    return -1;
+                }
+                dictionary.add(values[i]);
+            }
+        }
+        // no key is removed after clearing, so the IDs are the dense indices of the dictionary
+        int n = putVarint(0, dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            n = putVarint(n, zigzag(dictionary.key(id)));
+        }
+        ensureCapacity(n + rows);
+        for (int i = 0; i < rows; i++) {
+            chunk[n++] = (byte) dictionary.get(values[i]);
+        }
+        return n;
+    }
+
+    private int encodeDelta(final long[] values) {
+        int n = 0;
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            n = putVarint(n, zigzag(values[i] - previous));
+            previous = values[i];
+        }
+        return n;
+    }
+
+    private int encodePlain(final long[] values) {
+        int n = 0;
+        for (int i = 0; i < rows; i++) {
+            n = putVarint(n, zigzag(values[i]));
+        }
+        return n;
+    }
+
+    private int putVarint(int n, long value) {
+        ensureCapacity(n + 10);
+        while ((value & ~0x7fL) != 0) {
+            chunk[n++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        chunk[n++] = (byte) value;
+        return n;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > chunk.length) {
+            chunk = Arrays.copyOf(chunk, Math.max(capacity, chunk.length * 2));
+        }
+    }
+
+    private static long zigzag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static void writeVarint(final DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Counts the bytes written, in order to record the offsets of the row groups.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
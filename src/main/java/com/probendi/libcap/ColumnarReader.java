@@ -0,0 +1,200 @@
+package com.probendi.libcap;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * A reader of the columnar files written by {@link ColumnarExporter}.
+ * <p>
+ * Only the footer is read when the file is opened; column chunks are decoded on demand, one row group at a time.
+ * This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ColumnarReader implements Closeable {
+
+    private static final int TRAILER_LENGTH = 8 + ColumnarExporter.MAGIC.length;
+
+    private final FileChannel in;
+    private final List<String> columns = new ArrayList<>();
+    private final long[] offsets;
+    private final int[] rows;
+
+    /**
+     * Creates a new {@code ColumnarReader} object for the given file.
+     *
+     * @param file the file to be read
+     * @throws IllegalArgumentException if {@code file} is not set
+     * @throws IOException              if the file could not be read
+     * @throws ParseException           if the file is not a columnar file
+     */
+    public ColumnarReader(final Path file) throws IOException, ParseException {
+        validateObject("file", file);
+        in = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = in.size();
+            if (size < ColumnarExporter.MAGIC.length + TRAILER_LENGTH) {
+                throw new ParseException("invalid magic", 0);
+            }
+            final ByteBuffer trailer = read(size - TRAILER_LENGTH, TRAILER_LENGTH);
+            final long footer = trailer.getLong();
+            final byte[] magic = new byte[ColumnarExporter.MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, ColumnarExporter.MAGIC) || footer < ColumnarExporter.MAGIC.length ||
+                    footer > size - TRAILER_LENGTH) {
+                throw new ParseException("invalid magic", (int) (size - magic.length));
+            }
+            final DataInputStream data = new DataInputStream(new ByteArrayInputStream(
+                    read(footer, (int) (size - TRAILER_LENGTH - footer)).array()));
+            final int n = (int) readVarint(data);
+            for (int i = 0; i < n; i++) {
+                columns.add(data.readUTF());
+            }
+            final int groups = (int) readVarint(data);
+            offsets = new long[groups + 1];
+            rows = new int[groups];
+            for (int i = 0; i < groups; i++) {
+                offsets[i] = data.readLong();
+                rows[i] = (int) readVarint(data);
+            }
+            offsets[groups] = footer;
+        } catch (final IOException | ParseException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of the columns.
+     *
+     * @return the names of the columns, in file order
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Returns the number of row groups.
+     *
+     * @return the number of row groups
+     */
+    public int getRowGroups() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the number of rows of the given row group.
+     *
+     * @param rowGroup the row group
+     * @return the number of rows of the given row group
+     */
+    public int getRows(final int rowGroup) {
+        return rows[rowGroup];
+    }
+
+    /**
+     * Reads a column chunk.
+     *
+     * @param rowGroup the row group
+     * @param column   the column
+     * @return the values of the column in the given row group
+     * @throws IllegalArgumentException if {@code column} is not set or is not in the file
+     * @throws IOException              if the file could not be read
+     * @throws ParseException           if the column chunk cannot be decoded
+     */
+    public long[] read(final int rowGroup, final ColumnarExporter.Column column) throws IOException, ParseException {
+        validateObject("column", column);
+        final int index = columns.indexOf(column.getName());
+        if (index < 0) {
+            throw new IllegalArgumentException(column.getName() + " is not in the file");
+        }
+        final ByteBuffer buffer = read(offsets[rowGroup], (int) (offsets[rowGroup + 1] - offsets[rowGroup]));
+        final int n = (int) readVarint(buffer);
+        for (int c = 0; c < index; c++) {
+            buffer.get();
+            final int length = (int) readVarint(buffer);
+            buffer.position(buffer.position() + length);
+        }
+        final ColumnarExporter.Encoding encoding = ColumnarExporter.Encoding.parse(buffer.get());
+        readVarint(buffer);
+        final long[] values = new long[n];
+        switch (encoding) {
+            case DICTIONARY:
+                final long[] dictionary = new long[(int) readVarint(buffer)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = unzigzag(readVarint(buffer));
+                }
+                for (int i = 0; i < n; i++) {
+                    values[i] = dictionary[buffer.get() & 0xff];
+                }
+                break;
+            case DELTA:
+                long previous = 0;
+                for (int i = 0; i < n; i++) {
+                    previous += unzigzag(readVarint(buffer));
+                    values[i] = previous;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    values[i] = unzigzag(readVarint(buffer));
+                }
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long unzigzag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static long readVarint(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long readVarint(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the total weight of each {@code long} key of a stream in bounded memory with a Count-Min sketch (see
+ * Cormode and Muthukrishnan, "An Improved Data Stream Summary: The Count-Min Sketch and its Applications").
+ * <p>
+ * The sketch has {@code depth} rows of {@code width} counters. Estimates never underestimate the true weight and,
+ * with probability {@code 1 - 2^-depth}, overestimate it by at most {@code 2 * N / width}, where {@code N} is the
+ * total weight of the stream. Updates are conservative: only the counters lower than the new estimate are raised,
+ * which reduces the overestimation further. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * Creates a new {@code CountMinSketch} object.
+     *
+     * @param width the number of counters per row, rounded up to a power of two
+     * @param depth the number of rows
+     * @throws IllegalArgumentException if {@code width} or {@code depth} is not positive
+     */
+    public CountMinSketch(final int width, final int depth) {
+        if (width <= 0 || width > 1 << 30) {
+            throw new IllegalArgumentException("width must be positive");
+        }
+        if (depth <= 0 || depth > 32) {
+            throw new IllegalArgumentException("depth must be between 1 and 32");
+        }
+        final int length = Integer.highestOneBit(width * 2 - 1);
+        this.depth = depth;
+        mask = length - 1;
+        counters = new long[length * depth];
+    }
+
+    /**
+     * Adds the given weight to the given key.
+     *
+     * @param key    the key
+     * @param weight the non-negative weight
+     * @return the new estimated weight of the key
+     */
+    public long add(final long key, final long weight) {
+        total += weight;
+        final long estimate = estimate(key) + weight;
+        final long hash = LongIndex.mix(key);
+        for (int row = 0; row < depth; row++) {
+            final int i = row * (mask + 1) + index(hash, row);
+            if (counters[i] < estimate) {
+                counters[i] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated weight of the given key.
+     *
+     * @param key the key
+     * @return the estimated weight of the key
+     */
+    public long estimate(final long key) {
+        final long hash = LongIndex.mix(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * (mask + 1) + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the total weight of the stream.
+     *
+     * @return the total weight of the stream
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Forgets all the keys.
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+
+    private int index(final long hash, final int row) {
+        // double hashing (see Kirsch and Mitzenmacher, "Less Hashing, Same Performance")
+        return (int) ((hash + row * (hash >>> 32 | 1)) & mask);
+    }
+}
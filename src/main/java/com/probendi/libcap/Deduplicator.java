@@ -0,0 +1,189 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Drops the duplicate frames of SPAN and TAP captures, where a mirrored port delivers every packet twice within a
+ * few microseconds.
+ * <p>
+ * Each record is fingerprinted with a 64-bit non-cryptographic hash of its bytes, eight octets at a time, which skips
+ * the fields a router rewrites between the two copies: the IPv4 TTL and header checksum and the IPv6 hop limit, found
+ * through {@link Frame}. A record is a duplicate if a record with the same fingerprint and length was seen within
+ * the time window. The fingerprints are kept in a fixed-size open addressing table of primitive arrays: an entry
+ * older than the window is expired when its slot is probed, and when all the probed slots are in use the oldest
+ * entry is evicted, so memory stays bounded whatever the rate of the capture.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Deduplicator {
+
+    /**
+     * The default time window in microseconds.
+     */
+    public static final long WINDOW = 1000;
+
+    /**
+     * The default number of entries of the table.
+     */
+    public static final int CAPACITY = 1 << 16;
+
+    private static final int PROBES = 8;
+    private static final long P1 = 0x9e3779b97f4a7c15L;
+    private static final long P2 = 0xc2b2ae3d27d4eb4fL;
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final long window;
+    private final int mask;
+    private final long[] fingerprints;
+    private final long[] times;
+    private final Frame frame = new Frame();
+    private long passed;
+    private long duplicates;
+
+    /**
+     * Creates a new {@code Deduplicator} object with the default window and capacity.
+     */
+    public Deduplicator() {
+        this(WINDOW, CAPACITY);
+    }
+
+    /**
+     * Creates a new {@code Deduplicator} object.
+     *
+     * @param window   the time window in microseconds
+     * @param capacity the number of entries of the table, rounded up to a power of 2
+     * @throws IllegalArgumentException if {@code window} is negative or {@code capacity} is not positive
+     */
+    public Deduplicator(final long window, final int capacity) {
+        if (window < 0) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.window = window;
+        final int size = Math.max(PROBES, Integer.highestOneBit(capacity - 1) << 1);
+        mask = size - 1;
+        fingerprints = new long[size];
+        times = new long[size];
+    }
+
+    /**
+     * Returns {@code true} if the given record is a duplicate of a record seen within the window, or else remembers
+     * it.
+     *
+     * @param record the record
+     * @return {@code true} if the record is a duplicate
+     * @throws IllegalArgumentException if {@code record} or its bytes are not set
+     */
+    public boolean isDuplicate(final Record record) {
+        validateObject("record", record);
+        final byte[] bytes = record.getBytes();
+        validateObject("bytes", bytes);
+        final long time = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        // 0 marks an empty slot
+        final long fingerprint = fingerprint(bytes) | 1;
+        final int start = (int) (fingerprint >>> 32) & mask;
+        int victim = -1;
+        int oldest = start;
+        for (int p = 0; p < PROBES; p++) {
+            final int i = start + p & mask;
+            final boolean live = fingerprints[i] != 0 && Math.abs(time - times[i]) <= window;
+            if (!live) {
+                if (victim < 0) {
+                    victim = i;
+                }
+            } else if (fingerprints[i] == fingerprint) {
+                duplicates++;
+                return true;
+            } else if (times[i] < times[oldest]) {
+                oldest = i;
+            }
+        }
+        if (victim < 0) {
+            // all the probed slots are in use
+            victim = oldest;
+        }
+        fingerprints[victim] = fingerprint;
+        times[victim] = time;
+        passed++;
+        return false;
+    }
+
+    /**
+     * Writes the records of the given parser which are not duplicates, transferring them from the source file.
+     *
+     * @param parser the parser
+     * @param writer the writer, whose global header has been copied from {@code parser}
+     * @return the number of written records
+     * @throws IllegalArgumentException if {@code parser} or {@code writer} is not set
+     * @throws IOException              if a file could not be read or written
+     */
+    public long deduplicate(final Parser parser, final PcapWriter writer) throws IOException {
+        validateObject("parser", parser);
+        validateObject("writer", writer);
+        long n = 0;
+        Record record;
+        while ((record = parser.readRecord()) != null) {
+            if (!isDuplicate(record)) {
+                writer.transfer(record);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public long getPassed() {
+        return passed;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the fingerprint of the given frame, which does not depend on the IPv4 TTL and header checksum nor on
+     * the IPv6 hop limit.
+     *
+     * @param bytes the frame
+     * @return the fingerprint
+     */
+    long fingerprint(final byte[] bytes) {
+        long h = bytes.length * P1;
+        if (frame.decode(bytes)) {
+            final int l3 = frame.getL3Offset();
+            if (frame.getIpVersion() == 4) {
+                h = hash(h, bytes, 0, l3 + 8);
+                h = hash(h, bytes, l3 + 9, l3 + 10);
+                h = hash(h, bytes, l3 + 12, bytes.length);
+            } else {
+                h = hash(h, bytes, 0, l3 + 7);
+                h = hash(h, bytes, l3 + 8, bytes.length);
+            }
+        } else {
+            h = hash(h, bytes, 0, bytes.length);
+        }
+        return LongIndex.mix(h);
+    }
+
+    private static long hash(long h, final byte[] bytes, final int from, final int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            h = Long.rotateLeft(h ^ (long) LONG.get(bytes, i) * P2, 31) * P1;
+        }
+        long tail = 0;
+        for (int shift = 0; i < to; i++, shift += 8) {
+            tail |= (bytes[i] & 0xffL) << shift;
+        }
+        return Long.rotateLeft(h ^ (tail ^ to) * P2, 31) * P1;
+    }
+}
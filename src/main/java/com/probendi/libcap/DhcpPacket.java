@@ -60,6 +60,7 @@ public class DhcpPacket {
                 if (type.getMessageType() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.DHCP);
             throw new ParseException("invalid message type", b);
         }
     }
@@ -95,6 +96,7 @@ public class DhcpPacket {
                 if (operation.getOperation() == b)
                     return operation;
             }
+            Metrics.failure(Metrics.Layer.DHCP);
             throw new ParseException("invalid operation", b);
         }
     }
@@ -109,6 +111,7 @@ public class DhcpPacket {
      */
     public static DhcpPacket parse(final byte[] bytes) throws ParseException {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final DhcpPacket packet = new DhcpPacket();
         int i = 0;
         packet.operation = Operation.parse(bytes[i++]);
@@ -127,6 +130,7 @@ public class DhcpPacket {
         packet.file = readNullTerminatedString(Arrays.copyOfRange(bytes, i, i = i + 128));
         packet.magicCookie = Arrays.copyOfRange(bytes, i, i = i + 4);
         if (!Arrays.equals(MAGIC_COOKIE, packet.magicCookie)) {
+            Metrics.failure(Metrics.Layer.DHCP);
             throw new IllegalArgumentException("invalid magic cookie: " + Parser.bytesToString(packet.magicCookie));
         }
         final List<byte[]> options = new LinkedList<>();
@@ -138,6 +142,7 @@ public class DhcpPacket {
             packet.options.add(option);
             i += bytes[i + 1] + 2;
         }
+        Metrics.stop(Metrics.Layer.DHCP, start);
         return packet;
     }
 
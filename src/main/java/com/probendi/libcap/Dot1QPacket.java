@@ -2,10 +2,13 @@ package com.probendi.libcap;
 
 import java.util.Arrays;
 
+import static com.probendi.libcap.PacketType.DOT1AD;
+import static com.probendi.libcap.PacketType.DOT1Q;
 import static com.probendi.libcap.PacketType.IPv4;
 import static com.probendi.libcap.PacketType.IPv6;
 import static com.probendi.libcap.PacketType.PPPoE_DISC;
 import static com.probendi.libcap.PacketType.PPPoE_SESS;
+import static com.probendi.libcap.PacketType.QINQ;
 import static com.probendi.libcap.Parser.readChar;
 import static com.probendi.libcap.Validator.validateObject;
 
@@ -26,6 +29,7 @@ public class Dot1QPacket {
      */
     public static Dot1QPacket parse(final Record record) {
         validateObject("record", record);
+        final long start = Metrics.start();
         final Dot1QPacket packet = new Dot1QPacket();
         final byte[] bytes = record.getBytes();
         final int i = 0xe;
@@ -34,9 +38,81 @@ public class Dot1QPacket {
         packet.id = (char) (readChar(bytes[0xe], bytes[0xf]) & 0xfff);
         packet.type = PacketType.parse(readChar(bytes[0x10], bytes[0x11]));
         packet.payload = Arrays.copyOfRange(bytes, 0x12, bytes.length);
+        Metrics.stop(Metrics.Layer.DOT1Q, start);
         return packet;
     }
 
+    /**
+     * Returns {@code true} if the given EtherType is the tag protocol identifier of a VLAN tag: 802.1Q, 802.1ad (S-tag)
+     * or the pre-standard Q-in-Q 0x9100.
+     *
+     * @param etherType the EtherType
+     * @return {@code true} if {@code etherType} is a VLAN tag
+     */
+    public static boolean isTag(final int etherType) {
+        return etherType == DOT1Q.getType() || etherType == DOT1AD.getType() || etherType == QINQ.getType();
+    }
+
+    /**
+     * Decodes the stack of VLAN tags starting at the given offset into the given array, without allocating.
+     * <p>
+     * Each element of the array is the tag protocol identifier in the upper 16 bits and the tag control information
+     * in the lower 16 bits: use {@link #id(int)}, {@link #priority(int)} and {@link #isDei(int)} to decode it. The
+     * tags are walked to any depth, and the inner EtherType is at {@code offset + 4 * n}, where {@code n} is the
+     * returned depth and is always within {@code bytes}.
+     *
+     * @param bytes  the bytes to be decoded
+     * @param offset the offset of the tag protocol identifier of the outermost tag, i.e. {@code 0xc} for an Ethernet
+     *               frame
+     * @param tags   the array receiving the outermost tags
+     * @return the number of tags, of which only the first {@code tags.length} are decoded
+     */
+    public static int decodeTags(final byte[] bytes, final int offset, final int[] tags) {
+        int n = 0;
+        // a tag is only counted if it is followed by an EtherType
+        for (int i = offset; i + 6 <= bytes.length; i += 4, n++) {
+            final int tag = (bytes[i] & 0xff) << 24 | (bytes[i + 1] & 0xff) << 16 | (bytes[i + 2] & 0xff) << 8 |
+                    bytes[i + 3] & 0xff;
+            if (!isTag(tag >>> 16)) {
+                break;
+            }
+            if (n < tags.length) {
+                tags[n] = tag;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the VLAN ID of the given tag.
+     *
+     * @param tag the tag
+     * @return the VLAN ID of the given tag
+     */
+    public static int id(final int tag) {
+        return tag & 0xfff;
+    }
+
+    /**
+     * Returns the priority code point of the given tag.
+     *
+     * @param tag the tag
+     * @return the priority code point of the given tag
+     */
+    public static int priority(final int tag) {
+        return tag >>> 13 & 7;
+    }
+
+    /**
+     * Returns {@code true} if the drop eligible indicator of the given tag is set.
+     *
+     * @param tag the tag
+     * @return {@code true} if the drop eligible indicator is set
+     */
+    public static boolean isDei(final int tag) {
+        return (tag & 0x1000) != 0;
+    }
+
     private byte priority;
     private boolean dei;
     private char id;
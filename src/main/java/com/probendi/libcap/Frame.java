@@ -0,0 +1,404 @@
+package com.probendi.libcap;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * A reusable, zero-copy view of the headers of an Ethernet frame.
+ * <p>
+ * Unlike the {@code *Packet} classes, which copy the bytes of each layer, a {@code Frame} only records the offsets
+ * and the few fields needed to classify a frame: the VLAN IDs, the EtherType, the MPLS label, the PPPoE session, the
+ * IP version and protocol, and the transport ports. VLAN tags (802.1Q and stacked 802.1ad), MPLS label stacks and
+ * PPPoE sessions are walked to reach the IP header, and IPv6 extension headers to reach the transport header. The
+ * VLAN tags are decoded by {@link Dot1QPacket#decodeTags(byte[], int, int[])} into a reusable array, so that
+ * per-tag statistics such as {@link VlanStatistics} come out of the same pass. A single instance can be reused for
+ * every record read by a thread. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Frame {
+
+    /**
+     * The maximum number of VLAN tags returned by {@link #getTags()}.
+     */
+    public static final int MAX_TAGS = 8;
+
+    private final int[] tags = new int[MAX_TAGS];
+    private byte[] bytes;
+    private int vlan;
+    private int innerVlan;
+    private int tagCount;
+    private int etherType;
+    private int mplsLabel;
+    private int pppoeSession;
+    private int pppProtocol;
+    private boolean truncated;
+    private int l3Offset;
+    private int ipVersion;
+    private int protocol;
+    private int l4Offset;
+    private int sourcePort;
+    private int destinationPort;
+
+    /**
+     * Decodes the headers of the given record.
+     *
+     * @param record the record
+     * @return {@code true} if an IP header was found
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public boolean decode(final Record record) {
+        validateObject("record", record);
+        return decode(record.getBytes());
+    }
+
+    /**
+     * Decodes the headers of the given Ethernet frame.
+     *
+     * @param bytes the bytes of the frame, which are not copied
+     * @return {@code true} if an IP header was found
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     */
+    public boolean decode(final byte[] bytes) {
+        reset(bytes);
+        tagCount = Dot1QPacket.decodeTags(bytes, 0xc, tags);
+        if (tagCount > 0) {
+            vlan = Dot1QPacket.id(tags[0]);
+        }
+        if (tagCount > 1) {
+            innerVlan = Dot1QPacket.id(tags[1]);
+        }
+        int i = 0xc + 4 * tagCount;
+        final int type = readChar(i);
+        etherType = type;
+        i += 2;
+        if (type == PacketType.MPLS.getType()) {
+            if (i + 4 <= bytes.length) {
+                mplsLabel = readInt(i) >>> 12;
+            }
+            // skip the label stack and guess the payload from the version nibble
+            while (i + 4 <= bytes.length && (bytes[i + 2] & 1) == 0) {
+                i += 4;
+            }
+            i += 4;
+            if (i > bytes.length) {
+                truncated = true;
+            } else if (i < bytes.length) {
+                ipVersion = (bytes[i] & 0xf0) >> 4;
+            }
+        } else if (type == PacketType.PPPoE_SESS.getType()) {
+            if (i + 8 > bytes.length) {
+                truncated = true;
+            } else {
+                pppoeSession = readChar(i + 2);
+                pppProtocol = readChar(i + 6);
+            }
+            i += 8;
+            ipVersion = pppProtocol == PppoEPacket.PointToPointProtocol.IPV4.getType() ? 4 :
+                    pppProtocol == PppoEPacket.PointToPointProtocol.IPV6.getType() ? 6 : 0;
+        } else if (type == PacketType.IPv4.getType()) {
+            ipVersion = 4;
+        } else if (type == PacketType.IPv6.getType()) {
+            ipVersion = 6;
+        }
+        return decodeL3(i);
+    }
+
+    /**
+     * Decodes the headers of the IP packet at the given offset, e.g. the packet embedded in an ICMP error. The IP
+     * version is taken from the first octet, and the VLAN ID and the EtherType are {@code -1}.
+     *
+     * @param bytes  the bytes, which are not copied
+     * @param offset the offset of the IP header
+     * @return {@code true} if an IP header was found
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     */
+    public boolean decodeIp(final byte[] bytes, final int offset) {
+        reset(bytes);
+        if (offset >= 0 && offset < bytes.length) {
+            final int version = (bytes[offset] & 0xf0) >> 4;
+            ipVersion = version == 4 || version == 6 ? version : 0;
+        }
+        return decodeL3(offset);
+    }
+
+    private void reset(final byte[] bytes) {
+        validateObject("bytes", bytes);
+        this.bytes = bytes;
+        vlan = -1;
+        innerVlan = -1;
+        tagCount = 0;
+        etherType = -1;
+        mplsLabel = -1;
+        pppoeSession = -1;
+        pppProtocol = -1;
+        truncated = false;
+        l3Offset = -1;
+        ipVersion = 0;
+        protocol = -1;
+        l4Offset = -1;
+        sourcePort = -1;
+        destinationPort = -1;
+    }
+
+    private boolean decodeL3(final int i) {
+        if (ipVersion == 4 && i + 20 <= bytes.length) {
+            l3Offset = i;
+            protocol = bytes[i + 9] & 0xff;
+            // only the first fragment carries the transport header
+            if ((readChar(i + 6) & 0x1fff) == 0 && (bytes[i] & 0xf) >= 5) {
+                l4Offset = i + (bytes[i] & 0xf) * 4;
+            }
+        } else if (ipVersion == 6 && i + 40 <= bytes.length) {
+            l3Offset = i;
+            protocol = bytes[i + 6] & 0xff;
+            l4Offset = i + 40;
+            if (Ipv6Packet.isExtension(protocol)) {
+                final long walk = Ipv6Packet.walk(bytes, protocol, l4Offset, bytes.length, -1);
+                protocol = (int) (walk >>> 32);
+                l4Offset = (int) walk;
+            }
+        } else {
+            // the IP header announced by the link layer is cut short
+            truncated |= ipVersion == 4 || ipVersion == 6;
+            ipVersion = 0;
+            return false;
+        }
+        if ((protocol == 6 || protocol == 0x11 || protocol == 0x84) && l4Offset >= 0 && l4Offset + 4 <= bytes.length) {
+            sourcePort = readChar(l4Offset);
+            destinationPort = readChar(l4Offset + 2);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bytes of the last decoded frame.
+     *
+     * @return the bytes of the last decoded frame
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the VLAN ID of the outermost VLAN tag, i.e. the S-VLAN of a Q-in-Q frame.
+     *
+     * @return the VLAN ID or {@code -1} if the frame is untagged
+     */
+    public int getVlan() {
+        return vlan;
+    }
+
+    /**
+     * Returns the VLAN ID of the second VLAN tag, i.e. the C-VLAN of a Q-in-Q frame.
+     *
+     * @return the VLAN ID or {@code -1} if the frame has less than two tags
+     */
+    public int getInnerVlan() {
+        return innerVlan;
+    }
+
+    /**
+     * Returns the number of VLAN tags.
+     *
+     * @return the number of VLAN tags
+     */
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    /**
+     * Returns the outermost VLAN tags, as decoded by {@link Dot1QPacket#decodeTags(byte[], int, int[])}: only the
+     * first {@code min(getTagCount(), MAX_TAGS)} elements are valid. The array is overwritten by the next decoding
+     * and must not be modified.
+     *
+     * @return the outermost VLAN tags
+     */
+    public int[] getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the EtherType following all the VLAN tags.
+     *
+     * @return the EtherType or {@code -1} if the frame is too short
+     */
+    public int getEtherType() {
+        return etherType;
+    }
+
+    /**
+     * Returns the outermost MPLS label.
+     *
+     * @return the outermost MPLS label or {@code -1} if the frame does not carry an MPLS label stack
+     */
+    public int getMplsLabel() {
+        return mplsLabel;
+    }
+
+    /**
+     * Returns the PPPoE session ID.
+     *
+     * @return the PPPoE session ID or {@code -1} if the frame is not a PPPoE session frame
+     */
+    public int getPppoESession() {
+        return pppoeSession;
+    }
+
+    /**
+     * Returns the PPP protocol carried by a PPPoE session frame.
+     *
+     * @return the PPP protocol or {@code -1} if the frame is not a PPPoE session frame
+     */
+    public int getPppProtocol() {
+        return pppProtocol;
+    }
+
+    /**
+     * Returns {@code true} if the frame ends within a header announced by the preceding one, such as an unterminated
+     * MPLS label stack, a short PPPoE header or an IP header cut short.
+     *
+     * @return {@code true} if the frame is truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the offset of the IP header.
+     *
+     * @return the offset of the IP header or {@code -1} if no IP header was found
+     */
+    public int getL3Offset() {
+        return l3Offset;
+    }
+
+    /**
+     * Returns the IP version.
+     *
+     * @return {@code 4}, {@code 6} or {@code 0} if no IP header was found
+     */
+    public int getIpVersion() {
+        return ipVersion;
+    }
+
+    /**
+     * Returns the IP protocol, i.e. the IPv4 protocol or the IPv6 next header following the extension headers.
+     *
+     * @return the IP protocol or {@code -1} if no IP header was found
+     */
+    public int getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Returns the offset of the transport header.
+     *
+     * @return the offset of the transport header or {@code -1} if the packet is not the first fragment or its IPv6
+     * extension headers are truncated
+     */
+    public int getL4Offset() {
+        return l4Offset;
+    }
+
+    /**
+     * Returns the TCP, UDP or SCTP source port.
+     *
+     * @return the source port or {@code -1} if not available
+     */
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    /**
+     * Returns the TCP, UDP or SCTP destination port.
+     *
+     * @return the destination port or {@code -1} if not available
+     */
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    /**
+     * Returns the offset of the source IP address.
+     *
+     * @return the offset of the source IP address or {@code -1} if no IP header was found
+     */
+    public int getSourceOffset() {
+        return ipVersion == 4 ? l3Offset + 12 : ipVersion == 6 ? l3Offset + 8 : -1;
+    }
+
+    /**
+     * Returns the offset of the destination IP address.
+     *
+     * @return the offset of the destination IP address or {@code -1} if no IP header was found
+     */
+    public int getDestinationOffset() {
+        return ipVersion == 4 ? l3Offset + 16 : ipVersion == 6 ? l3Offset + 24 : -1;
+    }
+
+    /**
+     * Returns the length of the IP addresses in octets.
+     *
+     * @return {@code 4}, {@code 16} or {@code 0} if no IP header was found
+     */
+    public int getAddressLength() {
+        return ipVersion == 4 ? 4 : ipVersion == 6 ? 16 : 0;
+    }
+
+    /**
+     * Returns a hash of the source IP address.
+     *
+     * @return a hash of the source IP address or {@code 0} if no IP header was found
+     */
+    public long getSourceHash() {
+        return ipVersion == 0 ? 0 : hash(getSourceOffset(), getAddressLength(), 0);
+    }
+
+    /**
+     * Returns a hash of the 5-tuple which is the same for both directions of a flow.
+     *
+     * @return a symmetric hash of the 5-tuple or {@code 0} if no IP header was found
+     */
+    public long getFlowHash() {
+        if (ipVersion == 0) {
+            return 0;
+        }
+        final int length = getAddressLength();
+        final long source = hash(getSourceOffset(), length, sourcePort);
+        final long destination = hash(getDestinationOffset(), length, destinationPort);
+        // addition is commutative, so both directions hash the same
+        return LongIndex.mix(source + destination + protocol);
+    }
+
+    /**
+     * Returns a hash of the IP addresses which is the same for both directions of a flow and for all the fragments of
+     * a datagram, since it does not depend on the ports which only the first fragment carries.
+     *
+     * @return a symmetric hash of the IP addresses or {@code 0} if no IP header was found
+     */
+    public long getAddressHash() {
+        if (ipVersion == 0) {
+            return 0;
+        }
+        final int length = getAddressLength();
+        return LongIndex.mix(hash(getSourceOffset(), length, 0) + hash(getDestinationOffset(), length, 0));
+    }
+
+    private long hash(final int offset, final int length, final int port) {
+        long h = port;
+        for (int i = offset; i < offset + length; i += 4) {
+            h = LongIndex.mix(h ^ readInt(i));
+        }
+        return h;
+    }
+
+    private int readChar(final int offset) {
+        return offset + 2 > bytes.length ? -1 : (bytes[offset] & 0xff) << 8 | bytes[offset + 1] & 0xff;
+    }
+
+    private int readInt(final int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 |
+                bytes[offset + 3] & 0xff;
+    }
+}
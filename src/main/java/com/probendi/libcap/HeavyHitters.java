@@ -0,0 +1,189 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tracks the most frequent {@code long} keys of a stream in bounded memory with the Space-Saving algorithm (see
+ * Metwally, Agrawal and El Abbadi, "Efficient Computation of Frequent and Top-k Elements in Data Streams").
+ * <p>
+ * At most {@code capacity} keys are monitored. A key which is not monitored replaces the key with the smallest count,
+ * inheriting its count as the error bound. Every key whose true count exceeds {@code N / capacity}, where {@code N}
+ * is the total weight of the stream, is guaranteed to be monitored. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class HeavyHitters {
+
+    /**
+     * A monitored key.
+     */
+    public static class Entry {
+        private final long key;
+        private final long count;
+        private final long error;
+
+        Entry(final long key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the estimated count, which never underestimates the true count.
+         *
+         * @return the estimated count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the maximum overestimation of the count.
+         *
+         * @return the maximum overestimation of the count
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    private final int capacity;
+    private final LongIndex index;
+    private final long[] counts;
+    private final long[] errors;
+    // a min-heap of IDs ordered by count and the position of each ID in the heap
+    private final int[] heap;
+    private final int[] positions;
+    private long total;
+
+    /**
+     * Creates a new {@code HeavyHitters} object.
+     *
+     * @param capacity the number of monitored keys
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public HeavyHitters(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        index = new LongIndex(capacity);
+        counts = new long[index.capacity()];
+        errors = new long[index.capacity()];
+        heap = new int[capacity];
+        positions = new int[index.capacity()];
+    }
+
+    /**
+     * Adds the given weight to the given key.
+     *
+     * @param key    the key
+     * @param weight the weight
+     */
+    public void add(final long key, final long weight) {
+        total += weight;
+        int id = index.get(key);
+        if (id >= 0) {
+            counts[id] += weight;
+            siftDown(positions[id]);
+            return;
+        }
+        final int size = index.size();
+        if (size < capacity) {
+            id = index.add(key);
+            counts[id] = weight;
+            errors[id] = 0;
+            heap[size] = id;
+            positions[id] = size;
+            siftUp(size);
+            return;
+        }
+        // replace the key with the smallest count, which keeps its ID and its position at the root of the heap
+        id = heap[0];
+        final long count = counts[id];
+        index.rekey(id, key);
+        counts[id] = count + weight;
+        errors[id] = count;
+        siftDown(0);
+    }
+
+    /**
+     * Returns the total weight of the stream.
+     *
+     * @return the total weight of the stream
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the monitored keys, sorted by decreasing count.
+     *
+     * @return the monitored keys
+     */
+    public List<Entry> getEntries() {
+        final List<Entry> entries = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            final int id = heap[i];
+            entries.add(new Entry(index.key(id), counts[id], errors[id]));
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries;
+    }
+
+    /**
+     * Returns the monitored keys with the highest counts.
+     *
+     * @param n the number of keys
+     * @return at most {@code n} keys, sorted by decreasing count
+     */
+    public List<Entry> getTop(final int n) {
+        final List<Entry> entries = getEntries();
+        return entries.size() > n ? entries.subList(0, n) : entries;
+    }
+
+    /**
+     * Forgets all the keys.
+     */
+    public void clear() {
+        index.clear();
+        total = 0;
+    }
+
+    private void siftUp(int i) {
+        final int id = heap[i];
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[id]) break;
+            move(heap[parent], i);
+            i = parent;
+        }
+        move(id, i);
+    }
+
+    private void siftDown(int i) {
+        final int size = index.size();
+        final int id = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[id] <= counts[heap[child]]) break;
+            move(heap[child], i);
+            i = child;
+        }
+        move(id, i);
+    }
+
+    private void move(final int id, final int i) {
+        heap[i] = id;
+        positions[id] = i;
+    }
+}
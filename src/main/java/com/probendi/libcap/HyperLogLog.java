@@ -0,0 +1,95 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct keys of a stream in bounded memory with the HyperLogLog algorithm (see Flajolet,
+ * Fusy, Gandouet and Meunier, "HyperLogLog: the analysis of a near-optimal cardinality estimation algorithm").
+ * <p>
+ * The sketch uses {@code 2^precision} one-octet registers and has a relative standard error of about
+ * {@code 1.04 / sqrt(2^precision)}; small cardinalities are estimated by linear counting. Keys must be well mixed
+ * 64-bit hashes, such as those returned by {@link Frame#getSourceHash()}. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates a new {@code HyperLogLog} object.
+     *
+     * @param precision the number of bits used to select a register, between {@code 4} and {@code 18}
+     * @throws IllegalArgumentException if {@code precision} is out of range
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds the given hash.
+     *
+     * @param hash a well mixed 64-bit hash of the key
+     */
+    public void add(final long hash) {
+        final int i = (int) (hash >>> (64 - precision));
+        // the position of the first 1 bit in the remaining bits, at most 64 - precision + 1
+        final int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+        if (rank > registers[i]) {
+            registers[i] = (byte) rank;
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct hashes.
+     *
+     * @return the estimated number of distinct hashes
+     */
+    public long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds the hashes of the given sketch to this sketch.
+     *
+     * @param other a sketch with the same precision
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public void merge(final HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precisions differ");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Forgets all the hashes.
+     */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+}
@@ -0,0 +1,479 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Correlates ICMP and ICMPv6 errors with the flows whose packets caused them, to diagnose path MTU discovery black
+ * holes.
+ * <p>
+ * An error carries the offending IP header and at least the first 8 octets of its payload, i.e. the transport ports.
+ * The embedded header is decoded in place by a second {@link Frame}, and its symmetric 5-tuple hash keys a flow table
+ * of primitive arrays indexed by a {@link LongIndex}. Only flows which received an error are tracked, so the table
+ * stays small however many flows the capture holds, and every other record costs a single lookup.
+ * <p>
+ * For each flow the errors are counted by {@link ErrorKind}, and the smallest MTU reported by a fragmentation needed
+ * or packet too big error is kept. The packets which the offending host keeps sending above that MTU after the error
+ * are counted as oversized: a flow with at least the given number of oversized packets is a suspected black hole,
+ * i.e. the sender does not get or does not honour the error. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class IcmpErrorCorrelator {
+
+    /**
+     * The kind of an ICMP error.
+     */
+    public enum ErrorKind {
+        /**
+         * Destination unreachable, other than fragmentation needed.
+         */
+        UNREACHABLE,
+        /**
+         * Time exceeded, i.e. TTL or hop limit exceeded in transit or fragment reassembly time exceeded.
+         */
+        TIME_EXCEEDED,
+        /**
+         * Fragmentation needed (ICMP) or packet too big (ICMPv6).
+         */
+        PACKET_TOO_BIG,
+        /**
+         * Parameter problem.
+         */
+        PARAMETER_PROBLEM
+    }
+
+    /**
+     * The default number of oversized packets after which a flow is a suspected black hole.
+     */
+    public static final int BLACK_HOLE = 3;
+
+    private static final int ERRORS = ErrorKind.values().length;
+    private static final ErrorKind[] ICMP = new ErrorKind[256];
+    private static final ErrorKind[] ICMPV6 = new ErrorKind[256];
+
+    static {
+        ICMP[3] = ErrorKind.UNREACHABLE;
+        ICMP[11] = ErrorKind.TIME_EXCEEDED;
+        ICMP[12] = ErrorKind.PARAMETER_PROBLEM;
+        ICMPV6[1] = ErrorKind.UNREACHABLE;
+        ICMPV6[2] = ErrorKind.PACKET_TOO_BIG;
+        ICMPV6[3] = ErrorKind.TIME_EXCEEDED;
+        ICMPV6[4] = ErrorKind.PARAMETER_PROBLEM;
+    }
+
+    /**
+     * A flow which received at least one error.
+     */
+    public static class Flow {
+        private final int version;
+        private final int protocol;
+        private final byte[] source;
+        private final byte[] destination;
+        private final int sourcePort;
+        private final int destinationPort;
+        private final long[] errors;
+        private final long packets;
+        private final int mtu;
+        private final long oversized;
+        private final long firstError;
+        private final long lastError;
+        private final boolean blackHole;
+
+        Flow(final int version, final int protocol, final byte[] source, final byte[] destination,
+             final int sourcePort, final int destinationPort, final long[] errors, final long packets, final int mtu,
+             final long oversized, final long firstError, final long lastError, final boolean blackHole) {
+            this.version = version;
+            this.protocol = protocol;
+            this.source = source;
+            this.destination = destination;
+            this.sourcePort = sourcePort;
+            this.destinationPort = destinationPort;
+            this.errors = errors;
+            this.packets = packets;
+            this.mtu = mtu;
+            this.oversized = oversized;
+            this.firstError = firstError;
+            this.lastError = lastError;
+            this.blackHole = blackHole;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public int getProtocol() {
+            return protocol;
+        }
+
+        /**
+         * Returns the source address of the offending packet, i.e. of the host which received the errors.
+         *
+         * @return the source address
+         */
+        public String getSource() {
+            return Parser.bytesToString(source);
+        }
+
+        public String getDestination() {
+            return Parser.bytesToString(destination);
+        }
+
+        /**
+         * Returns the source port of the offending packet.
+         *
+         * @return the source port or {@code -1} if the protocol has no ports
+         */
+        public int getSourcePort() {
+            return sourcePort;
+        }
+
+        /**
+         * Returns the destination port of the offending packet.
+         *
+         * @return the destination port or {@code -1} if the protocol has no ports
+         */
+        public int getDestinationPort() {
+            return destinationPort;
+        }
+
+        /**
+         * Returns the number of errors of the given kind.
+         *
+         * @param error the kind of error
+         * @return the number of errors of the given kind
+         */
+        public long getErrors(final ErrorKind error) {
+            return errors[error.ordinal()];
+        }
+
+        /**
+         * Returns the number of errors.
+         *
+         * @return the number of errors
+         */
+        public long getErrors() {
+            return Arrays.stream(errors).sum();
+        }
+
+        /**
+         * Returns the number of packets of the flow, in either direction, seen after the first error.
+         *
+         * @return the number of packets seen after the first error
+         */
+        public long getPackets() {
+            return packets;
+        }
+
+        /**
+         * Returns the smallest path MTU reported by the errors.
+         *
+         * @return the path MTU or {@code 0} if no error reported it
+         */
+        public int getMtu() {
+            return mtu;
+        }
+
+        /**
+         * Returns the number of packets larger than the path MTU sent by the offending host after the error.
+         *
+         * @return the number of oversized packets
+         */
+        public long getOversized() {
+            return oversized;
+        }
+
+        /**
+         * Returns the capture time of the first error in microseconds.
+         *
+         * @return the capture time of the first error
+         */
+        public long getFirstError() {
+            return firstError;
+        }
+
+        /**
+         * Returns the capture time of the last error in microseconds.
+         *
+         * @return the capture time of the last error
+         */
+        public long getLastError() {
+            return lastError;
+        }
+
+        /**
+         * Returns {@code true} if the flow is a suspected path MTU discovery black hole.
+         *
+         * @return {@code true} if the flow is a suspected black hole
+         */
+        public boolean isBlackHole() {
+            return blackHole;
+        }
+
+        @Override
+        public String toString() {
+            return "IPv" + version + " protocol: " + protocol + " " + getSource() + ":" + sourcePort + " -> " +
+                    getDestination() + ":" + destinationPort + " errors: " + getErrors() + " mtu: " + mtu +
+                    " oversized: " + oversized + (blackHole ? " black hole" : "");
+        }
+    }
+
+    private final int threshold;
+    private final Frame frame = new Frame();
+    private final Frame embedded = new Frame();
+    private final LongIndex flows = new LongIndex(1024);
+    private final long[] totals = new long[ERRORS];
+    private byte[] versions = new byte[flows.capacity()];
+    private byte[] protocols = new byte[flows.capacity()];
+    // the source and destination addresses, 32 octets per flow
+    private byte[] addresses = new byte[flows.capacity() * 32];
+    private int[] ports = new int[flows.capacity()];
+    private long[] senders = new long[flows.capacity()];
+    private long[] errors = new long[flows.capacity() * ERRORS];
+    private long[] packets = new long[flows.capacity()];
+    private int[] mtus = new int[flows.capacity()];
+    private long[] oversized = new long[flows.capacity()];
+    private long[] firstErrors = new long[flows.capacity()];
+    private long[] lastErrors = new long[flows.capacity()];
+
+    /**
+     * Creates a new {@code IcmpErrorCorrelator} object with the default black hole threshold.
+     */
+    public IcmpErrorCorrelator() {
+        this(BLACK_HOLE);
+    }
+
+    /**
+     * Creates a new {@code IcmpErrorCorrelator} object.
+     *
+     * @param threshold the number of oversized packets after which a flow is a suspected black hole
+     * @throws IllegalArgumentException if {@code threshold} is not positive
+     */
+    public IcmpErrorCorrelator(final int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Adds the given record: an ICMP or ICMPv6 error is attached to the flow of the embedded packet, and any other
+     * packet is counted if its flow received an error.
+     *
+     * @param record the record
+     * @return the kind of error or {@code null} if the record is not an ICMP or ICMPv6 error
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public ErrorKind add(final Record record) {
+        validateObject("record", record);
+        if (!frame.decode(record)) {
+            return null;
+        }
+        final byte[] bytes = frame.getBytes();
+        final int l4 = frame.getL4Offset();
+        final int version = frame.getIpVersion();
+        final int protocol = frame.getProtocol();
+        ErrorKind error = null;
+        if (l4 >= 0 && l4 + 8 < bytes.length) {
+            if (version == 4 && protocol == 1) {
+                error = ICMP[bytes[l4] & 0xff];
+                if (error == ErrorKind.UNREACHABLE && bytes[l4 + 1] == 4) {
+                    error = ErrorKind.PACKET_TOO_BIG;
+                }
+            } else if (version == 6 && protocol == 0x3a) {
+                error = ICMPV6[bytes[l4] & 0xff];
+            }
+        }
+        if (error == null || !embedded.decodeIp(bytes, l4 + 8)) {
+            count();
+            return null;
+        }
+        final long time = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        final int id = flow(time);
+        totals[error.ordinal()]++;
+        errors[id * ERRORS + error.ordinal()]++;
+        lastErrors[id] = time;
+        if (error == ErrorKind.PACKET_TOO_BIG) {
+            // the next-hop MTU of ICMP is 0 if the router predates RFC 1191
+            final int mtu = version == 4 ? Parser.readChar(bytes[l4 + 6], bytes[l4 + 7]) :
+                    Parser.readInt(bytes[l4 + 4], bytes[l4 + 5], bytes[l4 + 6], bytes[l4 + 7]);
+            if (mtu > 0 && (mtus[id] == 0 || mtu < mtus[id])) {
+                mtus[id] = mtu;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Adds all the records of the given parser.
+     *
+     * @param parser the parser
+     * @return the number of ICMP and ICMPv6 errors
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if the file could not be read
+     */
+    public long add(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        final Record record = new Record();
+        long n = 0;
+        while (parser.readRecord(record)) {
+            if (add(record) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of errors of the given kind.
+     *
+     * @param error the kind of error
+     * @return the number of errors of the given kind
+     * @throws IllegalArgumentException if {@code error} is not set
+     */
+    public long getErrors(final ErrorKind error) {
+        validateObject("error", error);
+        return totals[error.ordinal()];
+    }
+
+    /**
+     * Returns the number of flows which received at least one error.
+     *
+     * @return the number of flows which received at least one error
+     */
+    public int size() {
+        return flows.size();
+    }
+
+    /**
+     * Returns the flow of the last record decoded by the given frame, e.g. the record of a TCP segment.
+     *
+     * @param frame a decoded frame
+     * @return the flow or {@code null} if the flow received no error
+     * @throws IllegalArgumentException if {@code frame} is not set
+     */
+    public Flow getFlow(final Frame frame) {
+        validateObject("frame", frame);
+        final int id = flows.get(frame.getFlowHash());
+        return id < 0 ? null : flow(id);
+    }
+
+    /**
+     * Returns the flows which received at least one error.
+     *
+     * @return the flows, sorted by decreasing number of errors
+     */
+    public List<Flow> getFlows() {
+        final List<Flow> result = new ArrayList<>(flows.size());
+        for (int id = 0; id < flows.capacity(); id++) {
+            if (flows.isUsed(id)) {
+                result.add(flow(id));
+            }
+        }
+        result.sort(Comparator.comparingLong((Flow flow) -> flow.getErrors()).reversed());
+        return result;
+    }
+
+    /**
+     * Returns the suspected path MTU discovery black holes.
+     *
+     * @return the flows which are suspected black holes, sorted by decreasing number of oversized packets
+     */
+    public List<Flow> getBlackHoles() {
+        final List<Flow> result = new ArrayList<>();
+        for (int id = 0; id < flows.capacity(); id++) {
+            if (flows.isUsed(id) && isBlackHole(id)) {
+                result.add(flow(id));
+            }
+        }
+        result.sort(Comparator.comparingLong(Flow::getOversized).reversed());
+        return result;
+    }
+
+    /**
+     * Counts the record decoded by {@link #frame} if its flow received an error.
+     */
+    private void count() {
+        if (flows.size() == 0) {
+            return;
+        }
+        final int id = flows.get(frame.getFlowHash());
+        if (id < 0) {
+            return;
+        }
+        packets[id]++;
+        if (mtus[id] > 0 && frame.getSourceHash() == senders[id] && length() > mtus[id]) {
+            oversized[id]++;
+        }
+    }
+
+    /**
+     * Returns the ID of the flow of the packet decoded by {@link #embedded}, adding it if needed.
+     */
+    private int flow(final long time) {
+        final long hash = embedded.getFlowHash();
+        int id = flows.get(hash);
+        if (id >= 0) {
+            return id;
+        }
+        id = flows.add(hash);
+        if (id >= packets.length) {
+            final int capacity = flows.capacity();
+            versions = Arrays.copyOf(versions, capacity);
+            protocols = Arrays.copyOf(protocols, capacity);
+            addresses = Arrays.copyOf(addresses, capacity * 32);
+            ports = Arrays.copyOf(ports, capacity);
+            senders = Arrays.copyOf(senders, capacity);
+            errors = Arrays.copyOf(errors, capacity * ERRORS);
+            packets = Arrays.copyOf(packets, capacity);
+            mtus = Arrays.copyOf(mtus, capacity);
+            oversized = Arrays.copyOf(oversized, capacity);
+            firstErrors = Arrays.copyOf(firstErrors, capacity);
+            lastErrors = Arrays.copyOf(lastErrors, capacity);
+        }
+        final byte[] bytes = embedded.getBytes();
+        final int length = embedded.getAddressLength();
+        versions[id] = (byte) embedded.getIpVersion();
+        protocols[id] = (byte) embedded.getProtocol();
+        System.arraycopy(bytes, embedded.getSourceOffset(), addresses, id * 32, length);
+        System.arraycopy(bytes, embedded.getDestinationOffset(), addresses, id * 32 + 16, length);
+        ports[id] = embedded.getSourcePort() << 16 | embedded.getDestinationPort() & 0xffff;
+        senders[id] = embedded.getSourceHash();
+        firstErrors[id] = time;
+        return id;
+    }
+
+    private Flow flow(final int id) {
+        final int length = versions[id] == 4 ? 4 : 16;
+        final int offset = id * 32;
+        // the ports are both -1 or both set
+        final boolean hasPorts = ports[id] != -1;
+        return new Flow(versions[id], protocols[id] & 0xff, Arrays.copyOfRange(addresses, offset, offset + length),
+                Arrays.copyOfRange(addresses, offset + 16, offset + 16 + length),
+                hasPorts ? ports[id] >>> 16 : -1, hasPorts ? ports[id] & 0xffff : -1,
+                Arrays.copyOfRange(errors, id * ERRORS, (id + 1) * ERRORS), packets[id], mtus[id], oversized[id],
+                firstErrors[id], lastErrors[id], isBlackHole(id));
+    }
+
+    private boolean isBlackHole(final int id) {
+        return mtus[id] > 0 && oversized[id] >= threshold;
+    }
+
+    /**
+     * Returns the length of the IP packet decoded by {@link #frame}, which may be larger than the captured bytes.
+     */
+    private int length() {
+        final byte[] bytes = frame.getBytes();
+        final int l3 = frame.getL3Offset();
+        if (frame.getIpVersion() == 4) {
+            return Parser.readChar(bytes[l3 + 2], bytes[l3 + 3]);
+        }
+        return Parser.readChar(bytes[l3 + 4], bytes[l3 + 5]) + 40;
+    }
+}
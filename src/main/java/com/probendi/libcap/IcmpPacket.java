@@ -21,12 +21,14 @@ public class IcmpPacket {
      */
     public static IcmpPacket parse(final byte[] bytes) {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final IcmpPacket packet = new IcmpPacket();
         packet.type = bytes[0];
         packet.code = bytes[1];
         packet.checksum = Parser.readChar(bytes[2], bytes[3]);
         packet.restOfHeader = Parser.readInt(bytes[4], bytes[5], bytes[6], bytes[7]);
         packet.data = Arrays.copyOfRange(bytes, 8, bytes.length);
+        Metrics.stop(Metrics.Layer.ICMP, start);
         return packet;
     }
 
@@ -19,11 +19,13 @@ public class Icmpv6Packet {
      */
     public static Icmpv6Packet parse(final byte[] bytes) {
         Validator.validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final Icmpv6Packet packet = new Icmpv6Packet();
         packet.type = bytes[0];
         packet.code = bytes[1];
         packet.checksum = Parser.readChar(bytes[2], bytes[3]);
         packet.data = Arrays.copyOfRange(bytes, 8, bytes.length);
+        Metrics.stop(Metrics.Layer.ICMPV6, start);
         return packet;
     }
 
@@ -68,6 +70,16 @@ public class Icmpv6Packet {
         return this;
     }
 
+    /**
+     * Returns {@code true} if this packet is a Neighbor Discovery message, which can be parsed by
+     * {@link NeighborDiscoveryPacket#parse(byte[])} from the bytes of the whole message.
+     *
+     * @return {@code true} if this packet is a Neighbor Discovery message
+     */
+    public boolean hasNeighborDiscovery() {
+        return NeighborDiscoveryPacket.Type.lookup(type) != null;
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) return true;
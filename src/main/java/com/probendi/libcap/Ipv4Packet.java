@@ -22,6 +22,7 @@ public class Ipv4Packet {
      */
     public static Ipv4Packet parse(final byte[] bytes) {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final Ipv4Packet packet = new Ipv4Packet();
         packet.ihl = (byte) (bytes[0] & (byte) 0xf);
         packet.dscp = (byte) (bytes[1] >> 2 & (byte) 0x3f);
@@ -37,6 +38,7 @@ public class Ipv4Packet {
         packet.destination = Arrays.copyOfRange(bytes, 16, 20);
         packet.options = packet.ihl > 0x20 ? Arrays.copyOfRange(bytes, 21, packet.ihl - 0x20) : new byte[]{};
         packet.payload = Arrays.copyOfRange(bytes, packet.ihl * 4, bytes.length);
+        Metrics.stop(Metrics.Layer.IPV4, start);
         return packet;
     }
 
@@ -7,12 +7,26 @@ import static com.probendi.libcap.Validator.validateObject;
 
 /**
  * An IPv6 packet.
+ * <p>
+ * The payload starts right after the fixed header, and may begin with a chain of extension headers (hop-by-hop
+ * options, routing, fragment, destination options, authentication, mobility, HIP and shim6). The upper-layer
+ * protocol and header are located by walking the chain in place, see {@link #getProtocol()}.
  *
  * @author Daniele Di Salvo
  * @since 1.0
  */
 public class Ipv6Packet {
 
+    private static final int FRAGMENT = 44;
+    private static final int AUTHENTICATION = 51;
+    private static final boolean[] EXTENSIONS = new boolean[256];
+
+    static {
+        for (final int type : new int[]{0, 43, FRAGMENT, AUTHENTICATION, 60, 135, 139, 140}) {
+            EXTENSIONS[type] = true;
+        }
+    }
+
     /**
      * Parses an IPv6 packet from the given bytes.
      *
@@ -22,6 +36,7 @@ public class Ipv6Packet {
      */
     public static Ipv6Packet parse(final byte[] bytes) {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final Ipv6Packet packet = new Ipv6Packet();
         packet.trafficClass = (byte) ((char) (Parser.readChar(bytes[0], bytes[1]) & (char) 0xff0) >> 4);
         packet.flowLabel = Parser.readInt((byte) 0, bytes[1], bytes[2], bytes[3]) & 0xfffff;
@@ -31,9 +46,65 @@ public class Ipv6Packet {
         packet.source = Arrays.copyOfRange(bytes, 8, 24);
         packet.destination = Arrays.copyOfRange(bytes, 24, 40);
         packet.payload = Arrays.copyOfRange(bytes, 40, bytes.length);
+        Metrics.stop(Metrics.Layer.IPV6, start);
         return packet;
     }
 
+    /**
+     * Returns {@code true} if the given next header is an extension header, which is followed by another header.
+     *
+     * @param type the next header, in the range {@code [0, 255]}
+     * @return {@code true} if {@code type} is an extension header
+     */
+    static boolean isExtension(final int type) {
+        return EXTENSIONS[type];
+    }
+
+    /**
+     * Walks the chain of extension headers starting at the given offset, without copying.
+     *
+     * @param bytes  the bytes of the packet
+     * @param type   the type of the first header, i.e. the next header of the fixed header
+     * @param offset the offset of the first header
+     * @param end    the end of the packet
+     * @param stop   an extension header at which to stop, or {@code -1}
+     * @return the type of the header where the walk stopped in the high 32 bits, and its offset in the low 32 bits,
+     * which is {@code -1} if the header is not in the packet, i.e. if the chain is truncated or the packet is a
+     * fragment other than the first
+     */
+    static long walk(final byte[] bytes, int type, int offset, final int end, final int stop) {
+        while (EXTENSIONS[type] && type != stop) {
+            if (offset + 8 > end) {
+                return (long) type << 32 | 0xffffffffL;
+            }
+            final int next = bytes[offset] & 0xff;
+            if (type == FRAGMENT && (Parser.readChar(bytes[offset + 2], bytes[offset + 3]) & 0xfff8) != 0) {
+                // only the first fragment carries the upper-layer header
+                return (long) next << 32 | 0xffffffffL;
+            }
+            offset += extensionLength(bytes, type, offset);
+            type = next;
+        }
+        return (long) type << 32 | offset & 0xffffffffL;
+    }
+
+    /**
+     * Returns the length in octets of the given extension header.
+     *
+     * @param bytes  the bytes of the packet
+     * @param type   the type of the extension header
+     * @param offset the offset of the extension header
+     * @return the length of the extension header
+     */
+    static int extensionLength(final byte[] bytes, final int type, final int offset) {
+        if (type == FRAGMENT) {
+            return 8;
+        }
+        final int length = bytes[offset + 1] & 0xff;
+        // the authentication header length is in 4-octet units, minus 2
+        return type == AUTHENTICATION ? (length + 2) * 4 : (length + 1) * 8;
+    }
+
     private byte trafficClass;
     private int flowLabel;
     private char length;
@@ -119,6 +190,62 @@ public class Ipv6Packet {
         return payload.length;
     }
 
+    /**
+     * Returns the upper-layer protocol, i.e. the next header following the extension headers.
+     *
+     * @return the upper-layer protocol
+     */
+    public byte getProtocol() {
+        return (byte) (walk(-1) >>> 32);
+    }
+
+    /**
+     * Returns the offset of the upper-layer header in the payload.
+     *
+     * @return the offset of the upper-layer header or {@code -1} if the extension headers are truncated or this
+     * packet is a fragment other than the first
+     */
+    public int getUpperLayerOffset() {
+        return (int) walk(-1);
+    }
+
+    /**
+     * Returns the payload following the extension headers, which is the payload itself if there are none.
+     *
+     * @return the upper-layer payload or {@code null} if {@link #getUpperLayerOffset()} is {@code -1}
+     */
+    public byte[] getUpperLayerPayload() {
+        final int offset = getUpperLayerOffset();
+        if (offset <= 0) {
+            return offset == 0 ? payload : null;
+        }
+        return Arrays.copyOfRange(payload, Math.min(offset, payload.length), payload.length);
+    }
+
+    /**
+     * Returns {@code true} if this packet has a fragment header.
+     *
+     * @return {@code true} if this packet has a fragment header
+     */
+    public boolean hasFragment() {
+        final long walk = walk(FRAGMENT);
+        return walk >>> 32 == FRAGMENT && (int) walk >= 0;
+    }
+
+    /**
+     * Returns the fragment offset in 8-octet units.
+     *
+     * @return the fragment offset or {@code 0} if this packet has no fragment header
+     */
+    public char getFragmentOffset() {
+        final long walk = walk(FRAGMENT);
+        final int offset = (int) walk;
+        if (walk >>> 32 != FRAGMENT || offset < 0 || offset + 4 > payload.length) {
+            return 0;
+        }
+        return (char) (Parser.readChar(payload[offset + 2], payload[offset + 3]) >>> 3);
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) return true;
@@ -135,29 +262,37 @@ public class Ipv6Packet {
     }
 
     /**
-     * Returns {@code true} if this protocol encapsulates ICMPv6.
+     * Returns {@code true} if this protocol encapsulates ICMPv6, possibly after extension headers.
      *
      * @return {@code true} if this protocol encapsulates ICMPv6
      */
     public boolean hasIcmpv6() {
-        return nextHeader == 58;
+        return getProtocol() == 58;
     }
 
     /**
-     * Returns {@code true} if this protocol encapsulates TCP.
+     * Returns {@code true} if this protocol encapsulates TCP, possibly after extension headers.
      *
      * @return {@code true} if this protocol encapsulates TCP
      */
     public boolean hasTcp() {
-        return nextHeader == 6;
+        return getProtocol() == 6;
     }
 
     /**
-     * Returns {@code true} if this protocol encapsulates UDP.
+     * Returns {@code true} if this protocol encapsulates UDP, possibly after extension headers.
      *
      * @return {@code true} if this protocol encapsulates UDP
      */
     public boolean hasUdp() {
-        return nextHeader == 0x11;
+        return getProtocol() == 0x11;
+    }
+
+    private long walk(final int stop) {
+        final int type = nextHeader & 0xff;
+        if (!EXTENSIONS[type]) {
+            return (long) type << 32;
+        }
+        return walk(payload, type, 0, payload.length, stop);
     }
 }
@@ -0,0 +1,277 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Reassembles fragmented IPv6 datagrams (RFC 8200, section 4.5).
+ * <p>
+ * Fragments are keyed by their source and destination addresses and identification. The unfragmentable part, i.e.
+ * the fixed header and the extension headers preceding the fragment header, is taken from the first fragment, and
+ * the next header pointing to the fragment header is replaced by the next header of the fragment header. A datagram
+ * with overlapping fragments is discarded (RFC 5722), as is a datagram which is not complete within the timeout or
+ * which is the oldest one when more than the given number of datagrams are in progress.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Ipv6Reassembler {
+
+    /**
+     * The default reassembly timeout in microseconds.
+     */
+    public static final long TIMEOUT = 60_000_000;
+
+    /**
+     * The default maximum number of datagrams in progress.
+     */
+    public static final int CAPACITY = 1024;
+
+    private static final int FRAGMENT = 44;
+    private static final int MAX_LENGTH = 0xffff;
+
+    private final long timeout;
+    private final int capacity;
+    // in order of first fragment, so that the expired datagrams are at the head
+    private final Map<Key, Datagram> datagrams = new LinkedHashMap<>();
+    private final Frame frame = new Frame();
+    private long reassembled;
+    private long expired;
+    private long dropped;
+
+    /**
+     * Creates a new {@code Ipv6Reassembler} object with the default timeout and capacity.
+     */
+    public Ipv6Reassembler() {
+        this(TIMEOUT, CAPACITY);
+    }
+
+    /**
+     * Creates a new {@code Ipv6Reassembler} object.
+     *
+     * @param timeout  the reassembly timeout in microseconds
+     * @param capacity the maximum number of datagrams in progress
+     * @throws IllegalArgumentException if {@code timeout} or {@code capacity} is not positive
+     */
+    public Ipv6Reassembler(final long timeout, final int capacity) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.timeout = timeout;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the given record, if it is an IPv6 fragment.
+     *
+     * @param record the record
+     * @return the reassembled IPv6 packet, starting at the fixed header, or {@code null} if the record is not an IPv6
+     * fragment or the datagram is not complete yet
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public byte[] add(final Record record) {
+        validateObject("record", record);
+        if (!frame.decode(record) || frame.getIpVersion() != 6) {
+            return null;
+        }
+        final byte[] bytes = frame.getBytes();
+        final int l3 = frame.getL3Offset();
+        // ignore the Ethernet padding
+        final int end = Math.min(bytes.length, l3 + 40 + Parser.readChar(bytes[l3 + 4], bytes[l3 + 5]));
+        return add(bytes, l3, end, record.getTs_sec() * 1_000_000L + record.getTs_usec());
+    }
+
+    /**
+     * Adds the given IPv6 packet, if it is a fragment.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the fixed header
+     * @param end    the end of the packet
+     * @param time   the capture time in microseconds
+     * @return the reassembled IPv6 packet, starting at the fixed header, or {@code null} if the packet is not a
+     * fragment or the datagram is not complete yet
+     * @throws IllegalArgumentException  if {@code bytes} is not set
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public byte[] add(final byte[] bytes, final int offset, final int end, final long time) {
+        validateObject("bytes", bytes);
+        if (offset < 0 || end > bytes.length || offset + 40 > end) {
+            throw new IndexOutOfBoundsException("range [" + offset + ", " + end + ") out of bounds for length " +
+                    bytes.length);
+        }
+        expire(time);
+        final long walk = Ipv6Packet.walk(bytes, bytes[offset + 6] & 0xff, offset + 40, end, FRAGMENT);
+        final int header = (int) walk;
+        if (walk >>> 32 != FRAGMENT || header + 8 > end) {
+            return null;
+        }
+        final int fragmentOffset = Parser.readChar(bytes[header + 2], bytes[header + 3]) & 0xfff8;
+        final boolean more = (bytes[header + 3] & 1) != 0;
+        final int length = end - header - 8;
+        if (more && (length == 0 || length % 8 != 0) || fragmentOffset + length > MAX_LENGTH) {
+            dropped++;
+            return null;
+        }
+        if (fragmentOffset == 0 && !more) {
+            // an atomic fragment (RFC 6946)
+            reassembled++;
+            return assemble(unfragmentable(bytes, offset, header), bytes, header + 8, length);
+        }
+
+        final Key key = new Key(Arrays.copyOfRange(bytes, offset + 8, offset + 40),
+                Parser.readInt(bytes[header + 4], bytes[header + 5], bytes[header + 6], bytes[header + 7]));
+        Datagram datagram = datagrams.get(key);
+        if (datagram == null) {
+            if (datagrams.size() >= capacity) {
+                final Iterator<Datagram> it = datagrams.values().iterator();
+                it.next();
+                it.remove();
+                dropped++;
+            }
+            datagram = new Datagram(time);
+            datagrams.put(key, datagram);
+        }
+        final int from = fragmentOffset / 8;
+        final int to = (fragmentOffset + length + 7) / 8;
+        final int next = datagram.blocks.nextSetBit(from);
+        if (next >= 0 && next < to || !more && (datagram.total >= 0 || datagram.blocks.length() > to) ||
+                datagram.total >= 0 && fragmentOffset + length > datagram.total) {
+            // overlapping or inconsistent fragments
+            datagrams.remove(key);
+            dropped++;
+            return null;
+        }
+        datagram.blocks.set(from, to);
+        if (!more) {
+            datagram.total = fragmentOffset + length;
+        }
+        if (fragmentOffset == 0) {
+            datagram.unfragmentable = unfragmentable(bytes, offset, header);
+        }
+        if (datagram.data.length < fragmentOffset + length) {
+            datagram.data = Arrays.copyOf(datagram.data, Math.min(MAX_LENGTH,
+                    Math.max(fragmentOffset + length, 2 * datagram.data.length)));
+        }
+        System.arraycopy(bytes, header + 8, datagram.data, fragmentOffset, length);
+        if (datagram.unfragmentable == null || datagram.total < 0 ||
+                datagram.blocks.nextClearBit(0) * 8 < datagram.total) {
+            return null;
+        }
+        datagrams.remove(key);
+        reassembled++;
+        return assemble(datagram.unfragmentable, datagram.data, 0, datagram.total);
+    }
+
+    /**
+     * Discards all the datagrams in progress.
+     */
+    public void clear() {
+        dropped += datagrams.size();
+        datagrams.clear();
+    }
+
+    /**
+     * Returns the number of datagrams in progress.
+     *
+     * @return the number of datagrams in progress
+     */
+    public int size() {
+        return datagrams.size();
+    }
+
+    public long getReassembled() {
+        return reassembled;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    private void expire(final long time) {
+        final Iterator<Datagram> it = datagrams.values().iterator();
+        while (it.hasNext()) {
+            if (time - it.next().first <= timeout) {
+                break;
+            }
+            it.remove();
+            expired++;
+        }
+    }
+
+    /**
+     * Returns a copy of the headers preceding the fragment header, whose last next header is replaced by the next
+     * header of the fragment header.
+     */
+    private static byte[] unfragmentable(final byte[] bytes, final int offset, final int header) {
+        final byte[] unfragmentable = Arrays.copyOfRange(bytes, offset, header);
+        int field = 6;
+        for (int i = 40; i < unfragmentable.length; ) {
+            final int type = unfragmentable[field] & 0xff;
+            field = i;
+            i += Ipv6Packet.extensionLength(unfragmentable, type, i);
+        }
+        unfragmentable[field] = bytes[header];
+        return unfragmentable;
+    }
+
+    private static byte[] assemble(final byte[] unfragmentable, final byte[] data, final int offset, final int length) {
+        final byte[] packet = Arrays.copyOf(unfragmentable, unfragmentable.length + length);
+        System.arraycopy(data, offset, packet, unfragmentable.length, length);
+        final int payload = packet.length - 40;
+        packet[4] = (byte) (payload >> 8);
+        packet[5] = (byte) payload;
+        return packet;
+    }
+
+    private static final class Key {
+        private final byte[] addresses;
+        private final int identification;
+        private final int hash;
+
+        private Key(final byte[] addresses, final int identification) {
+            this.addresses = addresses;
+            this.identification = identification;
+            hash = 31 * Arrays.hashCode(addresses) + identification;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key that = (Key) o;
+            return identification == that.identification && Arrays.equals(addresses, that.addresses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Datagram {
+        private final long first;
+        // the received 8-octet blocks
+        private final BitSet blocks = new BitSet();
+        private byte[] data = new byte[1500];
+        private byte[] unfragmentable;
+        private int total = -1;
+
+        private Datagram(final long first) {
+            this.first = first;
+        }
+    }
+}
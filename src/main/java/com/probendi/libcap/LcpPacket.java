@@ -56,6 +56,7 @@ public class LcpPacket {
                 if (type.getCode() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.LCP);
             throw new ParseException("invalid code", b);
         }
     }
@@ -70,11 +71,13 @@ public class LcpPacket {
      */
     public static LcpPacket parse(final byte[] bytes) throws ParseException {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final LcpPacket packet = new LcpPacket();
         packet.code = Code.parse(bytes[0]);
         packet.identifier = bytes[1];
         packet.length = readChar(bytes[2], bytes[3]);
         packet.data = Arrays.copyOfRange(bytes, 4, packet.length);
+        Metrics.stop(Metrics.Layer.LCP, start);
         return packet;
     }
 
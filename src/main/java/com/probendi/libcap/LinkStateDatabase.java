@@ -0,0 +1,273 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * An OSPFv2 link state database reconstructed from captured Link State Update packets.
+ * <p>
+ * LSAs are kept per area, keyed by type, link state ID and advertising router; AS external LSAs are kept in a
+ * single AS-wide table. An LSA replaces the stored instance only if it is more recent (see RFC 2328, section 13.1),
+ * so that retransmissions and flooding duplicates do not change the database. Every replacement is counted, which
+ * makes flapping LSAs stand out across long captures. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class LinkStateDatabase {
+
+    /**
+     * The key of an LSA.
+     */
+    public static class Key {
+        private final OspfLsa.Type type;
+        private final int linkStateId;
+        private final int advertisingRouter;
+
+        public Key(final OspfLsa.Type type, final int linkStateId, final int advertisingRouter) {
+            this.type = type;
+            this.linkStateId = linkStateId;
+            this.advertisingRouter = advertisingRouter;
+        }
+
+        public OspfLsa.Type getType() {
+            return type;
+        }
+
+        public int getLinkStateId() {
+            return linkStateId;
+        }
+
+        public int getAdvertisingRouter() {
+            return advertisingRouter;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return type == key.type &&
+                    linkStateId == key.linkStateId &&
+                    advertisingRouter == key.advertisingRouter;
+        }
+
+        @Override
+        public int hashCode() {
+            return (type.ordinal() * 31 + linkStateId) * 31 + advertisingRouter;
+        }
+    }
+
+    /**
+     * The stored instance of an LSA.
+     */
+    public static class Entry {
+        private OspfLsa lsa;
+        private int changes;
+        private long lastChanged;
+
+        /**
+         * Returns the most recent instance of the LSA.
+         *
+         * @return the most recent instance of the LSA
+         */
+        public OspfLsa getLsa() {
+            return lsa;
+        }
+
+        /**
+         * Returns how many times the LSA has been replaced by a more recent instance.
+         *
+         * @return how many times the LSA has been replaced by a more recent instance
+         */
+        public int getChanges() {
+            return changes;
+        }
+
+        /**
+         * Returns the time of the last replacement, in microseconds since the epoch.
+         *
+         * @return the time of the last replacement
+         */
+        public long getLastChanged() {
+            return lastChanged;
+        }
+    }
+
+    private final Map<Integer, Map<Key, Entry>> areas = new HashMap<>();
+    private final Map<Key, Entry> asExternal = new HashMap<>();
+
+    /**
+     * Applies the LSAs of the given Link State Update packet; other packets are ignored.
+     *
+     * @param packet the packet
+     * @param time   the capture time of the packet, in microseconds since the epoch
+     * @return the number of LSAs which changed the database
+     * @throws IllegalArgumentException if {@code packet} is not set
+     * @throws ParseException           if the packet cannot be parsed
+     */
+    public int apply(final OspfPacket packet, final long time) throws ParseException {
+        validateObject("packet", packet);
+        if (packet.getType() != OspfPacket.Type.LS_UPDATE) {
+            return 0;
+        }
+        final byte[] areaId = packet.getAreaId();
+        final int area = Parser.readInt(areaId[0], areaId[1], areaId[2], areaId[3]);
+        int n = 0;
+        for (final OspfLsa lsa : OspfPacket.LsUpdate.parse(packet).getLsas()) {
+            if (install(area, lsa, time)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Installs the given LSA if it is more recent than the stored instance.
+     *
+     * @param area the area ID, ignored for AS external LSAs
+     * @param lsa  the LSA
+     * @param time the capture time of the LSA, in microseconds since the epoch
+     * @return {@code true} if the database changed
+     * @throws IllegalArgumentException if {@code lsa} is not set
+     */
+    public boolean install(final int area, final OspfLsa lsa, final long time) {
+        validateObject("lsa", lsa);
+        final Map<Key, Entry> table = lsa.getType() == OspfLsa.Type.AS_EXTERNAL ? asExternal :
+                areas.computeIfAbsent(area, a -> new HashMap<>());
+        final Key key = new Key(lsa.getType(), lsa.getLinkStateId(), lsa.getAdvertisingRouter());
+        final Entry entry = table.get(key);
+        if (entry == null) {
+            final Entry created = new Entry();
+            created.lsa = lsa;
+            created.lastChanged = time;
+            table.put(key, created);
+            return true;
+        }
+        if (lsa.compareInstance(entry.lsa) <= 0) {
+            return false;
+        }
+        entry.lsa = lsa;
+        entry.changes++;
+        entry.lastChanged = time;
+        return true;
+    }
+
+    /**
+     * Returns the LSAs of the given area.
+     *
+     * @param area the area ID
+     * @return the LSAs of the given area
+     */
+    public Map<Key, Entry> getArea(final int area) {
+        return Collections.unmodifiableMap(areas.getOrDefault(area, Collections.emptyMap()));
+    }
+
+    /**
+     * Returns the IDs of the areas with at least one LSA.
+     *
+     * @return the IDs of the areas with at least one LSA
+     */
+    public Collection<Integer> getAreas() {
+        return Collections.unmodifiableSet(areas.keySet());
+    }
+
+    /**
+     * Returns the AS external LSAs.
+     *
+     * @return the AS external LSAs
+     */
+    public Map<Key, Entry> getAsExternal() {
+        return Collections.unmodifiableMap(asExternal);
+    }
+
+    /**
+     * Computes the shortest path tree of the given area rooted at the given router (see RFC 2328, section 16.1).
+     * <p>
+     * Only links which are advertised by both ends are used, and LSAs being flushed are ignored.
+     *
+     * @param area the area ID
+     * @param root the router ID of the root
+     * @return the cost of the shortest path to each reachable router, keyed by router ID
+     */
+    public Map<Integer, Integer> spf(final int area, final int root) {
+        final Map<Key, Entry> table = areas.getOrDefault(area, Collections.emptyMap());
+        // network LSAs are keyed by the interface address of the designated router only
+        final Map<Integer, OspfLsa> networks = new HashMap<>();
+        for (final Entry entry : table.values()) {
+            if (entry.lsa.getType() == OspfLsa.Type.NETWORK && !entry.lsa.isMaxAge()) {
+                networks.put(entry.lsa.getLinkStateId(), entry.lsa);
+            }
+        }
+        final Map<Integer, Integer> routers = new HashMap<>();
+        final Set<Long> visited = new HashSet<>();
+        // each candidate is a cost and a vertex: a router ID, or the link state ID of a network LSA with bit 32 set
+        final PriorityQueue<long[]> candidates = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        candidates.add(new long[]{0, root & 0xffffffffL});
+        while (!candidates.isEmpty()) {
+            final long[] candidate = candidates.poll();
+            final long vertex = candidate[1];
+            if (!visited.add(vertex)) {
+                continue;
+            }
+            final int cost = (int) candidate[0];
+            final boolean network = vertex >>> 32 != 0;
+            final OspfLsa lsa = network ? networks.get((int) vertex) : router(table, (int) vertex);
+            if (lsa == null) {
+                continue;
+            }
+            if (network) {
+                for (final int router : lsa.getAttachedRouters()) {
+                    final OspfLsa neighbor = router(table, router);
+                    if (neighbor != null && hasLink(neighbor, OspfLsa.Link.TRANSIT, (int) vertex)) {
+                        candidates.add(new long[]{cost, router & 0xffffffffL});
+                    }
+                }
+                continue;
+            }
+            routers.put((int) vertex, cost);
+            for (final OspfLsa.Link link : lsa.getLinks()) {
+                if (link.getType() == OspfLsa.Link.POINT_TO_POINT || link.getType() == OspfLsa.Link.VIRTUAL) {
+                    final OspfLsa neighbor = router(table, link.getLinkId());
+                    if (neighbor != null && (hasLink(neighbor, OspfLsa.Link.POINT_TO_POINT, (int) vertex)
+                            || hasLink(neighbor, OspfLsa.Link.VIRTUAL, (int) vertex))) {
+                        candidates.add(new long[]{cost + link.getMetric(), link.getLinkId() & 0xffffffffL});
+                    }
+                } else if (link.getType() == OspfLsa.Link.TRANSIT) {
+                    final OspfLsa transit = networks.get(link.getLinkId());
+                    if (transit != null && contains(transit.getAttachedRouters(), (int) vertex)) {
+                        candidates.add(new long[]{cost + link.getMetric(), 1L << 32 | link.getLinkId() & 0xffffffffL});
+                    }
+                }
+            }
+        }
+        return routers;
+    }
+
+    private static OspfLsa router(final Map<Key, Entry> table, final int routerId) {
+        final Entry entry = table.get(new Key(OspfLsa.Type.ROUTER, routerId, routerId));
+        return entry == null || entry.lsa.isMaxAge() ? null : entry.lsa;
+    }
+
+    private static boolean hasLink(final OspfLsa lsa, final byte type, final int linkId) {
+        for (final OspfLsa.Link link : lsa.getLinks()) {
+            if (link.getType() == type && link.getLinkId() == linkId) return true;
+        }
+        return false;
+    }
+
+    private static boolean contains(final int[] values, final int value) {
+        for (final int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+}
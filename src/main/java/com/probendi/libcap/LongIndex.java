@@ -0,0 +1,241 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+/**
+ * Maps {@code long} keys to dense {@code int} IDs without boxing.
+ * <p>
+ * The owner of an index keeps the values in primitive arrays indexed by ID, which it grows to {@link #capacity()}
+ * when needed. IDs are stable until their key is removed; the IDs of removed keys are reused. The index is an open
+ * addressing hash table with linear probing and backward shift deletion. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+class LongIndex {
+
+    private long[] table;
+    private int[] tableIds;
+    private long[] keys;
+    private int[] slots;
+    private int[] free;
+    private int freeCount;
+    private int next;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates a new index.
+     *
+     * @param capacity the expected number of keys
+     */
+    LongIndex(final int capacity) {
+        final int length = Integer.highestOneBit(Math.max(4, capacity) * 2 - 1) * 2;
+        table = new long[length];
+        tableIds = new int[length];
+        Arrays.fill(tableIds, -1);
+        mask = length - 1;
+        keys = new long[Math.max(4, capacity)];
+        slots = new int[keys.length];
+        Arrays.fill(slots, -1);
+        free = new int[0];
+    }
+
+    /**
+     * Mixes the bits of the given key (see the finalizer of MurmurHash3).
+     *
+     * @param key the key
+     * @return the mixed bits
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Returns the ID of the given key.
+     *
+     * @param key the key
+     * @return the ID of the given key or {@code -1} if the key is not in this index
+     */
+    int get(final long key) {
+        for (int i = (int) mix(key) & mask; ; i = i + 1 & mask) {
+            final int id = tableIds[i];
+            if (id < 0) return -1;
+            if (table[i] == key) return id;
+        }
+    }
+
+    /**
+     * Returns the ID of the given key, adding the key if it is not in this index.
+     *
+     * @param key the key
+     * @return the ID of the given key
+     */
+    int add(final long key) {
+        int i = (int) mix(key) & mask;
+        for (; tableIds[i] >= 0; i = i + 1 & mask) {
+            if (table[i] == key) return tableIds[i];
+        }
+        final int id = freeCount > 0 ? free[--freeCount] : next++;
+        if (id == keys.length) {
+            keys = Arrays.copyOf(keys, id * 2);
+            slots = Arrays.copyOf(slots, id * 2);
+            Arrays.fill(slots, id, slots.length, -1);
+        }
+        table[i] = key;
+        tableIds[i] = id;
+        keys[id] = key;
+        slots[id] = i;
+        if (++size * 4 > table.length * 3) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Removes the given key.
+     *
+     * @param key the key
+     * @return the ID of the removed key or {@code -1} if the key is not in this index
+     */
+    int remove(final long key) {
+        final int id = get(key);
+        if (id >= 0) {
+            removeId(id);
+        }
+        return id;
+    }
+
+    /**
+     * Removes the key with the given ID.
+     *
+     * @param id the ID
+     */
+    void removeId(final int id) {
+        final int i = slots[id];
+        slots[id] = -1;
+        if (free.length == freeCount) {
+            free = Arrays.copyOf(free, Math.max(4, freeCount * 2));
+        }
+        free[freeCount++] = id;
+        size--;
+        unlink(i);
+    }
+
+    /**
+     * Replaces the key with the given ID by the given key, keeping the ID.
+     *
+     * @param id  the ID
+     * @param key the new key
+     * @throws IllegalStateException if {@code key} is already in this index with another ID
+     */
+    void rekey(final int id, final long key) {
+        final int existing = get(key);
+        if (existing == id) {
+            return;
+        }
+        if (existing >= 0) {
+            throw new IllegalStateException("key already in use");
+        }
+        unlink(slots[id]);
+        int i = (int) mix(key) & mask;
+        while (tableIds[i] >= 0) {
+            i = i + 1 & mask;
+        }
+        table[i] = key;
+        tableIds[i] = id;
+        keys[id] = key;
+        slots[id] = i;
+    }
+
+    /**
+     * Empties the given slot of the table.
+     */
+    private void unlink(int i) {
+        // shift back the entries of the probe sequence
+        for (int j = i + 1 & mask; tableIds[j] >= 0; j = j + 1 & mask) {
+            final int home = (int) mix(table[j]) & mask;
+            if ((j - home & mask) >= (j - i & mask)) {
+                table[i] = table[j];
+                tableIds[i] = tableIds[j];
+                slots[tableIds[i]] = i;
+                i = j;
+            }
+        }
+        tableIds[i] = -1;
+    }
+
+    /**
+     * Returns the key with the given ID.
+     *
+     * @param id the ID
+     * @return the key with the given ID
+     */
+    long key(final int id) {
+        return keys[id];
+    }
+
+    /**
+     * Returns {@code true} if the given ID is assigned to a key.
+     *
+     * @param id the ID
+     * @return {@code true} if the given ID is assigned to a key
+     */
+    boolean isUsed(final int id) {
+        return id < next && slots[id] >= 0;
+    }
+
+    /**
+     * Returns an upper bound of the IDs.
+     *
+     * @return an upper bound of the IDs
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the keys.
+     */
+    void clear() {
+        Arrays.fill(tableIds, -1);
+        Arrays.fill(slots, -1);
+        freeCount = 0;
+        next = 0;
+        size = 0;
+    }
+
+    private void rehash(final int length) {
+        final long[] oldTable = table;
+        final int[] oldIds = tableIds;
+        table = new long[length];
+        tableIds = new int[length];
+        Arrays.fill(tableIds, -1);
+        mask = length - 1;
+        for (int j = 0; j < oldTable.length; j++) {
+            final int id = oldIds[j];
+            if (id < 0) continue;
+            int i = (int) mix(oldTable[j]) & mask;
+            while (tableIds[i] >= 0) {
+                i = i + 1 & mask;
+            }
+            table[i] = oldTable[j];
+            tableIds[i] = id;
+            slots[id] = i;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.probendi.libcap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of the parsing pipeline, exposed through JMX as {@value #NAME}.
+ * <p>
+ * Metrics are enabled with the system property {@code libcap.metrics=true}. The hooks called by {@link Parser} and
+ * by the {@code parse} methods of the packet classes test the constant {@link #ENABLED} first, so that the JIT
+ * compiler removes them entirely when metrics are disabled. Counters are {@link LongAdder}s, which are striped per
+ * thread, so that parallel parsers do not contend on them.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public final class Metrics implements MetricsMXBean {
+
+    /**
+     * A decoded protocol layer.
+     */
+    public enum Layer {
+        DOT1Q,
+        MPLS,
+        PPPOE,
+        LCP,
+        IPV4,
+        IPV6,
+        ICMP,
+        ICMPV6,
+        NDP,
+        TCP,
+        UDP,
+        DHCP,
+        RADIUS,
+        BGP,
+        OSPF
+    }
+
+    /**
+     * {@code true} if the system property {@code libcap.metrics} is {@code true}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("libcap.metrics");
+
+    /**
+     * The JMX object name.
+     */
+    public static final String NAME = "com.probendi.libcap:type=Metrics";
+
+    /**
+     * The number of buckets of a latency histogram.
+     */
+    public static final int BUCKETS = 32;
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+    private static final Layer[] LAYERS = Layer.values();
+    private static final Metrics instance = new Metrics();
+    private static final int[] NO_TAGS = new int[0];
+
+    static {
+        if (ENABLED) {
+            try {
+                instance.register(ManagementFactory.getPlatformMBeanServer());
+            } catch (final JMException e) {
+                logger.log(Level.WARNING, "could not register " + NAME, e);
+            }
+        }
+    }
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder truncated = new LongAdder();
+    private final LongAdder unsupported = new LongAdder();
+    private final LongAdder[] failures = new LongAdder[LAYERS.length];
+    private final LongAdder[][] latencies = new LongAdder[LAYERS.length][BUCKETS];
+    private volatile long start = System.nanoTime();
+
+    Metrics() {
+        for (int i = 0; i < LAYERS.length; i++) {
+            failures[i] = new LongAdder();
+            for (int j = 0; j < BUCKETS; j++) {
+                latencies[i][j] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics of this JVM.
+     *
+     * @return the metrics of this JVM
+     */
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Counts a record read by a parser and, if its packet type is unsupported, the packet type. This is the only place
+     * where packet types are counted, as a record is read once but its type may be looked up many times.
+     *
+     * @param bytes  the captured octets
+     * @param length the number of captured octets
+     */
+    static void record(final byte[] bytes, final int length) {
+        if (ENABLED) {
+            instance.addRecord(length);
+            instance.addPacketType(bytes, length);
+        }
+    }
+
+    /**
+     * Counts a truncated record.
+     */
+    static void truncated() {
+        if (ENABLED) {
+            instance.truncated.increment();
+        }
+    }
+
+    /**
+     * Counts a parse failure.
+     *
+     * @param layer the layer which could not be parsed
+     */
+    static void failure(final Layer layer) {
+        if (ENABLED) {
+            instance.failures[layer.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Returns the start time of a decode.
+     *
+     * @return the current time in nanoseconds or {@code 0} if metrics are disabled
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts the latency of a decode.
+     *
+     * @param layer the decoded layer
+     * @param start the value returned by {@link #start()}
+     */
+    static void stop(final Layer layer, final long start) {
+        if (ENABLED) {
+            instance.addLatency(layer, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Registers this object with the given server.
+     *
+     * @param server the server
+     * @throws JMException if this object could not be registered
+     */
+    void register(final MBeanServer server) throws JMException {
+        server.registerMBean(this, new ObjectName(NAME));
+    }
+
+    void addRecord(final int length) {
+        records.increment();
+        bytes.add(length);
+    }
+
+    void addPacketType(final byte[] bytes, final int length) {
+        if (length < 0xe) {
+            return;
+        }
+        // the EtherType following the VLAN tags
+        final int i = 0xc + 4 * Dot1QPacket.decodeTags(bytes, 0xc, NO_TAGS);
+        if (PacketType.parse(bytes[i], bytes[i + 1]) == PacketType.UNSUPPORTED) {
+            unsupported.increment();
+        }
+    }
+
+    void addLatency(final Layer layer, final long nanos) {
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        latencies[layer.ordinal()][bucket].increment();
+    }
+
+    @Override
+    public long getRecords() {
+        return records.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        return rate(records.sum());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return rate(bytes.sum());
+    }
+
+    @Override
+    public long getTruncatedRecords() {
+        return truncated.sum();
+    }
+
+    @Override
+    public long getUnsupportedPacketTypes() {
+        return unsupported.sum();
+    }
+
+    @Override
+    public Map<String, Long> getParseFailures() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Layer layer : LAYERS) {
+            result.put(layer.name(), failures[layer.ordinal()].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+        final Map<String, long[]> result = new TreeMap<>();
+        for (final Layer layer : LAYERS) {
+            final long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = latencies[layer.ordinal()][i].sum();
+            }
+            result.put(layer.name(), histogram);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        records.reset();
+        bytes.reset();
+        truncated.reset();
+        unsupported.reset();
+        for (int i = 0; i < LAYERS.length; i++) {
+            failures[i].reset();
+            for (int j = 0; j < BUCKETS; j++) {
+                latencies[i][j].reset();
+            }
+        }
+        start = System.nanoTime();
+    }
+
+    private double rate(final long count) {
+        final long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,74 @@
+package com.probendi.libcap;
+
+import java.util.Map;
+
+/**
+ * The JMX interface of {@link Metrics}.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Returns the number of records read since the last reset.
+     *
+     * @return the number of records read
+     */
+    long getRecords();
+
+    /**
+     * Returns the number of captured octets read since the last reset.
+     *
+     * @return the number of captured octets read
+     */
+    long getBytes();
+
+    /**
+     * Returns the average number of records read per second since the last reset.
+     *
+     * @return the number of records read per second
+     */
+    double getRecordsPerSecond();
+
+    /**
+     * Returns the average number of captured octets read per second since the last reset.
+     *
+     * @return the number of captured octets read per second
+     */
+    double getBytesPerSecond();
+
+    /**
+     * Returns the number of truncated records.
+     *
+     * @return the number of truncated records
+     */
+    long getTruncatedRecords();
+
+    /**
+     * Returns the number of records read whose EtherType, following the VLAN tags, is unsupported.
+     *
+     * @return the number of records with an unsupported packet type
+     */
+    long getUnsupportedPacketTypes();
+
+    /**
+     * Returns the number of parse failures per layer.
+     *
+     * @return the number of parse failures per layer
+     */
+    Map<String, Long> getParseFailures();
+
+    /**
+     * Returns the decode latency histograms per layer; bucket {@code i} counts the decodes which took less than
+     * {@code 2^i} nanoseconds and at least {@code 2^(i-1)}.
+     *
+     * @return the decode latency histograms per layer
+     */
+    Map<String, long[]> getLatencyHistograms();
+
+    /**
+     * Resets all the counters.
+     */
+    void reset();
+}
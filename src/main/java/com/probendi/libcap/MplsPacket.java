@@ -70,6 +70,71 @@ public class MplsPacket {
         }
     }
 
+    /**
+     * Decodes the label stack starting at the given offset into the given array, without allocating.
+     * <p>
+     * Each element of the array is a raw label stack entry: use {@link #label(int)}, {@link #exp(int)},
+     * {@link #isBottom(int)} and {@link #ttl(int)} to decode it.
+     *
+     * @param bytes  the bytes to be decoded
+     * @param offset the offset of the first label stack entry
+     * @param stack  the array receiving the label stack entries
+     * @return the number of decoded entries, which is less than the stack's depth if the array or the bytes are too
+     * short
+     */
+    public static int decodeStack(final byte[] bytes, final int offset, final int[] stack) {
+        int n = 0;
+        for (int i = offset; n < stack.length && i + 4 <= bytes.length; i += 4) {
+            final int entry = (bytes[i] & 0xff) << 24 | (bytes[i + 1] & 0xff) << 16 | (bytes[i + 2] & 0xff) << 8 |
+                    bytes[i + 3] & 0xff;
+            stack[n++] = entry;
+            if (isBottom(entry)) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the label of the given label stack entry.
+     *
+     * @param entry the label stack entry
+     * @return the label of the given label stack entry
+     */
+    public static int label(final int entry) {
+        return entry >>> 12;
+    }
+
+    /**
+     * Returns the traffic class (formerly EXP) of the given label stack entry.
+     *
+     * @param entry the label stack entry
+     * @return the traffic class of the given label stack entry
+     */
+    public static int exp(final int entry) {
+        return entry >>> 9 & 7;
+    }
+
+    /**
+     * Returns {@code true} if the given label stack entry is the bottom of the stack.
+     *
+     * @param entry the label stack entry
+     * @return {@code true} if the given label stack entry is the bottom of the stack
+     */
+    public static boolean isBottom(final int entry) {
+        return (entry & 0x100) != 0;
+    }
+
+    /**
+     * Returns the TTL of the given label stack entry.
+     *
+     * @param entry the label stack entry
+     * @return the TTL of the given label stack entry
+     */
+    public static int ttl(final int entry) {
+        return entry & 0xff;
+    }
+
     /**
      * Parses an MPLS packet from the given record.
      *
@@ -79,6 +144,7 @@ public class MplsPacket {
      */
     public static MplsPacket parse(final Record record) {
         Validator.validateObject("bytes", record);
+        final long start = Metrics.start();
         final MplsPacket packet = new MplsPacket();
         packet.headers = new LinkedList<>();
         final byte[] bytes = record.getBytes();
@@ -100,6 +166,7 @@ public class MplsPacket {
             }
         }
         packet.payload = Arrays.copyOfRange(bytes, i, bytes.length);
+        Metrics.stop(Metrics.Layer.MPLS, start);
         return packet;
 
     }
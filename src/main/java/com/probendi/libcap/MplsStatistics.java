@@ -0,0 +1,216 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Accumulates MPLS label stack statistics over a stream of records without allocating per packet.
+ * <p>
+ * The label stack of each MPLS record, either untagged or following any number of VLAN tags (802.1Q or stacked
+ * 802.1ad), is decoded into a reusable array.
+ * For each label the number of packets and bytes ({@code orig_len}) is counted in primitive arrays indexed by a
+ * {@link LongIndex}, and the traffic class (EXP) and TTL of every label stack entry are counted in fixed
+ * distributions. The pairs formed by the two outermost labels, typically the transport and the service label, are
+ * tracked by a {@link HeavyHitters} sketch. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class MplsStatistics {
+
+    /**
+     * The maximum number of decoded label stack entries.
+     */
+    public static final int MAX_DEPTH = 16;
+
+    private static final int[] NO_TAGS = new int[0];
+
+    private final int[] stack = new int[MAX_DEPTH];
+    private final LongIndex labels = new LongIndex(1024);
+    private long[] packets = new long[labels.capacity()];
+    private long[] bytes = new long[labels.capacity()];
+    private final long[] exp = new long[8];
+    private final long[] ttl = new long[256];
+    private final long[] depth = new long[MAX_DEPTH + 1];
+    private final HeavyHitters pairs;
+    private long records;
+
+    /**
+     * Creates a new {@code MplsStatistics} object.
+     *
+     * @param pairs the number of label pairs monitored by the heavy hitter sketch
+     * @throws IllegalArgumentException if {@code pairs} is not positive
+     */
+    public MplsStatistics(final int pairs) {
+        this.pairs = new HeavyHitters(pairs);
+    }
+
+    /**
+     * Adds the given record if it is an MPLS record.
+     *
+     * @param record the record
+     * @return the depth of the label stack or {@code 0} if the record is not an MPLS record
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public int add(final Record record) {
+        validateObject("record", record);
+        final byte[] b = record.getBytes();
+        // the EtherType following the VLAN tags
+        final int offset = 0xc + 4 * Dot1QPacket.decodeTags(b, 0xc, NO_TAGS);
+        if (type(b, offset) != PacketType.MPLS.getType()) {
+            return 0;
+        }
+        final int n = MplsPacket.decodeStack(b, offset + 2, stack);
+        add(stack, n, record.getOrig_len());
+        return n;
+    }
+
+    /**
+     * Adds the given label stack.
+     *
+     * @param stack  the label stack entries
+     * @param n      the number of label stack entries
+     * @param length the length of the packet in octets
+     */
+    public void add(final int[] stack, final int n, final long length) {
+        records++;
+        depth[Math.min(n, MAX_DEPTH)]++;
+        for (int i = 0; i < n; i++) {
+            final int entry = stack[i];
+            final int id = labels.add(MplsPacket.label(entry));
+            if (id >= packets.length) {
+                packets = Arrays.copyOf(packets, labels.capacity());
+                bytes = Arrays.copyOf(bytes, labels.capacity());
+            }
+            packets[id]++;
+            bytes[id] += length;
+            exp[MplsPacket.exp(entry)]++;
+            ttl[MplsPacket.ttl(entry)]++;
+        }
+        if (n >= 2) {
+            pairs.add(pair(MplsPacket.label(stack[0]), MplsPacket.label(stack[1])), 1);
+        }
+    }
+
+    /**
+     * Returns the key of the given label pair, as used by {@link #getTopPairs(int)}.
+     *
+     * @param outer the outer label
+     * @param inner the inner label
+     * @return the key of the given label pair
+     */
+    public static long pair(final int outer, final int inner) {
+        return (long) outer << 20 | inner;
+    }
+
+    /**
+     * Returns the outer label of the given label pair.
+     *
+     * @param pair the key of the label pair
+     * @return the outer label
+     */
+    public static int outer(final long pair) {
+        return (int) (pair >>> 20);
+    }
+
+    /**
+     * Returns the inner label of the given label pair.
+     *
+     * @param pair the key of the label pair
+     * @return the inner label
+     */
+    public static int inner(final long pair) {
+        return (int) (pair & 0xfffff);
+    }
+
+    /**
+     * Returns the number of MPLS records.
+     *
+     * @return the number of MPLS records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the labels seen so far.
+     *
+     * @return the labels seen so far, in no particular order
+     */
+    public int[] getLabels() {
+        final int[] result = new int[labels.size()];
+        int n = 0;
+        for (int id = 0; id < labels.capacity(); id++) {
+            if (labels.isUsed(id)) {
+                result[n++] = (int) labels.key(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of packets carrying the given label.
+     *
+     * @param label the label
+     * @return the number of packets carrying the given label
+     */
+    public long getPackets(final int label) {
+        final int id = labels.get(label);
+        return id < 0 ? 0 : packets[id];
+    }
+
+    /**
+     * Returns the number of bytes of the packets carrying the given label.
+     *
+     * @param label the label
+     * @return the number of bytes of the packets carrying the given label
+     */
+    public long getBytes(final int label) {
+        final int id = labels.get(label);
+        return id < 0 ? 0 : bytes[id];
+    }
+
+    /**
+     * Returns the number of label stack entries per traffic class (EXP).
+     *
+     * @return an array indexed by traffic class
+     */
+    public long[] getExpDistribution() {
+        return exp.clone();
+    }
+
+    /**
+     * Returns the number of label stack entries per TTL.
+     *
+     * @return an array indexed by TTL
+     */
+    public long[] getTtlDistribution() {
+        return ttl.clone();
+    }
+
+    /**
+     * Returns the number of records per label stack depth; deeper stacks are counted as {@link #MAX_DEPTH}.
+     *
+     * @return an array indexed by label stack depth
+     */
+    public long[] getDepthDistribution() {
+        return depth.clone();
+    }
+
+    /**
+     * Returns the most frequent pairs of outer and inner labels.
+     *
+     * @param n the number of pairs
+     * @return at most {@code n} pairs, sorted by decreasing count; use {@link #outer(long)} and {@link #inner(long)}
+     * to decode the keys
+     */
+    public List<HeavyHitters.Entry> getTopPairs(final int n) {
+        return pairs.getTop(n);
+    }
+
+    private static int type(final byte[] bytes, final int offset) {
+        return bytes.length < offset + 2 ? -1 : (bytes[offset] & 0xff) << 8 | bytes[offset + 1] & 0xff;
+    }
+}
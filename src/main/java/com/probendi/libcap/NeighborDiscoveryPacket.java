@@ -0,0 +1,626 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+
+import static com.probendi.libcap.Parser.readChar;
+import static com.probendi.libcap.Parser.readInt;
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * An ICMPv6 Neighbor Discovery message (RFC 4861): a Router Solicitation, Router Advertisement, Neighbor
+ * Solicitation, Neighbor Advertisement or Redirect, with its options.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class NeighborDiscoveryPacket {
+
+    /**
+     * A Neighbor Discovery message's type.
+     */
+    public enum Type {
+        ROUTER_SOLICITATION(133, 8),
+        ROUTER_ADVERTISEMENT(134, 16),
+        NEIGHBOR_SOLICITATION(135, 24),
+        NEIGHBOR_ADVERTISEMENT(136, 24),
+        REDIRECT(137, 40);
+
+        private static final Type[] TYPES = new Type[256];
+
+        static {
+            for (final Type type : values()) {
+                TYPES[type.type & 0xff] = type;
+            }
+        }
+
+        private final byte type;
+        private final int optionsOffset;
+
+        Type(final int type, final int optionsOffset) {
+            this.type = (byte) type;
+            this.optionsOffset = optionsOffset;
+        }
+
+        @Contract(pure = true)
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Returns the offset of the options from the start of the ICMPv6 message.
+         *
+         * @return the offset of the options
+         */
+        @Contract(pure = true)
+        public int getOptionsOffset() {
+            return optionsOffset;
+        }
+
+        /**
+         * Returns the type for the given byte.
+         *
+         * @param b the byte
+         * @return the type for the given byte
+         * @throws ParseException if the byte cannot be parsed
+         */
+        public static Type parse(final byte b) throws ParseException {
+            final Type type = lookup(b);
+            if (type == null) {
+                Metrics.failure(Metrics.Layer.NDP);
+                throw new ParseException("invalid type", b);
+            }
+            return type;
+        }
+
+        /**
+         * Returns the type for the given byte, without throwing.
+         *
+         * @param b the byte
+         * @return the type for the given byte or {@code null} if it is not a Neighbor Discovery type
+         */
+        static Type lookup(final byte b) {
+            return TYPES[b & 0xff];
+        }
+    }
+
+    static final byte SOURCE_LINK_LAYER_ADDRESS = 1;
+    static final byte TARGET_LINK_LAYER_ADDRESS = 2;
+    static final byte PREFIX_INFORMATION = 3;
+    static final byte MTU = 5;
+
+    /**
+     * Parses a Neighbor Discovery message from the given bytes.
+     *
+     * @param bytes the bytes of the ICMPv6 message to be parsed, starting at the type
+     * @return a Neighbor Discovery message
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     * @throws ParseException           if the type is not a Neighbor Discovery type, the message is shorter than its
+     *                                  fixed part or an option is malformed
+     */
+    public static NeighborDiscoveryPacket parse(final byte[] bytes) throws ParseException {
+        validateObject("bytes", bytes);
+        final long start = Metrics.start();
+        final NeighborDiscoveryPacket packet = new NeighborDiscoveryPacket();
+        if (bytes.length == 0) {
+            Metrics.failure(Metrics.Layer.NDP);
+            throw new ParseException("invalid length", 0);
+        }
+        packet.type = Type.parse(bytes[0]);
+        if (bytes.length < packet.type.getOptionsOffset()) {
+            Metrics.failure(Metrics.Layer.NDP);
+            throw new ParseException("invalid length", bytes.length);
+        }
+        packet.code = bytes[1];
+        packet.checksum = readChar(bytes[2], bytes[3]);
+        switch (packet.type) {
+            case ROUTER_ADVERTISEMENT:
+                packet.curHopLimit = bytes[4];
+                packet.flags = bytes[5];
+                packet.routerLifetime = readChar(bytes[6], bytes[7]);
+                packet.reachableTime = readInt(bytes[8], bytes[9], bytes[10], bytes[11]);
+                packet.retransTimer = readInt(bytes[12], bytes[13], bytes[14], bytes[15]);
+                break;
+            case NEIGHBOR_ADVERTISEMENT:
+                packet.flags = bytes[4];
+                packet.target = Arrays.copyOfRange(bytes, 8, 24);
+                break;
+            case NEIGHBOR_SOLICITATION:
+                packet.target = Arrays.copyOfRange(bytes, 8, 24);
+                break;
+            case REDIRECT:
+                packet.target = Arrays.copyOfRange(bytes, 8, 24);
+                packet.destination = Arrays.copyOfRange(bytes, 24, 40);
+                break;
+            default:
+                break;
+        }
+        int i = packet.type.getOptionsOffset();
+        while (i + 2 <= bytes.length) {
+            final int length = (bytes[i + 1] & 0xff) * 8;
+            if (length == 0 || i + length > bytes.length) {
+                Metrics.failure(Metrics.Layer.NDP);
+                throw new ParseException("invalid option length", i + 1);
+            }
+            packet.options.add(Option.parse(Arrays.copyOfRange(bytes, i, i + length)));
+            i += length;
+        }
+        Metrics.stop(Metrics.Layer.NDP, start);
+        return packet;
+    }
+
+    /**
+     * Returns the offset of the first option of the given type, without copying.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the first option
+     * @param end    the end of the options
+     * @param type   the type of the option
+     * @return the offset of the option or {@code -1} if there is no such option or the options are malformed
+     */
+    static int findOption(final byte[] bytes, int offset, final int end, final byte type) {
+        while (offset + 2 <= end) {
+            final int length = (bytes[offset + 1] & 0xff) * 8;
+            if (length == 0 || offset + length > end) {
+                return -1;
+            }
+            if (bytes[offset] == type) {
+                return offset;
+            }
+            offset += length;
+        }
+        return -1;
+    }
+
+    private Type type;
+    private byte code;
+    private char checksum;
+    private byte curHopLimit;
+    private byte flags;
+    private char routerLifetime;
+    private int reachableTime;
+    private int retransTimer;
+    private byte[] target;
+    private byte[] destination;
+    private List<Option> options = new LinkedList<>();
+
+    public Type getType() {
+        return type;
+    }
+
+    public NeighborDiscoveryPacket type(final Type type) {
+        this.type = type;
+        return this;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public NeighborDiscoveryPacket code(final byte code) {
+        this.code = code;
+        return this;
+    }
+
+    public char getChecksum() {
+        return checksum;
+    }
+
+    public NeighborDiscoveryPacket checksum(final char checksum) {
+        this.checksum = checksum;
+        return this;
+    }
+
+    public byte getCurHopLimit() {
+        return curHopLimit;
+    }
+
+    public NeighborDiscoveryPacket curHopLimit(final byte curHopLimit) {
+        this.curHopLimit = curHopLimit;
+        return this;
+    }
+
+    /**
+     * Returns the flags: M and O of a Router Advertisement, or R, S and O of a Neighbor Advertisement, in the most
+     * significant bits.
+     *
+     * @return the flags
+     */
+    public byte getFlags() {
+        return flags;
+    }
+
+    public NeighborDiscoveryPacket flags(final byte flags) {
+        this.flags = flags;
+        return this;
+    }
+
+    /**
+     * Returns the router lifetime of a Router Advertisement.
+     *
+     * @return the router lifetime in seconds, or {@code 0} if the router is not a default router
+     */
+    public char getRouterLifetime() {
+        return routerLifetime;
+    }
+
+    public NeighborDiscoveryPacket routerLifetime(final char routerLifetime) {
+        this.routerLifetime = routerLifetime;
+        return this;
+    }
+
+    /**
+     * Returns the reachable time of a Router Advertisement.
+     *
+     * @return the reachable time in milliseconds, or {@code 0} if unspecified
+     */
+    public int getReachableTime() {
+        return reachableTime;
+    }
+
+    public NeighborDiscoveryPacket reachableTime(final int reachableTime) {
+        this.reachableTime = reachableTime;
+        return this;
+    }
+
+    /**
+     * Returns the retransmission timer of a Router Advertisement.
+     *
+     * @return the retransmission timer in milliseconds, or {@code 0} if unspecified
+     */
+    public int getRetransTimer() {
+        return retransTimer;
+    }
+
+    public NeighborDiscoveryPacket retransTimer(final int retransTimer) {
+        this.retransTimer = retransTimer;
+        return this;
+    }
+
+    /**
+     * Returns the target address of a Neighbor Solicitation, Neighbor Advertisement or Redirect.
+     *
+     * @return the target address
+     */
+    public String getTarget() {
+        return Parser.bytesToString(target);
+    }
+
+    public NeighborDiscoveryPacket target(final byte[] target) {
+        this.target = target;
+        return this;
+    }
+
+    /**
+     * Returns the destination address of a Redirect.
+     *
+     * @return the destination address
+     */
+    public String getDestination() {
+        return Parser.bytesToString(destination);
+    }
+
+    public NeighborDiscoveryPacket destination(final byte[] destination) {
+        this.destination = destination;
+        return this;
+    }
+
+    public List<Option> getOptions() {
+        return options;
+    }
+
+    public NeighborDiscoveryPacket options(final List<Option> options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if the M (managed address configuration) flag of a Router Advertisement is set.
+     *
+     * @return {@code true} if the M flag is set
+     */
+    public boolean isManaged() {
+        return type == Type.ROUTER_ADVERTISEMENT && (flags & 0x80) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the O (other configuration) flag of a Router Advertisement is set.
+     *
+     * @return {@code true} if the O flag is set
+     */
+    public boolean isOther() {
+        return type == Type.ROUTER_ADVERTISEMENT && (flags & 0x40) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the R (router) flag of a Neighbor Advertisement is set.
+     *
+     * @return {@code true} if the R flag is set
+     */
+    public boolean isRouter() {
+        return type == Type.NEIGHBOR_ADVERTISEMENT && (flags & 0x80) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the S (solicited) flag of a Neighbor Advertisement is set.
+     *
+     * @return {@code true} if the S flag is set
+     */
+    public boolean isSolicited() {
+        return type == Type.NEIGHBOR_ADVERTISEMENT && (flags & 0x40) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the O (override) flag of a Neighbor Advertisement is set.
+     *
+     * @return {@code true} if the O flag is set
+     */
+    public boolean isOverride() {
+        return type == Type.NEIGHBOR_ADVERTISEMENT && (flags & 0x20) != 0;
+    }
+
+    /**
+     * Returns the source link-layer address option.
+     *
+     * @return the link-layer address or {@code null} if there is no such option
+     */
+    public byte[] getSourceLinkLayerAddress() {
+        final Option option = getOption(SOURCE_LINK_LAYER_ADDRESS);
+        return option == null ? null : option.getValue();
+    }
+
+    /**
+     * Returns the target link-layer address option.
+     *
+     * @return the link-layer address or {@code null} if there is no such option
+     */
+    public byte[] getTargetLinkLayerAddress() {
+        final Option option = getOption(TARGET_LINK_LAYER_ADDRESS);
+        return option == null ? null : option.getValue();
+    }
+
+    /**
+     * Returns the MTU option of a Router Advertisement.
+     *
+     * @return the MTU or {@code -1} if there is no such option
+     */
+    public int getMtu() {
+        final Option option = getOption(MTU);
+        if (option == null || option.getValue().length < 6) {
+            return -1;
+        }
+        final byte[] value = option.getValue();
+        return readInt(value[2], value[3], value[4], value[5]);
+    }
+
+    /**
+     * Returns the prefix information options of a Router Advertisement.
+     *
+     * @return the prefixes
+     */
+    public List<Prefix> getPrefixes() {
+        final List<Prefix> prefixes = new LinkedList<>();
+        for (final Option option : options) {
+            if (option.getType() == PREFIX_INFORMATION && option.getValue().length >= 30) {
+                prefixes.add(Prefix.parse(option.getValue()));
+            }
+        }
+        return prefixes;
+    }
+
+    private Option getOption(final byte type) {
+        for (final Option option : options) {
+            if (option.getType() == type) {
+                return option;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NeighborDiscoveryPacket)) return false;
+        final NeighborDiscoveryPacket that = (NeighborDiscoveryPacket) o;
+        return getType() == that.getType() &&
+                getCode() == that.getCode() &&
+                getChecksum() == that.getChecksum() &&
+                getCurHopLimit() == that.getCurHopLimit() &&
+                getFlags() == that.getFlags() &&
+                getRouterLifetime() == that.getRouterLifetime() &&
+                getReachableTime() == that.getReachableTime() &&
+                getRetransTimer() == that.getRetransTimer() &&
+                Objects.equals(getTarget(), that.getTarget()) &&
+                Objects.equals(getDestination(), that.getDestination()) &&
+                Objects.equals(getOptions(), that.getOptions());
+    }
+
+    /**
+     * An option.
+     */
+    public static class Option {
+
+        /**
+         * Parses an option from the given bytes.
+         *
+         * @param bytes the bytes to be parsed
+         * @return an option
+         * @throws IllegalArgumentException if {@code bytes} is not set
+         */
+        public static Option parse(final byte[] bytes) {
+            validateObject("bytes", bytes);
+            final Option option = new Option();
+            option.type = bytes[0];
+            option.length = bytes[1];
+            option.value = Arrays.copyOfRange(bytes, 2, bytes.length);
+            return option;
+        }
+
+        private byte type;
+        private byte length;
+        private byte[] value;
+
+        public byte getType() {
+            return type;
+        }
+
+        public Option type(final byte type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * Returns the length of the option in units of 8 octets, including the type and length fields.
+         *
+         * @return the length of the option
+         */
+        public byte getLength() {
+            return length;
+        }
+
+        public Option length(final byte length) {
+            this.length = length;
+            return this;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public Option value(final byte[] value) {
+            this.value = value;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Option)) return false;
+            final Option that = (Option) o;
+            return getType() == that.getType() &&
+                    getLength() == that.getLength() &&
+                    Arrays.equals(getValue(), that.getValue());
+        }
+    }
+
+    /**
+     * A prefix information option.
+     */
+    public static class Prefix {
+
+        /**
+         * Parses a prefix information option from the given bytes.
+         *
+         * @param bytes the value of the option, i.e. the bytes following the type and length fields
+         * @return a prefix information option
+         * @throws IllegalArgumentException if {@code bytes} is not set
+         */
+        public static Prefix parse(final byte[] bytes) {
+            validateObject("bytes", bytes);
+            final Prefix prefix = new Prefix();
+            prefix.prefixLength = bytes[0];
+            prefix.flags = bytes[1];
+            prefix.validLifetime = readInt(bytes[2], bytes[3], bytes[4], bytes[5]);
+            prefix.preferredLifetime = readInt(bytes[6], bytes[7], bytes[8], bytes[9]);
+            prefix.prefix = Arrays.copyOfRange(bytes, 14, 30);
+            return prefix;
+        }
+
+        private byte prefixLength;
+        private byte flags;
+        private int validLifetime;
+        private int preferredLifetime;
+        private byte[] prefix;
+
+        public byte getPrefixLength() {
+            return prefixLength;
+        }
+
+        public Prefix prefixLength(final byte prefixLength) {
+            this.prefixLength = prefixLength;
+            return this;
+        }
+
+        public byte getFlags() {
+            return flags;
+        }
+
+        public Prefix flags(final byte flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        /**
+         * Returns the valid lifetime.
+         *
+         * @return the valid lifetime in seconds, where {@code 0xffffffff} means infinity
+         */
+        public int getValidLifetime() {
+            return validLifetime;
+        }
+
+        public Prefix validLifetime(final int validLifetime) {
+            this.validLifetime = validLifetime;
+            return this;
+        }
+
+        /**
+         * Returns the preferred lifetime.
+         *
+         * @return the preferred lifetime in seconds, where {@code 0xffffffff} means infinity
+         */
+        public int getPreferredLifetime() {
+            return preferredLifetime;
+        }
+
+        public Prefix preferredLifetime(final int preferredLifetime) {
+            this.preferredLifetime = preferredLifetime;
+            return this;
+        }
+
+        public String getPrefix() {
+            return Parser.bytesToString(prefix);
+        }
+
+        public Prefix prefix(final byte[] prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * Returns {@code true} if the L (on-link) flag is set.
+         *
+         * @return {@code true} if the L flag is set
+         */
+        public boolean isOnLink() {
+            return (flags & 0x80) != 0;
+        }
+
+        /**
+         * Returns {@code true} if the A (autonomous address configuration) flag is set, i.e. the prefix can be used
+         * for SLAAC.
+         *
+         * @return {@code true} if the A flag is set
+         */
+        public boolean isAutonomous() {
+            return (flags & 0x40) != 0;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Prefix)) return false;
+            final Prefix that = (Prefix) o;
+            return getPrefixLength() == that.getPrefixLength() &&
+                    getFlags() == that.getFlags() &&
+                    getValidLifetime() == that.getValidLifetime() &&
+                    getPreferredLifetime() == that.getPreferredLifetime() &&
+                    Objects.equals(getPrefix(), that.getPrefix());
+        }
+    }
+}
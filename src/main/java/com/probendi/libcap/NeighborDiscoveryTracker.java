@@ -0,0 +1,568 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Builds a neighbor cache and a router table from the ICMPv6 Neighbor Discovery messages of a capture.
+ * <p>
+ * The messages are decoded in place through a {@link Frame}. The neighbor cache maps IPv6 addresses to MAC addresses
+ * learned from the link-layer address options, or from the Ethernet source of Neighbor and Router Advertisements
+ * without one, and keeps when each neighbor was first and last seen and how often its MAC address changed. The
+ * router table keeps the parameters, MTU and prefixes of the last Router Advertisement of each router. Duplicate
+ * address detection probes, whose source is the unspecified address, are only counted.
+ * <p>
+ * Both tables are primitive arrays of fixed capacity indexed by a {@link LongIndex} keyed by a 64-bit hash of the
+ * address, so that access networks with very many SLAAC hosts stay within a fixed memory budget of about 100 bytes
+ * per neighbor. When a table is full, the least recently seen entry of a small sample is evicted, as is an entry whose
+ * address collides with a new one. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class NeighborDiscoveryTracker {
+
+    /**
+     * An entry of the neighbor cache. All times are in microseconds since the epoch.
+     */
+    public static class Neighbor {
+        private byte[] address;
+        private long mac;
+        private long firstSeen;
+        private long lastSeen;
+        private boolean router;
+        private int changes;
+
+        public String getAddress() {
+            return Parser.bytesToString(address);
+        }
+
+        /**
+         * Returns the MAC address in the lower 48 bits.
+         *
+         * @return the MAC address or {@code -1} if it has not been learned
+         */
+        public long getMac() {
+            return mac;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * Returns {@code true} if the neighbor sent a Router Advertisement or a Neighbor Advertisement with the R flag.
+         *
+         * @return {@code true} if the neighbor is a router
+         */
+        public boolean isRouter() {
+            return router;
+        }
+
+        /**
+         * Returns the number of times the MAC address changed, e.g. because of a duplicate address or spoofing.
+         *
+         * @return the number of MAC address changes
+         */
+        public int getChanges() {
+            return changes;
+        }
+    }
+
+    /**
+     * An entry of the router table, with the parameters of the last Router Advertisement. All times are in
+     * microseconds since the epoch.
+     */
+    public static class Router {
+        private byte[] address;
+        private long mac;
+        private long firstSeen;
+        private long lastSeen;
+        private long advertisements;
+        private int curHopLimit;
+        private byte flags;
+        private int lifetime;
+        private int reachableTime;
+        private int retransTimer;
+        private int mtu;
+        private List<NeighborDiscoveryPacket.Prefix> prefixes;
+
+        public String getAddress() {
+            return Parser.bytesToString(address);
+        }
+
+        /**
+         * Returns the MAC address in the lower 48 bits.
+         *
+         * @return the MAC address
+         */
+        public long getMac() {
+            return mac;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public long getAdvertisements() {
+            return advertisements;
+        }
+
+        public int getCurHopLimit() {
+            return curHopLimit;
+        }
+
+        public boolean isManaged() {
+            return (flags & 0x80) != 0;
+        }
+
+        public boolean isOther() {
+            return (flags & 0x40) != 0;
+        }
+
+        /**
+         * Returns the router lifetime.
+         *
+         * @return the router lifetime in seconds, or {@code 0} if the router is not a default router
+         */
+        public int getLifetime() {
+            return lifetime;
+        }
+
+        public int getReachableTime() {
+            return reachableTime;
+        }
+
+        public int getRetransTimer() {
+            return retransTimer;
+        }
+
+        /**
+         * Returns the advertised MTU.
+         *
+         * @return the MTU or {@code -1} if it was not advertised
+         */
+        public int getMtu() {
+            return mtu;
+        }
+
+        public List<NeighborDiscoveryPacket.Prefix> getPrefixes() {
+            return prefixes;
+        }
+    }
+
+    private static final int SAMPLE = 8;
+    private static final int PREFIX_LENGTH = 32;
+
+    private final Frame frame = new Frame();
+    private final Table neighbors;
+    private final boolean[] routerFlags;
+    private final int[] changes;
+    private final Table routers;
+    private final long[] advertisements;
+    private final byte[] curHopLimits;
+    private final byte[] flags;
+    private final char[] lifetimes;
+    private final int[] reachableTimes;
+    private final int[] retransTimers;
+    private final int[] mtus;
+    // the prefix information options of the last Router Advertisement, without the type and length fields
+    private final byte[][] prefixes;
+    private final long[] messages = new long[NeighborDiscoveryPacket.Type.values().length];
+    private long duplicateAddressDetections;
+
+    /**
+     * Creates a new {@code NeighborDiscoveryTracker} object.
+     *
+     * @param neighbors the maximum number of neighbors
+     * @param routers   the maximum number of routers
+     * @throws IllegalArgumentException if {@code neighbors} or {@code routers} is not positive
+     */
+    public NeighborDiscoveryTracker(final int neighbors, final int routers) {
+        if (neighbors <= 0) {
+            throw new IllegalArgumentException("neighbors must be positive");
+        }
+        if (routers <= 0) {
+            throw new IllegalArgumentException("routers must be positive");
+        }
+        this.neighbors = new Table(neighbors);
+        routerFlags = new boolean[this.neighbors.length()];
+        changes = new int[this.neighbors.length()];
+        this.routers = new Table(routers);
+        final int n = this.routers.length();
+        advertisements = new long[n];
+        curHopLimits = new byte[n];
+        flags = new byte[n];
+        lifetimes = new char[n];
+        reachableTimes = new int[n];
+        retransTimers = new int[n];
+        mtus = new int[n];
+        prefixes = new byte[n][];
+    }
+
+    /**
+     * Adds the given record if it is a Neighbor Discovery message.
+     *
+     * @param record the record
+     * @return the type of the message or {@code null} if the record is not a Neighbor Discovery message
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public NeighborDiscoveryPacket.Type add(final Record record) {
+        validateObject("record", record);
+        if (!frame.decode(record) || frame.getIpVersion() != 6 || frame.getProtocol() != 0x3a) {
+            return null;
+        }
+        final byte[] b = frame.getBytes();
+        final int l3 = frame.getL3Offset();
+        final int l4 = frame.getL4Offset();
+        // ignore the Ethernet padding
+        final int end = Math.min(b.length, l3 + 40 + Parser.readChar(b[l3 + 4], b[l3 + 5]));
+        if (l4 < 0 || l4 + 8 > end) {
+            return null;
+        }
+        final NeighborDiscoveryPacket.Type type = NeighborDiscoveryPacket.Type.lookup(b[l4]);
+        if (type == null || l4 + type.getOptionsOffset() > end) {
+            return null;
+        }
+        final int options = l4 + type.getOptionsOffset();
+        messages[type.ordinal()]++;
+        final long time = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        final int source = frame.getSourceOffset();
+        final boolean unspecified = readLong(b, source) == 0 && readLong(b, source + 8) == 0;
+        final long ethernet = readMac(b, 6);
+        switch (type) {
+            case ROUTER_SOLICITATION:
+            case NEIGHBOR_SOLICITATION: {
+                final int option = NeighborDiscoveryPacket.findOption(b, options, end,
+                        NeighborDiscoveryPacket.SOURCE_LINK_LAYER_ADDRESS);
+                if (unspecified) {
+                    if (type == NeighborDiscoveryPacket.Type.NEIGHBOR_SOLICITATION) {
+                        duplicateAddressDetections++;
+                    }
+                } else if (option >= 0) {
+                    neighbor(b, source, readMac(b, option + 2), time);
+                }
+                break;
+            }
+            case ROUTER_ADVERTISEMENT: {
+                final int option = NeighborDiscoveryPacket.findOption(b, options, end,
+                        NeighborDiscoveryPacket.SOURCE_LINK_LAYER_ADDRESS);
+                final long mac = option >= 0 ? readMac(b, option + 2) : ethernet;
+                routerFlags[neighbor(b, source, mac, time)] = true;
+                router(b, source, l4, options, end, mac, time);
+                break;
+            }
+            case NEIGHBOR_ADVERTISEMENT: {
+                final int option = NeighborDiscoveryPacket.findOption(b, options, end,
+                        NeighborDiscoveryPacket.TARGET_LINK_LAYER_ADDRESS);
+                final int id = neighbor(b, l4 + 8, option >= 0 ? readMac(b, option + 2) : ethernet, time);
+                routerFlags[id] = (b[l4 + 4] & 0x80) != 0;
+                break;
+            }
+            case REDIRECT: {
+                final int option = NeighborDiscoveryPacket.findOption(b, options, end,
+                        NeighborDiscoveryPacket.TARGET_LINK_LAYER_ADDRESS);
+                if (option >= 0) {
+                    neighbor(b, l4 + 8, readMac(b, option + 2), time);
+                }
+                break;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Returns the neighbor with the given address.
+     *
+     * @param address the IPv6 address
+     * @return the neighbor or {@code null} if the address is not in the neighbor cache
+     * @throws IllegalArgumentException if {@code address} is not set or is not 16 octets long
+     */
+    public Neighbor getNeighbor(final byte[] address) {
+        validateObject("address", address);
+        if (address.length != 16) {
+            throw new IllegalArgumentException("address must be 16 octets long");
+        }
+        final int id = neighbors.get(address, 0);
+        return id < 0 ? null : neighbor(id);
+    }
+
+    /**
+     * Returns the neighbor cache.
+     *
+     * @return the neighbors, in no particular order
+     */
+    public List<Neighbor> getNeighbors() {
+        final List<Neighbor> result = new ArrayList<>(neighbors.index.size());
+        for (int id = 0; id < neighbors.length(); id++) {
+            if (neighbors.index.isUsed(id)) {
+                result.add(neighbor(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the router table.
+     *
+     * @return the routers, in no particular order
+     */
+    public List<Router> getRouters() {
+        final List<Router> result = new ArrayList<>(routers.index.size());
+        for (int id = 0; id < routers.length(); id++) {
+            if (routers.index.isUsed(id)) {
+                result.add(router(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of neighbors.
+     *
+     * @return the number of neighbors
+     */
+    public int size() {
+        return neighbors.index.size();
+    }
+
+    /**
+     * Returns the number of messages of the given type.
+     *
+     * @param type the type
+     * @return the number of messages of the given type
+     * @throws IllegalArgumentException if {@code type} is not set
+     */
+    public long getMessages(final NeighborDiscoveryPacket.Type type) {
+        validateObject("type", type);
+        return messages[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of Neighbor Solicitations sent for duplicate address detection.
+     *
+     * @return the number of duplicate address detection probes
+     */
+    public long getDuplicateAddressDetections() {
+        return duplicateAddressDetections;
+    }
+
+    /**
+     * Returns the number of neighbors and routers evicted to make room for new ones.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return neighbors.evictions + routers.evictions;
+    }
+
+    private int neighbor(final byte[] b, final int offset, final long mac, final long time) {
+        final int id = neighbors.add(b, offset, time);
+        if (neighbors.created) {
+            routerFlags[id] = false;
+            changes[id] = 0;
+        } else if (neighbors.macs[id] != mac) {
+            changes[id]++;
+        }
+        neighbors.macs[id] = mac;
+        return id;
+    }
+
+    private void router(final byte[] b, final int offset, final int l4, final int options, final int end,
+                        final long mac, final long time) {
+        final int id = routers.add(b, offset, time);
+        if (routers.created) {
+            advertisements[id] = 0;
+        }
+        routers.macs[id] = mac;
+        advertisements[id]++;
+        curHopLimits[id] = b[l4 + 4];
+        flags[id] = b[l4 + 5];
+        lifetimes[id] = Parser.readChar(b[l4 + 6], b[l4 + 7]);
+        reachableTimes[id] = Parser.readInt(b[l4 + 8], b[l4 + 9], b[l4 + 10], b[l4 + 11]);
+        retransTimers[id] = Parser.readInt(b[l4 + 12], b[l4 + 13], b[l4 + 14], b[l4 + 15]);
+        final int option = NeighborDiscoveryPacket.findOption(b, options, end, NeighborDiscoveryPacket.MTU);
+        mtus[id] = option >= 0 && option + 8 <= end ?
+                Parser.readInt(b[option + 4], b[option + 5], b[option + 6], b[option + 7]) : -1;
+        int n = 0;
+        for (int i = options; (i = next(b, i, end)) >= 0; i += PREFIX_LENGTH) {
+            n++;
+        }
+        final byte[] value = new byte[n * (PREFIX_LENGTH - 2)];
+        n = 0;
+        for (int i = options; (i = next(b, i, end)) >= 0; i += PREFIX_LENGTH) {
+            System.arraycopy(b, i + 2, value, n++ * (PREFIX_LENGTH - 2), PREFIX_LENGTH - 2);
+        }
+        prefixes[id] = value;
+    }
+
+    /**
+     * Returns the offset of the next prefix information option of the standard length.
+     */
+    private static int next(final byte[] b, int offset, final int end) {
+        while ((offset = NeighborDiscoveryPacket.findOption(b, offset, end,
+                NeighborDiscoveryPacket.PREFIX_INFORMATION)) >= 0) {
+            if ((b[offset + 1] & 0xff) * 8 == PREFIX_LENGTH) {
+                return offset;
+            }
+            offset += (b[offset + 1] & 0xff) * 8;
+        }
+        return -1;
+    }
+
+    private Neighbor neighbor(final int id) {
+        final Neighbor neighbor = new Neighbor();
+        neighbor.address = neighbors.address(id);
+        neighbor.mac = neighbors.macs[id];
+        neighbor.firstSeen = neighbors.firstSeen[id];
+        neighbor.lastSeen = neighbors.lastSeen[id];
+        neighbor.router = routerFlags[id];
+        neighbor.changes = changes[id];
+        return neighbor;
+    }
+
+    private Router router(final int id) {
+        final Router router = new Router();
+        router.address = routers.address(id);
+        router.mac = routers.macs[id];
+        router.firstSeen = routers.firstSeen[id];
+        router.lastSeen = routers.lastSeen[id];
+        router.advertisements = advertisements[id];
+        router.curHopLimit = curHopLimits[id] & 0xff;
+        router.flags = flags[id];
+        router.lifetime = lifetimes[id];
+        router.reachableTime = reachableTimes[id];
+        router.retransTimer = retransTimers[id];
+        router.mtu = mtus[id];
+        router.prefixes = new LinkedList<>();
+        for (int i = 0; i < prefixes[id].length; i += PREFIX_LENGTH - 2) {
+            router.prefixes.add(NeighborDiscoveryPacket.Prefix.parse(Arrays.copyOfRange(prefixes[id], i,
+                    i + PREFIX_LENGTH - 2)));
+        }
+        return router;
+    }
+
+    private static long readLong(final byte[] b, final int offset) {
+        long l = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            l = l << 8 | b[i] & 0xff;
+        }
+        return l;
+    }
+
+    private static long readMac(final byte[] b, final int offset) {
+        long mac = 0;
+        for (int i = offset; i < offset + 6; i++) {
+            mac = mac << 8 | b[i] & 0xff;
+        }
+        return mac;
+    }
+
+    /**
+     * A table of IPv6 addresses with their MAC address and first and last seen times.
+     */
+    private static final class Table {
+        private final int capacity;
+        private final LongIndex index;
+        private final long[] high;
+        private final long[] low;
+        private final long[] macs;
+        private final long[] firstSeen;
+        private final long[] lastSeen;
+        private int hand;
+        private long evictions;
+        // whether the last call to add created the entry
+        private boolean created;
+
+        private Table(final int capacity) {
+            this.capacity = capacity;
+            index = new LongIndex(capacity);
+            final int n = index.capacity();
+            high = new long[n];
+            low = new long[n];
+            macs = new long[n];
+            firstSeen = new long[n];
+            lastSeen = new long[n];
+        }
+
+        private int length() {
+            return high.length;
+        }
+
+        private int get(final byte[] b, final int offset) {
+            final long h = readLong(b, offset);
+            final long l = readLong(b, offset + 8);
+            final int id = index.get(key(h, l));
+            return id >= 0 && high[id] == h && low[id] == l ? id : -1;
+        }
+
+        private int add(final byte[] b, final int offset, final long time) {
+            final long h = readLong(b, offset);
+            final long l = readLong(b, offset + 8);
+            final long key = key(h, l);
+            int id = index.get(key);
+            created = id < 0 || high[id] != h || low[id] != l;
+            if (!created) {
+                lastSeen[id] = time;
+                return id;
+            }
+            if (id >= 0) {
+                // another address with the same hash
+                index.removeId(id);
+                evictions++;
+            } else if (index.size() == capacity) {
+                index.removeId(victim());
+                evictions++;
+            }
+            id = index.add(key);
+            high[id] = h;
+            low[id] = l;
+            macs[id] = -1;
+            firstSeen[id] = time;
+            lastSeen[id] = time;
+            return id;
+        }
+
+        private byte[] address(final int id) {
+            final byte[] address = new byte[16];
+            for (int i = 0; i < 8; i++) {
+                address[i] = (byte) (high[id] >>> 56 - 8 * i);
+                address[i + 8] = (byte) (low[id] >>> 56 - 8 * i);
+            }
+            return address;
+        }
+
+        /**
+         * Returns the least recently seen entry of a sample of entries, in the spirit of the CLOCK algorithm.
+         */
+        private int victim() {
+            final int sample = Math.min(SAMPLE, index.size());
+            int victim = -1;
+            for (int n = 0; n < sample; hand = (hand + 1) % length()) {
+                if (index.isUsed(hand)) {
+                    if (victim < 0 || lastSeen[hand] < lastSeen[victim]) {
+                        victim = hand;
+                    }
+                    n++;
+                }
+            }
+            return victim;
+        }
+
+        private static long key(final long high, final long low) {
+            return LongIndex.mix(high) ^ low;
+        }
+    }
+}
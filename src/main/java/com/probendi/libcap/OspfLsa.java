@@ -0,0 +1,477 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+
+import static com.probendi.libcap.Parser.readChar;
+import static com.probendi.libcap.Parser.readInt;
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * An OSPFv2 link state advertisement (see RFC 2328, appendix A.4).
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class OspfLsa {
+
+    /**
+     * The header's length in octets.
+     */
+    public static final int HEADER_LENGTH = 20;
+
+    /**
+     * The age of an LSA which is being flushed from the routing domain.
+     */
+    public static final char MAX_AGE = 3600;
+
+    /**
+     * An LSA's type.
+     */
+    public enum Type {
+        ROUTER(1), NETWORK(2), SUMMARY_NETWORK(3), SUMMARY_ASBR(4), AS_EXTERNAL(5), UNSUPPORTED(0);
+
+        private final byte type;
+
+        Type(final int type) {
+            this.type = (byte) type;
+        }
+
+        @Contract(pure = true)
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Returns the type for the given byte.
+         *
+         * @param b the byte
+         * @return the type for the given byte
+         */
+        public static Type parse(final byte b) {
+            for (final Type type : Type.values()) {
+                if (type.getType() == b)
+                    return type;
+            }
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * A link of a router LSA.
+     */
+    public static class Link {
+
+        /**
+         * A point-to-point connection to another router.
+         */
+        public static final byte POINT_TO_POINT = 1;
+        /**
+         * A connection to a transit network.
+         */
+        public static final byte TRANSIT = 2;
+        /**
+         * A connection to a stub network.
+         */
+        public static final byte STUB = 3;
+        /**
+         * A virtual link.
+         */
+        public static final byte VIRTUAL = 4;
+
+        private int linkId;
+        private int linkData;
+        private byte type;
+        private char metric;
+
+        public int getLinkId() {
+            return linkId;
+        }
+
+        public Link linkId(final int linkId) {
+            this.linkId = linkId;
+            return this;
+        }
+
+        public int getLinkData() {
+            return linkData;
+        }
+
+        public Link linkData(final int linkData) {
+            this.linkData = linkData;
+            return this;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public Link type(final byte type) {
+            this.type = type;
+            return this;
+        }
+
+        public char getMetric() {
+            return metric;
+        }
+
+        public Link metric(final char metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Link)) return false;
+            final Link link = (Link) o;
+            return getLinkId() == link.getLinkId() &&
+                    getLinkData() == link.getLinkData() &&
+                    getType() == link.getType() &&
+                    getMetric() == link.getMetric();
+        }
+    }
+
+    /**
+     * Parses the header of an LSA from the given bytes, e.g. from a Database Description packet.
+     *
+     * @param bytes  the bytes to be parsed
+     * @param offset the offset of the LSA
+     * @return an LSA without body
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     * @throws ParseException           if the bytes cannot be parsed
+     */
+    public static OspfLsa parseHeader(final byte[] bytes, final int offset) throws ParseException {
+        validateObject("bytes", bytes);
+        if (bytes.length - offset < HEADER_LENGTH) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid length", offset);
+        }
+        final OspfLsa lsa = new OspfLsa();
+        int i = offset;
+        lsa.age = readChar(bytes[i++], bytes[i++]);
+        lsa.options = bytes[i++];
+        lsa.type = Type.parse(bytes[i++]);
+        lsa.linkStateId = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+        lsa.advertisingRouter = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+        lsa.sequenceNumber = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+        lsa.checksum = readChar(bytes[i++], bytes[i++]);
+        lsa.length = readChar(bytes[i++], bytes[i]);
+        if (lsa.length < HEADER_LENGTH) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid length", offset);
+        }
+        return lsa;
+    }
+
+    /**
+     * Parses an LSA from the given bytes, e.g. from a Link State Update packet.
+     *
+     * @param bytes  the bytes to be parsed
+     * @param offset the offset of the LSA
+     * @return an LSA
+     * @throws IllegalArgumentException if {@code bytes} is not set
+     * @throws ParseException           if the bytes cannot be parsed
+     */
+    public static OspfLsa parse(final byte[] bytes, final int offset) throws ParseException {
+        final OspfLsa lsa = parseHeader(bytes, offset);
+        final int end = offset + lsa.length;
+        if (end > bytes.length) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid length", offset);
+        }
+        int i = offset + HEADER_LENGTH;
+        switch (lsa.type) {
+            case ROUTER:
+                checkLength(i + 4, end, offset);
+                lsa.flags = bytes[i];
+                final int n = readChar(bytes[i + 2], bytes[i + 3]);
+                i += 4;
+                lsa.links = new ArrayList<>(Math.min(n, (end - i) / 12));
+                for (int j = 0; j < n; j++) {
+                    if (i + 12 > end) {
+                        Metrics.failure(Metrics.Layer.OSPF);
+                        throw new ParseException("invalid number of links", offset);
+                    }
+                    final Link link = new Link();
+                    link.linkId = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                    link.linkData = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                    link.type = bytes[i++];
+                    final int tos = bytes[i++] & 0xff;
+                    link.metric = readChar(bytes[i++], bytes[i++]);
+                    lsa.links.add(link);
+                    // skip the TOS metrics
+                    i += tos * 4;
+                }
+                break;
+            case NETWORK:
+                checkLength(i + 4, end, offset);
+                lsa.networkMask = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                lsa.attachedRouters = new int[(end - i) / 4];
+                for (int j = 0; j < lsa.attachedRouters.length; j++) {
+                    lsa.attachedRouters[j] = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                }
+                break;
+            case SUMMARY_NETWORK:
+            case SUMMARY_ASBR:
+                checkLength(i + 8, end, offset);
+                lsa.networkMask = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                lsa.metric = readInt((byte) 0, bytes[i + 1], bytes[i + 2], bytes[i + 3]);
+                break;
+            case AS_EXTERNAL:
+                checkLength(i + 16, end, offset);
+                lsa.networkMask = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                lsa.flags = (byte) (bytes[i] & 0x80);
+                lsa.metric = readInt((byte) 0, bytes[i + 1], bytes[i + 2], bytes[i + 3]);
+                i += 4;
+                lsa.forwardingAddress = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+                lsa.routeTag = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i]);
+                break;
+            default:
+                lsa.body = Arrays.copyOfRange(bytes, i, end);
+        }
+        return lsa;
+    }
+
+    /**
+     * Checks that the fixed part of the body of an LSA ends within the LSA.
+     *
+     * @param i      the offset of the end of the fixed part
+     * @param end    the offset of the end of the LSA
+     * @param offset the offset of the LSA
+     * @throws ParseException if the fixed part does not end within the LSA
+     */
+    private static void checkLength(final int i, final int end, final int offset) throws ParseException {
+        if (i > end) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid length", offset);
+        }
+    }
+
+    private char age;
+    private byte options;
+    private Type type;
+    private int linkStateId;
+    private int advertisingRouter;
+    private int sequenceNumber;
+    private char checksum;
+    private char length;
+    private byte flags;
+    private List<Link> links;
+    private int networkMask;
+    private int[] attachedRouters;
+    private int metric;
+    private int forwardingAddress;
+    private int routeTag;
+    private byte[] body;
+
+    public char getAge() {
+        return age;
+    }
+
+    public OspfLsa age(final char age) {
+        this.age = age;
+        return this;
+    }
+
+    public byte getOptions() {
+        return options;
+    }
+
+    public OspfLsa options(final byte options) {
+        this.options = options;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public OspfLsa type(final Type type) {
+        this.type = type;
+        return this;
+    }
+
+    public int getLinkStateId() {
+        return linkStateId;
+    }
+
+    public OspfLsa linkStateId(final int linkStateId) {
+        this.linkStateId = linkStateId;
+        return this;
+    }
+
+    public int getAdvertisingRouter() {
+        return advertisingRouter;
+    }
+
+    public OspfLsa advertisingRouter(final int advertisingRouter) {
+        this.advertisingRouter = advertisingRouter;
+        return this;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public OspfLsa sequenceNumber(final int sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+        return this;
+    }
+
+    public char getChecksum() {
+        return checksum;
+    }
+
+    public OspfLsa checksum(final char checksum) {
+        this.checksum = checksum;
+        return this;
+    }
+
+    public char getLength() {
+        return length;
+    }
+
+    public OspfLsa length(final char length) {
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Returns the {@code V}, {@code E} and {@code B} bits of a router LSA or the {@code E} bit of an AS external LSA.
+     *
+     * @return the flags of this LSA
+     */
+    public byte getFlags() {
+        return flags;
+    }
+
+    public OspfLsa flags(final byte flags) {
+        this.flags = flags;
+        return this;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    public OspfLsa links(final List<Link> links) {
+        this.links = links;
+        return this;
+    }
+
+    public int getNetworkMask() {
+        return networkMask;
+    }
+
+    public OspfLsa networkMask(final int networkMask) {
+        this.networkMask = networkMask;
+        return this;
+    }
+
+    public int[] getAttachedRouters() {
+        return attachedRouters;
+    }
+
+    public OspfLsa attachedRouters(final int[] attachedRouters) {
+        this.attachedRouters = attachedRouters;
+        return this;
+    }
+
+    public int getMetric() {
+        return metric;
+    }
+
+    public OspfLsa metric(final int metric) {
+        this.metric = metric;
+        return this;
+    }
+
+    public int getForwardingAddress() {
+        return forwardingAddress;
+    }
+
+    public OspfLsa forwardingAddress(final int forwardingAddress) {
+        this.forwardingAddress = forwardingAddress;
+        return this;
+    }
+
+    public int getRouteTag() {
+        return routeTag;
+    }
+
+    public OspfLsa routeTag(final int routeTag) {
+        this.routeTag = routeTag;
+        return this;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public OspfLsa body(final byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if this LSA is being flushed from the routing domain.
+     *
+     * @return {@code true} if this LSA is being flushed from the routing domain
+     */
+    public boolean isMaxAge() {
+        return age >= MAX_AGE;
+    }
+
+    /**
+     * Compares the instances of two LSAs with the same key (see RFC 2328, section 13.1).
+     *
+     * @param lsa the other instance
+     * @return a positive value if this instance is more recent, a negative value if it is less recent or zero if the
+     * instances are considered identical
+     */
+    public int compareInstance(final OspfLsa lsa) {
+        if (sequenceNumber != lsa.sequenceNumber) {
+            return Integer.compare(sequenceNumber, lsa.sequenceNumber);
+        }
+        if (checksum != lsa.checksum) {
+            return Character.compare(checksum, lsa.checksum);
+        }
+        if (isMaxAge() != lsa.isMaxAge()) {
+            return isMaxAge() ? 1 : -1;
+        }
+        // MaxAgeDiff
+        if (Math.abs(age - lsa.age) > 900) {
+            return Character.compare(lsa.age, age);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OspfLsa)) return false;
+        final OspfLsa that = (OspfLsa) o;
+        return getAge() == that.getAge() &&
+                getOptions() == that.getOptions() &&
+                getType() == that.getType() &&
+                getLinkStateId() == that.getLinkStateId() &&
+                getAdvertisingRouter() == that.getAdvertisingRouter() &&
+                getSequenceNumber() == that.getSequenceNumber() &&
+                getChecksum() == that.getChecksum() &&
+                getLength() == that.getLength() &&
+                getFlags() == that.getFlags() &&
+                Objects.equals(getLinks(), that.getLinks()) &&
+                getNetworkMask() == that.getNetworkMask() &&
+                Arrays.equals(getAttachedRouters(), that.getAttachedRouters()) &&
+                getMetric() == that.getMetric() &&
+                getForwardingAddress() == that.getForwardingAddress() &&
+                getRouteTag() == that.getRouteTag() &&
+                Arrays.equals(getBody(), that.getBody());
+    }
+}
@@ -1,10 +1,15 @@
 package com.probendi.libcap;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 import org.jetbrains.annotations.Contract;
 
+import static com.probendi.libcap.Parser.readChar;
+import static com.probendi.libcap.Parser.readInt;
 import static com.probendi.libcap.Validator.validateObject;
 
 /**
@@ -15,6 +20,11 @@ import static com.probendi.libcap.Validator.validateObject;
  */
 public class OspfPacket {
 
+    /**
+     * The header's length in octets.
+     */
+    public static final int HEADER_LENGTH = 24;
+
     /**
      * An OSPFv2 packet's type.
      */
@@ -44,6 +54,7 @@ public class OspfPacket {
                 if (type.getType() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.OSPF);
             throw new ParseException("invalid type", b);
         }
     }
@@ -68,6 +79,337 @@ public class OspfPacket {
         }
     }
 
+    /**
+     * Returns the length of the body of the given packet, excluding any trailing padding.
+     *
+     * @param packet  the packet
+     * @param type    the expected type
+     * @param minimum the length of the fixed part of the body
+     * @return the length of the body
+     * @throws ParseException if the packet is not of the expected type or its body is shorter than {@code minimum}
+     */
+    private static int bodyLength(final OspfPacket packet, final Type type, final int minimum) throws ParseException {
+        if (packet.type != type) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid type", 1);
+        }
+        final int length = Math.min(packet.length - HEADER_LENGTH, packet.payload.length);
+        if (length < minimum) {
+            Metrics.failure(Metrics.Layer.OSPF);
+            throw new ParseException("invalid length", HEADER_LENGTH);
+        }
+        return length;
+    }
+
+    /**
+     * The body of a Hello packet.
+     */
+    public static class Hello {
+
+        /**
+         * Parses the body of the given Hello packet.
+         *
+         * @param packet the packet to be parsed
+         * @return the body of the given packet
+         * @throws IllegalArgumentException if {@code packet} is not set
+         * @throws ParseException           if the packet is not a Hello packet or cannot be parsed
+         */
+        public static Hello parse(final OspfPacket packet) throws ParseException {
+            validateObject("packet", packet);
+            final int length = bodyLength(packet, Type.HELLO, 20);
+            final byte[] bytes = packet.payload;
+            final Hello hello = new Hello();
+            int i = 0;
+            hello.networkMask = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            hello.helloInterval = readChar(bytes[i++], bytes[i++]);
+            hello.options = bytes[i++];
+            hello.priority = bytes[i++];
+            hello.deadInterval = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            hello.designatedRouter = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            hello.backupDesignatedRouter = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            hello.neighbors = new int[(length - i) / 4];
+            for (int j = 0; j < hello.neighbors.length; j++) {
+                hello.neighbors[j] = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            }
+            return hello;
+        }
+
+        private int networkMask;
+        private char helloInterval;
+        private byte options;
+        private byte priority;
+        private int deadInterval;
+        private int designatedRouter;
+        private int backupDesignatedRouter;
+        private int[] neighbors;
+
+        public int getNetworkMask() {
+            return networkMask;
+        }
+
+        public Hello networkMask(final int networkMask) {
+            this.networkMask = networkMask;
+            return this;
+        }
+
+        public char getHelloInterval() {
+            return helloInterval;
+        }
+
+        public Hello helloInterval(final char helloInterval) {
+            this.helloInterval = helloInterval;
+            return this;
+        }
+
+        public byte getOptions() {
+            return options;
+        }
+
+        public Hello options(final byte options) {
+            this.options = options;
+            return this;
+        }
+
+        public byte getPriority() {
+            return priority;
+        }
+
+        public Hello priority(final byte priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public int getDeadInterval() {
+            return deadInterval;
+        }
+
+        public Hello deadInterval(final int deadInterval) {
+            this.deadInterval = deadInterval;
+            return this;
+        }
+
+        public int getDesignatedRouter() {
+            return designatedRouter;
+        }
+
+        public Hello designatedRouter(final int designatedRouter) {
+            this.designatedRouter = designatedRouter;
+            return this;
+        }
+
+        public int getBackupDesignatedRouter() {
+            return backupDesignatedRouter;
+        }
+
+        public Hello backupDesignatedRouter(final int backupDesignatedRouter) {
+            this.backupDesignatedRouter = backupDesignatedRouter;
+            return this;
+        }
+
+        public int[] getNeighbors() {
+            return neighbors;
+        }
+
+        public Hello neighbors(final int[] neighbors) {
+            this.neighbors = neighbors;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Hello)) return false;
+            final Hello that = (Hello) o;
+            return getNetworkMask() == that.getNetworkMask() &&
+                    getHelloInterval() == that.getHelloInterval() &&
+                    getOptions() == that.getOptions() &&
+                    getPriority() == that.getPriority() &&
+                    getDeadInterval() == that.getDeadInterval() &&
+                    getDesignatedRouter() == that.getDesignatedRouter() &&
+                    getBackupDesignatedRouter() == that.getBackupDesignatedRouter() &&
+                    Arrays.equals(getNeighbors(), that.getNeighbors());
+        }
+    }
+
+    /**
+     * The body of a Database Description packet.
+     */
+    public static class DbDescription {
+
+        /**
+         * Parses the body of the given Database Description packet.
+         *
+         * @param packet the packet to be parsed
+         * @return the body of the given packet
+         * @throws IllegalArgumentException if {@code packet} is not set
+         * @throws ParseException           if the packet is not a Database Description packet or cannot be parsed
+         */
+        public static DbDescription parse(final OspfPacket packet) throws ParseException {
+            validateObject("packet", packet);
+            final int length = bodyLength(packet, Type.DB_DESCRIPTION, 8);
+            final byte[] bytes = packet.payload;
+            final DbDescription description = new DbDescription();
+            int i = 0;
+            description.interfaceMtu = readChar(bytes[i++], bytes[i++]);
+            description.options = bytes[i++];
+            description.flags = bytes[i++];
+            description.sequenceNumber = readInt(bytes[i++], bytes[i++], bytes[i++], bytes[i++]);
+            description.lsaHeaders = new ArrayList<>((length - i) / OspfLsa.HEADER_LENGTH);
+            for (; i + OspfLsa.HEADER_LENGTH <= length; i += OspfLsa.HEADER_LENGTH) {
+                description.lsaHeaders.add(OspfLsa.parseHeader(bytes, i));
+            }
+            return description;
+        }
+
+        private char interfaceMtu;
+        private byte options;
+        private byte flags;
+        private int sequenceNumber;
+        private List<OspfLsa> lsaHeaders;
+
+        public char getInterfaceMtu() {
+            return interfaceMtu;
+        }
+
+        public DbDescription interfaceMtu(final char interfaceMtu) {
+            this.interfaceMtu = interfaceMtu;
+            return this;
+        }
+
+        public byte getOptions() {
+            return options;
+        }
+
+        public DbDescription options(final byte options) {
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * Returns the {@code I}, {@code M} and {@code MS} bits.
+         *
+         * @return the {@code I}, {@code M} and {@code MS} bits
+         */
+        public byte getFlags() {
+            return flags;
+        }
+
+        public DbDescription flags(final byte flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        public int getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        public DbDescription sequenceNumber(final int sequenceNumber) {
+            this.sequenceNumber = sequenceNumber;
+            return this;
+        }
+
+        public List<OspfLsa> getLsaHeaders() {
+            return lsaHeaders;
+        }
+
+        public DbDescription lsaHeaders(final List<OspfLsa> lsaHeaders) {
+            this.lsaHeaders = lsaHeaders;
+            return this;
+        }
+
+        /**
+         * Returns {@code true} if this is the first packet of the sequence.
+         *
+         * @return {@code true} if this is the first packet of the sequence
+         */
+        public boolean isInit() {
+            return (flags & 4) == 4;
+        }
+
+        /**
+         * Returns {@code true} if more packets follow.
+         *
+         * @return {@code true} if more packets follow
+         */
+        public boolean isMore() {
+            return (flags & 2) == 2;
+        }
+
+        /**
+         * Returns {@code true} if the sender is the master.
+         *
+         * @return {@code true} if the sender is the master
+         */
+        public boolean isMaster() {
+            return (flags & 1) == 1;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DbDescription)) return false;
+            final DbDescription that = (DbDescription) o;
+            return getInterfaceMtu() == that.getInterfaceMtu() &&
+                    getOptions() == that.getOptions() &&
+                    getFlags() == that.getFlags() &&
+                    getSequenceNumber() == that.getSequenceNumber() &&
+                    Objects.equals(getLsaHeaders(), that.getLsaHeaders());
+        }
+    }
+
+    /**
+     * The body of a Link State Update packet.
+     */
+    public static class LsUpdate {
+
+        /**
+         * Parses the body of the given Link State Update packet.
+         *
+         * @param packet the packet to be parsed
+         * @return the body of the given packet
+         * @throws IllegalArgumentException if {@code packet} is not set
+         * @throws ParseException           if the packet is not a Link State Update packet or cannot be parsed
+         */
+        public static LsUpdate parse(final OspfPacket packet) throws ParseException {
+            validateObject("packet", packet);
+            bodyLength(packet, Type.LS_UPDATE, 4);
+            final byte[] bytes = packet.payload;
+            final LsUpdate update = new LsUpdate();
+            final int n = readInt(bytes[0], bytes[1], bytes[2], bytes[3]);
+            if (n < 0) {
+                Metrics.failure(Metrics.Layer.OSPF);
+                throw new ParseException("invalid number of LSAs", HEADER_LENGTH);
+            }
+            update.lsas = new ArrayList<>(Math.min(n, bytes.length / OspfLsa.HEADER_LENGTH));
+            int i = 4;
+            for (int j = 0; j < n; j++) {
+                final OspfLsa lsa = OspfLsa.parse(bytes, i);
+                update.lsas.add(lsa);
+                i += lsa.getLength();
+            }
+            return update;
+        }
+
+        private List<OspfLsa> lsas;
+
+        public List<OspfLsa> getLsas() {
+            return lsas;
+        }
+
+        public LsUpdate lsas(final List<OspfLsa> lsas) {
+            this.lsas = lsas;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LsUpdate)) return false;
+            final LsUpdate that = (LsUpdate) o;
+            return Objects.equals(getLsas(), that.getLsas());
+        }
+    }
+
     /**
      * Parses an OSPF packet from the given bytes.
      *
@@ -78,6 +420,7 @@ public class OspfPacket {
      */
     public static OspfPacket parse(final byte[] bytes) throws ParseException {
         validateObject("record", bytes);
+        final long start = Metrics.start();
         final OspfPacket packet = new OspfPacket();
         packet.version = bytes[0];
         packet.type = Type.parse(bytes[1]);
@@ -87,7 +430,8 @@ public class OspfPacket {
         packet.checksum = Parser.readChar(bytes[12], bytes[13]);
         packet.auType = AuType.parse(Parser.readChar(bytes[14], bytes[15]));
         packet.authentication = Arrays.copyOfRange(bytes, 16, 24);
-        packet.payload = Arrays.copyOfRange(bytes, 24, bytes.length);
+        packet.payload = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+        Metrics.stop(Metrics.Layer.OSPF, start);
         return packet;
     }
 
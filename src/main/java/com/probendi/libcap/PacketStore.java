@@ -0,0 +1,253 @@
+package com.probendi.libcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * An append-only, off-heap store of records for long-lived analysis sessions.
+ * <p>
+ * The bytes of the records are copied into large direct buffers (arenas) outside the heap, and the position,
+ * lengths, frame number and timestamp of each record are kept in primitive arrays, so that tens of millions of
+ * records add only a handful of objects to the heap and do not lengthen garbage collection pauses. The size of
+ * the off-heap memory is limited by {@code -XX:MaxDirectMemorySize}.
+ * <p>
+ * Records are accessed by index, either as a read-only {@link ByteBuffer} view of the arena with
+ * {@link #getBytes(int)} or as a {@link Record} whose bytes are copied on demand with {@link #get(int)}. A store
+ * can be read by several threads once the records have been added; adding records is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PacketStore implements Closeable {
+
+    /**
+     * The default size of an arena in octets.
+     */
+    public static final int ARENA_SIZE = 1 << 28;
+
+    private final int arenaSize;
+    private final List<ByteBuffer> arenas = new ArrayList<>();
+    private ByteBuffer arena;
+    private long[] positions = new long[1024];
+    private int[] lengths = new int[1024];
+    private int[] origLengths = new int[1024];
+    private int[] frames = new int[1024];
+    private long[] timestamps = new long[1024];
+    private int size;
+    private long memory;
+    private boolean closed;
+
+    /**
+     * Creates a new {@code PacketStore} object with arenas of {@link #ARENA_SIZE} octets.
+     */
+    public PacketStore() {
+        this(ARENA_SIZE);
+    }
+
+    /**
+     * Creates a new {@code PacketStore} object.
+     *
+     * @param arenaSize the size of an arena in octets; larger records get an arena of their own
+     * @throws IllegalArgumentException if {@code arenaSize} is not positive
+     */
+    public PacketStore(final int arenaSize) {
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("arena size must be positive");
+        }
+        this.arenaSize = arenaSize;
+    }
+
+    /**
+     * Copies the given record into this store.
+     *
+     * @param record the record
+     * @return the index of the record
+     * @throws IllegalArgumentException if {@code record} or its bytes are not set
+     * @throws IllegalStateException    if this store is full or closed
+     */
+    public int add(final Record record) {
+        validateObject("record", record);
+        final byte[] bytes = record.getBytes();
+        validateObject("bytes", bytes);
+        if (closed) {
+            throw new IllegalStateException("store is closed");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("store is full");
+        }
+        if (arena == null || arena.remaining() < bytes.length) {
+            arena = ByteBuffer.allocateDirect(Math.max(arenaSize, bytes.length));
+            arenas.add(arena);
+            memory += arena.capacity();
+        }
+        if (size == positions.length) {
+            final int length = size + (size >> 1);
+            positions = Arrays.copyOf(positions, length);
+            lengths = Arrays.copyOf(lengths, length);
+            origLengths = Arrays.copyOf(origLengths, length);
+            frames = Arrays.copyOf(frames, length);
+            timestamps = Arrays.copyOf(timestamps, length);
+        }
+        positions[size] = (long) (arenas.size() - 1) << 32 | arena.position();
+        lengths[size] = bytes.length;
+        origLengths[size] = (int) record.getOrig_len();
+        frames[size] = record.getFrame();
+        timestamps[size] = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        arena.put(bytes);
+        return size++;
+    }
+
+    /**
+     * Adds all the records read by the given parser.
+     *
+     * @param parser the parser
+     * @return the number of added records
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if the file could not be read
+     */
+    public int addAll(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        int n = 0;
+        Record record;
+        while ((record = parser.readRecord()) != null) {
+            add(record);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the off-heap memory allocated by this store.
+     *
+     * @return the off-heap memory in octets
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns a read-only view of the bytes of the given record, without copying them.
+     *
+     * @param index the index of the record
+     * @return a read-only view of the bytes of the record, whose position is {@code 0}
+     * @throws IndexOutOfBoundsException if {@code index} is out of range
+     */
+    public ByteBuffer getBytes(final int index) {
+        checkIndex(index);
+        final int position = (int) positions[index];
+        return arenas.get((int) (positions[index] >>> 32)).asReadOnlyBuffer()
+                .position(position).limit(position + lengths[index]).slice();
+    }
+
+    /**
+     * Returns the given record, copying its bytes into the heap.
+     *
+     * @param index the index of the record
+     * @return the record
+     * @throws IndexOutOfBoundsException if {@code index} is out of range
+     */
+    public Record get(final int index) {
+        final byte[] bytes = new byte[getLength(index)];
+        getBytes(index).get(bytes);
+        final long timestamp = timestamps[index];
+        return new Record().frame(frames[index]).ts_sec((int) (timestamp / 1_000_000L))
+                .ts_usec((int) (timestamp % 1_000_000L)).incl_len(bytes.length).orig_len(origLengths[index])
+                .bytes(bytes);
+    }
+
+    /**
+     * Returns the number of captured octets of the given record.
+     *
+     * @param index the index of the record
+     * @return the number of captured octets
+     * @throws IndexOutOfBoundsException if {@code index} is out of range
+     */
+    public int getLength(final int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /**
+     * Returns the original length of the given record.
+     *
+     * @param index the index of the record
+     * @return the original length in octets
+     * @throws IndexOutOfBoundsException if {@code index} is out of range
+     */
+    public int getOrigLength(final int index) {
+        checkIndex(index);
+        return origLengths[index];
+    }
+
+    /**
+     * Returns the timestamp of the given record.
+     *
+     * @param index the index of the record
+     * @return the timestamp in microseconds since the epoch
+     * @throws IndexOutOfBoundsException if {@code index} is out of range
+     */
+    public long getTimestamp(final int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the index of the first record whose timestamp is not before the given time, assuming that records
+     * have been added in chronological order.
+     *
+     * @param time the time in microseconds since the epoch
+     * @return the index of the first record not before {@code time} or {@link #size()} if there is none
+     */
+    public int search(final long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (timestamps[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Releases the arenas, whose memory is returned when they are garbage collected. Views returned by
+     * {@link #getBytes(int)} remain valid as long as they are referenced.
+     */
+    @Override
+    public void close() {
+        arenas.clear();
+        arena = null;
+        positions = new long[0];
+        lengths = new int[0];
+        origLengths = new int[0];
+        frames = new int[0];
+        timestamps = new long[0];
+        size = 0;
+        memory = 0;
+        closed = true;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+    }
+}
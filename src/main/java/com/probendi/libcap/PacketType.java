@@ -12,6 +12,8 @@ public enum PacketType {
     MPLS(0x8847),
     PPPoE_DISC(0x8863),
     PPPoE_SESS(0x8864),
+    DOT1AD(0x88A8),
+    QINQ(0x9100),
     UNSUPPORTED(0);
 
     private char type;
@@ -0,0 +1,295 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * An input stream which decompresses a block-compressed gzip file (BGZF) on several threads.
+ * <p>
+ * A BGZF file is a series of gzip members of at most 64 KiB, each of which records its compressed size in the
+ * {@code BC} subfield of its extra field, so that members can be split without being inflated. The members are read
+ * sequentially and inflated by a pool of threads; the inflated members are kept in an ordered read-ahead queue of
+ * twice the number of threads, which bounds the memory to a few hundred KiB per thread. Plain gzip files are not
+ * block-compressed and are read with {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int TRAILER_LENGTH = 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private byte[] block = EMPTY;
+    private int position;
+    private boolean eof;
+
+    /**
+     * Creates a new {@code ParallelGzipInputStream} object with a thread per processor.
+     *
+     * @param in the compressed stream
+     * @throws IllegalArgumentException if {@code in} is not set
+     */
+    public ParallelGzipInputStream(final InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@code ParallelGzipInputStream} object.
+     *
+     * @param in      the compressed stream
+     * @param threads the number of inflating threads
+     * @throws IllegalArgumentException if {@code in} is not set or {@code threads} is not positive
+     */
+    public ParallelGzipInputStream(final InputStream in, final int threads) {
+        validateObject("in", in);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.in = in;
+        readAhead = 2 * threads;
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "libcap-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns {@code true} if the given stream starts with the gzip magic number. The stream is not consumed.
+     *
+     * @param in the stream, which must support {@link InputStream#mark(int)}
+     * @return {@code true} if the stream is gzip-compressed
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isGzip(final InputStream in) throws IOException {
+        final byte[] bytes = peek(in, 2);
+        return (bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b;
+    }
+
+    /**
+     * Returns {@code true} if the given stream starts with a BGZF block. The stream is not consumed.
+     *
+     * @param in the stream, which must support {@link InputStream#mark(int)}
+     * @return {@code true} if the stream is block-compressed
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isBgzf(final InputStream in) throws IOException {
+        final byte[] bytes = peek(in, HEADER_LENGTH + 6);
+        // the BC subfield comes first in the files written by bgzip
+        return isHeader(bytes) && getShort(bytes, 10) >= 6 && bytes[12] == 'B' && bytes[13] == 'C' &&
+                getShort(bytes, 14) == 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (position == block.length) {
+            if (!next()) {
+                return -1;
+            }
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        while (position == block.length) {
+            if (!next()) {
+                return -1;
+            }
+        }
+        final int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+        block = EMPTY;
+        position = 0;
+        eof = true;
+        in.close();
+    }
+
+    private boolean next() throws IOException {
+        while (!eof && pending.size() < readAhead) {
+            final byte[] member = readMember();
+            if (member == null) {
+                eof = true;
+            } else {
+                pending.add(executor.submit(() -> inflate(member)));
+            }
+        }
+        final Future<byte[]> future = pending.poll();
+        if (future == null) {
+            return false;
+        }
+        try {
+            block = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while inflating");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Reads the next member.
+     *
+     * @return the next member or {@code null} if there are no more members
+     * @throws IOException if the stream could not be read or the member is not a BGZF block
+     */
+    private byte[] readMember() throws IOException {
+        final int n = readFully(header, 0, HEADER_LENGTH);
+        if (n == 0) {
+            return null;
+        }
+        if (n < HEADER_LENGTH || !isHeader(header)) {
+            throw new IOException("invalid BGZF block");
+        }
+        final int xlen = getShort(header, 10);
+        final byte[] extra = new byte[xlen];
+        if (readFully(extra, 0, xlen) < xlen) {
+            throw new IOException("truncated BGZF block");
+        }
+        int size = -1;
+        for (int i = 0; i + 4 <= xlen; i += 4 + getShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && getShort(extra, i + 2) == 2 && i + 6 <= xlen) {
+                size = getShort(extra, i + 4) + 1;
+            }
+        }
+        if (size < HEADER_LENGTH + xlen + TRAILER_LENGTH) {
+            throw new IOException("invalid BGZF block");
+        }
+        final byte[] member = new byte[size];
+        System.arraycopy(header, 0, member, 0, HEADER_LENGTH);
+        System.arraycopy(extra, 0, member, HEADER_LENGTH, xlen);
+        final int offset = HEADER_LENGTH + xlen;
+        if (readFully(member, offset, size - offset) < size - offset) {
+            throw new IOException("truncated BGZF block");
+        }
+        return member;
+    }
+
+    private static byte[] inflate(final byte[] member) throws IOException {
+        final int offset = HEADER_LENGTH + getShort(member, 10);
+        final int length = member.length - offset - TRAILER_LENGTH;
+        final int crc = getInt(member, member.length - TRAILER_LENGTH);
+        final int size = getInt(member, member.length - 4);
+        if (size < 0 || size > 0x10000) {
+            throw new IOException("invalid BGZF block size");
+        }
+        final byte[] bytes = new byte[size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, offset, length);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                final int r = inflater.inflate(bytes, n, size - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n < size) {
+                throw new IOException("truncated BGZF block");
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("invalid BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+        if ((int) checksum.getValue() != crc) {
+            throw new IOException("corrupt BGZF block");
+        }
+        return bytes;
+    }
+
+    private int readFully(final byte[] bytes, final int offset, final int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            final int r = in.read(bytes, offset + n, length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    private static byte[] peek(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.mark(length);
+        try {
+            int n = 0;
+            while (n < length) {
+                final int r = in.read(bytes, n, length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+        } finally {
+            in.reset();
+        }
+        return bytes;
+    }
+
+    private static boolean isHeader(final byte[] bytes) {
+        // magic number, deflate and FEXTRA
+        return (bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b && bytes[2] == 8 && (bytes[3] & 4) != 0;
+    }
+
+    private static int getShort(final byte[] bytes, final int i) {
+        return (bytes[i + 1] & 0xff) << 8 | bytes[i] & 0xff;
+    }
+
+    private static int getInt(final byte[] bytes, final int i) {
+        return getShort(bytes, i + 2) << 16 | getShort(bytes, i);
+    }
+}
@@ -6,11 +6,15 @@ import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -25,11 +29,41 @@ import static com.probendi.libcap.Validator.validateObject;
  */
 public class Parser implements Closeable {
 
+    /**
+     * Receives the byte ranges skipped by a tolerant parser.
+     */
+    @FunctionalInterface
+    public interface SkipListener {
+
+        /**
+         * Invoked when a corrupt or truncated byte range has been skipped.
+         *
+         * @param offset the offset of the skipped range in the file
+         * @param length the length of the skipped range in octets
+         */
+        void onSkip(long offset, long length);
+    }
+
     /**
      * The global header's length in octets.
      */
     public static final int HEADER_LENGTH = 32 * 6 / 8;
 
+    /**
+     * The maximum length of a record accepted by a tolerant parser when the snapshot length is not valid.
+     */
+    public static final int MAX_SNAPLEN = 0x40000;
+
+    /**
+     * The number of seconds a timestamp may go back before a tolerant parser considers the record corrupt.
+     */
+    public static final int MAX_REORDER = 60;
+
+    /**
+     * The number of seconds a timestamp may jump ahead when a tolerant parser resynchronizes.
+     */
+    public static final int MAX_GAP = 86400;
+
     private static final String PCAP_HDR = "magic_number: 0x%x\tversion_major: 0x%x\tversion_minor: 0x%x\t" +
             "thiszone: 0x%x\tsigfigs: 0x%x\tsnaplen: %x\tnetwork: 0x%x\t";
     private static final String PCAPREC_HDR = "ts_sec: 0x%x\tts_usec: 0x%x\tinc_len: %x\torig_len: 0x%x";
@@ -43,12 +77,20 @@ public class Parser implements Closeable {
     protected int network;
 
     private final Logger logger = Logger.getLogger(this.getClass().getName());
-    private final InputStream in;
+    private final BufferedInputStream in;
+    private final FileChannel channel;
+    private final byte[] header = new byte[Record.HEADER_LENGTH];
     // size increased for handling loopback interface of a Unix device
-    private final byte[] buffer = new byte[0x10000];
+    private byte[] buffer = new byte[0x10000];
+    private byte[] window;
 
     private int frame = 0;
     private boolean swapped = false;
+    private boolean nanos = false;
+    private long position = HEADER_LENGTH;
+    private SkipListener listener;
+    private long lastSec = -1;
+    private long skipped;
 
     /**
      * Formats the given bytes into a long.
@@ -88,7 +130,7 @@ public class Parser implements Closeable {
      */
     @Contract(pure = true)
     public static char readChar(final byte b0, final byte b1) {
-        return ByteBuffer.wrap(new byte[]{b0, b1}).getChar();
+        return (char) ((b0 & 0xff) << 8 | b1 & 0xff);
     }
 
     /**
@@ -102,7 +144,7 @@ public class Parser implements Closeable {
      */
     @Contract(pure = true)
     public static int readInt(final byte b0, final byte b1, final byte b2, final byte b3) {
-        return ByteBuffer.wrap(new byte[]{b0, b1, b2, b3}).getInt();
+        return (b0 & 0xff) << 24 | (b1 & 0xff) << 16 | (b2 & 0xff) << 8 | b3 & 0xff;
     }
 
 
@@ -123,6 +165,9 @@ public class Parser implements Closeable {
 
     /**
      * Creates a new {@code Parser} object for the given file.
+     * <p>
+     * Gzip-compressed files are detected from their magic number and decompressed while they are read; block
+     * compressed files (BGZF) are decompressed on several threads by a {@link ParallelGzipInputStream}.
      *
      * @param file the file to be parsed
      * @throws IllegalArgumentException if {@code file} is not set
@@ -130,10 +175,47 @@ public class Parser implements Closeable {
      */
     public Parser(final Path file) throws IOException {
         validateObject("file", file);
-        in = new BufferedInputStream(new FileInputStream(file.toFile()));
+        final FileInputStream fis = new FileInputStream(file.toFile());
+        final BufferedInputStream bis = new BufferedInputStream(fis);
+        in = decompress(bis);
+        // the offsets of the records are file offsets only if the file is not compressed
+        channel = in == bis ? fis.getChannel() : null;
+        readGlobalHeader();
+    }
+
+    /**
+     * Creates a new {@code Parser} object for the given stream, e.g. the standard output of {@code tcpdump -w -}.
+     * <p>
+     * The stream is read as it becomes available: {@link #readRecord()} blocks until a whole record has been
+     * received, and only a bounded buffer is kept, so a slow reader makes the writer block instead of growing the
+     * memory. See {@link RecordStream} to read the records ahead on another thread. Gzip-compressed streams are
+     * decompressed as well.
+     *
+     * @param in the stream to be parsed
+     * @throws IllegalArgumentException if {@code in} is not set
+     * @throws IOException              if the global header could not be read
+     */
+    public Parser(final InputStream in) throws IOException {
+        validateObject("in", in);
+        final BufferedInputStream bis = in instanceof BufferedInputStream ? (BufferedInputStream) in :
+                new BufferedInputStream(in);
+        this.in = decompress(bis);
+        channel = null;
         readGlobalHeader();
     }
 
+    /**
+     * Creates a new {@code Parser} object for the given channel, e.g. a socket or a pipe.
+     *
+     * @param channel the channel to be parsed
+     * @throws IllegalArgumentException if {@code channel} is not set
+     * @throws IOException              if the global header could not be read
+     * @see #Parser(InputStream)
+     */
+    public Parser(final ReadableByteChannel channel) throws IOException {
+        this(Channels.newInputStream(validateChannel(channel)));
+    }
+
     /**
      * Creates a new {@code Parser} object for the given array.
      *
@@ -144,6 +226,7 @@ public class Parser implements Closeable {
     protected Parser(final byte[] bytes) throws IOException {
         validateObject("bytes", bytes);
         in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        channel = null;
         readGlobalHeader();
     }
 
@@ -156,29 +239,288 @@ public class Parser implements Closeable {
         }
     }
 
+    /**
+     * Makes this parser tolerant of corrupt and truncated records.
+     * <p>
+     * A tolerant parser checks that each record header is plausible: {@code incl_len} is not larger than the
+     * snapshot length nor than {@code orig_len}, {@code ts_usec} is a fraction of a second and the timestamp does
+     * not go back by more than {@link #MAX_REORDER} seconds. When a header is not plausible, the parser scans ahead
+     * for the next offset where two consecutive plausible headers are found, and reports the skipped range to the
+     * listener. A truncated last record is reported as skipped as well. Plausible records are read as fast as by a
+     * strict parser.
+     *
+     * @param listener the listener of the skipped ranges
+     * @return this parser
+     * @throws IllegalArgumentException if {@code listener} is not set
+     */
+    public Parser tolerant(final SkipListener listener) {
+        validateObject("listener", listener);
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Returns the number of octets skipped by a tolerant parser.
+     *
+     * @return the number of skipped octets
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
     /**
      * Reads the next record.
      *
      * @return the next record or {@code null} if there are no more records
-     * @throws IOException if the file could not be read
+     * @throws IOException if the file could not be read or, unless this parser is tolerant, {@code incl_len} is
+     *                     not valid
      */
     public Record readRecord() throws IOException {
-        final int ts_sec = readInt(); // guint32
-        final int ts_usec = readInt(); // guint32
-        final int incl_len = readInt(); // guint32
-        final int orig_len = readInt(); // guint32
-        logger.finest(String.format(PCAPREC_HDR, ts_sec, ts_usec, incl_len, orig_len));
+        final Record record = new Record();
+        return readRecord(record) ? record : null;
+    }
+
+    /**
+     * Reads the next record into the given record, whose bytes are reused if they have the length of the next
+     * record.
+     * <p>
+     * This method lets a caller recycle preallocated records, e.g. the slots of a {@link Pipeline}; the fields of
+     * the given record are overwritten.
+     *
+     * @param record the record to be filled
+     * @return {@code true} if a record has been read or {@code false} if there are no more records
+     * @throws IllegalArgumentException if {@code record} is not set
+     * @throws IOException              if the file could not be read or, unless this parser is tolerant,
+     *                                  {@code incl_len} is not valid
+     */
+    public boolean readRecord(final Record record) throws IOException {
+        validateObject("record", record);
+        while (true) {
+            if (listener != null) {
+                in.mark(getWindowLength() + 1);
+            }
+            final int h = readFully(header, Record.HEADER_LENGTH);
+            if (h < Record.HEADER_LENGTH) {
+                if (h > 0) {
+                    truncated(h);
+                }
+                return false;
+            }
+            final int ts_sec = getInt(header, 0); // guint32
+            final int ts_usec = getInt(header, 4); // guint32
+            final int incl_len = getInt(header, 8); // guint32
+            final int orig_len = getInt(header, 12); // guint32
+            // formatting is deferred, so that nothing is allocated per record unless FINEST is enabled
+            if (logger.isLoggable(Level.FINEST)) {
+                logger.finest(() -> String.format(PCAPREC_HDR, ts_sec, ts_usec, incl_len, orig_len));
+            }
 
-        if (incl_len == -1) {
-            return null;
+            if (listener != null && !isPlausible(ts_sec, ts_usec, incl_len, orig_len, lastSec, false)) {
+                resync();
+                continue;
+            }
+            if (incl_len < 0 || incl_len > Math.max(getMaxLength(), 0x10000)) {
+                throw new IOException("invalid incl_len " + Integer.toUnsignedString(incl_len) + " at offset " +
+                        position);
+            }
+            Trace.record(Trace.RECORD, frame + 1, ts_sec, ts_usec, incl_len, orig_len);
+            if (incl_len > buffer.length) {
+                buffer = new byte[incl_len];
+            }
+            final int n = readFully(buffer, incl_len);
+            // the last packet may have been truncated
+            if (n < incl_len) {
+                Trace.record(Trace.TRUNCATED, frame + 1, ts_sec, ts_usec, incl_len, n);
+                truncated(Record.HEADER_LENGTH + n);
+                return false;
+            }
+            byte[] bytes = record.getBytes();
+            if (bytes != null && bytes.length == incl_len) {
+                System.arraycopy(buffer, 0, bytes, 0, incl_len);
+            } else {
+                bytes = Arrays.copyOf(buffer, incl_len);
+            }
+            Metrics.record(bytes, incl_len);
+            final long offset = position;
+            position += Record.HEADER_LENGTH + incl_len;
+            lastSec = Integer.toUnsignedLong(ts_sec);
+            record.frame(++frame).ts_sec(ts_sec).ts_usec(ts_usec).incl_len(incl_len).orig_len(orig_len).bytes(bytes)
+                    .offset(offset);
+            return true;
         }
-        final int n = in.read(buffer, 0, incl_len);
-        final byte[] bytes = Arrays.copyOfRange(buffer, 0, n);
-        // the last packet may have been truncated
-        if (incl_len != bytes.length) {
-            return null;
+    }
+
+    /**
+     * Returns the byte order of the headers of the parsed file.
+     *
+     * @return the byte order of the headers of the parsed file
+     */
+    ByteOrder getByteOrder() {
+        return swapped ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Returns the channel of the parsed file.
+     *
+     * @return the channel of the parsed file or {@code null} if this parser does not read from a file
+     */
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns a decompressing stream if the given stream is gzip-compressed.
+     *
+     * @param in the stream
+     * @return the given stream or a decompressing stream
+     * @throws IOException if the stream could not be read
+     */
+    private static BufferedInputStream decompress(final BufferedInputStream in) throws IOException {
+        if (ParallelGzipInputStream.isBgzf(in)) {
+            return new BufferedInputStream(new ParallelGzipInputStream(in), 0x10000);
+        }
+        if (ParallelGzipInputStream.isGzip(in)) {
+            // multi-member files are decompressed sequentially, as the members can only be found by inflating them
+            return new BufferedInputStream(new GZIPInputStream(in, 0x10000), 0x10000);
+        }
+        return in;
+    }
+
+    private static ReadableByteChannel validateChannel(final ReadableByteChannel channel) {
+        validateObject("channel", channel);
+        return channel;
+    }
+
+    private void truncated(final int length) {
+        Metrics.truncated();
+        if (listener != null) {
+            skip(position, length);
+        }
+        position += length;
+    }
+
+    private void skip(final long offset, final long length) {
+        skipped += length;
+        listener.onSkip(offset, length);
+    }
+
+    /**
+     * Skips ahead to the next offset where two consecutive plausible record headers are found, or to the end of the
+     * file.
+     *
+     * @throws IOException if the file could not be read
+     */
+    private void resync() throws IOException {
+        in.reset();
+        if (window == null) {
+            window = new byte[getWindowLength()];
+        }
+        final int maxLength = getMaxLength();
+        long length = 0;
+        // the current offset is known to be corrupt
+        int from = 1;
+        while (true) {
+            in.mark(window.length + 1);
+            final int m = readFully(window, window.length);
+            final boolean end = m < window.length;
+            // in a full window, the header following a candidate must fit in the window
+            final int last = end ? m - Record.HEADER_LENGTH : m - 2 * Record.HEADER_LENGTH - maxLength;
+            for (int i = from; i <= last; i++) {
+                if (isCandidate(i, m, end)) {
+                    in.reset();
+                    skipFully(i);
+                    length += i;
+                    skip(position, length);
+                    position += length;
+                    return;
+                }
+            }
+            if (end) {
+                length += m;
+                skip(position, length);
+                position += length;
+                return;
+            }
+            in.reset();
+            skipFully(last + 1);
+            length += last + 1;
+            from = 0;
+        }
+    }
+
+    private boolean isCandidate(final int i, final int m, final boolean end) {
+        final int ts_sec = getInt(window, i);
+        final int incl_len = getInt(window, i + 8);
+        if (!isPlausible(ts_sec, getInt(window, i + 4), incl_len, getInt(window, i + 12), lastSec, true)) {
+            return false;
+        }
+        final int next = i + Record.HEADER_LENGTH + incl_len;
+        if (end && next + Record.HEADER_LENGTH > m) {
+            // the candidate is the last record
+            return next <= m;
+        }
+        return isPlausible(getInt(window, next), getInt(window, next + 4), getInt(window, next + 8),
+                getInt(window, next + 12), Integer.toUnsignedLong(ts_sec), true);
+    }
+
+    private boolean isPlausible(final int ts_sec, final int ts_usec, final int incl_len, final int orig_len,
+                                final long reference, final boolean resync) {
+        if (incl_len < 0 || incl_len > getMaxLength() || Integer.compareUnsigned(incl_len, orig_len) > 0 ||
+                ts_usec < 0 || ts_usec >= (nanos ? 1_000_000_000 : 1_000_000)) {
+            return false;
+        }
+        if (reference < 0) {
+            return true;
+        }
+        final long sec = Integer.toUnsignedLong(ts_sec);
+        return sec >= reference - MAX_REORDER && (!resync || sec <= reference + MAX_GAP);
+    }
+
+    private int getMaxLength() {
+        return snaplen > 0 && snaplen <= MAX_SNAPLEN ? snaplen : MAX_SNAPLEN;
+    }
+
+    private int getWindowLength() {
+        return 2 * (2 * Record.HEADER_LENGTH + getMaxLength());
+    }
+
+    private int getInt(final byte[] bytes, final int i) {
+        return swapped ? (bytes[i + 3] & 0xff) << 24 | (bytes[i + 2] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 |
+                bytes[i] & 0xff : readInt(bytes[i], bytes[i + 1], bytes[i + 2], bytes[i + 3]);
+    }
+
+    /**
+     * Reads the given number of octets, unless the end of the file is reached.
+     *
+     * @param bytes  the destination
+     * @param length the number of octets to read
+     * @return the number of octets read
+     * @throws IOException if the file could not be read
+     */
+    private int readFully(final byte[] bytes, final int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            final int r = in.read(bytes, n, length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            final long n = in.skip(length);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                length--;
+            } else {
+                length -= n;
+            }
         }
-        return new Record().frame(++frame).ts_sec(ts_sec).ts_usec(ts_usec).incl_len(incl_len).orig_len(orig_len).bytes(bytes);
     }
 
     /**
@@ -188,13 +530,19 @@ public class Parser implements Closeable {
      */
     protected void readGlobalHeader() throws IOException {
         magic_number = readInt(); // guint32
-        swapped = magic_number == 0xd4c3b2a1;
+        swapped = magic_number == 0xd4c3b2a1 || magic_number == 0x4d3cb2a1;
+        nanos = magic_number == 0xa1b23c4d || magic_number == 0x4d3cb2a1;
         version_major = readShort(); // guint16
         version_minor = readShort(); // guint16
         thiszone = readInt(); // gint32
         sigfigs = readInt(); // guint32
         snaplen = readInt(); // guint32
         network = readInt(); // guint32
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(() -> String.format(PCAP_HDR, magic_number, (int) version_major, (int) version_minor, thiszone,
+                    sigfigs, snaplen, network));
+        }
+        Trace.record(Trace.GLOBAL_HEADER, 0, magic_number, snaplen, network, 0);
     }
 
     /**
@@ -204,12 +552,13 @@ public class Parser implements Closeable {
      * @throws IOException if the file could not be read
      */
     private int readInt() throws IOException {
-        final byte b0 = (byte) in.read();
-        final byte b1 = (byte) in.read();
-        final byte b2 = (byte) in.read();
-        final byte b3 = (byte) in.read();
-        final byte[] bytes = swapped ? new byte[]{b3, b2, b1, b0} : new byte[]{b0, b1, b2, b3};
-        return ByteBuffer.wrap(bytes).getInt();
+        final int b0 = in.read();
+        final int b1 = in.read();
+        final int b2 = in.read();
+        final int b3 = in.read();
+        // at the end of the stream every byte is -1, hence the int is -1 as well
+        return swapped ? (b3 & 0xff) << 24 | (b2 & 0xff) << 16 | (b1 & 0xff) << 8 | b0 & 0xff :
+                (b0 & 0xff) << 24 | (b1 & 0xff) << 16 | (b2 & 0xff) << 8 | b3 & 0xff;
     }
 
     /**
@@ -219,9 +568,8 @@ public class Parser implements Closeable {
      * @throws IOException if the file could not be read
      */
     private char readShort() throws IOException {
-        final byte b0 = (byte) in.read();
-        final byte b1 = (byte) in.read();
-        final byte[] bytes = swapped ? new byte[]{b1, b0} : new byte[]{b0, b1};
-        return ByteBuffer.wrap(bytes).getChar();
+        final int b0 = in.read();
+        final int b1 = in.read();
+        return (char) (swapped ? (b1 & 0xff) << 8 | b0 & 0xff : (b0 & 0xff) << 8 | b1 & 0xff);
     }
 }
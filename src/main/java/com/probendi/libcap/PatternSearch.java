@@ -0,0 +1,438 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Searches records for many byte strings at once with an Aho-Corasick automaton.
+ * <p>
+ * The automaton is built once and stored in primitive arrays: the transitions of each state are sorted by symbol
+ * in a compressed sparse row layout, the transitions of the root are a dense table, and each state has a failure
+ * link and a dictionary link to the next state with matches, so that a scan reads each octet once and follows no
+ * object references. A search reports every occurrence of every pattern, overlapping ones included.
+ * <p>
+ * The automaton is immutable and can be shared by several threads: {@link #search(Parser, int)} reads the records
+ * in batches and scans them on a pool of threads.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PatternSearch {
+
+    /**
+     * The part of a record to be searched.
+     */
+    public enum Scope {
+        /**
+         * The whole frame.
+         */
+        FRAME,
+        /**
+         * The TCP or UDP payload only; records without a TCP or UDP header are not searched.
+         */
+        PAYLOAD
+    }
+
+    /**
+     * Receives the matches of a scan.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Invoked for each match.
+         *
+         * @param offset  the offset of the first octet of the match
+         * @param pattern the index of the pattern
+         */
+        void onMatch(int offset, int pattern);
+    }
+
+    /**
+     * An occurrence of a pattern in a record.
+     */
+    public static final class Match {
+        private final int frame;
+        private final int offset;
+        private final int pattern;
+
+        Match(final int frame, final int offset, final int pattern) {
+            this.frame = frame;
+            this.offset = offset;
+            this.pattern = pattern;
+        }
+
+        public int getFrame() {
+            return frame;
+        }
+
+        /**
+         * Returns the offset of the match in the bytes of the record.
+         *
+         * @return the offset of the first octet of the match
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the index of the matched pattern.
+         *
+         * @return the index of the matched pattern
+         */
+        public int getPattern() {
+            return pattern;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Match)) return false;
+            final Match that = (Match) o;
+            return frame == that.frame && offset == that.offset && pattern == that.pattern;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(frame, offset, pattern);
+        }
+
+        @Override
+        public String toString() {
+            return "frame: " + frame + " offset: " + offset + " pattern: " + pattern;
+        }
+    }
+
+    /**
+     * The number of records scanned by a task of {@link #search(Parser, int)}.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    private static final int MAX_STATES = 1 << 23;
+
+    private final Scope scope;
+    private final int[] lengths;
+    private final int[] root = new int[256];
+    // the transitions of state s are symbols[starts[s]..starts[s + 1]) and targets[starts[s]..starts[s + 1])
+    private final int[] starts;
+    private final byte[] symbols;
+    private final int[] targets;
+    private final int[] fail;
+    private final int[] dictionary;
+    // the patterns ending at state s are outputs[outputStarts[s]..outputStarts[s + 1])
+    private final int[] outputStarts;
+    private final int[] outputs;
+
+    /**
+     * Creates a new {@code PatternSearch} object which searches the whole frames.
+     *
+     * @param patterns the patterns
+     * @throws IllegalArgumentException if {@code patterns} or any pattern is not set or empty
+     */
+    public PatternSearch(final List<byte[]> patterns) {
+        this(patterns, Scope.FRAME);
+    }
+
+    /**
+     * Creates a new {@code PatternSearch} object.
+     *
+     * @param patterns the patterns
+     * @param scope    the part of the records to be searched
+     * @throws IllegalArgumentException if {@code patterns}, any pattern or {@code scope} is not set, any pattern is
+     *                                  empty or the patterns are too long
+     */
+    public PatternSearch(final List<byte[]> patterns, final Scope scope) {
+        validateObject("patterns", patterns);
+        validateObject("scope", scope);
+        this.scope = scope;
+        lengths = new int[patterns.size()];
+
+        // the trie, with the transitions keyed by state and symbol
+        final Map<Long, Integer> trie = new HashMap<>();
+        final List<int[]> ends = new ArrayList<>();
+        int states = 1;
+        for (int p = 0; p < lengths.length; p++) {
+            final byte[] pattern = patterns.get(p);
+            validateObject("pattern", pattern);
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("pattern is empty");
+            }
+            lengths[p] = pattern.length;
+            int state = 0;
+            for (final byte b : pattern) {
+                final long key = (long) state << 8 | b & 0xff;
+                Integer next = trie.get(key);
+                if (next == null) {
+                    if (states == MAX_STATES) {
+                        throw new IllegalArgumentException("patterns are too long");
+                    }
+                    next = states++;
+                    trie.put(key, next);
+                }
+                state = next;
+            }
+            ends.add(new int[]{state, p});
+        }
+
+        // the transitions sorted by state and symbol
+        final long[] edges = new long[trie.size()];
+        int e = 0;
+        for (final Map.Entry<Long, Integer> entry : trie.entrySet()) {
+            edges[e++] = entry.getKey() << 32 | entry.getValue();
+        }
+        Arrays.sort(edges);
+        starts = new int[states + 1];
+        symbols = new byte[edges.length];
+        targets = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            starts[(int) (edges[i] >>> 40) + 1]++;
+            symbols[i] = (byte) (edges[i] >>> 32);
+            targets[i] = (int) edges[i];
+        }
+        for (int s = 0; s < states; s++) {
+            starts[s + 1] += starts[s];
+        }
+
+        outputStarts = new int[states + 1];
+        for (final int[] end : ends) {
+            outputStarts[end[0] + 1]++;
+        }
+        for (int s = 0; s < states; s++) {
+            outputStarts[s + 1] += outputStarts[s];
+        }
+        outputs = new int[ends.size()];
+        final int[] fill = Arrays.copyOf(outputStarts, states);
+        for (final int[] end : ends) {
+            outputs[fill[end[0]]++] = end[1];
+        }
+
+        // the failure and dictionary links, breadth first
+        fail = new int[states];
+        dictionary = new int[states];
+        Arrays.fill(dictionary, -1);
+        final int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int i = starts[0]; i < starts[1]; i++) {
+            root[symbols[i] & 0xff] = targets[i];
+            queue[tail++] = targets[i];
+        }
+        while (head < tail) {
+            final int state = queue[head++];
+            for (int i = starts[state]; i < starts[state + 1]; i++) {
+                final int child = targets[i];
+                final int f = next(fail[state], symbols[i] & 0xff);
+                fail[child] = f;
+                dictionary[child] = outputStarts[f] < outputStarts[f + 1] ? f : dictionary[f];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of patterns.
+     *
+     * @return the number of patterns
+     */
+    public int size() {
+        return lengths.length;
+    }
+
+    /**
+     * Returns the number of states of the automaton.
+     *
+     * @return the number of states of the automaton
+     */
+    public int getStates() {
+        return fail.length;
+    }
+
+    /**
+     * Scans the given octets.
+     *
+     * @param bytes    the octets
+     * @param from     the offset of the first octet to be scanned
+     * @param to       the offset after the last octet to be scanned
+     * @param listener the listener of the matches
+     * @return the number of matches
+     * @throws IllegalArgumentException  if {@code bytes} or {@code listener} is not set
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public int scan(final byte[] bytes, final int from, final int to, final Listener listener) {
+        validateObject("bytes", bytes);
+        validateObject("listener", listener);
+        Objects.checkFromToIndex(from, to, bytes.length);
+        int n = 0;
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = next(state, bytes[i] & 0xff);
+            for (int s = outputStarts[state] < outputStarts[state + 1] ? state : dictionary[state]; s > 0;
+                 s = dictionary[s]) {
+                for (int o = outputStarts[s]; o < outputStarts[s + 1]; o++) {
+                    final int pattern = outputs[o];
+                    listener.onMatch(i - lengths[pattern] + 1, pattern);
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Searches the given record, within the scope of this search.
+     *
+     * @param record the record
+     * @return the matches, in order of their last octet
+     * @throws IllegalArgumentException if {@code record} or its bytes are not set
+     */
+    public List<Match> search(final Record record) {
+        validateObject("record", record);
+        final List<Match> matches = new ArrayList<>();
+        search(record, new Frame(), matches);
+        return matches;
+    }
+
+    /**
+     * Searches the records of the given parser on several threads.
+     *
+     * @param parser  the parser
+     * @param threads the number of scanning threads
+     * @return the matches, in order of frame and of their last octet
+     * @throws IllegalArgumentException if {@code parser} is not set or {@code threads} is not positive
+     * @throws IOException              if the file could not be read or the current thread has been interrupted
+     */
+    public List<Match> search(final Parser parser, final int threads) throws IOException {
+        validateObject("parser", parser);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "libcap-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<Match> matches = new ArrayList<>();
+        // the pending batches, bounded so that the reader does not run ahead of the scanners
+        final Deque<Future<List<Match>>> pending = new ArrayDeque<>();
+        try {
+            List<Record> batch = new ArrayList<>(BATCH_SIZE);
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                batch.add(record);
+                if (batch.size() == BATCH_SIZE) {
+                    if (pending.size() == 2 * threads) {
+                        matches.addAll(get(pending.poll()));
+                    }
+                    pending.add(submit(executor, batch));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(executor, batch));
+            }
+            while (!pending.isEmpty()) {
+                matches.addAll(get(pending.poll()));
+            }
+            return matches;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<List<Match>> submit(final ExecutorService executor, final List<Record> batch) {
+        return executor.submit(() -> {
+            final Frame frame = new Frame();
+            final List<Match> matches = new ArrayList<>();
+            for (final Record record : batch) {
+                search(record, frame, matches);
+            }
+            return matches;
+        });
+    }
+
+    private static List<Match> get(final Future<List<Match>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while searching");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private void search(final Record record, final Frame frame, final List<Match> matches) {
+        final byte[] bytes = record.getBytes();
+        validateObject("bytes", bytes);
+        int from = 0;
+        if (scope == Scope.PAYLOAD) {
+            from = getPayloadOffset(bytes, frame);
+            if (from < 0) {
+                return;
+            }
+        }
+        final int number = record.getFrame();
+        scan(bytes, from, bytes.length, (offset, pattern) -> matches.add(new Match(number, offset, pattern)));
+    }
+
+    /**
+     * Returns the offset of the TCP or UDP payload of the given frame.
+     *
+     * @return the offset of the payload or {@code -1} if the frame has no TCP or UDP header
+     */
+    private static int getPayloadOffset(final byte[] bytes, final Frame frame) {
+        if (!frame.decode(bytes) || frame.getL4Offset() < 0) {
+            return -1;
+        }
+        final int l4 = frame.getL4Offset();
+        final int offset;
+        if (frame.getProtocol() == 6 && l4 + 13 <= bytes.length) {
+            offset = l4 + (bytes[l4 + 12] >> 4 & 0xf) * 4;
+        } else if (frame.getProtocol() == 0x11) {
+            offset = l4 + 8;
+        } else {
+            return -1;
+        }
+        return Math.min(offset, bytes.length);
+    }
+
+    private int next(int state, final int symbol) {
+        while (state != 0) {
+            int low = starts[state];
+            int high = starts[state + 1];
+            // most states have a few transitions: a linear scan beats a binary search
+            while (high - low > 8) {
+                final int mid = (low + high) >>> 1;
+                if ((symbols[mid] & 0xff) < symbol) {
+                    low = mid + 1;
+                } else {
+                    high = mid + 1;
+                }
+            }
+            for (int i = low; i < high; i++) {
+                if ((symbols[i] & 0xff) == symbol) {
+                    return targets[i];
+                }
+            }
+            state = fail[state];
+        }
+        return root[symbol];
+    }
+}
@@ -0,0 +1,188 @@
+package com.probendi.libcap;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * A {@code PCAP} writer.
+ * <p>
+ * The global header is copied from a source {@link Parser}, including its byte order, so that the records of the
+ * source can be written unchanged. Records are written through a {@link FileChannel} with a large direct buffer.
+ * Records which have not been modified can be transferred from the source file with {@link #transfer(Record)},
+ * which lets the operating system copy the bytes: consecutive records are coalesced into a single transfer.
+ * This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PcapWriter implements Closeable, Flushable {
+
+    /**
+     * The default size of the buffer in octets.
+     */
+    public static final int BUFFER_SIZE = 0x100000;
+
+    private final FileChannel out;
+    private final FileChannel source;
+    private final ByteBuffer buffer;
+    private long transferStart = -1;
+    private long transferEnd = -1;
+    private long records;
+
+    /**
+     * Creates a new {@code PcapWriter} object for the given file.
+     *
+     * @param file   the file to be written, which is truncated if it exists
+     * @param parser the parser whose global header is copied
+     * @throws IllegalArgumentException if {@code file} or {@code parser} is not set
+     * @throws IOException              if the file could not be written
+     */
+    public PcapWriter(final Path file, final Parser parser) throws IOException {
+        this(file, parser, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new {@code PcapWriter} object for the given file.
+     *
+     * @param file       the file to be written, which is truncated if it exists
+     * @param parser     the parser whose global header is copied
+     * @param bufferSize the size of the buffer in octets
+     * @throws IllegalArgumentException if {@code file} or {@code parser} is not set or {@code bufferSize} is too small
+     * @throws IOException              if the file could not be written
+     */
+    public PcapWriter(final Path file, final Parser parser, final int bufferSize) throws IOException {
+        validateObject("file", file);
+        validateObject("parser", parser);
+        if (bufferSize < Parser.HEADER_LENGTH + Record.HEADER_LENGTH) {
+            throw new IllegalArgumentException("buffer size is too small");
+        }
+        buffer = ByteBuffer.allocateDirect(bufferSize).order(parser.getByteOrder());
+        source = parser.getChannel();
+        out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // the magic number was read as a big endian int: write it back unchanged
+        buffer.order(ByteOrder.BIG_ENDIAN).putInt(parser.magic_number).order(parser.getByteOrder());
+        buffer.putChar(parser.version_major);
+        buffer.putChar(parser.version_minor);
+        buffer.putInt(parser.thiszone);
+        buffer.putInt(parser.sigfigs);
+        buffer.putInt(parser.snaplen);
+        buffer.putInt(parser.network);
+    }
+
+    /**
+     * Writes the given record, copying its bytes.
+     * <p>
+     * Use this method for records whose bytes have been modified or which have not been read from the source file.
+     *
+     * @param record the record to be written
+     * @throws IllegalArgumentException if {@code record} is not set
+     * @throws IOException              if the file could not be written
+     */
+    public void write(final Record record) throws IOException {
+        validateObject("record", record);
+        flushTransfer();
+        final byte[] bytes = record.getBytes();
+        if (buffer.remaining() < Record.HEADER_LENGTH + bytes.length) {
+            flushBuffer();
+        }
+        buffer.putInt((int) record.getTs_sec());
+        buffer.putInt((int) record.getTs_usec());
+        buffer.putInt(bytes.length);
+        buffer.putInt((int) record.getOrig_len());
+        if (buffer.remaining() >= bytes.length) {
+            buffer.put(bytes);
+        } else {
+            flushBuffer();
+            writeFully(ByteBuffer.wrap(bytes));
+        }
+        records++;
+    }
+
+    /**
+     * Writes the given record by transferring it from the source file, without copying its bytes into the heap.
+     * <p>
+     * The record must have been read by the source parser and must not have been modified. Records which have not
+     * been read from a file are written with {@link #write(Record)}.
+     *
+     * @param record the record to be written
+     * @throws IllegalArgumentException if {@code record} is not set
+     * @throws IOException              if the file could not be written
+     */
+    public void transfer(final Record record) throws IOException {
+        validateObject("record", record);
+        if (source == null || record.getOffset() < 0) {
+            write(record);
+            return;
+        }
+        final long start = record.getOffset();
+        final long end = start + Record.HEADER_LENGTH + record.getIncl_len();
+        if (start != transferEnd) {
+            flushTransfer();
+            transferStart = start;
+        }
+        transferEnd = end;
+        records++;
+    }
+
+    /**
+     * Returns the number of written records.
+     *
+     * @return the number of written records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushTransfer();
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void flushTransfer() throws IOException {
+        if (transferStart < 0) {
+            return;
+        }
+        flushBuffer();
+        long position = transferStart;
+        while (position < transferEnd) {
+            final long n = source.transferTo(position, transferEnd - position, out);
+            if (n <= 0) {
+                throw new IOException("source file truncated at offset " + position);
+            }
+            position += n;
+        }
+        transferStart = -1;
+        transferEnd = -1;
+    }
+
+    private void writeFully(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * A staged pipeline which reads, dissects and analyzes records on several threads, through a preallocated ring of
+ * slots.
+ * <p>
+ * The reader, i.e. the thread calling {@link #run(Parser)}, fills the slots in sequence with
+ * {@link Parser#readRecord(Record)}. The dissector threads share the slots by sequence number: dissector {@code i}
+ * of {@code n} dissects the slots whose sequence is {@code i} modulo {@code n}, so that no slot is ever claimed
+ * twice. The analyzer thread consumes the slots in sequence order, as soon as they have been dissected, and releases
+ * them to the reader. Each stage publishes its progress as a sequence number, which the next stage waits for by
+ * spinning briefly and then parking, so the ring needs neither locks nor a per-record queue node.
+ * <p>
+ * The slots are allocated once: each slot holds a {@link Record}, whose bytes are reused when the next record has the
+ * same length, and a result object created by the given factory, which the dissector fills and the analyzer reads.
+ *
+ * @param <T> the type of the dissection result
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Pipeline<T> {
+
+    /**
+     * Dissects a record into a reusable result, e.g. with the {@code *Packet.parse} methods. Called by the dissector
+     * threads concurrently, on distinct slots.
+     *
+     * @param <T> the type of the dissection result
+     */
+    @FunctionalInterface
+    public interface Dissector<T> {
+
+        /**
+         * Dissects a record.
+         *
+         * @param record the record
+         * @param result the result of the slot, to be overwritten
+         * @throws Exception if the record is malformed; an unchecked exception stops the pipeline instead
+         */
+        void dissect(Record record, T result) throws Exception;
+    }
+
+    /**
+     * Analyzes the dissected records, in the order in which they were read. Called by the analyzer thread only.
+     *
+     * @param <T> the type of the dissection result
+     */
+    @FunctionalInterface
+    public interface Analyzer<T> {
+
+        /**
+         * Analyzes a dissected record. The record and the result are reused once this method returns.
+         *
+         * @param record the record
+         * @param result the dissection result
+         */
+        void analyze(Record record, T result);
+
+        /**
+         * Analyzes a record which could not be dissected. The default implementation does nothing.
+         *
+         * @param record the record
+         * @param e      the exception thrown by the dissector
+         */
+        default void malformed(final Record record, final Exception e) {
+        }
+    }
+
+    /**
+     * The default number of slots.
+     */
+    public static final int SIZE = 4096;
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+
+    private final Record[] records;
+    private final Object[] results;
+    private final Exception[] errors;
+    private final int mask;
+    private final Dissector<T> dissector;
+    private final Analyzer<T> analyzer;
+    private final int dissectors;
+
+    // the last published, dissected and analyzed sequences
+    private final AtomicLong published = new AtomicLong(-1);
+    private final AtomicLong[] dissected;
+    private final AtomicLong analyzed = new AtomicLong(-1);
+    // the number of records read, once the reader is done
+    private volatile long limit;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a new {@code Pipeline} object with {@link #SIZE} slots and a dissector per processor left by the reader
+     * and the analyzer.
+     *
+     * @param factory   the factory of the dissection results
+     * @param dissector the dissector
+     * @param analyzer  the analyzer
+     * @throws IllegalArgumentException if any parameter is not set
+     */
+    public Pipeline(final Supplier<T> factory, final Dissector<T> dissector, final Analyzer<T> analyzer) {
+        this(factory, dissector, analyzer, SIZE, Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+    }
+
+    /**
+     * Creates a new {@code Pipeline} object.
+     *
+     * @param factory    the factory of the dissection results
+     * @param dissector  the dissector
+     * @param analyzer   the analyzer
+     * @param size       the number of slots, a power of 2
+     * @param dissectors the number of dissector threads
+     * @throws IllegalArgumentException if any parameter is not set, {@code size} is not a power of 2 or
+     *                                  {@code dissectors} is not positive
+     */
+    public Pipeline(final Supplier<T> factory, final Dissector<T> dissector, final Analyzer<T> analyzer,
+                    final int size, final int dissectors) {
+        validateObject("factory", factory);
+        validateObject("dissector", dissector);
+        validateObject("analyzer", analyzer);
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of 2");
+        }
+        if (dissectors <= 0) {
+            throw new IllegalArgumentException("dissectors must be positive");
+        }
+        this.dissector = dissector;
+        this.analyzer = analyzer;
+        this.dissectors = dissectors;
+        mask = size - 1;
+        records = new Record[size];
+        results = new Object[size];
+        errors = new Exception[size];
+        for (int i = 0; i < size; i++) {
+            records[i] = new Record();
+            results[i] = factory.get();
+        }
+        dissected = new AtomicLong[dissectors];
+    }
+
+    /**
+     * Reads all the records of the given parser on the current thread, and dissects and analyzes them on the
+     * pipeline threads. Returns when all the records have been analyzed.
+     *
+     * @param parser the parser
+     * @return the number of records
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if the file could not be read
+     * @throws RuntimeException         if the dissector or the analyzer threw one
+     * @throws Error                    if the dissector or the analyzer threw one
+     */
+    public long run(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        published.set(-1);
+        analyzed.set(-1);
+        limit = Long.MAX_VALUE;
+        failure = null;
+        final Thread[] threads = new Thread[dissectors + 1];
+        for (int i = 0; i < dissectors; i++) {
+            dissected[i] = new AtomicLong(-1);
+            final int first = i;
+            threads[i] = new Thread(() -> dissect(first), "libcap-dissector-" + i);
+        }
+        threads[dissectors] = new Thread(this::analyze, "libcap-analyzer");
+        for (final Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long sequence = 0;
+        try {
+            while (failure == null) {
+                // wait until the analyzer has released the slot
+                for (int attempt = 0; sequence - analyzed.get() > records.length; attempt++) {
+                    if (failure != null) {
+                        break;
+                    }
+                    idle(attempt);
+                }
+                if (failure != null || !parser.readRecord(records[(int) sequence & mask])) {
+                    break;
+                }
+                published.lazySet(sequence++);
+            }
+        } finally {
+            limit = sequence;
+            join(threads);
+        }
+        final Throwable e = failure;
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw (Error) e;
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dissect(final int first) {
+        final AtomicLong progress = dissected[first];
+        for (long sequence = first; ; sequence += dissectors) {
+            for (int attempt = 0; published.get() < sequence; attempt++) {
+                // the limit is set after the last record has been published
+                if (sequence >= limit || failure != null) {
+                    return;
+                }
+                idle(attempt);
+            }
+            final int i = (int) sequence & mask;
+            try {
+                dissector.dissect(records[i], (T) results[i]);
+                errors[i] = null;
+            } catch (final RuntimeException | Error e) {
+                // a bug rather than a malformed record: stop the pipeline instead of leaving the analyzer waiting
+                failure = e;
+                return;
+            } catch (final Exception e) {
+                errors[i] = e;
+            }
+            progress.lazySet(sequence);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void analyze() {
+        try {
+            for (long sequence = 0; ; sequence++) {
+                final AtomicLong progress = dissected[(int) (sequence % dissectors)];
+                for (int attempt = 0; progress.get() < sequence; attempt++) {
+                    if (sequence >= limit || failure != null) {
+                        return;
+                    }
+                    idle(attempt);
+                }
+                final int i = (int) sequence & mask;
+                if (errors[i] == null) {
+                    analyzer.analyze(records[i], (T) results[i]);
+                } else {
+                    analyzer.malformed(records[i], errors[i]);
+                }
+                analyzed.lazySet(sequence);
+            }
+        } catch (final RuntimeException | Error e) {
+            failure = e;
+        }
+    }
+
+    private static void idle(final int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private static void join(final Thread[] threads) {
+        boolean interrupted = false;
+        for (final Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class PppoEPacket {
                 if (type.getCode() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.PPPOE);
             throw new ParseException("invalid code", b);
         }
     }
@@ -100,6 +101,7 @@ public class PppoEPacket {
                 if (type.getType() == c)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.PPPOE);
             throw new ParseException("invalid protocol", c);
         }
     }
@@ -114,6 +116,7 @@ public class PppoEPacket {
      */
     public static PppoEPacket parse(final byte[] bytes) throws ParseException {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final PppoEPacket packet = new PppoEPacket();
         packet.version = (byte) (bytes[0] >> 4);
         packet.type = (byte) ((bytes[0] & (byte) 0xf));
@@ -126,6 +129,7 @@ public class PppoEPacket {
         } else {
             packet.payload = Arrays.copyOfRange(bytes, 6, bytes.length);
         }
+        Metrics.stop(Metrics.Layer.PPPOE, start);
         return packet;
     }
 
@@ -0,0 +1,491 @@
+package com.probendi.libcap;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Follows the lifecycle of PPPoE sessions across a capture.
+ * <p>
+ * Sessions are keyed by the subscriber's MAC address and the session ID. The tracker records the discovery stage
+ * (PADI to PADS), the LCP negotiation and echo keepalives, the outcome of the PAP or CHAP authentication and the
+ * traffic of the session. A session ends when a PADT or an error PADS is seen, when it has been idle for longer than
+ * the idle timeout, or when the table is full and it is the least recently seen of a small sample of sessions; its
+ * summary is then passed to the {@link Listener}.
+ * <p>
+ * The state of each session is stored in primitive arrays of fixed capacity, so that hundreds of thousands of
+ * subscribers fit in a few tens of megabytes. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PppoESessionTracker {
+
+    /**
+     * The reason why a session ended.
+     */
+    public enum End {
+        /**
+         * A PADT was seen.
+         */
+        TERMINATED,
+        /**
+         * The session was idle for longer than the idle timeout.
+         */
+        IDLE,
+        /**
+         * The session was evicted to make room for a new one.
+         */
+        EVICTED,
+        /**
+         * The tracker was flushed, e.g. at the end of the capture.
+         */
+        FLUSHED,
+        /**
+         * The discovery failed, i.e. a PADS without a session ID was seen.
+         */
+        FAILED
+    }
+
+    /**
+     * The outcome of the authentication.
+     */
+    public enum Authentication {
+        NONE, PENDING, SUCCESS, FAILURE
+    }
+
+    /**
+     * Receives the summaries of ended sessions.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Invoked when a session ends.
+         *
+         * @param session the summary of the session
+         */
+        void onSessionEnd(Session session);
+    }
+
+    /**
+     * The summary of an ended session. All times are in microseconds since the epoch, or {@code -1} if the event was
+     * not seen.
+     */
+    public static class Session {
+        private long mac;
+        private char sessionId;
+        private long firstSeen;
+        private long lastSeen;
+        private long padiTime;
+        private long padsTime;
+        private long lcpOpenTime;
+        private PppoEPacket.PointToPointProtocol authProtocol;
+        private Authentication authentication;
+        private long authTime;
+        private int echoRequests;
+        private int echoReplies;
+        private long packets;
+        private long bytes;
+        private End end;
+
+        /**
+         * Returns the subscriber's MAC address in the lower 48 bits.
+         *
+         * @return the subscriber's MAC address
+         */
+        public long getMac() {
+            return mac;
+        }
+
+        public char getSessionId() {
+            return sessionId;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public long getPadiTime() {
+            return padiTime;
+        }
+
+        public long getPadsTime() {
+            return padsTime;
+        }
+
+        /**
+         * Returns the time elapsed between the PADI and the PADS.
+         *
+         * @return the discovery latency in microseconds or {@code -1} if the discovery stage was not seen
+         */
+        public long getDiscoveryLatency() {
+            return padiTime < 0 || padsTime < 0 ? -1 : padsTime - padiTime;
+        }
+
+        /**
+         * Returns the time at which LCP reached the opened state, i.e. a Configure-Ack was seen in both directions.
+         *
+         * @return the time at which LCP reached the opened state
+         */
+        public long getLcpOpenTime() {
+            return lcpOpenTime;
+        }
+
+        /**
+         * Returns the authentication protocol.
+         *
+         * @return {@link PppoEPacket.PointToPointProtocol#PAP}, {@link PppoEPacket.PointToPointProtocol#CHAP} or
+         * {@code null} if no authentication was seen
+         */
+        public PppoEPacket.PointToPointProtocol getAuthProtocol() {
+            return authProtocol;
+        }
+
+        public Authentication getAuthentication() {
+            return authentication;
+        }
+
+        public long getAuthTime() {
+            return authTime;
+        }
+
+        public int getEchoRequests() {
+            return echoRequests;
+        }
+
+        public int getEchoReplies() {
+            return echoReplies;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the duration of the session from the first to the last packet.
+         *
+         * @return the duration of the session in microseconds
+         */
+        public long getDuration() {
+            return lastSeen - firstSeen;
+        }
+
+        public End getEnd() {
+            return end;
+        }
+    }
+
+    private static final byte PADI = PppoEPacket.Code.PADI.getCode();
+    private static final byte PADO = PppoEPacket.Code.PADO.getCode();
+    private static final byte PADR = PppoEPacket.Code.PADR.getCode();
+    private static final byte PADS = PppoEPacket.Code.PADS.getCode();
+    private static final byte PADT = PppoEPacket.Code.PADT.getCode();
+    private static final byte SESSION_STAGE = PppoEPacket.Code.SESSION_STAGE.getCode();
+    private static final int SAMPLE = 8;
+    private static final int[] NO_TAGS = new int[0];
+
+    private final int capacity;
+    private final long idleTimeout;
+    private final Listener listener;
+    private final LongIndex index;
+    private final long[] firstSeen;
+    private final long[] lastSeen;
+    private final long[] padiTime;
+    private final long[] padsTime;
+    private final long[] lcpOpenTime;
+    private final long[] authTime;
+    private final long[] packets;
+    private final long[] bytes;
+    private final int[] echoRequests;
+    private final int[] echoReplies;
+    // bit 0: Configure-Ack from the subscriber, bit 1: Configure-Ack to the subscriber
+    private final byte[] lcpAcks;
+    private final byte[] authProtocol;
+    private final byte[] authentication;
+    private int hand;
+    private long lastSweep;
+
+    /**
+     * Creates a new {@code PppoESessionTracker} object.
+     *
+     * @param capacity    the maximum number of tracked sessions
+     * @param idleTimeout the time after which an idle session ends, in microseconds
+     * @param listener    the listener receiving the summaries of ended sessions
+     * @throws IllegalArgumentException if {@code listener} is not set or {@code capacity} is not positive
+     */
+    public PppoESessionTracker(final int capacity, final long idleTimeout, final Listener listener) {
+        validateObject("listener", listener);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.idleTimeout = idleTimeout;
+        this.listener = listener;
+        index = new LongIndex(capacity);
+        final int n = index.capacity();
+        firstSeen = new long[n];
+        lastSeen = new long[n];
+        padiTime = new long[n];
+        padsTime = new long[n];
+        lcpOpenTime = new long[n];
+        authTime = new long[n];
+        packets = new long[n];
+        bytes = new long[n];
+        echoRequests = new int[n];
+        echoReplies = new int[n];
+        lcpAcks = new byte[n];
+        authProtocol = new byte[n];
+        authentication = new byte[n];
+    }
+
+    /**
+     * Adds the given record if it is a PPPoE record, either untagged or following any number of VLAN tags (802.1Q or
+     * stacked 802.1ad).
+     *
+     * @param record the record
+     * @return {@code true} if the record is a PPPoE record
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public boolean add(final Record record) {
+        validateObject("record", record);
+        final byte[] b = record.getBytes();
+        // the EtherType following the VLAN tags
+        int offset = 0xc + 4 * Dot1QPacket.decodeTags(b, 0xc, NO_TAGS);
+        final int type = readChar(b, offset);
+        offset += 2;
+        if (type != PacketType.PPPoE_DISC.getType() && type != PacketType.PPPoE_SESS.getType() ||
+                b.length < offset + 6) {
+            return false;
+        }
+        final long time = record.getTs_sec() * 1_000_000 + record.getTs_usec();
+        if (time - lastSweep >= idleTimeout) {
+            expire(time);
+        }
+        final long destination = readMac(b, 0);
+        final long source = readMac(b, 6);
+        final byte code = b[offset + 1];
+        final char sessionId = (char) readChar(b, offset + 2);
+        if (code == PADI || code == PADR) {
+            discovery(key(source, 0), code, time);
+        } else if (code == PADO) {
+            discovery(key(destination, 0), code, time);
+        } else if (code == PADS) {
+            // the session ID is assigned: rekey the discovery state
+            final int id = discovery(key(destination, 0), code, time);
+            if (sessionId == 0) {
+                // an error PADS (RFC 2516): no session was assigned
+                end(id, End.FAILED);
+                return true;
+            }
+            final int session = index.get(key(destination, sessionId));
+            if (session >= 0 && session != id) {
+                end(session, End.EVICTED);
+            }
+            index.rekey(id, key(destination, sessionId));
+        } else if (code == PADT) {
+            int id = index.get(key(source, sessionId));
+            if (id < 0) id = index.get(key(destination, sessionId));
+            if (id >= 0) {
+                touch(id, time, record.getOrig_len());
+                end(id, End.TERMINATED);
+            }
+        } else if (code == SESSION_STAGE && b.length >= offset + 8) {
+            boolean fromSubscriber = true;
+            int id = index.get(key(source, sessionId));
+            if (id < 0) {
+                id = index.get(key(destination, sessionId));
+                fromSubscriber = id < 0;
+                if (id < 0) {
+                    // the discovery stage was not captured: assume that the source is the subscriber
+                    id = create(key(source, sessionId), time);
+                }
+            }
+            touch(id, time, record.getOrig_len());
+            session(id, b, offset + 6, fromSubscriber, time);
+        }
+        return true;
+    }
+
+    /**
+     * Ends the sessions which have been idle for longer than the idle timeout.
+     *
+     * @param now the current time in microseconds since the epoch
+     * @return the number of ended sessions
+     */
+    public int expire(final long now) {
+        lastSweep = now;
+        int n = 0;
+        for (int id = 0; id < index.capacity(); id++) {
+            if (index.isUsed(id) && now - lastSeen[id] > idleTimeout) {
+                end(id, End.IDLE);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Ends all the sessions, e.g. at the end of the capture.
+     */
+    public void flush() {
+        for (int id = 0; id < index.capacity(); id++) {
+            if (index.isUsed(id)) {
+                end(id, End.FLUSHED);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tracked sessions.
+     *
+     * @return the number of tracked sessions
+     */
+    public int size() {
+        return index.size();
+    }
+
+    private int discovery(final long key, final byte code, final long time) {
+        int id = index.get(key);
+        if (id < 0) {
+            id = create(key, time);
+        }
+        lastSeen[id] = time;
+        if (code == PADI) {
+            padiTime[id] = time;
+        } else if (code == PADS) {
+            padsTime[id] = time;
+        }
+        return id;
+    }
+
+    private void session(final int id, final byte[] b, final int offset, final boolean fromSubscriber,
+                         final long time) {
+        final int protocol = readChar(b, offset);
+        if (b.length <= offset + 2) {
+            return;
+        }
+        final byte code = b[offset + 2];
+        if (protocol == PppoEPacket.PointToPointProtocol.LCP.getType()) {
+            if (code == LcpPacket.Code.CONFIGURE_ACK.getCode()) {
+                lcpAcks[id] |= fromSubscriber ? 1 : 2;
+                if (lcpAcks[id] == 3 && lcpOpenTime[id] < 0) {
+                    lcpOpenTime[id] = time;
+                }
+            } else if (code == LcpPacket.Code.ECHO_REQUEST.getCode()) {
+                echoRequests[id]++;
+            } else if (code == LcpPacket.Code.ECHO_REPLY.getCode()) {
+                echoReplies[id]++;
+            }
+        } else if (protocol == PppoEPacket.PointToPointProtocol.PAP.getType()) {
+            // 1: Authenticate-Request, 2: Authenticate-Ack, 3: Authenticate-Nak
+            authenticate(id, PppoEPacket.PointToPointProtocol.PAP, code == 1 ? Authentication.PENDING :
+                    code == 2 ? Authentication.SUCCESS : code == 3 ? Authentication.FAILURE : null, time);
+        } else if (protocol == PppoEPacket.PointToPointProtocol.CHAP.getType()) {
+            // 1: Challenge, 2: Response, 3: Success, 4: Failure
+            authenticate(id, PppoEPacket.PointToPointProtocol.CHAP, code == 1 || code == 2 ? Authentication.PENDING :
+                    code == 3 ? Authentication.SUCCESS : code == 4 ? Authentication.FAILURE : null, time);
+        }
+    }
+
+    private void authenticate(final int id, final PppoEPacket.PointToPointProtocol protocol,
+                              final Authentication result, final long time) {
+        if (result == null) {
+            return;
+        }
+        authProtocol[id] = (byte) (protocol.ordinal() + 1);
+        authentication[id] = (byte) result.ordinal();
+        if (result != Authentication.PENDING) {
+            authTime[id] = time;
+        }
+    }
+
+    private void touch(final int id, final long time, final long length) {
+        lastSeen[id] = time;
+        packets[id]++;
+        bytes[id] += length;
+    }
+
+    private int create(final long key, final long time) {
+        if (index.size() == capacity) {
+            evict();
+        }
+        final int id = index.add(key);
+        firstSeen[id] = time;
+        lastSeen[id] = time;
+        padiTime[id] = -1;
+        padsTime[id] = -1;
+        lcpOpenTime[id] = -1;
+        authTime[id] = -1;
+        packets[id] = 0;
+        bytes[id] = 0;
+        echoRequests[id] = 0;
+        echoReplies[id] = 0;
+        lcpAcks[id] = 0;
+        authProtocol[id] = 0;
+        authentication[id] = (byte) Authentication.NONE.ordinal();
+        return id;
+    }
+
+    /**
+     * Ends the least recently seen session of a sample of sessions, in the spirit of the CLOCK algorithm.
+     */
+    private void evict() {
+        final int sample = Math.min(SAMPLE, index.size());
+        int victim = -1;
+        for (int n = 0; n < sample; hand = (hand + 1) % index.capacity()) {
+            if (index.isUsed(hand)) {
+                if (victim < 0 || lastSeen[hand] < lastSeen[victim]) {
+                    victim = hand;
+                }
+                n++;
+            }
+        }
+        end(victim, End.EVICTED);
+    }
+
+    private void end(final int id, final End end) {
+        final Session session = new Session();
+        final long key = index.key(id);
+        session.mac = key >>> 16;
+        session.sessionId = (char) key;
+        session.firstSeen = firstSeen[id];
+        session.lastSeen = lastSeen[id];
+        session.padiTime = padiTime[id];
+        session.padsTime = padsTime[id];
+        session.lcpOpenTime = lcpOpenTime[id];
+        session.authProtocol = authProtocol[id] == 0 ? null :
+                PppoEPacket.PointToPointProtocol.values()[authProtocol[id] - 1];
+        session.authentication = Authentication.values()[authentication[id]];
+        session.authTime = authTime[id];
+        session.echoRequests = echoRequests[id];
+        session.echoReplies = echoReplies[id];
+        session.packets = packets[id];
+        session.bytes = bytes[id];
+        session.end = end;
+        index.removeId(id);
+        listener.onSessionEnd(session);
+    }
+
+    private static long key(final long mac, final int sessionId) {
+        return mac << 16 | sessionId;
+    }
+
+    private static long readMac(final byte[] b, final int offset) {
+        long mac = 0;
+        for (int i = offset; i < offset + 6; i++) {
+            mac = mac << 8 | b[i] & 0xff;
+        }
+        return mac;
+    }
+
+    private static int readChar(final byte[] b, final int offset) {
+        return b.length < offset + 2 ? -1 : (b[offset] & 0xff) << 8 | b[offset + 1] & 0xff;
+    }
+}
@@ -0,0 +1,304 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Counts packets and bytes per protocol in a single pass, as a protocol hierarchy.
+ * <p>
+ * The link layer of each record, i.e. the VLAN tags, the MPLS label stack and the PPPoE session, is walked in place
+ * by a {@link Frame}. The IP packet is then dissected with the packet classes and classified with their {@code has*}
+ * predicates, such as {@link Ipv4Packet#hasUdp()}, {@link UdpPacket#hasDhcpPacket()} and {@link TcpPacket#hasBgp()}:
+ * the record is counted in every node of its path, e.g. {@code eth/vlan/pppoes/ipv4/udp/dhcp}. Bytes are counted as
+ * {@code orig_len}. Packets and bytes per VLAN ID are counted as well, and per inner VLAN ID below the outer one for
+ * stacked tags.
+ * <p>
+ * This class is thread-safe: the counters are {@link LongAdder}s, which are striped per thread, and the nodes are
+ * only created on the first occurrence of a protocol, so several threads can add records concurrently without
+ * contending on shared counters.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ProtocolHierarchy {
+
+    /**
+     * A protocol in the hierarchy.
+     */
+    public static class Node {
+        private final String name;
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+
+        Node(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getPackets() {
+            return packets.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Returns the child with the given name.
+         *
+         * @param name the name of the child
+         * @return the child with the given name or {@code null} if the protocol has not been seen
+         */
+        public Node getChild(final String name) {
+            return children.get(name);
+        }
+
+        /**
+         * Returns the children of this node.
+         *
+         * @return the children of this node, sorted by decreasing number of packets
+         */
+        public List<Node> getChildren() {
+            final List<Node> nodes = new ArrayList<>(children.values());
+            nodes.sort(Comparator.comparingLong(Node::getPackets).reversed().thenComparing(Node::getName));
+            return nodes;
+        }
+
+        Node add(final String name, final long length) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = children.computeIfAbsent(name, Node::new);
+            }
+            child.count(length);
+            return child;
+        }
+
+        void count(final long length) {
+            packets.increment();
+            bytes.add(length);
+        }
+    }
+
+    private final Node root = new Node("frame");
+    private final ConcurrentMap<Integer, Node> vlans = new ConcurrentHashMap<>();
+
+    /**
+     * Adds all the records read by the given parser.
+     *
+     * @param parser the parser
+     * @return the number of added records
+     * @throws IllegalArgumentException if {@code parser} is not set
+     * @throws IOException              if the file could not be read
+     */
+    public long addAll(final Parser parser) throws IOException {
+        validateObject("parser", parser);
+        long n = 0;
+        Record record;
+        while ((record = parser.readRecord()) != null) {
+            add(record);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Classifies and counts the given record.
+     *
+     * @param record the record
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public void add(final Record record) {
+        validateObject("record", record);
+        final long length = record.getOrig_len();
+        root.count(length);
+        final byte[] bytes = record.getBytes();
+        if (bytes == null || bytes.length < 0xe) {
+            root.add("malformed", length);
+            return;
+        }
+        Node node = root.add("eth", length);
+        final Frame frame = new Frame();
+        final boolean ip = frame.decode(bytes);
+        for (int i = 0; i < frame.getTagCount(); i++) {
+            node = node.add("vlan", length);
+        }
+        if (frame.getTagCount() > 0) {
+            final int id = frame.getVlan();
+            Node vlan = vlans.get(id);
+            if (vlan == null) {
+                vlan = vlans.computeIfAbsent(id, key -> new Node(String.valueOf(key)));
+            }
+            vlan.count(length);
+            if (frame.getTagCount() > 1) {
+                vlan.add(String.valueOf(frame.getInnerVlan()), length);
+            }
+        }
+        final int etherType = frame.getEtherType();
+        if (etherType == PacketType.MPLS.getType()) {
+            node = node.add("mpls", length);
+        } else if (etherType == PacketType.PPPoE_DISC.getType()) {
+            node.add("pppoed", length);
+            return;
+        } else if (etherType == PacketType.PPPoE_SESS.getType()) {
+            node = node.add("pppoes", length);
+        } else if (etherType != PacketType.IPv4.getType() && etherType != PacketType.IPv6.getType()) {
+            node.add(String.format("ethertype-0x%04x", etherType), length);
+            return;
+        }
+        if (frame.isTruncated()) {
+            // a truncated packet is counted below the last dissected protocol
+            node.add("malformed", length);
+        } else if (ip) {
+            final byte[] payload = Arrays.copyOfRange(bytes, frame.getL3Offset(), bytes.length);
+            if (frame.getIpVersion() == 4) {
+                final Node ipv4 = node.add("ipv4", length);
+                final int ihl = payload[0] & 0xf;
+                if (ihl < 5 || ihl * 4 > payload.length) {
+                    ipv4.add("malformed", length);
+                } else {
+                    addIpv4(ipv4, Ipv4Packet.parse(payload), length);
+                }
+            } else {
+                addIpv6(node.add("ipv6", length), Ipv6Packet.parse(payload), length);
+            }
+        } else if (etherType == PacketType.PPPoE_SESS.getType()) {
+            addPpp(node, frame.getPppProtocol(), length);
+        } else {
+            node.add("data", length);
+        }
+    }
+
+    /**
+     * Returns the root of the hierarchy, which counts all the records.
+     *
+     * @return the root of the hierarchy
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the node with the given path.
+     *
+     * @param path the names of the nodes below the root, e.g. {@code "eth", "ipv4", "udp"}
+     * @return the node with the given path or {@code null} if the path has not been seen
+     */
+    public Node getNode(final String... path) {
+        Node node = root;
+        for (int i = 0; i < path.length && node != null; i++) {
+            node = node.getChild(path[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the packets and bytes per outermost VLAN ID.
+     *
+     * @return a node per outermost VLAN ID, sorted by VLAN ID, whose children count the packets and bytes per inner
+     * VLAN ID
+     */
+    public Map<Integer, Node> getVlans() {
+        return new TreeMap<>(vlans);
+    }
+
+    /**
+     * Returns the hierarchy as an indented report with the packets, the bytes and the percentage of packets of each
+     * node.
+     *
+     * @return the hierarchy as a report
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        append(sb, root, 0, Math.max(1, root.getPackets()));
+        return sb.toString();
+    }
+
+    private static void append(final StringBuilder sb, final Node node, final int depth, final long total) {
+        sb.append(String.format("%-32s %12d %16d %6.2f%%%n", "  ".repeat(depth) + node.getName(), node.getPackets(),
+                node.getBytes(), 100.0 * node.getPackets() / total));
+        for (final Node child : node.getChildren()) {
+            append(sb, child, depth + 1, total);
+        }
+    }
+
+    private static void addIpv4(final Node node, final Ipv4Packet packet, final long length) {
+        if (packet.getFragmentOffset() != 0) {
+            // only the first fragment carries the transport header
+            node.add("fragment", length);
+        } else if (packet.hasTcp()) {
+            addTcp(node.add("tcp", length), packet.getPayload(), length);
+        } else if (packet.hasUdp()) {
+            addUdp(node.add("udp", length), packet.getPayload(), length);
+        } else if (packet.hasIcmp()) {
+            node.add("icmp", length);
+        } else if (packet.hasOspf()) {
+            node.add("ospf", length);
+        } else {
+            node.add("protocol-" + (packet.getProtocol() & 0xff), length);
+        }
+    }
+
+    private static void addIpv6(final Node node, final Ipv6Packet packet, final long length) {
+        if (packet.getFragmentOffset() != 0) {
+            // only the first fragment carries the upper-layer header
+            node.add("fragment", length);
+        } else if (packet.hasTcp()) {
+            addTcp(node.add("tcp", length), packet.getUpperLayerPayload(), length);
+        } else if (packet.hasUdp()) {
+            addUdp(node.add("udp", length), packet.getUpperLayerPayload(), length);
+        } else if (packet.hasIcmpv6()) {
+            node.add("icmpv6", length);
+        } else {
+            node.add("protocol-" + (packet.getProtocol() & 0xff), length);
+        }
+    }
+
+    private static void addPpp(final Node node, final int protocol, final long length) {
+        try {
+            node.add(PppoEPacket.PointToPointProtocol.parse((char) protocol).name().toLowerCase(), length);
+        } catch (final ParseException e) {
+            node.add("malformed", length);
+        }
+    }
+
+    private static void addTcp(final Node node, final byte[] bytes, final long length) {
+        final int headerLength = bytes.length < 20 ? -1 : (bytes[12] >> 4 & 0xf) * 4;
+        if (headerLength < 20 || headerLength > bytes.length) {
+            node.add("malformed", length);
+            return;
+        }
+        final TcpPacket packet = TcpPacket.parse(bytes);
+        if (packet.hasBgp()) {
+            node.add("bgp", length);
+        }
+    }
+
+    private static void addUdp(final Node node, final byte[] bytes, final long length) {
+        if (bytes.length < 8) {
+            node.add("malformed", length);
+            return;
+        }
+        final UdpPacket packet = UdpPacket.parse(bytes);
+        if (packet.hasDhcpPacket()) {
+            node.add("dhcp", length);
+        } else if (packet.hasRadiusAuthentication() || packet.hasRadiusAccounting()) {
+            node.add("radius", length);
+        }
+    }
+}
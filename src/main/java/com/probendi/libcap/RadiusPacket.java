@@ -60,6 +60,7 @@ public class RadiusPacket {
                 if (type.getCode() == b)
                     return type;
             }
+            Metrics.failure(Metrics.Layer.RADIUS);
             throw new ParseException("invalid code", b);
         }
     }
@@ -74,6 +75,7 @@ public class RadiusPacket {
      */
     public static RadiusPacket parse(final byte[] bytes) throws ParseException {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final RadiusPacket packet = new RadiusPacket();
         packet.code = Code.parse(bytes[0]);
         packet.identifier = bytes[1];
@@ -84,6 +86,7 @@ public class RadiusPacket {
             packet.attributeValuePairs.add(AttributeValuePair.parse(Arrays.copyOfRange(bytes, i, i + bytes[i + 1] + 2)));
             i += bytes[i + 1];
         }
+        Metrics.stop(Metrics.Layer.RADIUS, start);
         return packet;
     }
 
@@ -21,6 +21,7 @@ public class Record {
     private int incl_len;
     private int orig_len;
     private byte[] bytes;
+    private long offset = -1;
 
     public Record() {
     }
@@ -79,6 +80,20 @@ public class Record {
         return this;
     }
 
+    /**
+     * Returns the offset of this record's header in the file it was read from.
+     *
+     * @return the offset of this record's header or {@code -1} if unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public Record offset(final long offset) {
+        this.offset = offset;
+        return this;
+    }
+
     public String getDestination() {
         return Parser.bytesToString(Arrays.copyOfRange(bytes, 0, 6));
     }
@@ -0,0 +1,168 @@
+package com.probendi.libcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Reads the records of a live capture ahead of the consumer, on a dedicated thread.
+ * <p>
+ * The records read by the parser are queued until they are taken with {@link #take()}. The queue is bounded both in
+ * records and in octets: when the consumer falls behind, the reading thread blocks, the parser stops reading and the
+ * producer of the stream, e.g. {@code tcpdump} or a remote capture agent, blocks in turn. Memory therefore never
+ * grows with the lag of the consumer. A single thread is expected to take the records.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class RecordStream implements Closeable {
+
+    /**
+     * The default maximum number of queued records.
+     */
+    public static final int RECORDS = 1024;
+
+    /**
+     * The default maximum number of queued octets.
+     */
+    public static final int BYTES = 1 << 24;
+
+    private static final Record END = new Record();
+
+    private final Parser parser;
+    private final BlockingQueue<Record> queue;
+    private final Semaphore bytes;
+    private final int capacity;
+    private final Thread thread;
+    private volatile Throwable error;
+    private volatile boolean closed;
+    private boolean ended;
+
+    /**
+     * Creates a new {@code RecordStream} object with the default bounds and starts reading.
+     *
+     * @param parser the parser
+     * @throws IllegalArgumentException if {@code parser} is not set
+     */
+    public RecordStream(final Parser parser) {
+        this(parser, RECORDS, BYTES);
+    }
+
+    /**
+     * Creates a new {@code RecordStream} object and starts reading.
+     *
+     * @param parser   the parser
+     * @param records  the maximum number of queued records
+     * @param capacity the maximum number of queued octets; a larger record is queued alone
+     * @throws IllegalArgumentException if {@code parser} is not set or {@code records} or {@code capacity} is not
+     *                                  positive
+     */
+    public RecordStream(final Parser parser, final int records, final int capacity) {
+        validateObject("parser", parser);
+        if (records <= 0) {
+            throw new IllegalArgumentException("records must be positive");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.parser = parser;
+        this.capacity = capacity;
+        queue = new ArrayBlockingQueue<>(records);
+        bytes = new Semaphore(capacity);
+        thread = new Thread(this::read, "libcap-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the next record, waiting until it has been read.
+     *
+     * @return the next record or {@code null} if there are no more records
+     * @throws IOException if the stream could not be read or the current thread has been interrupted; an unchecked
+     *                     exception or an error thrown while reading is rethrown as is
+     */
+    public Record take() throws IOException {
+        if (ended) {
+            return null;
+        }
+        final Record record;
+        try {
+            record = queue.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a record");
+        }
+        if (record == END) {
+            ended = true;
+            final Throwable e = error;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            } else if (e != null) {
+                throw new IOException(e);
+            }
+            return null;
+        }
+        bytes.release(weight(record));
+        return record;
+    }
+
+    /**
+     * Returns the number of queued records.
+     *
+     * @return the number of queued records
+     */
+    public int size() {
+        final int size = queue.size();
+        return queue.contains(END) ? size - 1 : size;
+    }
+
+    /**
+     * Stops reading and closes the parser. Queued records are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        parser.close();
+        queue.clear();
+        ended = true;
+    }
+
+    private void read() {
+        try {
+            Record record;
+            while (!closed && (record = parser.readRecord()) != null) {
+                bytes.acquire(weight(record));
+                queue.put(record);
+            }
+        } catch (final InterruptedException e) {
+            // the stream has been closed
+        } catch (final Throwable e) {
+            // including an Error, e.g. on a huge record: the consumer must not wait forever
+            if (!closed) {
+                error = e;
+            }
+        } finally {
+            if (!closed) {
+                try {
+                    queue.put(END);
+                } catch (final InterruptedException e) {
+                    // the stream has been closed
+                }
+            }
+        }
+    }
+
+    private int weight(final Record record) {
+        return Math.min(record.getBytes().length, capacity);
+    }
+}
@@ -19,6 +19,7 @@ public class TcpPacket {
      */
     public static TcpPacket parse(final byte[] bytes) {
         Validator.validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final TcpPacket packet = new TcpPacket();
         packet.sourcePort = Parser.readChar(bytes[0], bytes[1]);
         packet.destinationPort = Parser.readChar(bytes[2], bytes[3]);
@@ -39,6 +40,7 @@ public class TcpPacket {
         packet.urgentPointer = Parser.readChar(bytes[18], bytes[19]);
         packet.options = Arrays.copyOfRange(bytes, 20, packet.dataOffset * 4);
         packet.payload = Arrays.copyOfRange(bytes, packet.dataOffset * 4, bytes.length);
+        Metrics.stop(Metrics.Layer.TCP, start);
         return packet;
     }
 
@@ -0,0 +1,134 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A binary trace of the parsing events, kept in a fixed-size ring of primitive entries.
+ * <p>
+ * The ring is enabled with the system property {@code libcap.trace.size}, the number of entries it holds. Recording
+ * an event stores a few integers without formatting or allocating anything; the entries are only formatted when the
+ * ring is dumped with {@link #dump()}, e.g. after a parse error. When the ring is disabled, the hooks test a constant
+ * and are removed by the JIT compiler. This class is thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public final class Trace {
+
+    /**
+     * A global header has been read: {@code a} is the magic number, {@code b} the snapshot length and {@code c} the
+     * link-layer type.
+     */
+    public static final int GLOBAL_HEADER = 1;
+
+    /**
+     * A record header has been read: {@code a} is {@code ts_sec}, {@code b} {@code ts_usec}, {@code c}
+     * {@code incl_len} and {@code d} {@code orig_len}.
+     */
+    public static final int RECORD = 2;
+
+    /**
+     * A truncated record has been read: {@code c} is {@code incl_len} and {@code d} the number of octets read.
+     */
+    public static final int TRUNCATED = 3;
+
+    /**
+     * The number of entries of the ring or {@code 0} if the ring is disabled.
+     */
+    public static final int SIZE = Integer.getInteger("libcap.trace.size", 0);
+
+    private static final String[] NAMES = {"", "global header", "record", "truncated"};
+    private static final int WIDTH = 4;
+
+    private static final Ring ring = new Ring(Math.max(0, SIZE));
+
+    private Trace() {
+    }
+
+    /**
+     * Returns {@code true} if the ring is enabled.
+     *
+     * @return {@code true} if the ring is enabled
+     */
+    public static boolean isEnabled() {
+        return SIZE > 0;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param event the event
+     * @param frame the frame number
+     * @param a     the first argument
+     * @param b     the second argument
+     * @param c     the third argument
+     * @param d     the fourth argument
+     */
+    static void record(final int event, final int frame, final int a, final int b, final int c, final int d) {
+        if (SIZE > 0) {
+            ring.record(event, frame, a, b, c, d);
+        }
+    }
+
+    /**
+     * Returns the entries of the ring, formatted, from the oldest to the newest.
+     *
+     * @return the entries of the ring
+     */
+    public static List<String> dump() {
+        return ring.dump();
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public static void clear() {
+        ring.clear();
+    }
+
+    /**
+     * A ring of the given number of entries, which backs the global trace and can be created on its own in tests.
+     */
+    static final class Ring {
+        private final int size;
+        private final long[] entries;
+        private final AtomicLong cursor = new AtomicLong();
+
+        Ring(final int size) {
+            this.size = size;
+            entries = new long[size * WIDTH];
+        }
+
+        void record(final int event, final int frame, final int a, final int b, final int c, final int d) {
+            if (size == 0) {
+                return;
+            }
+            final int i = (int) (cursor.getAndIncrement() % size) * WIDTH;
+            // a concurrent dump may see a partially written entry, which is acceptable for diagnostics
+            entries[i] = System.nanoTime();
+            entries[i + 1] = (long) event << 32 | frame & 0xffffffffL;
+            entries[i + 2] = (long) a << 32 | b & 0xffffffffL;
+            entries[i + 3] = (long) c << 32 | d & 0xffffffffL;
+        }
+
+        List<String> dump() {
+            final List<String> result = new ArrayList<>();
+            final long end = cursor.get();
+            for (long n = Math.max(0, end - size); n < end; n++) {
+                final int i = (int) (n % size) * WIDTH;
+                final int event = (int) (entries[i + 1] >>> 32);
+                result.add(String.format("%d %s frame: %d a: 0x%x b: 0x%x c: 0x%x d: 0x%x", entries[i],
+                        event >= 0 && event < NAMES.length ? NAMES[event] : String.valueOf(event),
+                        (int) entries[i + 1], (int) (entries[i + 2] >>> 32), (int) entries[i + 2],
+                        (int) (entries[i + 3] >>> 32), (int) entries[i + 3]));
+            }
+            return result;
+        }
+
+        void clear() {
+            cursor.set(0);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.probendi.libcap;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Aggregates records into a time series of fixed intervals, e.g. 1 ms or 1 s, in constant memory.
+ * <p>
+ * For each interval (bin) the number of packets and bytes ({@code orig_len}) is counted, the number of distinct IP
+ * sources is estimated with a {@link HyperLogLog} sketch and the bytes per IP source are estimated with a
+ * {@link CountMinSketch}, from which the top talkers are tracked in a small candidate set. When a record falls in a
+ * later bin, the current bin is passed to the {@link Listener}, followed by an empty bin for each interval without
+ * records, and the sketches are cleared and reused: memory does not depend on the length of the capture. A gap of
+ * more than {@link #MAX_GAP} intervals, e.g. caused by a corrupt timestamp, is counted as a jump and passed as a
+ * single empty bin spanning the whole gap.
+ * <p>
+ * Records are expected in chronological order; a late record is counted in the current bin. This class is not
+ * thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class TrafficSeries {
+
+    /**
+     * Receives the completed bins.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Invoked when a bin is complete.
+         *
+         * @param bin the completed bin
+         */
+        void onBin(Bin bin);
+    }
+
+    /**
+     * A completed bin.
+     */
+    public static class Bin {
+        private final long start;
+        private final long interval;
+        private final long packets;
+        private final long bytes;
+        private final long sources;
+        private final List<Talker> talkers;
+
+        Bin(final long start, final long interval, final long packets, final long bytes, final long sources,
+            final List<Talker> talkers) {
+            this.start = start;
+            this.interval = interval;
+            this.packets = packets;
+            this.bytes = bytes;
+            this.sources = sources;
+            this.talkers = talkers;
+        }
+
+        /**
+         * Returns the start of this bin in microseconds since the epoch.
+         *
+         * @return the start of this bin
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the length of this bin, which is longer than the interval of the series for an empty bin spanning a
+         * jump.
+         *
+         * @return the length of this bin in microseconds
+         */
+        public long getInterval() {
+            return interval;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the rate of this bin.
+         *
+         * @return the rate of this bin in bits per second
+         */
+        public double getBitsPerSecond() {
+            return bytes * 8 * 1e6 / interval;
+        }
+
+        /**
+         * Returns the estimated number of distinct IP sources.
+         *
+         * @return the estimated number of distinct IP sources
+         */
+        public long getSources() {
+            return sources;
+        }
+
+        /**
+         * Returns the IP sources which sent the most bytes.
+         *
+         * @return the top talkers, sorted by decreasing bytes
+         */
+        public List<Talker> getTalkers() {
+            return talkers;
+        }
+    }
+
+    /**
+     * An IP source and its estimated bytes.
+     */
+    public static class Talker {
+        private final String address;
+        private final long bytes;
+
+        Talker(final String address, final long bytes) {
+            this.address = address;
+            this.bytes = bytes;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the estimated bytes, which never underestimate the true bytes.
+         *
+         * @return the estimated bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * The default precision of the distinct source sketch.
+     */
+    public static final int PRECISION = 12;
+
+    /**
+     * The default width of the top talker sketch.
+     */
+    public static final int WIDTH = 2048;
+
+    /**
+     * The default depth of the top talker sketch.
+     */
+    public static final int DEPTH = 4;
+
+    /**
+     * The maximum number of empty bins passed for a gap between two records.
+     */
+    public static final int MAX_GAP = 4096;
+
+    private final long interval;
+    private final Listener listener;
+    private final Frame frame = new Frame();
+    private final HyperLogLog sources;
+    private final CountMinSketch talkers;
+    // the top talker candidates: hash, estimated bytes and address
+    private final long[] candidateKeys;
+    private final long[] candidateBytes;
+    private final byte[][] candidateAddresses;
+    private int candidates;
+    private long start = Long.MIN_VALUE;
+    private long packets;
+    private long bytes;
+    private long jumps;
+
+    /**
+     * Creates a new {@code TrafficSeries} object with the default sketch sizes.
+     *
+     * @param interval the length of a bin in microseconds
+     * @param talkers  the number of top talkers per bin
+     * @param listener the listener of the completed bins
+     * @throws IllegalArgumentException if {@code listener} is not set or {@code interval} or {@code talkers} is not
+     *                                  positive
+     */
+    public TrafficSeries(final long interval, final int talkers, final Listener listener) {
+        this(interval, talkers, listener, PRECISION, WIDTH, DEPTH);
+    }
+
+    /**
+     * Creates a new {@code TrafficSeries} object.
+     *
+     * @param interval  the length of a bin in microseconds
+     * @param talkers   the number of top talkers per bin
+     * @param listener  the listener of the completed bins
+     * @param precision the precision of the distinct source sketch
+     * @param width     the width of the top talker sketch
+     * @param depth     the depth of the top talker sketch
+     * @throws IllegalArgumentException if {@code listener} is not set or any other parameter is out of range
+     */
+    public TrafficSeries(final long interval, final int talkers, final Listener listener, final int precision,
+                         final int width, final int depth) {
+        validateObject("listener", listener);
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        if (talkers <= 0) {
+            throw new IllegalArgumentException("talkers must be positive");
+        }
+        this.interval = interval;
+        this.listener = listener;
+        sources = new HyperLogLog(precision);
+        this.talkers = new CountMinSketch(width, depth);
+        candidateKeys = new long[talkers];
+        candidateBytes = new long[talkers];
+        candidateAddresses = new byte[talkers][];
+    }
+
+    /**
+     * Adds the given record.
+     *
+     * @param record the record
+     * @throws IllegalArgumentException if {@code record} is not set
+     */
+    public void add(final Record record) {
+        validateObject("record", record);
+        final long time = record.getTs_sec() * 1_000_000L + record.getTs_usec();
+        final long bin = Math.floorDiv(time, interval) * interval;
+        if (start == Long.MIN_VALUE) {
+            start = bin;
+        } else if (bin > start) {
+            flush();
+            if ((bin - start) / interval > MAX_GAP) {
+                // a single bin instead of one per interval, whose number is not bounded
+                jumps++;
+                listener.onBin(new Bin(start, bin - start, 0, 0, 0, Collections.emptyList()));
+                start = bin;
+            }
+            // the intervals without records
+            for (; start < bin; start += interval) {
+                listener.onBin(new Bin(start, interval, 0, 0, 0, Collections.emptyList()));
+            }
+        }
+        final long length = record.getOrig_len();
+        packets++;
+        bytes += length;
+        if (record.getBytes() != null && frame.decode(record)) {
+            final long key = frame.getSourceHash();
+            sources.add(key);
+            offer(key, talkers.add(key, length));
+        }
+    }
+
+    /**
+     * Passes the current bin to the listener, if any record has been added to it.
+     */
+    public void flush() {
+        if (start == Long.MIN_VALUE || packets == 0) {
+            return;
+        }
+        final Integer[] order = new Integer[candidates];
+        for (int i = 0; i < candidates; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Long.compare(candidateBytes[j], candidateBytes[i]));
+        final List<Talker> top = new ArrayList<>(candidates);
+        for (final int i : order) {
+            top.add(new Talker(toString(candidateAddresses[i]), candidateBytes[i]));
+        }
+        listener.onBin(new Bin(start, interval, packets, bytes, sources.estimate(), top));
+        start += interval;
+        packets = 0;
+        bytes = 0;
+        sources.clear();
+        talkers.clear();
+        candidates = 0;
+    }
+
+    /**
+     * Returns the number of gaps of more than {@link #MAX_GAP} intervals.
+     *
+     * @return the number of jumps
+     */
+    public long getJumps() {
+        return jumps;
+    }
+
+    private void offer(final long key, final long estimate) {
+        int min = -1;
+        for (int i = 0; i < candidates; i++) {
+            if (candidateKeys[i] == key) {
+                candidateBytes[i] = estimate;
+                return;
+            }
+            if (min < 0 || candidateBytes[i] < candidateBytes[min]) {
+                min = i;
+            }
+        }
+        final int i;
+        if (candidates < candidateKeys.length) {
+            i = candidates++;
+        } else if (estimate > candidateBytes[min]) {
+            i = min;
+        } else {
+            return;
+        }
+        candidateKeys[i] = key;
+        candidateBytes[i] = estimate;
+        final int offset = frame.getSourceOffset();
+        candidateAddresses[i] = Arrays.copyOfRange(frame.getBytes(), offset, offset + frame.getAddressLength());
+    }
+
+    private static String toString(final byte[] address) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (final UnknownHostException e) {
+            // not reachable: the address is either 4 or 16 octets long
+            return Parser.bytesToString(address);
+        }
+    }
+}
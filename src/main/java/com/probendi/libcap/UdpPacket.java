@@ -21,12 +21,14 @@ public class UdpPacket {
      */
     public static UdpPacket parse(final byte[] bytes) {
         validateObject("bytes", bytes);
+        final long start = Metrics.start();
         final UdpPacket packet = new UdpPacket();
         packet.sourcePort = Parser.readChar(bytes[0], bytes[1]);
         packet.destinationPort = Parser.readChar(bytes[2], bytes[3]);
         packet.length = Parser.readChar(bytes[4], bytes[5]);
         packet.checksum = Parser.readChar(bytes[6], bytes[7]);
         packet.payload = Arrays.copyOfRange(bytes, 8, bytes.length);
+        Metrics.stop(Metrics.Layer.UDP, start);
         return packet;
     }
 
@@ -1,5 +1,6 @@
 package com.probendi.libcap;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jetbrains.annotations.Contract;
@@ -25,7 +26,9 @@ public class Validator {
     public static void validateObject(final String name, final Object value) {
         if (value == null) {
             final IllegalArgumentException e = new IllegalArgumentException(name + " is not set");
-            logger.throwing(Validator.class.getName(), "validateObject", e);
+            if (logger.isLoggable(Level.FINER)) {
+                logger.throwing(Validator.class.getName(), "validateObject", e);
+            }
             throw e;
         }
     }
@@ -0,0 +1,158 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+import static com.probendi.libcap.Validator.validateObject;
+
+/**
+ * Accumulates VLAN statistics over a stream of records without allocating per packet.
+ * <p>
+ * The VLAN tags of each tagged record, 802.1Q or stacked 802.1ad (Q-in-Q), are taken from the reusable array filled
+ * by {@link Frame#decode(byte[])}, so that the frame is walked once for all its statistics. The number of packets and
+ * bytes ({@code orig_len}) is counted per pair of outer (S-VLAN) and inner (C-VLAN) VLAN ID in primitive arrays
+ * indexed by a {@link LongIndex}; a single tagged record is counted with no inner VLAN ID. The number of records per
+ * tag depth is counted as well. This class is not thread-safe.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class VlanStatistics {
+
+    /**
+     * The maximum number of decoded VLAN tags.
+     */
+    public static final int MAX_DEPTH = 8;
+
+    private final LongIndex pairs = new LongIndex(1024);
+    private long[] packets = new long[pairs.capacity()];
+    private long[] bytes = new long[pairs.capacity()];
+    private final long[] depth = new long[MAX_DEPTH + 1];
+    private long records;
+
+    /**
+     * Adds the given decoded frame if it is tagged.
+     *
+     * @param frame  a decoded frame
+     * @param length the length of the packet in octets, i.e. {@code orig_len}
+     * @return the number of VLAN tags or {@code 0} if the frame is untagged
+     * @throws IllegalArgumentException if {@code frame} is not set
+     */
+    public int add(final Frame frame, final long length) {
+        validateObject("frame", frame);
+        final int n = frame.getTagCount();
+        if (n > 0) {
+            add(frame.getTags(), n, length);
+        }
+        return n;
+    }
+
+    /**
+     * Adds the given VLAN tags, as decoded by {@link Dot1QPacket#decodeTags(byte[], int, int[])}.
+     *
+     * @param tags   the VLAN tags
+     * @param n      the number of VLAN tags
+     * @param length the length of the packet in octets
+     */
+    public void add(final int[] tags, final int n, final long length) {
+        records++;
+        depth[Math.min(n, MAX_DEPTH)]++;
+        final int id = pairs.add(pair(Dot1QPacket.id(tags[0]), n >= 2 ? Dot1QPacket.id(tags[1]) : -1));
+        if (id >= packets.length) {
+            packets = Arrays.copyOf(packets, pairs.capacity());
+            bytes = Arrays.copyOf(bytes, pairs.capacity());
+        }
+        packets[id]++;
+        bytes[id] += length;
+    }
+
+    /**
+     * Returns the key of the given VLAN pair, as returned by {@link #getPairs()}.
+     *
+     * @param outer the outer VLAN ID
+     * @param inner the inner VLAN ID or {@code -1} if there is none
+     * @return the key of the given VLAN pair
+     */
+    public static long pair(final int outer, final int inner) {
+        return (long) outer << 16 | inner & 0xffff;
+    }
+
+    /**
+     * Returns the outer VLAN ID of the given VLAN pair.
+     *
+     * @param pair the key of the VLAN pair
+     * @return the outer VLAN ID
+     */
+    public static int outer(final long pair) {
+        return (int) (pair >>> 16);
+    }
+
+    /**
+     * Returns the inner VLAN ID of the given VLAN pair.
+     *
+     * @param pair the key of the VLAN pair
+     * @return the inner VLAN ID or {@code -1} if there is none
+     */
+    public static int inner(final long pair) {
+        final int inner = (int) (pair & 0xffff);
+        return inner == 0xffff ? -1 : inner;
+    }
+
+    /**
+     * Returns the number of tagged records.
+     *
+     * @return the number of tagged records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the VLAN pairs seen so far.
+     *
+     * @return the keys of the VLAN pairs seen so far, in no particular order; use {@link #outer(long)} and
+     * {@link #inner(long)} to decode them
+     */
+    public long[] getPairs() {
+        final long[] result = new long[pairs.size()];
+        int n = 0;
+        for (int id = 0; id < pairs.capacity(); id++) {
+            if (pairs.isUsed(id)) {
+                result[n++] = pairs.key(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of packets carrying the given VLAN pair.
+     *
+     * @param outer the outer VLAN ID
+     * @param inner the inner VLAN ID or {@code -1} if there is none
+     * @return the number of packets carrying the given VLAN pair
+     */
+    public long getPackets(final int outer, final int inner) {
+        final int id = pairs.get(pair(outer, inner));
+        return id < 0 ? 0 : packets[id];
+    }
+
+    /**
+     * Returns the number of bytes of the packets carrying the given VLAN pair.
+     *
+     * @param outer the outer VLAN ID
+     * @param inner the inner VLAN ID or {@code -1} if there is none
+     * @return the number of bytes of the packets carrying the given VLAN pair
+     */
+    public long getBytes(final int outer, final int inner) {
+        final int id = pairs.get(pair(outer, inner));
+        return id < 0 ? 0 : bytes[id];
+    }
+
+    /**
+     * Returns the number of records per tag depth; deeper stacks are counted as {@link #MAX_DEPTH}.
+     *
+     * @return an array indexed by tag depth
+     */
+    public long[] getDepthDistribution() {
+        return depth.clone();
+    }
+}
@@ -0,0 +1,376 @@
+package com.probendi.libcap;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AnonymizerTest {
+
+    private static final byte[] KEY = new byte[Anonymizer.KEY_LENGTH];
+
+    static {
+        for (int i = 0; i < KEY.length; i++) {
+            KEY[i] = (byte) (i * 7 + 1);
+        }
+    }
+
+    /**
+     * Recomputes the UDP checksum of an IPv4 or IPv6 frame.
+     *
+     * @param bytes the frame
+     */
+    private static void fixUdp(final byte[] bytes) {
+        final int addresses = bytes[14] >> 4 == 4 ? 8 : 32;
+        final int l4 = 14 + (addresses == 8 ? 20 : 40);
+        final int length = bytes.length - l4;
+        bytes[l4 + 4] = (byte) (length >> 8);
+        bytes[l4 + 5] = (byte) length;
+        bytes[l4 + 6] = 0;
+        bytes[l4 + 7] = 0;
+        int sum = Checksum.sum(bytes, l4 - addresses, addresses) + 0x11 + length + Checksum.sum(bytes, l4, length);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        final int checksum = ~sum & 0xffff;
+        bytes[l4 + 6] = (byte) (checksum >> 8);
+        bytes[l4 + 7] = (byte) checksum;
+    }
+
+    /**
+     * Returns a UDP over IPv4 frame whose header carries the given options.
+     *
+     * @param options the options, a multiple of 4 octets long
+     * @return the frame
+     */
+    private static byte[] ipv4Options(final String options) {
+        final byte[] datagram = ChecksumTest.frame(4, 0x11, 8);
+        final byte[] bytes = ParserTest.stringToBytes(options);
+        final byte[] frame = new byte[datagram.length + bytes.length];
+        System.arraycopy(datagram, 0, frame, 0, 34);
+        System.arraycopy(bytes, 0, frame, 34, bytes.length);
+        System.arraycopy(datagram, 34, frame, 34 + bytes.length, datagram.length - 34);
+        frame[14] = (byte) (0x45 + bytes.length / 4);
+        return frame;
+    }
+
+    /**
+     * Returns an ICMP or ICMPv6 frame carrying the given message, with a valid checksum.
+     *
+     * @param version the IP version
+     * @param message the ICMP message
+     * @return the frame
+     */
+    private static byte[] icmp(final int version, final byte[] message) {
+        final byte[] bytes = ChecksumTest.frame(version, version == 4 ? 1 : 0x3a, message.length - 8);
+        final int l4 = bytes.length - message.length;
+        System.arraycopy(message, 0, bytes, l4, message.length);
+        int sum = Checksum.sum(bytes, l4, message.length);
+        if (version == 6) {
+            sum += Checksum.sum(bytes, l4 - 32, 32) + 0x3a + message.length;
+        }
+        sum = (sum >>> 16) + (sum & 0xffff);
+        sum = (sum >>> 16) + (sum & 0xffff);
+        final int checksum = ~sum & 0xffff;
+        bytes[l4 + 2] = (byte) (checksum >> 8);
+        bytes[l4 + 3] = (byte) checksum;
+        return bytes;
+    }
+
+    private static int commonPrefix(final int a, final int b) {
+        return Integer.numberOfLeadingZeros(a ^ b);
+    }
+
+    @Test
+    public void testAnonymizeIpv4() {
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        final int a = 0xc0a80001;
+        final int b = 0xc0a800c7;
+        final int c = 0x0a000001;
+        Assert.assertNotEquals(anonymizer.anonymizeIpv4(a), a);
+        Assert.assertEquals(anonymizer.anonymizeIpv4(a), new Anonymizer(KEY).anonymizeIpv4(a));
+        Assert.assertEquals(commonPrefix(anonymizer.anonymizeIpv4(a), anonymizer.anonymizeIpv4(b)),
+                commonPrefix(a, b));
+        Assert.assertEquals(commonPrefix(anonymizer.anonymizeIpv4(a), anonymizer.anonymizeIpv4(c)),
+                commonPrefix(a, c));
+        Assert.assertEquals(anonymizer.anonymizeIpv4(0), 0);
+
+        final byte[] key = KEY.clone();
+        key[0]++;
+        Assert.assertNotEquals(new Anonymizer(key).anonymizeIpv4(a), anonymizer.anonymizeIpv4(a));
+    }
+
+    @Test
+    public void testAnonymizeAddress() {
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        final byte[] mac = {0x00, 0x11, 0x22, 0x33, 0x44, 0x55};
+        final byte[] multicast = {0x01, 0x00, 0x5e, 0x00, 0x00, 0x01};
+        Assert.assertEquals(anonymizer.anonymize(mac)[0] & 1, 0);
+        Assert.assertEquals(anonymizer.anonymize(multicast)[0] & 1, 1);
+        final byte[] broadcast = {-1, -1, -1, -1, -1, -1};
+        Assert.assertEquals(anonymizer.anonymize(broadcast), broadcast);
+
+        final byte[] a = ParserTest.stringToBytes("20010db8000000000000000000000001");
+        final byte[] b = ParserTest.stringToBytes("20010db8000000010000000000000001");
+        final byte[] x = anonymizer.anonymize(a);
+        final byte[] y = anonymizer.anonymize(b);
+        // the first 63 bits are common
+        Assert.assertEquals(Arrays.copyOf(x, 7), Arrays.copyOf(y, 7));
+        Assert.assertEquals(x[7] & 0xfe, y[7] & 0xfe);
+        Assert.assertNotEquals(x[7], y[7]);
+    }
+
+    @Test
+    public void testAnonymizeRecord() {
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        final Frame frame = new Frame();
+        for (final int version : new int[]{4, 6}) {
+            for (final int protocol : new int[]{6, 0x11}) {
+                final byte[] bytes = ChecksumTest.frame(version, protocol, 64);
+                bytes[5] = 1;
+                bytes[11] = 2;
+                final byte[] original = bytes.clone();
+                anonymizer.anonymize(new Record().bytes(bytes));
+                Assert.assertTrue(frame.decode(bytes));
+                Assert.assertNotEquals(Arrays.copyOfRange(bytes, frame.getSourceOffset(),
+                        frame.getSourceOffset() + frame.getAddressLength()), Arrays.copyOfRange(original,
+                        frame.getSourceOffset(), frame.getSourceOffset() + frame.getAddressLength()));
+                Assert.assertNotEquals(Arrays.copyOf(bytes, 12), Arrays.copyOf(original, 12));
+                Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+                if (version == 4) {
+                    Assert.assertEquals(Checksum.verifyIpv4Header(frame), Checksum.Status.VALID);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAnonymizeDhcp() {
+        final byte[] bytes = ChecksumTest.frame(4, 0x11, 300);
+        final int dhcp = 14 + 20 + 8;
+        bytes[dhcp - 8] = 0;
+        bytes[dhcp - 7] = 68;
+        bytes[dhcp - 6] = 0;
+        bytes[dhcp - 5] = 67;
+        bytes[dhcp + 1] = 1;
+        bytes[dhcp + 2] = 6;
+        // the requested address starts at an odd offset, followed by the client identifier and the end option
+        final byte[] options = ParserTest.stringToBytes("63825363" + "00" + "3204c0a80017" + "3d0701001122334455" +
+                "ff");
+        System.arraycopy(options, 0, bytes, dhcp + 236, options.length);
+        final byte[] yiaddr = Arrays.copyOfRange(bytes, dhcp + 16, dhcp + 20);
+        final byte[] giaddr = Arrays.copyOfRange(bytes, dhcp + 24, dhcp + 28);
+        final byte[] chaddr = Arrays.copyOfRange(bytes, dhcp + 28, dhcp + 34);
+        final int requested = dhcp + 243;
+        final int identifier = dhcp + 250;
+        fixUdp(bytes);
+
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(bytes)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, dhcp + 16, dhcp + 20), anonymizer.anonymize(yiaddr));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, dhcp + 24, dhcp + 28), anonymizer.anonymize(giaddr));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, dhcp + 28, dhcp + 34), anonymizer.anonymize(chaddr));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, requested, requested + 4),
+                anonymizer.anonymize(ParserTest.stringToBytes("c0a80017")));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, identifier, identifier + 6),
+                anonymizer.anonymize(ParserTest.stringToBytes("001122334455")));
+        final Frame frame = new Frame();
+        frame.decode(bytes);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+
+        // a client identifier which is not an Ethernet address
+        bytes[identifier - 1] = (byte) 0xff;
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(bytes)));
+    }
+
+    @Test
+    public void testAnonymizeRadius() {
+        for (final int version : new int[]{4, 6}) {
+            testAnonymizeRadius(version);
+        }
+    }
+
+    private void testAnonymizeRadius(final int version) {
+        final byte[] name = "alice@example.com".getBytes(StandardCharsets.US_ASCII);
+        final byte[] bytes = ChecksumTest.frame(version, 0x11, 20 + 2 + name.length + 6 + 3);
+        final int radius = 14 + (version == 4 ? 20 : 40) + 8;
+        bytes[radius - 8] = (byte) (1812 >> 8);
+        bytes[radius - 7] = (byte) 1812;
+        final int length = bytes.length - radius;
+        bytes[radius + 2] = (byte) (length >> 8);
+        bytes[radius + 3] = (byte) length;
+        int i = radius + 20;
+        bytes[i++] = 1;
+        bytes[i++] = (byte) (2 + name.length);
+        System.arraycopy(name, 0, bytes, i, name.length);
+        i += name.length;
+        // the Framed-IP-Address starts at an odd offset
+        bytes[i++] = 8;
+        bytes[i++] = 6;
+        final byte[] address = {10, 1, 2, 3};
+        System.arraycopy(address, 0, bytes, i, 4);
+        final int framed = i;
+        bytes[i + 4] = 0x50;
+        bytes[i + 5] = 3;
+        fixUdp(bytes);
+
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(bytes)));
+        final String pseudonym = new String(bytes, radius + 22, name.length, StandardCharsets.US_ASCII);
+        Assert.assertTrue(pseudonym.matches("[a-z0-9]{17}"), pseudonym);
+        Assert.assertEquals(Arrays.copyOfRange(bytes, framed, framed + 4), anonymizer.anonymize(address));
+        final Frame frame = new Frame();
+        frame.decode(bytes);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+    }
+
+    @Test
+    public void testAnonymizeArp() {
+        final byte[] bytes = ParserTest.stringToBytes("ffffffffffff001122334455" + "81000064" + "0806" +
+                "000108000604" + "0001" + "001122334455" + "c0a80001" + "000000000000" + "c0a80002");
+        final byte[] original = bytes.clone();
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(bytes)));
+        final int arp = 18;
+        final byte[] mac = Arrays.copyOfRange(original, arp + 8, arp + 14);
+        Assert.assertEquals(Arrays.copyOfRange(bytes, 6, 12), anonymizer.anonymize(mac));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, arp + 8, arp + 14), anonymizer.anonymize(mac));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, arp + 14, arp + 18),
+                anonymizer.anonymize(Arrays.copyOfRange(original, arp + 14, arp + 18)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, arp + 18, arp + 24), new byte[6]);
+        Assert.assertEquals(Arrays.copyOfRange(bytes, arp + 24, arp + 28),
+                anonymizer.anonymize(Arrays.copyOfRange(original, arp + 24, arp + 28)));
+    }
+
+    @Test
+    public void testAnonymizeNeighborDiscovery() {
+        // a Neighbor Advertisement with a target link-layer address option
+        final byte[] message = ParserTest.stringToBytes("88000000" + "60000000" +
+                "20010db8000000000000000000000002" + "0201" + "001122334455");
+        final byte[] bytes = icmp(6, message);
+        final byte[] original = bytes.clone();
+        final int l4 = bytes.length - message.length;
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(bytes)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, l4 + 8, l4 + 24),
+                anonymizer.anonymize(Arrays.copyOfRange(original, l4 + 8, l4 + 24)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, l4 + 26, l4 + 32),
+                anonymizer.anonymize(Arrays.copyOfRange(original, l4 + 26, l4 + 32)));
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(bytes));
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+
+        // a Router Advertisement with a prefix information option
+        final byte[] advertisement = ParserTest.stringToBytes("86000000" + "40000708" + "0000000000000000" +
+                "0304" + "40c0" + "00278d00" + "00093a80" + "00000000" + "20010db8000000010000000000000000");
+        final byte[] ra = icmp(6, advertisement);
+        final int prefix = ra.length - 16;
+        final byte[] expected = anonymizer.anonymize(Arrays.copyOfRange(ra, prefix, prefix + 16));
+        Arrays.fill(expected, 8, 16, (byte) 0);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(ra)));
+        Assert.assertEquals(Arrays.copyOfRange(ra, prefix, prefix + 16), expected);
+        Assert.assertTrue(frame.decode(ra));
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+    }
+
+    @Test
+    public void testAnonymizeIcmpError() {
+        // a port unreachable embedding the IPv4 header and the UDP header of the offending datagram
+        final byte[] datagram = ChecksumTest.frame(4, 0x11, 0);
+        final byte[] message = new byte[8 + datagram.length - 14];
+        message[0] = 3;
+        message[1] = 3;
+        System.arraycopy(datagram, 14, message, 8, datagram.length - 14);
+        final byte[] bytes = icmp(4, message);
+        final int embedded = bytes.length - message.length + 8;
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(bytes)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, embedded + 12, embedded + 16),
+                anonymizer.anonymize(Arrays.copyOfRange(datagram, 26, 30)));
+        Assert.assertEquals(Arrays.copyOfRange(bytes, embedded + 16, embedded + 20),
+                anonymizer.anonymize(Arrays.copyOfRange(datagram, 30, 34)));
+
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(bytes));
+        Assert.assertEquals(Checksum.verifyIpv4Header(frame), Checksum.Status.VALID);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+        Assert.assertTrue(frame.decodeIp(bytes, embedded));
+        Assert.assertEquals(Checksum.verifyIpv4Header(frame), Checksum.Status.VALID);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID);
+    }
+
+    @Test
+    public void testRejected() {
+        final Anonymizer anonymizer = new Anonymizer(KEY);
+        // LLDP
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ParserTest.stringToBytes(
+                "0180c200000e001122334455" + "88cc" + "020704001122334455"))));
+        // an ARP request cut short within the target protocol address
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ParserTest.stringToBytes(
+                "ffffffffffff001122334455" + "0806" + "000108000604" + "0001" + "001122334455" + "c0a80001" +
+                        "000000000000" + "c0a8"))));
+        // a Router Advertisement with a DNS search list option
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(icmp(6, ParserTest.stringToBytes(
+                "86000000" + "40000708" + "0000000000000000" + "1f02" + "0000" + "00000e10" + "076578616d706c65")))));
+        // an IPv4 header cut short within the source address
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(Arrays.copyOf(ChecksumTest.frame(4, 6, 0), 28))));
+        // IP-in-IP, IPv6 in IPv4 and GRE, whose inner addresses would be left in clear
+        for (final int protocol : new int[]{4, 41, 47}) {
+            Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ChecksumTest.frame(4, protocol, 40))));
+        }
+        // an IPv6 routing header
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ChecksumTest.frame(6, 43, 40))));
+        // record route and loose source route options
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ipv4Options("010704" + "c0a80001" + "00"))));
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(ipv4Options("018307" + "04c0a80001" + "00" +
+                "000000"))));
+        // a router alert option carries no address
+        Assert.assertTrue(anonymizer.anonymize(new Record().bytes(ipv4Options("94040000"))));
+        // an ICMP error embedding an IP-in-IP packet
+        final byte[] tunnel = ChecksumTest.frame(4, 4, 20);
+        final byte[] message = new byte[8 + tunnel.length - 14];
+        message[0] = 3;
+        System.arraycopy(tunnel, 14, message, 8, tunnel.length - 14);
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(icmp(4, message))));
+        // DHCPv6
+        final byte[] dhcpv6 = ChecksumTest.frame(6, 0x11, 32);
+        dhcpv6[14 + 40 + 2] = 2;
+        dhcpv6[14 + 40 + 3] = 0x23;
+        Assert.assertFalse(anonymizer.anonymize(new Record().bytes(dhcpv6)));
+    }
+
+    @Test
+    public void testAnonymizeCapture() throws Exception {
+        final byte[] capture = ParserTest.capture(5000, 64);
+        for (int i = 0; i < 5000; i += 10) {
+            // an unknown EtherType, which cannot be rewritten
+            capture[Parser.HEADER_LENGTH + i * (Record.HEADER_LENGTH + 64) + Record.HEADER_LENGTH + 0xc] = (byte) 0x88;
+        }
+        final Path input = Files.write(Files.createTempFile("libcap", ".pcap"), capture);
+        final Path output = Files.createTempFile("libcap", ".pcap");
+        try {
+            try (final Parser parser = new Parser(input);
+                 final PcapWriter writer = new PcapWriter(output, parser)) {
+                Assert.assertEquals(new Anonymizer(KEY).anonymize(parser, writer, 2), 4500);
+            }
+            try (final Parser parser = new Parser(output)) {
+                int n = 0;
+                while (parser.readRecord() != null) {
+                    n++;
+                }
+                Assert.assertEquals(n, 4500);
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "key must be 32 octets long")
+    public void testInvalidKey() {
+        new Anonymizer(new byte[16]);
+    }
+}
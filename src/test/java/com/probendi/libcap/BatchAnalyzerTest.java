@@ -0,0 +1,85 @@
+package com.probendi.libcap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BatchAnalyzerTest {
+
+    private final List<Path> files = new ArrayList<>();
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("libcap");
+        for (int i = 0; i < 20; i++) {
+            files.add(Files.write(directory.resolve(i + ".pcap"), ParserTest.capture(100 + i, 64)));
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (final Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        files.clear();
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        final BatchAnalyzer<Long> analyzer = new BatchAnalyzer<>((file, parser) -> {
+            maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+            long n = 0;
+            while (parser.readRecord() != null) {
+                n++;
+            }
+            open.decrementAndGet();
+            return n;
+        }, Long::sum, 3, 1 << 20);
+        final Long result = analyzer.run(files);
+        Assert.assertEquals(result.longValue(), 20 * 100 + 190);
+        Assert.assertTrue(maxOpen.get() <= 3);
+        Assert.assertTrue(analyzer.getFailures().isEmpty());
+
+        final BatchAnalyzer.Progress progress = analyzer.getProgress();
+        Assert.assertEquals(progress.getFiles(), 20);
+        Assert.assertEquals(progress.getCompletedFiles(), 20);
+        Assert.assertEquals(progress.getCompletedBytes(), progress.getBytes());
+        Assert.assertEquals(progress.getEta(), Duration.ZERO);
+    }
+
+    @Test
+    public void testRunFailure() throws Exception {
+        // an unsupported gzip compression method
+        files.add(Files.write(directory.resolve("bad.pcap"), new byte[]{0x1f, (byte) 0x8b, 1, 0, 0, 0, 0, 0, 0, 0}));
+        final BatchAnalyzer<Long> analyzer = new BatchAnalyzer<>((file, parser) -> 1L, Long::sum);
+        Assert.assertEquals(analyzer.run(files).longValue(), 20);
+        Assert.assertEquals(analyzer.getFailures().keySet(), List.of(files.get(20)));
+        Assert.assertEquals(analyzer.getProgress().getFailedFiles(), 1);
+        Assert.assertEquals(analyzer.getProgress().getCompletedFiles(), 21);
+    }
+
+    @Test(expectedExceptions = AssertionError.class, expectedExceptionsMessageRegExp = "broken analysis")
+    public void testRunError() throws Exception {
+        new BatchAnalyzer<Long>((file, parser) -> {
+            throw new AssertionError("broken analysis");
+        }, Long::sum).run(files);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "max open files must be positive")
+    public void testInvalidMaxOpenFiles() {
+        new BatchAnalyzer<Long>((file, parser) -> 1L, Long::sum, 0, 1);
+    }
+}
@@ -0,0 +1,152 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class BgpFramerTest {
+
+    private static final String KEEP_ALIVE = "ffffffffffffffffffffffffffffffff001304";
+    private static final String ROUTE_REFRESH = "ffffffffffffffffffffffffffffffff00170500010080";
+
+    @Test
+    public void testFrameMultipleMessages() throws Exception {
+        final List<BgpPacket> packets = new ArrayList<>();
+        final BgpFramer framer = new BgpFramer();
+
+        final int n = framer.frame("session", stringToBytes(KEEP_ALIVE + ROUTE_REFRESH + KEEP_ALIVE),
+                (bytes, offset, length) -> packets.add(BgpPacket.parse(bytes, offset, length)));
+        Assert.assertEquals(n, 3);
+        Assert.assertEquals(packets.get(0).getType(), BgpPacket.Type.KEEP_ALIVE);
+        Assert.assertEquals(packets.get(1), BgpPacket.parse(stringToBytes(ROUTE_REFRESH)));
+        Assert.assertEquals(packets.get(2).getPayloadLength(), 0);
+        Assert.assertEquals(framer.getPendingSessions(), 0);
+    }
+
+    @Test
+    public void testFrameSplitMessage() throws Exception {
+        final List<BgpPacket> packets = new ArrayList<>();
+        final BgpFramer.Listener listener = (bytes, offset, length) -> packets.add(BgpPacket.parse(bytes, offset, length));
+        final BgpFramer framer = new BgpFramer();
+        final String segments = KEEP_ALIVE + ROUTE_REFRESH;
+
+        Assert.assertEquals(framer.frame("session", stringToBytes(segments.substring(0, 10)), listener), 0);
+        Assert.assertEquals(framer.frame("other", stringToBytes(KEEP_ALIVE.substring(0, 20)), listener), 0);
+        Assert.assertEquals(framer.frame("session", stringToBytes(segments.substring(10, 60)), listener), 1);
+        Assert.assertEquals(framer.getPendingSessions(), 2);
+        Assert.assertEquals(framer.frame("session", stringToBytes(segments.substring(60)), listener), 1);
+        Assert.assertEquals(framer.getPendingSessions(), 1);
+
+        Assert.assertEquals(packets.size(), 2);
+        Assert.assertEquals(packets.get(0).getType(), BgpPacket.Type.KEEP_ALIVE);
+        Assert.assertEquals(packets.get(1), BgpPacket.parse(stringToBytes(ROUTE_REFRESH)));
+
+        framer.close("other");
+        Assert.assertEquals(framer.getPendingSessions(), 0);
+    }
+
+    private static TcpPacket segment(final long sequence, final String payload) {
+        return new TcpPacket().sequenceNumber(sequence).payload(stringToBytes(payload));
+    }
+
+    @Test
+    public void testFrameRetransmission() throws Exception {
+        final List<BgpPacket> packets = new ArrayList<>();
+        final BgpFramer.Listener listener = (bytes, offset, length) -> packets.add(BgpPacket.parse(bytes, offset, length));
+        final BgpFramer framer = new BgpFramer();
+        final String messages = KEEP_ALIVE + ROUTE_REFRESH;
+
+        Assert.assertEquals(framer.frame("session", segment(0xfffffff0L, messages.substring(0, 50)), listener), 1);
+        // a retransmission of the first segment
+        Assert.assertEquals(framer.frame("session", segment(0xfffffff0L, messages.substring(0, 50)), listener), 0);
+        Assert.assertEquals(framer.getDropped(), 1);
+        // a segment overlapping the first one, across the wrap-around of the sequence numbers
+        Assert.assertEquals(framer.frame("session", segment(0xfffffff0L + 19 & 0xffffffffL,
+                messages.substring(38)), listener), 1);
+        Assert.assertEquals(framer.frame("session", segment(26, KEEP_ALIVE), listener), 1);
+        Assert.assertEquals(packets.size(), 3);
+        Assert.assertEquals(packets.get(1), BgpPacket.parse(stringToBytes(ROUTE_REFRESH)));
+        Assert.assertEquals(framer.getPendingSessions(), 0);
+    }
+
+    @Test
+    public void testFrameGap() throws Exception {
+        final List<BgpPacket> packets = new ArrayList<>();
+        final BgpFramer.Listener listener = (bytes, offset, length) -> packets.add(BgpPacket.parse(bytes, offset, length));
+        final BgpFramer framer = new BgpFramer();
+        final String messages = ROUTE_REFRESH + ROUTE_REFRESH + KEEP_ALIVE;
+
+        Assert.assertEquals(framer.frame("session", segment(100, messages.substring(0, 10)), listener), 0);
+        Assert.assertEquals(framer.getPendingSessions(), 1);
+        // the segment carrying octets 5 to 9 is lost: the session resynchronizes on the second marker
+        Assert.assertEquals(framer.frame("session", segment(110, messages.substring(20, 40)), listener), 0);
+        Assert.assertEquals(framer.getDropped(), 1);
+        Assert.assertEquals(framer.getPendingSessions(), 0);
+        Assert.assertEquals(framer.frame("session", segment(120, messages.substring(40)), listener), 2);
+        Assert.assertEquals(packets.size(), 2);
+        Assert.assertEquals(packets.get(0), BgpPacket.parse(stringToBytes(ROUTE_REFRESH)));
+        Assert.assertEquals(packets.get(1).getType(), BgpPacket.Type.KEEP_ALIVE);
+    }
+
+    @Test
+    public void testFrameResynchronizes() throws Exception {
+        final List<BgpPacket> packets = new ArrayList<>();
+        final BgpFramer.Listener listener = (bytes, offset, length) -> packets.add(BgpPacket.parse(bytes, offset, length));
+        final BgpFramer framer = new BgpFramer();
+        try {
+            framer.frame("session", stringToBytes("0102030405060708090a0b0c0d0e0f10111213"), listener);
+            Assert.fail();
+        } catch (final ParseException e) {
+            Assert.assertEquals(e.getMessage(), "invalid marker");
+        }
+        Assert.assertEquals(framer.frame("session", stringToBytes("0102" + KEEP_ALIVE), listener), 1);
+        Assert.assertEquals(packets.get(0).getType(), BgpPacket.Type.KEEP_ALIVE);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final BgpFramer framer = new BgpFramer(2);
+        final BgpFramer.Listener listener = (bytes, offset, length) -> {
+        };
+        framer.frame("a", stringToBytes(KEEP_ALIVE.substring(0, 10)), listener);
+        framer.frame("b", stringToBytes(KEEP_ALIVE.substring(0, 10)), listener);
+        framer.frame("a", stringToBytes(KEEP_ALIVE.substring(10, 20)), listener);
+        framer.frame("c", stringToBytes(KEEP_ALIVE), listener);
+        Assert.assertEquals(framer.getSessions(), 2);
+        Assert.assertEquals(framer.getEvicted(), 1);
+        // b was the least recently framed session
+        Assert.assertEquals(framer.getPendingSessions(), 1);
+        Assert.assertEquals(framer.frame("a", stringToBytes(KEEP_ALIVE.substring(20)), listener), 1);
+        framer.frame("session", segment(0, KEEP_ALIVE).fin(true), listener);
+        Assert.assertEquals(framer.getSessions(), 1);
+        Assert.assertEquals(framer.getEvicted(), 2);
+    }
+
+    // Negative test cases
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "capacity must be positive")
+    public void testInvalidCapacity() {
+        new BgpFramer(0);
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid marker")
+    public void testFrameFails() throws Exception {
+        new BgpFramer().frame("session", stringToBytes("ffffffffffffffffffffffffffff0000001304"), (bytes, offset, length) -> {
+        });
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "session is not set")
+    public void testFrameNullSession() throws Exception {
+        new BgpFramer().frame(null, stringToBytes(KEEP_ALIVE), (bytes, offset, length) -> {
+        });
+    }
+}
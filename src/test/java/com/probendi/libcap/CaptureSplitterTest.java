@@ -0,0 +1,134 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class CaptureSplitterTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("libcap");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSplitByVlan() throws Exception {
+        final CaptureSplitter splitter = new CaptureSplitter(directory, "vlan", CaptureSplitter.byVlan(4096));
+        final Map<Path, Long> result;
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            result = splitter.split(parser);
+        }
+        Assert.assertEquals(result.size(), 2);
+        Assert.assertEquals(result.get(splitter.getFile(101)).longValue(), 2);
+        Assert.assertEquals(result.get(splitter.getFile(0)).longValue(), 1);
+        Assert.assertEquals(count(splitter.getFile(101), PacketType.DOT1Q), 2);
+        Assert.assertEquals(count(splitter.getFile(0), PacketType.MPLS), 1);
+    }
+
+    @Test
+    public void testSplitByFlow() throws Exception {
+        final CaptureSplitter splitter = new CaptureSplitter(directory, "flow", CaptureSplitter.byFlow(8), 1);
+        final Map<Path, Long> result;
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            result = splitter.split(parser);
+        }
+        Assert.assertEquals(result.values().stream().mapToLong(Long::longValue).sum(), 3);
+        for (final Map.Entry<Path, Long> entry : result.entrySet()) {
+            Assert.assertEquals(count(entry.getKey(), null), entry.getValue().longValue());
+        }
+    }
+
+    @Test
+    public void testSplitByTime() throws Exception {
+        final CaptureSplitter splitter = new CaptureSplitter(directory, "time", CaptureSplitter.byTime(1_000_000L));
+        final Map<Path, Long> result;
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            result = splitter.split(parser);
+        }
+        Assert.assertEquals(result.values().stream().mapToLong(Long::longValue).sum(), 3);
+        long previous = -1;
+        for (final Path file : result.keySet()) {
+            try (final Parser parser = new Parser(file)) {
+                Record record;
+                while ((record = parser.readRecord()) != null) {
+                    Assert.assertTrue(record.getTs_sec() >= previous);
+                    previous = record.getTs_sec();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByFlowFragments() {
+        final CaptureSplitter.Sharding sharding = CaptureSplitter.byFlow(64);
+        final Frame frame = new Frame();
+        final byte[] first = ChecksumTest.frame(4, 0x11, 64);
+        // more fragments
+        first[20] = 0x20;
+        final byte[] second = first.clone();
+        // fragment offset 8, without the UDP header
+        second[20] = 0;
+        second[21] = 1;
+        second[34] = 0x7f;
+        final byte[] reply = first.clone();
+        System.arraycopy(first, 26, reply, 30, 4);
+        System.arraycopy(first, 30, reply, 26, 4);
+
+        frame.decode(first);
+        final long shard = sharding.shard(new Record(), frame);
+        Assert.assertTrue(frame.getSourcePort() >= 0);
+        frame.decode(second);
+        Assert.assertEquals(frame.getSourcePort(), -1);
+        Assert.assertEquals(sharding.shard(new Record(), frame), shard);
+        frame.decode(reply);
+        Assert.assertEquals(sharding.shard(new Record(), frame), shard);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "shards must be positive")
+    public void testByFlowInvalid() {
+        CaptureSplitter.byFlow(0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testSplitUnwritable() throws Exception {
+        final CaptureSplitter splitter = new CaptureSplitter(directory.resolve("missing"), "flow",
+                CaptureSplitter.byFlow(1));
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            splitter.split(parser);
+        }
+    }
+
+    private static long count(final Path file, final PacketType type) throws IOException {
+        long n = 0;
+        try (final Parser parser = new Parser(file)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                if (type == null || record.getType() == type) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,53 @@
+package com.probendi.libcap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ones' complement sum of {@link Checksum}, eight octets at a time, with a naive loop adding one 16-bit
+ * word at a time, e.g. {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ChecksumBenchmark}.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"64", "1500", "9000"})
+    public int length;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+    }
+
+    @Benchmark
+    public int naive() {
+        return ChecksumTest.naiveSum(bytes, 0, length);
+    }
+
+    @Benchmark
+    public int swar() {
+        return Checksum.sum(bytes, 0, length);
+    }
+}
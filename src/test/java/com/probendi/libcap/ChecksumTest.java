@@ -0,0 +1,156 @@
+package com.probendi.libcap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ChecksumTest {
+
+    /**
+     * Returns the ones' complement sum of the given octets, one 16-bit word at a time.
+     *
+     * @param bytes  the octets
+     * @param offset the offset of the first octet
+     * @param length the number of octets
+     * @return the ones' complement sum
+     */
+    static int naiveSum(final byte[] bytes, final int offset, final int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i += 2) {
+            sum += (bytes[offset + i] & 0xff) << 8 | (i + 1 < length ? bytes[offset + i + 1] & 0xff : 0);
+            sum = (sum >>> 16) + (sum & 0xffff);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns an Ethernet frame with an IPv4 or IPv6 header, a transport header of the given protocol and a random
+     * payload, with correct checksums.
+     *
+     * @param version  the IP version
+     * @param protocol the transport protocol
+     * @param payload  the length of the payload in octets
+     * @return the frame
+     */
+    static byte[] frame(final int version, final int protocol, final int payload) {
+        final int l3Length = version == 4 ? 20 : 40;
+        final int l4Length = (protocol == 6 ? 20 : 8) + payload;
+        final ByteBuffer buffer = ByteBuffer.allocate(14 + l3Length + l4Length);
+        buffer.position(12);
+        final int l4 = 14 + l3Length;
+        if (version == 4) {
+            buffer.putChar((char) 0x0800).put((byte) 0x45).put((byte) 0).putChar((char) (l3Length + l4Length))
+                    .putChar((char) 0x1234).putChar((char) 0x4000).put((byte) 64).put((byte) protocol)
+                    .putChar((char) 0).putInt(0xc0a80001).putInt(0xc0a800c7);
+            buffer.putChar(24, (char) (~naiveSum(buffer.array(), 14, 20) & 0xffff));
+        } else {
+            buffer.putChar((char) 0x86dd).putInt(0x60000000).putChar((char) l4Length).put((byte) protocol)
+                    .put((byte) 64).putLong(0x20010db800000000L).putLong(1).putLong(0x20010db800000000L).putLong(2);
+        }
+        final byte[] segment = new byte[l4Length];
+        new Random(payload).nextBytes(segment);
+        final byte[] bytes = buffer.put(segment).array();
+        final int field = protocol == 6 ? 16 : protocol == 0x11 ? 6 : 2;
+        bytes[l4 + field] = 0;
+        bytes[l4 + field + 1] = 0;
+        int sum = naiveSum(bytes, l4, l4Length);
+        if (protocol != 1) {
+            final int addresses = version == 4 ? 8 : 32;
+            sum += naiveSum(bytes, l4 - addresses, addresses) + protocol + l4Length;
+            sum = (sum >>> 16) + (sum & 0xffff);
+            sum = (sum >>> 16) + (sum & 0xffff);
+        }
+        final int checksum = ~sum & 0xffff;
+        bytes[l4 + field] = (byte) (checksum >> 8);
+        bytes[l4 + field + 1] = (byte) checksum;
+        return bytes;
+    }
+
+    @Test
+    public void testSum() {
+        final Random random = new Random(1);
+        final byte[] bytes = new byte[2000];
+        random.nextBytes(bytes);
+        for (int n = 0; n < 1000; n++) {
+            final int offset = random.nextInt(100);
+            final int length = random.nextInt(1800);
+            Assert.assertEquals(Checksum.sum(bytes, offset, length), naiveSum(bytes, offset, length));
+        }
+    }
+
+    @Test
+    public void testChecksum() {
+        final byte[] header = ParserTest.stringToBytes("450000730000400040110000c0a80001c0a800c7");
+        Assert.assertEquals(Checksum.checksum(header, 0, header.length), 0xb861);
+    }
+
+    @Test
+    public void testVerify() {
+        final Frame frame = new Frame();
+        for (final int version : new int[]{4, 6}) {
+            for (final int protocol : new int[]{6, 0x11, version == 4 ? 1 : 0x3a}) {
+                final byte[] bytes = frame(version, protocol, 101);
+                Assert.assertTrue(frame.decode(bytes));
+                Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.VALID, version + "/" + protocol);
+                Assert.assertEquals(Checksum.verifyIpv4Header(frame),
+                        version == 4 ? Checksum.Status.VALID : Checksum.Status.UNVERIFIED);
+                bytes[bytes.length - 1] ^= 1;
+                Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.INVALID);
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyIpv4HeaderInvalid() {
+        final byte[] bytes = frame(4, 0x11, 10);
+        bytes[14 + 8]--;
+        final Frame frame = new Frame();
+        frame.decode(bytes);
+        Assert.assertEquals(Checksum.verifyIpv4Header(frame), Checksum.Status.INVALID);
+    }
+
+    @Test
+    public void testVerifyPartial() {
+        // the sender left the pseudo-header sum for the NIC to complete
+        final byte[] bytes = frame(4, 6, 50);
+        final int l4 = 14 + 20;
+        final int pseudo = naiveSum(bytes, l4 - 8, 8) + 6 + 70;
+        final int folded = (pseudo >>> 16) + (pseudo & 0xffff);
+        bytes[l4 + 16] = (byte) (folded >> 8);
+        bytes[l4 + 17] = (byte) folded;
+        final Frame frame = new Frame();
+        frame.decode(bytes);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.PARTIAL);
+    }
+
+    @Test
+    public void testVerifyUnverified() {
+        final Frame frame = new Frame();
+        // a zero UDP checksum over IPv4 is not present
+        final byte[] udp = frame(4, 0x11, 20);
+        udp[14 + 20 + 6] = 0;
+        udp[14 + 20 + 7] = 0;
+        frame.decode(udp);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.UNVERIFIED);
+        // a truncated segment
+        frame.decode(Arrays.copyOf(frame(6, 6, 100), 100));
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.UNVERIFIED);
+    }
+
+    @Test
+    public void testVerifyRecords() {
+        final byte[] bad = frame(6, 0x11, 30);
+        bad[bad.length - 2] ^= 0x10;
+        final List<Record> records = List.of(new Record().bytes(frame(4, 6, 10)), new Record().bytes(bad),
+                new Record().bytes(frame(6, 0x3a, 30)));
+        final BitSet invalid = new BitSet();
+        Assert.assertEquals(Checksum.verify(records, invalid), 1);
+        Assert.assertEquals(invalid.nextSetBit(0), 1);
+        Assert.assertEquals(invalid.cardinality(), 1);
+    }
+}
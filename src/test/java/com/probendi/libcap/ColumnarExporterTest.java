@@ -0,0 +1,111 @@
+package com.probendi.libcap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ColumnarExporter.Column;
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ColumnarExporterTest {
+
+    private static final String TCP = "00000000000100000000000208004500002800010000400600000A0000010A000002" +
+            "1F90C35000000000000000005012000000000000";
+
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = Files.createTempFile("libcap", ".col");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        try (final Parser parser = new Parser(stringToBytes(ParserTest.PCAP));
+             final ColumnarExporter exporter = new ColumnarExporter(file, 2)) {
+            Assert.assertEquals(exporter.export(parser), 3);
+            Assert.assertEquals(exporter.getRows(), 3);
+        }
+        try (final ColumnarReader reader = new ColumnarReader(file)) {
+            Assert.assertEquals(reader.getColumns().size(), Column.values().length);
+            Assert.assertEquals(reader.getColumns().get(1), "timestamp");
+            Assert.assertEquals(reader.getRowGroups(), 2);
+            Assert.assertEquals(reader.getRows(0), 2);
+            Assert.assertEquals(reader.getRows(1), 1);
+
+            Assert.assertEquals(reader.read(0, Column.FRAME), new long[]{1, 2});
+            Assert.assertEquals(reader.read(1, Column.FRAME), new long[]{3});
+            Assert.assertEquals(reader.read(0, Column.ETHER_TYPE), new long[]{0x8864, 0x8847});
+            Assert.assertEquals(reader.read(0, Column.VLAN), new long[]{101, -1});
+            Assert.assertEquals(reader.read(0, Column.INNER_VLAN), new long[]{-1, -1});
+            Assert.assertEquals(reader.read(0, Column.PPPOE_SESSION), new long[]{0x9a, -1});
+            Assert.assertEquals(reader.read(0, Column.IP_VERSION), new long[]{4, 4});
+            Assert.assertEquals(reader.read(0, Column.PROTOCOL)[0], 0x3d);
+            Assert.assertEquals(reader.read(0, Column.TTL)[0], 0x40);
+            Assert.assertEquals(reader.read(0, Column.SOURCE_LOW)[0], 0x0a2a0001L);
+            Assert.assertEquals(reader.read(0, Column.SOURCE_HIGH)[0], 0);
+            Assert.assertTrue(reader.read(0, Column.MPLS_LABEL)[1] >= 0);
+            Assert.assertEquals(reader.read(0, Column.SOURCE_PORT), new long[]{-1, -1});
+        }
+    }
+
+    @Test
+    public void testEncodings() throws Exception {
+        final byte[] bytes = stringToBytes(TCP);
+        try (final ColumnarExporter exporter = new ColumnarExporter(file, 1000)) {
+            for (int i = 0; i < 1500; i++) {
+                exporter.add(new Record().frame(i + 1).ts_sec(1_600_000_000 + i / 10).ts_usec(i * 997 % 1_000_000)
+                        .incl_len(bytes.length).orig_len(i).bytes(bytes));
+            }
+        }
+        try (final ColumnarReader reader = new ColumnarReader(file)) {
+            Assert.assertEquals(reader.getRowGroups(), 2);
+            final long[] timestamps = reader.read(1, Column.TIMESTAMP);
+            Assert.assertEquals(timestamps.length, 500);
+            Assert.assertEquals(timestamps[0], 1_600_000_100L * 1_000_000L + 1000 * 997 % 1_000_000);
+            final long[] lengths = reader.read(0, Column.ORIG_LEN);
+            Assert.assertEquals(lengths[999], 999);
+            final long[] ports = reader.read(1, Column.DESTINATION_PORT);
+            Assert.assertEquals(ports[499], 50000);
+            Assert.assertEquals(reader.read(0, Column.TCP_FLAGS)[0], 0x12);
+            Assert.assertEquals(reader.read(0, Column.DESTINATION_LOW)[0], 0x0a000002L);
+        }
+        // one octet per dictionary encoded column and a few octets for the others, instead of 8 octets per column
+        Assert.assertTrue(Files.size(file) < 1500 * 24);
+    }
+
+    @Test
+    public void testDissectTruncated() {
+        final long[] row = new long[Column.values().length];
+        // the TCP header is cut short after the ports
+        ColumnarExporter.dissect(new Record().bytes(stringToBytes(TCP.substring(0, 76))), new Frame(), row);
+        Assert.assertEquals(row[Column.PROTOCOL.ordinal()], 6);
+        Assert.assertEquals(row[Column.SOURCE_PORT.ordinal()], 8080);
+        Assert.assertEquals(row[Column.TCP_FLAGS.ordinal()], -1);
+        // the IPv4 header is cut short
+        ColumnarExporter.dissect(new Record().bytes(stringToBytes(TCP.substring(0, 40))), new Frame(), row);
+        Assert.assertEquals(row[Column.ETHER_TYPE.ordinal()], 0x800);
+        Assert.assertEquals(row[Column.IP_VERSION.ordinal()], -1);
+        Assert.assertEquals(row[Column.SOURCE_PORT.ordinal()], -1);
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid magic")
+    public void testReadInvalid() throws Exception {
+        Files.write(file, stringToBytes(ParserTest.PCAP));
+        new ColumnarReader(file).close();
+    }
+}
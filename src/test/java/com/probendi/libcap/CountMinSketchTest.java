@@ -0,0 +1,32 @@
+package com.probendi.libcap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class CountMinSketchTest {
+
+    @Test
+    public void testEstimate() {
+        final CountMinSketch sketch = new CountMinSketch(1000, 4);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(i, 1);
+        }
+        Assert.assertEquals(sketch.add(-1, 50_000), 50_000, 20);
+        Assert.assertEquals(sketch.getTotal(), 60_000);
+        for (int i = 0; i < 10_000; i++) {
+            final long estimate = sketch.estimate(i);
+            Assert.assertTrue(estimate >= 1 && estimate <= 1 + 2 * 10_000 / 1024 + 10, "estimate " + estimate);
+        }
+        sketch.clear();
+        Assert.assertEquals(sketch.estimate(-1), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "width must be positive")
+    public void testInvalidWidth() {
+        new CountMinSketch(0, 4);
+    }
+}
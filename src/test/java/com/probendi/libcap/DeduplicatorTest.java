@@ -0,0 +1,84 @@
+package com.probendi.libcap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DeduplicatorTest {
+
+    private static Record record(final byte[] bytes, final int usec) {
+        return new Record().ts_sec(1_600_000_000).ts_usec(usec).incl_len(bytes.length).orig_len(bytes.length)
+                .bytes(bytes);
+    }
+
+    @Test
+    public void testIsDuplicate() {
+        final Deduplicator deduplicator = new Deduplicator(100, 1024);
+        final byte[] bytes = ChecksumTest.frame(4, 0x11, 50);
+        Assert.assertFalse(deduplicator.isDuplicate(record(bytes, 0)));
+        Assert.assertTrue(deduplicator.isDuplicate(record(bytes.clone(), 5)));
+
+        // the copy forwarded by a router differs in TTL and header checksum only
+        final byte[] routed = bytes.clone();
+        routed[14 + 8]--;
+        routed[14 + 10]++;
+        Assert.assertTrue(deduplicator.isDuplicate(record(routed, 10)));
+
+        final byte[] other = bytes.clone();
+        other[other.length - 1]++;
+        Assert.assertFalse(deduplicator.isDuplicate(record(other, 10)));
+
+        // outside the window
+        Assert.assertFalse(deduplicator.isDuplicate(record(bytes, 500)));
+        Assert.assertEquals(deduplicator.getPassed(), 3);
+        Assert.assertEquals(deduplicator.getDuplicates(), 2);
+    }
+
+    @Test
+    public void testIsDuplicateIpv6() {
+        final Deduplicator deduplicator = new Deduplicator();
+        final byte[] bytes = ChecksumTest.frame(6, 6, 20);
+        final byte[] routed = bytes.clone();
+        routed[14 + 7]--;
+        Assert.assertFalse(deduplicator.isDuplicate(record(bytes, 0)));
+        Assert.assertTrue(deduplicator.isDuplicate(record(routed, 1)));
+    }
+
+    @Test
+    public void testBounded() {
+        final Deduplicator deduplicator = new Deduplicator(1_000_000, 64);
+        for (int i = 0; i < 10_000; i++) {
+            final byte[] bytes = ChecksumTest.frame(4, 0x11, 8);
+            bytes[bytes.length - 1] = (byte) i;
+            bytes[bytes.length - 2] = (byte) (i >> 8);
+            Assert.assertFalse(deduplicator.isDuplicate(record(bytes, i)));
+        }
+        Assert.assertEquals(deduplicator.getPassed(), 10_000);
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        final byte[] capture = ParserTest.capture(1000, 64);
+        // the records have the same bytes and are 1 ms apart: every other record is within the window of the last
+        // record passed
+        final Path input = Files.write(Files.createTempFile("libcap", ".pcap"), capture);
+        final Path output = Files.createTempFile("libcap", ".pcap");
+        try {
+            try (final Parser parser = new Parser(input);
+                 final PcapWriter writer = new PcapWriter(output, parser)) {
+                Assert.assertEquals(new Deduplicator().deduplicate(parser, writer), 500);
+            }
+            try (final Parser parser = new Parser(output)) {
+                for (int i = 0; i < 1000; i += 2) {
+                    Assert.assertEquals(parser.readRecord().getTs_usec(), i % 1000 * 1000);
+                }
+                Assert.assertNull(parser.readRecord());
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+}
@@ -28,4 +28,26 @@ public class Dot1QPacketTest {
         Assert.assertFalse(actual.hasPppoEDiscoveryPacket());
         Assert.assertFalse(actual.hasPppoESessionPacket());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDecodeTags() {
+        final byte[] bytes = stringToBytes("01005e000005001101000001" + "88a8a064" + "81000024" + "81000025" + "0800");
+        final int[] tags = new int[2];
+        Assert.assertEquals(Dot1QPacket.decodeTags(bytes, 0xc, tags), 3);
+        Assert.assertEquals(tags[0] >>> 16, PacketType.DOT1AD.getType());
+        Assert.assertEquals(Dot1QPacket.id(tags[0]), 100);
+        Assert.assertEquals(Dot1QPacket.priority(tags[0]), 5);
+        Assert.assertFalse(Dot1QPacket.isDei(tags[0]));
+        Assert.assertEquals(tags[1] >>> 16, PacketType.DOT1Q.getType());
+        Assert.assertEquals(Dot1QPacket.id(tags[1]), 36);
+        Assert.assertEquals(Dot1QPacket.priority(tags[1]), 0);
+
+        Assert.assertEquals(Dot1QPacket.decodeTags(bytes, 0x18, tags), 0);
+        // the last tag is not followed by an EtherType
+        Assert.assertEquals(Dot1QPacket.decodeTags(stringToBytes("01005e000005001101000001" + "91001064"), 0xc, tags),
+                0);
+        Assert.assertTrue(Dot1QPacket.isDei(0x91001064));
+        Assert.assertTrue(Dot1QPacket.isTag(PacketType.QINQ.getType()));
+        Assert.assertFalse(Dot1QPacket.isTag(PacketType.IPv4.getType()));
+    }
+}
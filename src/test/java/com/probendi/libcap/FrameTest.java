@@ -0,0 +1,185 @@
+package com.probendi.libcap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class FrameTest {
+
+    private static final String ETHERNET = "0000000000010000000000020800";
+    private static final String TCP = ETHERNET + "45000028000100004006000" + "00A0000010A000002" +
+            "1F90C35000000000000000005000000000000000";
+    private static final String TCP_REPLY = ETHERNET + "45000028000100004006000" + "00A0000020A000001" +
+            "C3501F9000000000000000005000000000000000";
+    private static final String MPLS = "D0D04BDCB8D5883FD32DBAE98847000006FF0824A7FF" +
+            "45000028000100004011000" + "00A0000010A000002" + "00350035";
+    private static final String IPV6 = "00000000000100000000000286DD" + "6000000000180001" +
+            "20010DB8000000000000000000000001" + "20010DB8000000000000000000000002";
+    private static final String HOP_BY_HOP = IPV6 + "1100010400000000" + "0035003500100000" + "0000000000000000";
+    private static final String FRAGMENT = ETHERNET + "45000028000120104006000" + "00A0000010A000002" +
+            "1F90C350";
+    private static final String Q_IN_Q = "000000000001000000000002" + "88A80064" + "81002024" + TCP.substring(24);
+
+    @Test
+    public void testDecodeTcp() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(stringToBytes(TCP)));
+        Assert.assertEquals(frame.getVlan(), -1);
+        Assert.assertEquals(frame.getEtherType(), PacketType.IPv4.getType());
+        Assert.assertEquals(frame.getIpVersion(), 4);
+        Assert.assertEquals(frame.getL3Offset(), 14);
+        Assert.assertEquals(frame.getL4Offset(), 34);
+        Assert.assertEquals(frame.getProtocol(), 6);
+        Assert.assertEquals(frame.getSourcePort(), 8080);
+        Assert.assertEquals(frame.getDestinationPort(), 50000);
+        Assert.assertEquals(frame.getSourceOffset(), 26);
+        Assert.assertEquals(frame.getDestinationOffset(), 30);
+        Assert.assertEquals(frame.getAddressLength(), 4);
+
+        final long hash = frame.getFlowHash();
+        final long source = frame.getSourceHash();
+        Assert.assertTrue(frame.decode(stringToBytes(TCP_REPLY)));
+        Assert.assertEquals(frame.getFlowHash(), hash);
+        Assert.assertNotEquals(frame.getSourceHash(), source);
+    }
+
+    @Test
+    public void testDecodeMpls() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(stringToBytes(MPLS)));
+        Assert.assertEquals(frame.getEtherType(), PacketType.MPLS.getType());
+        Assert.assertEquals(frame.getL3Offset(), 22);
+        Assert.assertEquals(frame.getProtocol(), 0x11);
+        Assert.assertEquals(frame.getSourcePort(), 53);
+        Assert.assertEquals(frame.getDestinationPort(), 53);
+        Assert.assertEquals(frame.getMplsLabel(), 0);
+        Assert.assertEquals(frame.getPppoESession(), -1);
+        Assert.assertFalse(frame.isTruncated());
+    }
+
+    @Test
+    public void testDecodeTruncated() {
+        final Frame frame = new Frame();
+        // the label stack is not terminated
+        Assert.assertFalse(frame.decode(stringToBytes(MPLS.substring(0, 36))));
+        Assert.assertTrue(frame.isTruncated());
+        Assert.assertEquals(frame.getMplsLabel(), 0);
+        // the IPv4 header is cut short
+        Assert.assertFalse(frame.decode(stringToBytes(TCP.substring(0, 60))));
+        Assert.assertTrue(frame.isTruncated());
+        Assert.assertEquals(frame.getMplsLabel(), -1);
+        // an ARP frame is not truncated
+        Assert.assertFalse(frame.decode(stringToBytes("01005e000005001101000001810000240806")));
+        Assert.assertFalse(frame.isTruncated());
+    }
+
+    @Test
+    public void testDecodeFragment() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(stringToBytes(FRAGMENT)));
+        Assert.assertEquals(frame.getL4Offset(), -1);
+        Assert.assertEquals(frame.getSourcePort(), -1);
+    }
+
+    @Test
+    public void testDecodeIpv6ExtensionHeaders() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(stringToBytes(HOP_BY_HOP)));
+        Assert.assertEquals(frame.getIpVersion(), 6);
+        Assert.assertEquals(frame.getL3Offset(), 14);
+        Assert.assertEquals(frame.getL4Offset(), 62);
+        Assert.assertEquals(frame.getProtocol(), 0x11);
+        Assert.assertEquals(frame.getSourcePort(), 53);
+        Assert.assertEquals(Checksum.verifyTransport(frame), Checksum.Status.INVALID);
+
+        // a fragment other than the first
+        Assert.assertTrue(frame.decode(stringToBytes(IPV6.replace("00180001", "00102C01") +
+                "1100000900000001" + "0000000000000000")));
+        Assert.assertEquals(frame.getProtocol(), 0x11);
+        Assert.assertEquals(frame.getL4Offset(), -1);
+        Assert.assertEquals(frame.getSourcePort(), -1);
+
+        // a truncated hop-by-hop options header
+        Assert.assertTrue(frame.decode(stringToBytes(IPV6 + "1100")));
+        Assert.assertEquals(frame.getProtocol(), 0);
+        Assert.assertEquals(frame.getL4Offset(), -1);
+    }
+
+    @Test
+    public void testDecodeIp() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decodeIp(stringToBytes(TCP), 14));
+        Assert.assertEquals(frame.getEtherType(), -1);
+        Assert.assertEquals(frame.getL4Offset(), 34);
+        Assert.assertEquals(frame.getSourcePort(), 8080);
+        final long hash = frame.getFlowHash();
+        final long addressHash = frame.getAddressHash();
+        Assert.assertTrue(frame.decode(stringToBytes(TCP)));
+        Assert.assertEquals(frame.getFlowHash(), hash);
+        Assert.assertEquals(frame.getAddressHash(), addressHash);
+        Assert.assertNotEquals(addressHash, hash);
+        Assert.assertFalse(frame.decodeIp(stringToBytes(TCP), 13));
+    }
+
+    @Test
+    public void testDecodePppoE() throws Exception {
+        final Frame frame = new Frame();
+        try (final Parser parser = new Parser(stringToBytes(ParserTest.PCAP))) {
+            Assert.assertTrue(frame.decode(parser.readRecord()));
+        }
+        Assert.assertEquals(frame.getVlan(), 101);
+        Assert.assertEquals(frame.getEtherType(), PacketType.PPPoE_SESS.getType());
+        Assert.assertEquals(frame.getIpVersion(), 4);
+        Assert.assertEquals(frame.getL3Offset(), 26);
+        Assert.assertEquals(frame.getProtocol(), 0x3d);
+        Assert.assertEquals(frame.getSourcePort(), -1);
+        Assert.assertEquals(frame.getPppProtocol(), PppoEPacket.PointToPointProtocol.IPV4.getType());
+        Assert.assertTrue(frame.getPppoESession() >= 0);
+    }
+
+    @Test
+    public void testDecodeQinQ() {
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(stringToBytes(Q_IN_Q)));
+        Assert.assertEquals(frame.getVlan(), 100);
+        Assert.assertEquals(frame.getInnerVlan(), 36);
+        Assert.assertEquals(frame.getTagCount(), 2);
+        Assert.assertEquals(frame.getTags()[0], 0x88a80064);
+        Assert.assertEquals(frame.getTags()[1], 0x81002024);
+        Assert.assertEquals(frame.getEtherType(), PacketType.IPv4.getType());
+        Assert.assertEquals(frame.getL3Offset(), 22);
+        Assert.assertEquals(frame.getSourcePort(), 8080);
+        Assert.assertEquals(frame.getDestinationPort(), 50000);
+
+        Assert.assertTrue(frame.decode(stringToBytes(TCP)));
+        Assert.assertEquals(frame.getInnerVlan(), -1);
+        Assert.assertEquals(frame.getTagCount(), 0);
+
+        // a tag which is not followed by an EtherType is not a tag
+        Assert.assertFalse(frame.decode(stringToBytes(Q_IN_Q.substring(0, 40))));
+        Assert.assertEquals(frame.getTagCount(), 1);
+        Assert.assertEquals(frame.getVlan(), 100);
+        Assert.assertEquals(frame.getEtherType(), 0x8100);
+    }
+
+    @Test
+    public void testDecodeNonIp() {
+        final Frame frame = new Frame();
+        Assert.assertFalse(frame.decode(stringToBytes("01005e000005001101000001810000240806")));
+        Assert.assertEquals(frame.getVlan(), 36);
+        Assert.assertEquals(frame.getEtherType(), 0x806);
+        Assert.assertEquals(frame.getL3Offset(), -1);
+        Assert.assertEquals(frame.getFlowHash(), 0);
+        Assert.assertEquals(frame.getAddressHash(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "bytes is not set")
+    public void testDecodeNull() {
+        new Frame().decode((byte[]) null);
+    }
+}
@@ -0,0 +1,54 @@
+package com.probendi.libcap;
+
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class HeavyHittersTest {
+
+    @Test
+    public void testExactBelowCapacity() {
+        final HeavyHitters hitters = new HeavyHitters(4);
+        hitters.add(1, 5);
+        hitters.add(2, 1);
+        hitters.add(3, 3);
+        hitters.add(2, 1);
+
+        final List<HeavyHitters.Entry> top = hitters.getTop(2);
+        Assert.assertEquals(top.size(), 2);
+        Assert.assertEquals(top.get(0).getKey(), 1);
+        Assert.assertEquals(top.get(0).getCount(), 5);
+        Assert.assertEquals(top.get(1).getKey(), 3);
+        Assert.assertEquals(top.get(1).getError(), 0);
+        Assert.assertEquals(hitters.getTotal(), 10);
+    }
+
+    @Test
+    public void testFindsHeavyHitters() {
+        final Random random = new Random(11);
+        final HeavyHitters hitters = new HeavyHitters(16);
+        for (int i = 0; i < 100_000; i++) {
+            // two keys carry half of the stream, the rest is spread over many keys
+            final long key = random.nextBoolean() ? random.nextInt(2) : 100 + random.nextInt(10_000);
+            hitters.add(key, 1);
+        }
+        final List<HeavyHitters.Entry> top = hitters.getTop(2);
+        Assert.assertTrue(top.get(0).getKey() < 2);
+        Assert.assertTrue(top.get(1).getKey() < 2);
+        Assert.assertTrue(top.get(1).getCount() - top.get(1).getError() > 20_000);
+        Assert.assertEquals(hitters.getEntries().size(), 16);
+    }
+
+    // Negative test cases
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "capacity must be positive")
+    public void testInvalidCapacity() {
+        new HeavyHitters(0);
+    }
+}
@@ -0,0 +1,46 @@
+package com.probendi.libcap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testEstimate() {
+        final HyperLogLog sketch = new HyperLogLog(12);
+        Assert.assertEquals(sketch.estimate(), 0);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(LongIndex.mix(i));
+            sketch.add(LongIndex.mix(i));
+        }
+        Assert.assertEquals(sketch.estimate(), 100, 2);
+        for (int i = 100; i < 1_000_000; i++) {
+            sketch.add(LongIndex.mix(i));
+        }
+        Assert.assertEquals(sketch.estimate(), 1_000_000, 50_000);
+    }
+
+    @Test
+    public void testMerge() {
+        final HyperLogLog a = new HyperLogLog(10);
+        final HyperLogLog b = new HyperLogLog(10);
+        for (int i = 0; i < 500; i++) {
+            a.add(LongIndex.mix(i));
+            b.add(LongIndex.mix(i + 250));
+        }
+        a.merge(b);
+        Assert.assertEquals(a.estimate(), 750, 50);
+        a.clear();
+        Assert.assertEquals(a.estimate(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "precision must be between 4 and 18")
+    public void testInvalidPrecision() {
+        new HyperLogLog(3);
+    }
+}
@@ -0,0 +1,111 @@
+package com.probendi.libcap;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class IcmpErrorCorrelatorTest {
+
+    /**
+     * Returns an ICMP or ICMPv6 error embedding the IP header and the first 8 octets of the payload of the given
+     * frame.
+     */
+    private static byte[] error(final byte[] frame, final int type, final int code, final int mtu) {
+        final boolean ipv4 = (frame[14] & 0xf0) == 0x40;
+        final int embedded = (ipv4 ? 20 : 40) + 8;
+        final ByteBuffer buffer = ByteBuffer.allocate(14 + (ipv4 ? 20 : 40) + 8 + embedded);
+        buffer.position(12);
+        if (ipv4) {
+            buffer.putChar((char) 0x0800).put((byte) 0x45).put((byte) 0).putChar((char) (28 + embedded))
+                    .putInt(0).put((byte) 64).put((byte) 1).putChar((char) 0).putInt(0x0a000001).putInt(0xc0a80001)
+                    .put((byte) type).put((byte) code).putChar((char) 0).putChar((char) 0).putChar((char) mtu);
+        } else {
+            buffer.putChar((char) 0x86dd).putInt(0x60000000).putChar((char) (8 + embedded)).put((byte) 0x3a)
+                    .put((byte) 64).putLong(0x20010db8ffff0000L).putLong(1).putLong(0x20010db800000000L).putLong(1)
+                    .put((byte) type).put((byte) code).putChar((char) 0).putInt(mtu);
+        }
+        return buffer.put(frame, 14, embedded).array();
+    }
+
+    /**
+     * Returns the given IPv4 frame in the opposite direction.
+     */
+    private static byte[] reply(final byte[] frame) {
+        final byte[] bytes = frame.clone();
+        System.arraycopy(frame, 26, bytes, 30, 4);
+        System.arraycopy(frame, 30, bytes, 26, 4);
+        System.arraycopy(frame, 34, bytes, 36, 2);
+        System.arraycopy(frame, 36, bytes, 34, 2);
+        return bytes;
+    }
+
+    @Test
+    public void testBlackHole() {
+        final IcmpErrorCorrelator correlator = new IcmpErrorCorrelator();
+        final byte[] segment = ChecksumTest.frame(4, 6, 1460);
+        Assert.assertNull(correlator.add(new Record().bytes(segment)));
+        Assert.assertEquals(correlator.size(), 0);
+        Assert.assertEquals(correlator.add(new Record().ts_sec(1).bytes(error(segment, 3, 4, 1400))),
+                IcmpErrorCorrelator.ErrorKind.PACKET_TOO_BIG);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNull(correlator.add(new Record().bytes(segment)));
+            Assert.assertNull(correlator.add(new Record().bytes(reply(segment))));
+        }
+        Assert.assertNull(correlator.add(new Record().bytes(ChecksumTest.frame(4, 6, 100))));
+
+        final Frame frame = new Frame();
+        Assert.assertTrue(frame.decode(reply(segment)));
+        final IcmpErrorCorrelator.Flow flow = correlator.getFlow(frame);
+        Assert.assertNotNull(flow);
+        Assert.assertEquals(flow.getVersion(), 4);
+        Assert.assertEquals(flow.getProtocol(), 6);
+        Assert.assertEquals(flow.getSource(), "0xc0a80001");
+        Assert.assertEquals(flow.getDestination(), "0xc0a800c7");
+        Assert.assertEquals(flow.getSourcePort(), Parser.readChar(segment[34], segment[35]));
+        Assert.assertEquals(flow.getErrors(IcmpErrorCorrelator.ErrorKind.PACKET_TOO_BIG), 1);
+        Assert.assertEquals(flow.getErrors(), 1);
+        Assert.assertEquals(flow.getMtu(), 1400);
+        Assert.assertEquals(flow.getPackets(), 6);
+        Assert.assertEquals(flow.getOversized(), 3);
+        Assert.assertEquals(flow.getFirstError(), 1_000_000);
+        Assert.assertTrue(flow.isBlackHole());
+        Assert.assertEquals(correlator.getBlackHoles().size(), 1);
+    }
+
+    @Test
+    public void testIpv6() {
+        final IcmpErrorCorrelator correlator = new IcmpErrorCorrelator(1);
+        final byte[] datagram = ChecksumTest.frame(6, 0x11, 1400);
+        Assert.assertEquals(correlator.add(new Record().bytes(error(datagram, 2, 0, 1280))),
+                IcmpErrorCorrelator.ErrorKind.PACKET_TOO_BIG);
+        Assert.assertEquals(correlator.add(new Record().bytes(error(datagram, 3, 0, 0))),
+                IcmpErrorCorrelator.ErrorKind.TIME_EXCEEDED);
+        Assert.assertEquals(correlator.add(new Record().bytes(error(datagram, 1, 4, 0))),
+                IcmpErrorCorrelator.ErrorKind.UNREACHABLE);
+        // an echo request is not an error
+        Assert.assertNull(correlator.add(new Record().bytes(error(datagram, 128, 0, 0))));
+        Assert.assertNull(correlator.add(new Record().bytes(ChecksumTest.frame(6, 0x11, 1000))));
+
+        final List<IcmpErrorCorrelator.Flow> flows = correlator.getFlows();
+        Assert.assertEquals(flows.size(), 1);
+        Assert.assertEquals(flows.get(0).getErrors(), 3);
+        Assert.assertEquals(flows.get(0).getMtu(), 1280);
+        Assert.assertEquals(flows.get(0).getSource(), "0x20010db8000000000000000000000001");
+        Assert.assertEquals(flows.get(0).getPackets(), 0);
+        Assert.assertFalse(flows.get(0).isBlackHole());
+        Assert.assertEquals(correlator.getErrors(IcmpErrorCorrelator.ErrorKind.PACKET_TOO_BIG), 1);
+        Assert.assertEquals(correlator.getErrors(IcmpErrorCorrelator.ErrorKind.PARAMETER_PROBLEM), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "threshold must be positive")
+    public void testThreshold() {
+        new IcmpErrorCorrelator(0);
+    }
+}
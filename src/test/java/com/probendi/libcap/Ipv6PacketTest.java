@@ -29,5 +29,36 @@ public class Ipv6PacketTest {
         Assert.assertFalse(actual.hasIcmpv6());
         Assert.assertFalse(actual.hasTcp());
         Assert.assertTrue(actual.hasUdp());
+        Assert.assertEquals(actual.getProtocol(), 0x11);
+        Assert.assertEquals(actual.getUpperLayerOffset(), 0);
+        Assert.assertSame(actual.getUpperLayerPayload(), actual.getPayload());
+        Assert.assertFalse(actual.hasFragment());
+    }
+
+    @Test
+    public void testParseExtensionHeaders() {
+        // hop-by-hop options, routing, destination options and fragment headers, followed by TCP
+        final String header = "6000000000300001" + "20010db8000000000000000000000001" +
+                "20010db8000000000000000000000002";
+        final String extensions = "2b00010400000000" + "3c00000000000000" + "2c00010400000000" +
+                "0600000000001234";
+        final Ipv6Packet packet = Ipv6Packet.parse(ParserTest.stringToBytes(header + extensions +
+                "1f90c35000000000"));
+        Assert.assertEquals(packet.getNextHeader(), 0);
+        Assert.assertEquals(packet.getProtocol(), 6);
+        Assert.assertTrue(packet.hasTcp());
+        Assert.assertFalse(packet.hasUdp());
+        Assert.assertTrue(packet.hasFragment());
+        Assert.assertEquals(packet.getFragmentOffset(), 0);
+        Assert.assertEquals(packet.getUpperLayerOffset(), 32);
+        Assert.assertEquals(packet.getUpperLayerPayload(), ParserTest.stringToBytes("1f90c35000000000"));
+
+        // a fragment other than the first
+        final Ipv6Packet fragment = Ipv6Packet.parse(ParserTest.stringToBytes(header +
+                extensions.replace("0600000000001234", "0600002900001234") + "1f90c35000000000"));
+        Assert.assertTrue(fragment.hasTcp());
+        Assert.assertEquals(fragment.getFragmentOffset(), 5);
+        Assert.assertEquals(fragment.getUpperLayerOffset(), -1);
+        Assert.assertNull(fragment.getUpperLayerPayload());
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class Ipv6ReassemblerTest {
+
+    private static final byte[] DATA = new byte[40];
+
+    static {
+        for (int i = 0; i < DATA.length; i++) {
+            DATA[i] = (byte) i;
+        }
+    }
+
+    /**
+     * Returns a fragment with a hop-by-hop options header before the fragment header.
+     */
+    private static byte[] fragment(final int id, final int offset, final boolean more, final int length) {
+        final byte[] bytes = new byte[56 + length];
+        header(bytes, 16 + length, 44);
+        bytes[48] = 0x11;
+        bytes[50] = (byte) (offset >> 8);
+        bytes[51] = (byte) (offset | (more ? 1 : 0));
+        bytes[55] = (byte) id;
+        System.arraycopy(DATA, offset, bytes, 56, length);
+        return bytes;
+    }
+
+    private static void header(final byte[] bytes, final int length, final int next) {
+        bytes[0] = 0x60;
+        bytes[4] = (byte) (length >> 8);
+        bytes[5] = (byte) length;
+        bytes[6] = 0;
+        bytes[7] = 64;
+        bytes[23] = 1;
+        bytes[39] = 2;
+        // a hop-by-hop options header with a PadN option
+        bytes[40] = (byte) next;
+        bytes[42] = 1;
+        bytes[43] = 4;
+    }
+
+    private static byte[] expected() {
+        final byte[] bytes = new byte[48 + DATA.length];
+        header(bytes, 8 + DATA.length, 0x11);
+        System.arraycopy(DATA, 0, bytes, 48, DATA.length);
+        return bytes;
+    }
+
+    @Test
+    public void testAdd() {
+        final Ipv6Reassembler reassembler = new Ipv6Reassembler();
+        final byte[] last = fragment(1, 32, false, 8);
+        Assert.assertNull(reassembler.add(last, 0, last.length, 0));
+        final byte[] first = fragment(1, 0, true, 16);
+        Assert.assertNull(reassembler.add(first, 0, first.length, 1));
+        final byte[] other = fragment(2, 0, true, 16);
+        Assert.assertNull(reassembler.add(other, 0, other.length, 2));
+        Assert.assertEquals(reassembler.size(), 2);
+        final byte[] middle = fragment(1, 16, true, 16);
+        final byte[] packet = reassembler.add(middle, 0, middle.length, 3);
+        Assert.assertEquals(packet, expected());
+        Assert.assertEquals(reassembler.size(), 1);
+        Assert.assertEquals(reassembler.getReassembled(), 1);
+
+        final Ipv6Packet ipv6 = Ipv6Packet.parse(packet);
+        Assert.assertTrue(ipv6.hasUdp());
+        Assert.assertFalse(ipv6.hasFragment());
+        Assert.assertEquals(ipv6.getUpperLayerOffset(), 8);
+        Assert.assertEquals(ipv6.getUpperLayerPayload(), DATA);
+    }
+
+    @Test
+    public void testAddRecord() {
+        final byte[] fragment = fragment(1, 0, false, 40);
+        final byte[] bytes = new byte[14 + fragment.length + 6];
+        bytes[12] = (byte) 0x86;
+        bytes[13] = (byte) 0xdd;
+        System.arraycopy(fragment, 0, bytes, 14, fragment.length);
+        // an atomic fragment, followed by the Ethernet padding
+        final Ipv6Reassembler reassembler = new Ipv6Reassembler();
+        Assert.assertEquals(reassembler.add(new Record().bytes(bytes)), expected());
+        Assert.assertNull(reassembler.add(new Record().bytes(Arrays.copyOf(expected(), 60))));
+        Assert.assertEquals(reassembler.size(), 0);
+    }
+
+    @Test
+    public void testOverlap() {
+        final Ipv6Reassembler reassembler = new Ipv6Reassembler();
+        final byte[] first = fragment(1, 0, true, 24);
+        Assert.assertNull(reassembler.add(first, 0, first.length, 0));
+        final byte[] middle = fragment(1, 16, true, 16);
+        Assert.assertNull(reassembler.add(middle, 0, middle.length, 0));
+        final byte[] last = fragment(1, 32, false, 8);
+        Assert.assertNull(reassembler.add(last, 0, last.length, 0));
+        Assert.assertEquals(reassembler.getDropped(), 1);
+        Assert.assertEquals(reassembler.getReassembled(), 0);
+    }
+
+    @Test
+    public void testExpire() {
+        final Ipv6Reassembler reassembler = new Ipv6Reassembler(1000, 1);
+        final byte[] first = fragment(1, 0, true, 16);
+        Assert.assertNull(reassembler.add(first, 0, first.length, 0));
+        final byte[] other = fragment(2, 0, true, 16);
+        Assert.assertNull(reassembler.add(other, 0, other.length, 500));
+        Assert.assertEquals(reassembler.getDropped(), 1);
+        final byte[] last = fragment(2, 16, false, 24);
+        Assert.assertNull(reassembler.add(last, 0, last.length, 1501));
+        Assert.assertEquals(reassembler.getExpired(), 1);
+        Assert.assertEquals(reassembler.size(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "capacity must be positive")
+    public void testCapacity() {
+        new Ipv6Reassembler(1000, 0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.probendi.libcap;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class LinkStateDatabaseTest {
+
+    private static final int R1 = 0x01010101;
+    private static final int R2 = 0x02020202;
+    private static final int R3 = 0x03030303;
+    private static final int DR = 0x0a000003;
+
+    /**
+     * Returns a router LSA with the given links, each one being a link ID, a type and a metric.
+     */
+    static byte[] routerLsa(final int router, final int sequenceNumber, final int[]... links) {
+        final ByteBuffer buffer = ByteBuffer.allocate(OspfLsa.HEADER_LENGTH + 4 + links.length * 12);
+        header(buffer, 1, router, router, sequenceNumber);
+        buffer.put((byte) 0).put((byte) 0).putChar((char) links.length);
+        for (final int[] link : links) {
+            buffer.putInt(link[0]).putInt(0).put((byte) link[1]).put((byte) 0).putChar((char) link[2]);
+        }
+        return buffer.array();
+    }
+
+    static byte[] networkLsa(final int designatedRouter, final int router, final int... attachedRouters) {
+        final ByteBuffer buffer = ByteBuffer.allocate(OspfLsa.HEADER_LENGTH + 4 + attachedRouters.length * 4);
+        header(buffer, 2, designatedRouter, router, 0x80000001);
+        buffer.putInt(0xffffff00);
+        for (final int attachedRouter : attachedRouters) {
+            buffer.putInt(attachedRouter);
+        }
+        return buffer.array();
+    }
+
+    static OspfPacket lsUpdate(final byte[]... lsas) throws Exception {
+        int length = OspfPacket.HEADER_LENGTH + 4;
+        for (final byte[] lsa : lsas) {
+            length += lsa.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put((byte) 2).put((byte) 4).putChar((char) length).putInt(R1).putInt(0).putChar((char) 0)
+                .putChar((char) 0).putLong(0).putInt(lsas.length);
+        for (final byte[] lsa : lsas) {
+            buffer.put(lsa);
+        }
+        return OspfPacket.parse(buffer.array());
+    }
+
+    private static void header(final ByteBuffer buffer, final int type, final int linkStateId, final int router,
+                               final int sequenceNumber) {
+        buffer.putChar((char) 1).put((byte) 0x22).put((byte) type).putInt(linkStateId).putInt(router)
+                .putInt(sequenceNumber).putChar((char) 0).putChar((char) buffer.capacity());
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        final LinkStateDatabase database = new LinkStateDatabase();
+        final OspfPacket packet = lsUpdate(routerLsa(R1, 0x80000001, new int[]{R2, 1, 10}));
+
+        Assert.assertEquals(database.apply(packet, 1), 1);
+        // a retransmission does not change the database
+        Assert.assertEquals(database.apply(packet, 2), 0);
+        Assert.assertEquals(database.apply(lsUpdate(routerLsa(R1, 0x80000002)), 3), 1);
+        // an older instance does not change the database
+        Assert.assertEquals(database.apply(packet, 4), 0);
+
+        final Map<LinkStateDatabase.Key, LinkStateDatabase.Entry> area = database.getArea(0);
+        Assert.assertEquals(area.size(), 1);
+        final LinkStateDatabase.Entry entry = area.get(new LinkStateDatabase.Key(OspfLsa.Type.ROUTER, R1, R1));
+        Assert.assertEquals(entry.getChanges(), 1);
+        Assert.assertEquals(entry.getLastChanged(), 3);
+        Assert.assertEquals(entry.getLsa().getSequenceNumber(), 0x80000002);
+        Assert.assertTrue(entry.getLsa().getLinks().isEmpty());
+        Assert.assertTrue(database.getAsExternal().isEmpty());
+    }
+
+    @Test
+    public void testSpf() throws Exception {
+        final LinkStateDatabase database = new LinkStateDatabase();
+        database.apply(lsUpdate(
+                routerLsa(R1, 0x80000001, new int[]{R2, 1, 10}, new int[]{DR, 2, 5}),
+                routerLsa(R2, 0x80000001, new int[]{R1, 1, 10}),
+                routerLsa(R3, 0x80000001, new int[]{DR, 2, 5}),
+                networkLsa(DR, R3, R1, R3)), 1);
+
+        final Map<Integer, Integer> actual = database.spf(0, R1);
+        Assert.assertEquals(actual, Map.of(R1, 0, R2, 10, R3, 5));
+
+        // a one-way adjacency is not used
+        database.apply(lsUpdate(routerLsa(R2, 0x80000002)), 2);
+        Assert.assertEquals(database.spf(0, R1), Map.of(R1, 0, R3, 5));
+    }
+}
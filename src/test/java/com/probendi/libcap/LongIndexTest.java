@@ -0,0 +1,94 @@
+package com.probendi.libcap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class LongIndexTest {
+
+    @Test
+    public void testAddAndGet() {
+        final LongIndex index = new LongIndex(4);
+        Assert.assertEquals(index.get(42), -1);
+        final int id = index.add(42);
+        Assert.assertEquals(index.add(42), id);
+        Assert.assertEquals(index.get(42), id);
+        Assert.assertEquals(index.key(id), 42);
+        Assert.assertTrue(index.isUsed(id));
+        Assert.assertEquals(index.size(), 1);
+    }
+
+    @Test
+    public void testRemoveReusesIds() {
+        final LongIndex index = new LongIndex(4);
+        final int id = index.add(1);
+        index.add(2);
+        Assert.assertEquals(index.remove(1), id);
+        Assert.assertFalse(index.isUsed(id));
+        Assert.assertEquals(index.remove(1), -1);
+        Assert.assertEquals(index.add(3), id);
+        Assert.assertEquals(index.size(), 2);
+    }
+
+    @Test
+    public void testRekey() {
+        final LongIndex index = new LongIndex(4);
+        final int id = index.add(1);
+        index.add(2);
+        // removed IDs are not reused by a rekey
+        index.remove(2);
+        index.rekey(id, 3);
+        Assert.assertEquals(index.get(3), id);
+        Assert.assertEquals(index.get(1), -1);
+        Assert.assertEquals(index.key(id), 3);
+        Assert.assertEquals(index.size(), 1);
+        index.rekey(id, 3);
+        Assert.assertEquals(index.get(3), id);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "key already in use")
+    public void testRekeyFails() {
+        final LongIndex index = new LongIndex(4);
+        final int id = index.add(1);
+        index.add(2);
+        index.rekey(id, 2);
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        final Random random = new Random(7);
+        final LongIndex index = new LongIndex(16);
+        final Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            final long key = random.nextInt(2_000);
+            final int op = random.nextInt(3);
+            if (op == 0) {
+                final int id = index.add(key);
+                Assert.assertEquals(id, (int) expected.computeIfAbsent(key, k -> id));
+            } else if (op == 1) {
+                final Integer id = expected.remove(key);
+                final long other = random.nextInt(2_000);
+                if (id != null && !expected.containsKey(other)) {
+                    index.rekey(id, other);
+                    expected.put(other, id);
+                } else if (id != null) {
+                    expected.put(key, id);
+                }
+            } else {
+                final Integer id = expected.remove(key);
+                Assert.assertEquals(index.remove(key), id == null ? -1 : id);
+            }
+        }
+        Assert.assertEquals(index.size(), expected.size());
+        for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            Assert.assertEquals(index.get(entry.getKey()), (int) entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.probendi.libcap;
+
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class MetricsTest {
+
+    @Test
+    public void testCounters() {
+        final Metrics metrics = new Metrics();
+        metrics.addRecord(100);
+        metrics.addRecord(60);
+        metrics.addLatency(Metrics.Layer.IPV4, 0);
+        metrics.addLatency(Metrics.Layer.IPV4, 1000);
+        metrics.addLatency(Metrics.Layer.IPV4, Long.MAX_VALUE);
+
+        Assert.assertEquals(metrics.getRecords(), 2);
+        Assert.assertEquals(metrics.getBytes(), 160);
+        Assert.assertTrue(metrics.getRecordsPerSecond() > 0);
+        Assert.assertEquals(metrics.getParseFailures().get("RADIUS").longValue(), 0);
+        final long[] histogram = metrics.getLatencyHistograms().get("IPV4");
+        Assert.assertEquals(histogram[0], 1);
+        Assert.assertEquals(histogram[10], 1);
+        Assert.assertEquals(histogram[Metrics.BUCKETS - 1], 1);
+
+        metrics.reset();
+        Assert.assertEquals(metrics.getRecords(), 0);
+        Assert.assertEquals(metrics.getLatencyHistograms().get("IPV4")[10], 0);
+    }
+
+    @Test
+    public void testPacketTypes() {
+        final Metrics metrics = new Metrics();
+        final byte[] arp = ParserTest.stringToBytes("01005e000005001101000001" + "0806");
+        final byte[] tagged = ParserTest.stringToBytes("01005e000005001101000001" + "810000240800");
+        metrics.addPacketType(arp, arp.length);
+        metrics.addPacketType(tagged, tagged.length);
+        metrics.addPacketType(arp, 0xd);
+        Assert.assertEquals(metrics.getUnsupportedPacketTypes(), 1);
+
+        // looking up a packet type does not count it
+        final long unsupported = Metrics.getInstance().getUnsupportedPacketTypes();
+        Assert.assertEquals(PacketType.parse((char) 0x0806), PacketType.UNSUPPORTED);
+        Assert.assertEquals(Metrics.getInstance().getUnsupportedPacketTypes(), unsupported);
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final Metrics metrics = new Metrics();
+        metrics.register(server);
+        metrics.addRecord(42);
+
+        final ObjectName name = new ObjectName(Metrics.NAME);
+        Assert.assertEquals(server.getAttribute(name, "Records"), 1L);
+        Assert.assertEquals(server.getAttribute(name, "Bytes"), 42L);
+        Assert.assertEquals(((TabularData) server.getAttribute(name, "ParseFailures")).size(),
+                Metrics.Layer.values().length);
+        server.invoke(name, "reset", null, null);
+        Assert.assertEquals(server.getAttribute(name, "Records"), 0L);
+    }
+
+    @Test
+    public void testHooks() throws Exception {
+        final Metrics metrics = Metrics.getInstance();
+        final long records = metrics.getRecords();
+        final Map<String, Long> failures = metrics.getParseFailures();
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            while (parser.readRecord() != null) {
+                // read all the records
+            }
+        }
+        try {
+            RadiusPacket.Code.parse((byte) 0);
+            Assert.fail();
+        } catch (final java.text.ParseException e) {
+            // expected
+        }
+        final long expected = Metrics.ENABLED ? 3 : 0;
+        Assert.assertEquals(metrics.getRecords() - records, expected);
+        Assert.assertEquals(metrics.getParseFailures().get("RADIUS") - failures.get("RADIUS"), Metrics.ENABLED ? 1 : 0);
+    }
+}
@@ -52,4 +52,20 @@ public class MplsPacketTest {
         Assert.assertTrue(actual.hasIpv4Packet());
         Assert.assertFalse(actual.hasIpv6Packet());
     }
+
+    @Test
+    public void testDecodeStack() {
+        final int[] stack = new int[4];
+        final byte[] bytes = ParserTest.stringToBytes("D0D04BDCB8D5883FD32DBAE98847000006FF0824A7FF45");
+
+        Assert.assertEquals(MplsPacket.decodeStack(bytes, 0xe, stack), 2);
+        Assert.assertEquals(MplsPacket.label(stack[0]), 0);
+        Assert.assertEquals(MplsPacket.exp(stack[0]), 3);
+        Assert.assertFalse(MplsPacket.isBottom(stack[0]));
+        Assert.assertEquals(MplsPacket.ttl(stack[0]), 255);
+        Assert.assertEquals(MplsPacket.label(stack[1]), 33354);
+        Assert.assertTrue(MplsPacket.isBottom(stack[1]));
+
+        Assert.assertEquals(MplsPacket.decodeStack(bytes, 0xe, new int[1]), 1);
+    }
 }
\ No newline at end of file
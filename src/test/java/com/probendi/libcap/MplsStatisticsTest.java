@@ -0,0 +1,59 @@
+package com.probendi.libcap;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class MplsStatisticsTest {
+
+    private static final String MPLS = "D0D04BDCB8D5883FD32DBAE98847000006FF0824A7FF450004F6";
+    private static final String DOT1Q_MPLS = "D0D04BDCB8D5883FD32DBAE98100002488470001D0400824A13F45";
+    private static final String Q_IN_Q_MPLS = "D0D04BDCB8D5883FD32DBAE988A8006481000024884700001C400824A13F45";
+
+    @Test
+    public void testAdd() {
+        final MplsStatistics statistics = new MplsStatistics(8);
+        Assert.assertEquals(statistics.add(new Record().orig_len(100).bytes(stringToBytes(MPLS))), 2);
+        Assert.assertEquals(statistics.add(new Record().orig_len(100).bytes(stringToBytes(MPLS))), 2);
+        Assert.assertEquals(statistics.add(new Record().orig_len(60).bytes(stringToBytes(DOT1Q_MPLS))), 2);
+        Assert.assertEquals(statistics.add(new Record().bytes(stringToBytes("01005e000005001101000001810000240800"))), 0);
+
+        Assert.assertEquals(statistics.getRecords(), 3);
+        Assert.assertEquals(statistics.getLabels().length, 3);
+        Assert.assertEquals(statistics.getPackets(0), 2);
+        Assert.assertEquals(statistics.getBytes(0), 200);
+        Assert.assertEquals(statistics.getPackets(33354), 3);
+        Assert.assertEquals(statistics.getBytes(33354), 260);
+        Assert.assertEquals(statistics.getPackets(29), 1);
+        Assert.assertEquals(statistics.getPackets(1), 0);
+
+        final long[] exp = statistics.getExpDistribution();
+        Assert.assertEquals(exp[3], 4);
+        Assert.assertEquals(exp[0], 2);
+        final long[] ttl = statistics.getTtlDistribution();
+        Assert.assertEquals(ttl[255], 4);
+        Assert.assertEquals(ttl[0x40], 1);
+        Assert.assertEquals(ttl[0x3f], 1);
+        Assert.assertEquals(statistics.getDepthDistribution()[2], 3);
+
+        final List<HeavyHitters.Entry> top = statistics.getTopPairs(1);
+        Assert.assertEquals(MplsStatistics.outer(top.get(0).getKey()), 0);
+        Assert.assertEquals(MplsStatistics.inner(top.get(0).getKey()), 33354);
+        Assert.assertEquals(top.get(0).getCount(), 2);
+    }
+
+    @Test
+    public void testAddQinQ() {
+        final MplsStatistics statistics = new MplsStatistics(8);
+        Assert.assertEquals(statistics.add(new Record().orig_len(60).bytes(stringToBytes(Q_IN_Q_MPLS))), 2);
+        Assert.assertEquals(statistics.getPackets(1), 1);
+        Assert.assertEquals(statistics.getPackets(33354), 1);
+    }
+}
@@ -0,0 +1,85 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class NeighborDiscoveryPacketTest {
+
+    static final String ROUTER_ADVERTISEMENT = "86001234" + "40c00708" + "0000753000000bb8" +
+            "0101001122334455" + "05010000000005dc" +
+            "030440c000278d0000093a800000000020010db8000100000000000000000000";
+    static final String NEIGHBOR_ADVERTISEMENT = "88001234" + "60000000" + "fe800000000000000211223344556677" +
+            "0201001122334466";
+
+    @Test
+    public void testParseRouterAdvertisement() throws Exception {
+        final NeighborDiscoveryPacket packet = NeighborDiscoveryPacket.parse(stringToBytes(ROUTER_ADVERTISEMENT));
+        Assert.assertEquals(packet.getType(), NeighborDiscoveryPacket.Type.ROUTER_ADVERTISEMENT);
+        Assert.assertEquals(packet.getChecksum(), 0x1234);
+        Assert.assertEquals(packet.getCurHopLimit(), 64);
+        Assert.assertTrue(packet.isManaged());
+        Assert.assertTrue(packet.isOther());
+        Assert.assertEquals(packet.getRouterLifetime(), 1800);
+        Assert.assertEquals(packet.getReachableTime(), 30000);
+        Assert.assertEquals(packet.getRetransTimer(), 3000);
+        Assert.assertEquals(packet.getOptions().size(), 3);
+        Assert.assertEquals(packet.getSourceLinkLayerAddress(), stringToBytes("001122334455"));
+        Assert.assertNull(packet.getTargetLinkLayerAddress());
+        Assert.assertEquals(packet.getMtu(), 1500);
+
+        final List<NeighborDiscoveryPacket.Prefix> prefixes = packet.getPrefixes();
+        Assert.assertEquals(prefixes.size(), 1);
+        Assert.assertEquals(prefixes.get(0), new NeighborDiscoveryPacket.Prefix().prefixLength((byte) 64)
+                .flags((byte) 0xc0).validLifetime(2592000).preferredLifetime(604800)
+                .prefix(stringToBytes("20010db8000100000000000000000000")));
+        Assert.assertTrue(prefixes.get(0).isOnLink());
+        Assert.assertTrue(prefixes.get(0).isAutonomous());
+    }
+
+    @Test
+    public void testParseNeighborAdvertisement() throws Exception {
+        final NeighborDiscoveryPacket expected = new NeighborDiscoveryPacket()
+                .type(NeighborDiscoveryPacket.Type.NEIGHBOR_ADVERTISEMENT).checksum((char) 0x1234).flags((byte) 0x60)
+                .target(stringToBytes("fe800000000000000211223344556677"))
+                .options(List.of(new NeighborDiscoveryPacket.Option().type((byte) 2).length((byte) 1)
+                        .value(stringToBytes("001122334466"))));
+        final NeighborDiscoveryPacket actual = NeighborDiscoveryPacket.parse(stringToBytes(NEIGHBOR_ADVERTISEMENT));
+        Assert.assertEquals(actual, expected);
+        Assert.assertFalse(actual.isRouter());
+        Assert.assertTrue(actual.isSolicited());
+        Assert.assertTrue(actual.isOverride());
+        Assert.assertFalse(actual.isManaged());
+        Assert.assertEquals(actual.getMtu(), -1);
+        Assert.assertTrue(Icmpv6Packet.parse(stringToBytes(NEIGHBOR_ADVERTISEMENT)).hasNeighborDiscovery());
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid option length")
+    public void testParseInvalidOption() throws Exception {
+        NeighborDiscoveryPacket.parse(stringToBytes("85000000000000000100001122334455"));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseShortRouterAdvertisement() throws Exception {
+        NeighborDiscoveryPacket.parse(stringToBytes("8600000040000708"));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseShortNeighborAdvertisement() throws Exception {
+        // the target would be zero-padded
+        NeighborDiscoveryPacket.parse(stringToBytes("88000000600000000000"));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid type")
+    public void testParseInvalidType() throws Exception {
+        NeighborDiscoveryPacket.parse(stringToBytes("8000000000000000"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.probendi.libcap;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class NeighborDiscoveryTrackerTest {
+
+    private static final String ROUTER = "fe800000000000000211223344556655";
+    private static final String HOST = "fe800000000000000211223344556677";
+    private static final String UNSPECIFIED = "00000000000000000000000000000000";
+    private static final String ALL_NODES = "ff020000000000000000000000000001";
+
+    private static Record record(final int sec, final String mac, final String source, final String message) {
+        final int length = message.length() / 2;
+        return new Record().ts_sec(sec).bytes(stringToBytes("333300000001" + mac + "86dd" + "60000000" +
+                String.format("%04x", length) + "3aff" + source + ALL_NODES + message));
+    }
+
+    private static String solicitation(final String target, final String mac) {
+        return "87000000" + "00000000" + target + (mac == null ? "" : "0101" + mac);
+    }
+
+    @Test
+    public void testAdd() {
+        final NeighborDiscoveryTracker tracker = new NeighborDiscoveryTracker(16, 4);
+        Assert.assertEquals(tracker.add(record(1, "001122334455", ROUTER,
+                NeighborDiscoveryPacketTest.ROUTER_ADVERTISEMENT)), NeighborDiscoveryPacket.Type.ROUTER_ADVERTISEMENT);
+        Assert.assertEquals(tracker.add(record(2, "001122334499", UNSPECIFIED, solicitation(HOST, null))),
+                NeighborDiscoveryPacket.Type.NEIGHBOR_SOLICITATION);
+        Assert.assertEquals(tracker.add(record(3, "001122334466", HOST,
+                NeighborDiscoveryPacketTest.NEIGHBOR_ADVERTISEMENT)),
+                NeighborDiscoveryPacket.Type.NEIGHBOR_ADVERTISEMENT);
+        Assert.assertEquals(tracker.add(record(4, "001122334477", HOST, solicitation(ROUTER, "001122334477"))),
+                NeighborDiscoveryPacket.Type.NEIGHBOR_SOLICITATION);
+        Assert.assertNull(tracker.add(new Record().bytes(ChecksumTest.frame(6, 0x3a, 20))));
+        Assert.assertNull(tracker.add(new Record().bytes(ChecksumTest.frame(4, 0x11, 20))));
+
+        Assert.assertEquals(tracker.size(), 2);
+        Assert.assertEquals(tracker.getDuplicateAddressDetections(), 1);
+        Assert.assertEquals(tracker.getMessages(NeighborDiscoveryPacket.Type.NEIGHBOR_SOLICITATION), 2);
+        Assert.assertEquals(tracker.getMessages(NeighborDiscoveryPacket.Type.REDIRECT), 0);
+
+        final NeighborDiscoveryTracker.Neighbor router = tracker.getNeighbor(stringToBytes(ROUTER));
+        Assert.assertEquals(router.getAddress(), "0x" + ROUTER);
+        Assert.assertEquals(router.getMac(), 0x001122334455L);
+        Assert.assertTrue(router.isRouter());
+        Assert.assertEquals(router.getFirstSeen(), 1_000_000);
+
+        // the host's MAC address changed from the advertised one
+        final NeighborDiscoveryTracker.Neighbor host = tracker.getNeighbor(stringToBytes(HOST));
+        Assert.assertEquals(host.getMac(), 0x001122334477L);
+        Assert.assertFalse(host.isRouter());
+        Assert.assertEquals(host.getChanges(), 1);
+        Assert.assertEquals(host.getFirstSeen(), 3_000_000);
+        Assert.assertEquals(host.getLastSeen(), 4_000_000);
+        Assert.assertNull(tracker.getNeighbor(stringToBytes(ALL_NODES)));
+
+        final List<NeighborDiscoveryTracker.Router> routers = tracker.getRouters();
+        Assert.assertEquals(routers.size(), 1);
+        Assert.assertEquals(routers.get(0).getAddress(), "0x" + ROUTER);
+        Assert.assertEquals(routers.get(0).getLifetime(), 1800);
+        Assert.assertEquals(routers.get(0).getCurHopLimit(), 64);
+        Assert.assertTrue(routers.get(0).isManaged());
+        Assert.assertEquals(routers.get(0).getMtu(), 1500);
+        Assert.assertEquals(routers.get(0).getAdvertisements(), 1);
+        Assert.assertEquals(routers.get(0).getPrefixes().size(), 1);
+        Assert.assertEquals(routers.get(0).getPrefixes().get(0).getPrefix(), "0x20010db8000100000000000000000000");
+    }
+
+    @Test
+    public void testEvict() {
+        final NeighborDiscoveryTracker tracker = new NeighborDiscoveryTracker(100, 1);
+        for (int i = 0; i < 1000; i++) {
+            final String address = String.format("20010db8000100000000000000%06x", i);
+            tracker.add(record(i, "0011223344ff", address, solicitation(ROUTER, String.format("0000%08x", i))));
+        }
+        Assert.assertEquals(tracker.size(), 100);
+        Assert.assertEquals(tracker.getEvictions(), 900);
+        // the most recent neighbor is never evicted
+        final NeighborDiscoveryTracker.Neighbor neighbor = tracker.getNeighbor(
+                stringToBytes("20010db80001000000000000000003e7"));
+        Assert.assertEquals(neighbor.getMac(), 999);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "routers must be positive")
+    public void testRouters() {
+        new NeighborDiscoveryTracker(1, 0);
+    }
+}
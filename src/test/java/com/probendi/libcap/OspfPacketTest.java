@@ -1,6 +1,7 @@
 package com.probendi.libcap;
 
 import java.text.ParseException;
+import java.util.Arrays;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -25,6 +26,41 @@ public class OspfPacketTest {
         Assert.assertEquals(actual, expected);
     }
 
+    @Test
+    public void testParseHello() throws Exception {
+        final String header = "02010030ac10240200000000ae6800000000000000000000";
+        final String payload = "fffffffc000a020000000028ac10240100000000ac110101";
+
+        final OspfPacket.Hello expected = new OspfPacket.Hello().networkMask(0xfffffffc).helloInterval((char) 10)
+                .options((byte) 2).priority((byte) 0).deadInterval(40).designatedRouter(0xac102401)
+                .backupDesignatedRouter(0).neighbors(new int[]{0xac110101});
+
+        final OspfPacket packet = OspfPacket.parse(ParserTest.stringToBytes(header + payload + "0000"));
+        Assert.assertEquals(OspfPacket.Hello.parse(packet), expected);
+    }
+
+    @Test
+    public void testParseDbDescription() throws Exception {
+        final String header = "02020034ac10240200000000000000000000000000000000";
+        final String payload = "05dc4207000010a4" + "0001020101010101010101018000000112340024";
+
+        final OspfPacket packet = OspfPacket.parse(ParserTest.stringToBytes(header + payload));
+        final OspfPacket.DbDescription actual = OspfPacket.DbDescription.parse(packet);
+        Assert.assertEquals(actual.getInterfaceMtu(), 1500);
+        Assert.assertEquals(actual.getSequenceNumber(), 0x10a4);
+        Assert.assertTrue(actual.isInit());
+        Assert.assertTrue(actual.isMore());
+        Assert.assertTrue(actual.isMaster());
+        Assert.assertEquals(actual.getLsaHeaders().size(), 1);
+
+        final OspfLsa lsa = actual.getLsaHeaders().get(0);
+        Assert.assertEquals(lsa.getType(), OspfLsa.Type.ROUTER);
+        Assert.assertEquals(lsa.getLinkStateId(), 0x01010101);
+        Assert.assertEquals(lsa.getAdvertisingRouter(), 0x01010101);
+        Assert.assertEquals(lsa.getSequenceNumber(), 0x80000001);
+        Assert.assertEquals(lsa.getLength(), 36);
+    }
+
     // Negative test cases
 
     @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid type")
@@ -34,4 +70,57 @@ public class OspfPacketTest {
 
         OspfPacket.parse(ParserTest.stringToBytes(header + payload));
     }
-}
\ No newline at end of file
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid type")
+    public void testParseHelloFails() throws Exception {
+        final String header = "02040030ac10240200000000ae6800000000000000000000";
+        final String payload = "fffffffc000a020000000028ac10240100000000ac110101";
+
+        OspfPacket.Hello.parse(OspfPacket.parse(ParserTest.stringToBytes(header + payload)));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid number of LSAs")
+    public void testParseLsUpdateFailsOnNegativeCount() throws Exception {
+        final OspfPacket packet = LinkStateDatabaseTest.lsUpdate();
+        packet.getPayload()[0] = (byte) 0x80;
+        OspfPacket.LsUpdate.parse(packet);
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid number of links")
+    public void testParseLsUpdateFailsOnRouterLinks() throws Exception {
+        final byte[] lsa = LinkStateDatabaseTest.routerLsa(0x01010101, 0x80000001, new int[]{0x02020202, 1, 10});
+        // the LSA carries one link but announces three
+        lsa[OspfLsa.HEADER_LENGTH + 3] = 3;
+        OspfPacket.LsUpdate.parse(LinkStateDatabaseTest.lsUpdate(lsa));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseHelloFailsOnShortBody() throws Exception {
+        // the length announces a body of 4 octets only
+        final String header = "0201001cac10240200000000ae6800000000000000000000";
+        OspfPacket.Hello.parse(OspfPacket.parse(ParserTest.stringToBytes(header + "fffffffc")));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseDbDescriptionFailsOnShortBody() throws Exception {
+        final String header = "0202001cac10240200000000000000000000000000000000";
+        OspfPacket.DbDescription.parse(OspfPacket.parse(ParserTest.stringToBytes(header + "05dc4207")));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseLsUpdateFailsOnShortNetworkLsa() throws Exception {
+        final byte[] lsa = Arrays.copyOf(LinkStateDatabaseTest.networkLsa(0x0a000001, 0x01010101), OspfLsa.HEADER_LENGTH);
+        // a Network LSA without its network mask
+        lsa[19] = OspfLsa.HEADER_LENGTH;
+        OspfPacket.LsUpdate.parse(LinkStateDatabaseTest.lsUpdate(lsa));
+    }
+
+    @Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = "invalid length")
+    public void testParseLsUpdateFailsOnShortSummaryLsa() throws Exception {
+        final byte[] lsa = LinkStateDatabaseTest.networkLsa(0x0a000001, 0x01010101);
+        // a Summary LSA carrying a network mask but no metric, followed by the next LSA
+        lsa[3] = 3;
+        OspfPacket.LsUpdate.parse(LinkStateDatabaseTest.lsUpdate(lsa, LinkStateDatabaseTest.routerLsa(0x01010101,
+                0x80000001)));
+    }
+}
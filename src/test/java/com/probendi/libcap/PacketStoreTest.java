@@ -0,0 +1,72 @@
+package com.probendi.libcap;
+
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PacketStoreTest {
+
+    @Test
+    public void testAddAll() throws Exception {
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP));
+             final Parser expected = new Parser(ParserTest.stringToBytes(ParserTest.PCAP));
+             final PacketStore store = new PacketStore()) {
+            Assert.assertEquals(store.addAll(parser), 3);
+            Assert.assertEquals(store.size(), 3);
+            Assert.assertEquals(store.getMemory(), PacketStore.ARENA_SIZE);
+            for (int i = 0; i < store.size(); i++) {
+                final Record record = expected.readRecord();
+                final Record stored = store.get(i);
+                Assert.assertEquals(stored.getBytes(), record.getBytes());
+                Assert.assertEquals(stored.getFrame(), record.getFrame());
+                Assert.assertEquals(stored.getTs_sec(), record.getTs_sec());
+                Assert.assertEquals(stored.getTs_usec(), record.getTs_usec());
+                Assert.assertEquals(stored.getOrig_len(), record.getOrig_len());
+                Assert.assertEquals(store.getTimestamp(i), record.getTs_sec() * 1_000_000L + record.getTs_usec());
+            }
+        }
+    }
+
+    @Test
+    public void testArenas() {
+        try (final PacketStore store = new PacketStore(100)) {
+            for (int i = 0; i < 2000; i++) {
+                final byte[] bytes = new byte[i % 10 == 0 ? 150 : 40];
+                bytes[0] = (byte) i;
+                store.add(new Record().ts_sec(i / 10).ts_usec(i % 10).orig_len(bytes.length).bytes(bytes));
+            }
+            Assert.assertEquals(store.size(), 2000);
+            // a large record gets an arena of its own
+            Assert.assertEquals(store.getLength(10), 150);
+            Assert.assertEquals(store.getOrigLength(11), 40);
+            final ByteBuffer view = store.getBytes(1234);
+            Assert.assertTrue(view.isReadOnly());
+            Assert.assertTrue(view.isDirect());
+            Assert.assertEquals(view.remaining(), 40);
+            Assert.assertEquals(view.get(0), (byte) 1234);
+            Assert.assertEquals(store.get(1999).getBytes()[0], (byte) 1999);
+            Assert.assertEquals(store.search(150_000_005L), 1505);
+            Assert.assertEquals(store.search(0), 0);
+            Assert.assertEquals(store.search(Long.MAX_VALUE), 2000);
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        try (final PacketStore store = new PacketStore()) {
+            store.get(0);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "store is closed")
+    public void testAddClosed() {
+        final PacketStore store = new PacketStore(64);
+        store.close();
+        store.add(new Record().bytes(new byte[1]));
+    }
+}
@@ -0,0 +1,111 @@
+package com.probendi.libcap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ParallelGzipInputStreamTest {
+
+    /**
+     * Returns the given bytes compressed as BGZF blocks of the given size, followed by the empty end-of-file block.
+     *
+     * @param bytes     the bytes to be compressed
+     * @param blockSize the number of uncompressed octets per block
+     * @return the compressed bytes
+     */
+    static byte[] bgzf(final byte[] bytes, final int blockSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i <= bytes.length; i += blockSize) {
+            final int length = Math.min(blockSize, bytes.length - i);
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(bytes, i, length);
+            deflater.finish();
+            final byte[] data = new byte[length + 1024];
+            final int n = deflater.deflate(data);
+            deflater.end();
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, i, length);
+            final ByteBuffer block = ByteBuffer.allocate(18 + n + 8).order(ByteOrder.LITTLE_ENDIAN);
+            block.put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+            block.putShort((short) (18 + n + 8 - 1)).put(data, 0, n).putInt((int) crc.getValue()).putInt(length);
+            out.writeBytes(block.array());
+            if (length == 0) {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        final byte[] bytes = ParserTest.capture(5000, 100);
+        final byte[] compressed = bgzf(bytes, 0xff00);
+        Assert.assertTrue(ParallelGzipInputStream.isBgzf(new ByteArrayInputStream(compressed)));
+        try (final ParallelGzipInputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed), 4)) {
+            Assert.assertEquals(in.readAllBytes(), bytes);
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    @Test
+    public void testParseBgzf() throws Exception {
+        final Path file = Files.createTempFile("libcap", ".pcap.gz");
+        try {
+            Files.write(file, bgzf(ParserTest.capture(3000, 64), 0x1000));
+            try (final Parser parser = new Parser(file)) {
+                Assert.assertNull(parser.getChannel());
+                int n = 0;
+                Record record;
+                while ((record = parser.readRecord()) != null) {
+                    Assert.assertEquals(record.getFrame(), ++n);
+                    Assert.assertEquals(record.getIncl_len(), 64);
+                }
+                Assert.assertEquals(n, 3000);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParseGzip() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(ParserTest.capture(1000, 64));
+        }
+        Assert.assertTrue(ParallelGzipInputStream.isGzip(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertFalse(ParallelGzipInputStream.isBgzf(new ByteArrayInputStream(out.toByteArray())));
+        try (final Parser parser = new Parser(new ByteArrayInputStream(out.toByteArray()))) {
+            int n = 0;
+            while (parser.readRecord() != null) {
+                n++;
+            }
+            Assert.assertEquals(n, 1000);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "corrupt BGZF block")
+    public void testCorruptBlock() throws Exception {
+        final byte[] compressed = bgzf(new byte[1000], 0x1000);
+        // the CRC of the first block, whose BSIZE is below 256
+        compressed[(compressed[16] & 0xff) - 7] ^= 1;
+        try (final ParallelGzipInputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed))) {
+            in.readAllBytes();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "in is not set")
+    public void testNullStream() {
+        new ParallelGzipInputStream(null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.probendi.libcap;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the parse loop. Run with the GC profiler to see the allocations per record, e.g.
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ParserBenchmark -prof gc}: the
+ * normalized allocation rate is the size of a {@link Record} and its bytes, with nothing allocated for logging.
+ *
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final int RECORDS = 100_000;
+
+    @Param({"64", "1500"})
+    public int length;
+
+    private byte[] capture;
+
+    @Setup
+    public void setUp() {
+        capture = ParserTest.capture(RECORDS, length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void readRecords(final Blackhole blackhole) throws IOException {
+        try (final Parser parser = new Parser(capture)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                blackhole.consume(record);
+            }
+        }
+    }
+}
@@ -1,5 +1,13 @@
 package com.probendi.libcap;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.testng.Assert;
@@ -12,7 +20,7 @@ import org.testng.annotations.Test;
  */
 public class ParserTest {
 
-    private static final String PCAP = "D4C3B2A10200040000000000000000000000040001000000816B005AD1090000100500001005" +
+    static final String PCAP = "D4C3B2A10200040000000000000000000000040001000000816B005AD1090000100500001005" +
             "000018DED7BF94B60011010000018100006588641100009A04F80021450004F600000000403D439D0A2A0001280200029A106EE" +
             "3C5B583094978696000000000101112130174237304C61A1B1C1D1E1F202122232425262728292A2B2C2D2E2F30313233343536" +
             "3738393A3B3C3D3E3F404142434445464748494A4B4C4D4E4F505152535455565758595A5B5C5D5E5F606162636465666768696" +
@@ -105,6 +113,26 @@ public class ParserTest {
         return bytes;
     }
 
+    /**
+     * Returns a little endian capture of Ethernet records of the given length.
+     *
+     * @param records the number of records
+     * @param length  the length of each record in octets
+     * @return a capture
+     */
+    static byte[] capture(final int records, final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Parser.HEADER_LENGTH + records * (Record.HEADER_LENGTH + length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0xa1b2c3d4).putChar((char) 2).putChar((char) 4).putInt(0).putInt(0).putInt(0x40000).putInt(1);
+        for (int i = 0; i < records; i++) {
+            buffer.putInt(1_600_000_000 + i / 1000).putInt(i % 1000 * 1000).putInt(length).putInt(length);
+            final byte[] bytes = new byte[length];
+            bytes[0xc] = 0x08;
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+
     @Test
     public void testBytesToLong() {
         final long actual = Parser.bytesToLong(new byte[]{69, (byte) 0xff, 0, 3});
@@ -164,6 +192,104 @@ public class ParserTest {
         }
     }
 
+    /**
+     * Checks that reading a record allocates only the record and its bytes.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReadRecordAllocation() throws Exception {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assert.assertTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        final long thread = Thread.currentThread().getId();
+        final byte[] bytes = capture(10_000, 64);
+        long allocated = 0;
+        for (int run = 0; run < 5; run++) {
+            try (final Parser parser = new Parser(bytes)) {
+                final long start = threads.getThreadAllocatedBytes(thread);
+                while (parser.readRecord() != null) {
+                    // read all the records
+                }
+                allocated = threads.getThreadAllocatedBytes(thread) - start;
+            }
+        }
+        // a Record object and a byte[64] take about 130 octets, a formatted log message several hundred
+        Assert.assertTrue(allocated / 10_000 < 64 + 160, "allocated " + allocated / 10_000 + " octets per record");
+    }
+
+    /**
+     * Checks that a tolerant parser skips corrupt bytes inserted between two records and reads the following ones.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReadRecordTolerant() throws Exception {
+        final byte[] capture = capture(100, 64);
+        final int split = Parser.HEADER_LENGTH + 50 * (Record.HEADER_LENGTH + 64);
+        final byte[] garbage = new byte[37];
+        Arrays.fill(garbage, (byte) 0xff);
+        final byte[] bytes = new byte[capture.length + garbage.length];
+        System.arraycopy(capture, 0, bytes, 0, split);
+        System.arraycopy(garbage, 0, bytes, split, garbage.length);
+        System.arraycopy(capture, split, bytes, split + garbage.length, capture.length - split);
+
+        final List<long[]> skips = new ArrayList<>();
+        final Parser.SkipListener listener = (offset, length) -> skips.add(new long[]{offset, length});
+        try (final Parser parser = new Parser(bytes).tolerant(listener)) {
+            int n = 0;
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                Assert.assertEquals(record.getIncl_len(), 64);
+                if (++n == 51) {
+                    Assert.assertEquals(record.getOffset(), split + garbage.length);
+                }
+            }
+            Assert.assertEquals(n, 100);
+            Assert.assertEquals(parser.getSkipped(), garbage.length);
+        }
+        Assert.assertEquals(skips.size(), 1);
+        Assert.assertEquals(skips.get(0), new long[]{split, garbage.length});
+    }
+
+    /**
+     * Checks that a tolerant parser skips a record with a bogus {@code incl_len} and reports a truncated last record.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReadRecordTolerantTruncated() throws Exception {
+        final byte[] capture = capture(10, 64);
+        final byte[] bytes = Arrays.copyOf(capture, capture.length - 20);
+        final int corrupt = Parser.HEADER_LENGTH + 3 * (Record.HEADER_LENGTH + 64);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(corrupt + 8, 0x7fff0000);
+
+        final List<long[]> skips = new ArrayList<>();
+        final Parser.SkipListener listener = (offset, length) -> skips.add(new long[]{offset, length});
+        try (final Parser parser = new Parser(bytes).tolerant(listener)) {
+            int n = 0;
+            while (parser.readRecord() != null) {
+                n++;
+            }
+            // the corrupt record and the truncated last record are skipped
+            Assert.assertEquals(n, 8);
+            Assert.assertEquals(parser.getSkipped(), Record.HEADER_LENGTH + 64 + Record.HEADER_LENGTH + 44);
+        }
+        Assert.assertEquals(skips.size(), 2);
+        Assert.assertEquals(skips.get(0), new long[]{corrupt, Record.HEADER_LENGTH + 64});
+        Assert.assertEquals(skips.get(1), new long[]{bytes.length - Record.HEADER_LENGTH - 44,
+                Record.HEADER_LENGTH + 44});
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "invalid incl_len .*")
+    public void testReadRecordInvalidLength() throws Exception {
+        final byte[] bytes = capture(2, 64);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(Parser.HEADER_LENGTH + 8, 0x7fff0000);
+        try (final Parser parser = new Parser(bytes)) {
+            parser.readRecord();
+        }
+    }
+
     // Data providers
 
     @NotNull
@@ -0,0 +1,109 @@
+package com.probendi.libcap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PatternSearchTest {
+
+    private static List<byte[]> patterns(final String... patterns) {
+        final List<byte[]> list = new ArrayList<>();
+        for (final String pattern : patterns) {
+            list.add(pattern.getBytes(StandardCharsets.US_ASCII));
+        }
+        return list;
+    }
+
+    @Test
+    public void testScan() {
+        final PatternSearch search = new PatternSearch(patterns("he", "she", "his", "hers"));
+        final byte[] text = "ushers".getBytes(StandardCharsets.US_ASCII);
+        final List<int[]> matches = new ArrayList<>();
+        Assert.assertEquals(search.scan(text, 0, text.length, (offset, pattern) ->
+                matches.add(new int[]{offset, pattern})), 3);
+        // she and he end at the same octet, then hers
+        Assert.assertEquals(matches.get(0), new int[]{1, 1});
+        Assert.assertEquals(matches.get(1), new int[]{2, 0});
+        Assert.assertEquals(matches.get(2), new int[]{2, 3});
+    }
+
+    @Test
+    public void testScanRandom() {
+        final Random random = new Random(7);
+        final List<byte[]> patterns = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final byte[] pattern = new byte[2 + random.nextInt(4)];
+            for (int j = 0; j < pattern.length; j++) {
+                // a small alphabet, so that the patterns overlap
+                pattern[j] = (byte) random.nextInt(4);
+            }
+            patterns.add(pattern);
+        }
+        final byte[] text = new byte[5000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) random.nextInt(4);
+        }
+        long expected = 0;
+        for (final byte[] pattern : patterns) {
+            for (int i = 0; i + pattern.length <= text.length; i++) {
+                int j = 0;
+                while (j < pattern.length && text[i + j] == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    expected++;
+                }
+            }
+        }
+        final PatternSearch search = new PatternSearch(patterns);
+        final long[] actual = new long[1];
+        search.scan(text, 0, text.length, (offset, pattern) -> {
+            final byte[] p = patterns.get(pattern);
+            for (int j = 0; j < p.length; j++) {
+                Assert.assertEquals(text[offset + j], p[j]);
+            }
+            actual[0]++;
+        });
+        Assert.assertEquals(actual[0], expected);
+    }
+
+    @Test
+    public void testSearchPayload() {
+        final byte[] bytes = ChecksumTest.frame(4, 0x11, 20);
+        final int payload = 14 + 20 + 8;
+        System.arraycopy("secret".getBytes(StandardCharsets.US_ASCII), 0, bytes, payload + 3, 6);
+        // in the IPv4 header only
+        bytes[14 + 12] = 's';
+        final Record record = new Record().frame(7).bytes(bytes);
+        final List<PatternSearch.Match> matches = new PatternSearch(patterns("secret", "s"),
+                PatternSearch.Scope.PAYLOAD).search(record);
+        Assert.assertEquals(matches.size(), 2);
+        Assert.assertEquals(matches.get(0).getOffset(), payload + 3);
+        Assert.assertEquals(matches.get(1), new PatternSearch.Match(7, payload + 3, 0));
+        Assert.assertEquals(new PatternSearch(patterns("s")).search(record).size(), 2);
+    }
+
+    @Test
+    public void testSearchParser() throws Exception {
+        final byte[] capture = ParserTest.capture(5000, 64);
+        // the EtherType of every record
+        final PatternSearch search = new PatternSearch(List.of(new byte[]{0x08, 0x00}, new byte[]{0x00, 0x08}));
+        try (final Parser parser = new Parser(capture)) {
+            final List<PatternSearch.Match> matches = search.search(parser, 3);
+            Assert.assertEquals(matches.size(), 2 * 5000);
+            for (int i = 0; i < 5000; i++) {
+                Assert.assertEquals(matches.get(2 * i), new PatternSearch.Match(i + 1, 11, 1));
+                Assert.assertEquals(matches.get(2 * i + 1), new PatternSearch.Match(i + 1, 12, 0));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "pattern is empty")
+    public void testEmptyPattern() {
+        new PatternSearch(List.of(new byte[0]));
+    }
+}
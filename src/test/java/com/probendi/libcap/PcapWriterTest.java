@@ -0,0 +1,98 @@
+package com.probendi.libcap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PcapWriterTest {
+
+    private Path input;
+    private Path output;
+    private byte[] expected;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        input = Files.createTempFile("libcap", ".pcap");
+        output = Files.createTempFile("libcap", ".pcap");
+        final byte[] bytes = ParserTest.stringToBytes(ParserTest.PCAP);
+        Files.write(input, bytes);
+
+        // the capture may end with a truncated record
+        long end = Parser.HEADER_LENGTH;
+        try (final Parser parser = new Parser(input)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                end = record.getOffset() + Record.HEADER_LENGTH + record.getIncl_len();
+            }
+        }
+        expected = Arrays.copyOf(bytes, (int) end);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        try (final Parser parser = new Parser(input); final PcapWriter writer = new PcapWriter(output, parser, 1024)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                writer.write(record);
+            }
+            Assert.assertEquals(writer.getRecords(), 3);
+        }
+        Assert.assertEquals(Files.readAllBytes(output), expected);
+    }
+
+    @Test
+    public void testTransfer() throws Exception {
+        try (final Parser parser = new Parser(input); final PcapWriter writer = new PcapWriter(output, parser)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                writer.transfer(record);
+            }
+        }
+        Assert.assertEquals(Files.readAllBytes(output), expected);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        try (final Parser parser = new Parser(input); final PcapWriter writer = new PcapWriter(output, parser)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                if (record.getType() == PacketType.MPLS) {
+                    writer.transfer(record);
+                }
+            }
+        }
+        try (final Parser parser = new Parser(output)) {
+            final Record record = parser.readRecord();
+            Assert.assertEquals(record.getType(), PacketType.MPLS);
+            Assert.assertEquals(record.getOffset(), Parser.HEADER_LENGTH);
+            Assert.assertNull(parser.readRecord());
+        }
+    }
+
+    @Test
+    public void testTransferFromBytes() throws Exception {
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP));
+             final PcapWriter writer = new PcapWriter(output, parser)) {
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                writer.transfer(record);
+            }
+        }
+        Assert.assertEquals(Files.readAllBytes(output), expected);
+    }
+}
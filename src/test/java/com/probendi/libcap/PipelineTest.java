@@ -0,0 +1,90 @@
+package com.probendi.libcap;
+
+import java.text.ParseException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PipelineTest {
+
+    @Test
+    public void testRun() throws Exception {
+        final long[] counts = new long[3];
+        final Pipeline<Frame> pipeline = new Pipeline<>(Frame::new, (record, frame) -> {
+            if (record.getFrame() % 10 == 0) {
+                throw new ParseException("invalid frame", 0);
+            }
+            frame.decode(record);
+        }, new Pipeline.Analyzer<>() {
+            @Override
+            public void analyze(final Record record, final Frame frame) {
+                Assert.assertEquals(record.getFrame(), ++counts[0]);
+                Assert.assertEquals(frame.getEtherType(), 0x0800);
+                counts[1]++;
+            }
+
+            @Override
+            public void malformed(final Record record, final Exception e) {
+                Assert.assertEquals(record.getFrame(), ++counts[0]);
+                Assert.assertEquals(e.getMessage(), "invalid frame");
+                counts[2]++;
+            }
+        }, 8, 3);
+        try (final Parser parser = new Parser(ParserTest.capture(10_000, 64))) {
+            Assert.assertEquals(pipeline.run(parser), 10_000);
+        }
+        Assert.assertEquals(counts[1], 9000);
+        Assert.assertEquals(counts[2], 1000);
+
+        // the pipeline can be run again
+        counts[0] = 0;
+        try (final Parser parser = new Parser(ParserTest.capture(100, 64))) {
+            Assert.assertEquals(pipeline.run(parser), 100);
+        }
+        Assert.assertEquals(counts[0], 100);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "stop")
+    public void testRunAnalyzerFailure() throws Exception {
+        final Pipeline<Frame> pipeline = new Pipeline<>(Frame::new, (record, frame) -> frame.decode(record),
+                (record, frame) -> {
+                    if (record.getFrame() == 500) {
+                        throw new IllegalStateException("stop");
+                    }
+                }, 16, 2);
+        try (final Parser parser = new Parser(ParserTest.capture(10_000, 64))) {
+            pipeline.run(parser);
+        }
+    }
+
+    @Test(expectedExceptions = AssertionError.class, expectedExceptionsMessageRegExp = "broken", timeOut = 10_000)
+    public void testRunDissectorError() throws Exception {
+        final Pipeline<Frame> pipeline = new Pipeline<>(Frame::new, (record, frame) -> {
+            if (record.getFrame() == 500) {
+                throw new AssertionError("broken");
+            }
+            frame.decode(record);
+        }, (record, frame) -> {
+        }, 16, 2);
+        try (final Parser parser = new Parser(ParserTest.capture(10_000, 64))) {
+            pipeline.run(parser);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "bug", timeOut = 10_000)
+    public void testRunDissectorFailure() throws Exception {
+        final Pipeline<Frame> pipeline = new Pipeline<>(Frame::new, (record, frame) -> {
+            throw new IllegalStateException("bug");
+        }, (record, frame) -> Assert.fail(), 16, 2);
+        try (final Parser parser = new Parser(ParserTest.capture(100, 64))) {
+            pipeline.run(parser);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "size must be a power of 2")
+    public void testInvalidSize() {
+        new Pipeline<>(Frame::new, (record, frame) -> frame.decode(record), (record, frame) -> {
+        }, 10, 2);
+    }
+}
@@ -0,0 +1,141 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class PppoESessionTrackerTest {
+
+    private static final String CLIENT = "001101000001";
+    private static final String SERVER = "18ded7bf94b6";
+    private static final String BROADCAST = "ffffffffffff";
+
+    private static Record record(final int usec, final String destination, final String source, final String type,
+                                 final String pppoe) {
+        return new Record().ts_sec(1).ts_usec(usec).orig_len(64)
+                .bytes(stringToBytes(destination + source + type + pppoe));
+    }
+
+    private static Record discovery(final int usec, final String destination, final String source, final String code,
+                                    final String sessionId) {
+        return record(usec, destination, source, "8863", "11" + code + sessionId + "0000");
+    }
+
+    private static Record session(final int usec, final String destination, final String source, final String ppp) {
+        return record(usec, destination, source, "8864", "1100009e0006" + ppp);
+    }
+
+    @Test
+    public void testLifecycle() {
+        final List<PppoESessionTracker.Session> sessions = new ArrayList<>();
+        final PppoESessionTracker tracker = new PppoESessionTracker(16, 60_000_000L, sessions::add);
+
+        Assert.assertTrue(tracker.add(discovery(0, BROADCAST, CLIENT, "09", "0000")));
+        Assert.assertTrue(tracker.add(discovery(1_000, CLIENT, SERVER, "07", "0000")));
+        Assert.assertTrue(tracker.add(discovery(2_000, SERVER, CLIENT, "19", "0000")));
+        Assert.assertTrue(tracker.add(discovery(10_000, CLIENT, SERVER, "65", "009e")));
+        Assert.assertEquals(tracker.size(), 1);
+
+        tracker.add(session(11_000, SERVER, CLIENT, "c02101010004"));
+        tracker.add(session(12_000, CLIENT, SERVER, "c02102010004"));
+        tracker.add(session(13_000, SERVER, CLIENT, "c02102010004"));
+        tracker.add(session(14_000, CLIENT, SERVER, "c22301010004"));
+        tracker.add(session(15_000, SERVER, CLIENT, "c22302010004"));
+        tracker.add(session(16_000, CLIENT, SERVER, "c22303010004"));
+        tracker.add(session(17_000, CLIENT, SERVER, "c02109020008"));
+        tracker.add(session(18_000, SERVER, CLIENT, "c0210a020008"));
+        tracker.add(session(19_000, SERVER, CLIENT, "002145000014"));
+        Assert.assertTrue(sessions.isEmpty());
+
+        tracker.add(discovery(20_000, SERVER, CLIENT, "a7", "009e"));
+        Assert.assertEquals(tracker.size(), 0);
+        Assert.assertEquals(sessions.size(), 1);
+
+        final PppoESessionTracker.Session session = sessions.get(0);
+        Assert.assertEquals(session.getMac(), 0x001101000001L);
+        Assert.assertEquals(session.getSessionId(), 0x9e);
+        Assert.assertEquals(session.getDiscoveryLatency(), 10_000);
+        Assert.assertEquals(session.getLcpOpenTime(), 1_013_000);
+        Assert.assertEquals(session.getAuthProtocol(), PppoEPacket.PointToPointProtocol.CHAP);
+        Assert.assertEquals(session.getAuthentication(), PppoESessionTracker.Authentication.SUCCESS);
+        Assert.assertEquals(session.getAuthTime(), 1_016_000);
+        Assert.assertEquals(session.getEchoRequests(), 1);
+        Assert.assertEquals(session.getEchoReplies(), 1);
+        Assert.assertEquals(session.getPackets(), 10);
+        Assert.assertEquals(session.getBytes(), 640);
+        Assert.assertEquals(session.getDuration(), 20_000);
+        Assert.assertEquals(session.getEnd(), PppoESessionTracker.End.TERMINATED);
+    }
+
+    @Test
+    public void testFailedDiscovery() {
+        final List<PppoESessionTracker.Session> sessions = new ArrayList<>();
+        final PppoESessionTracker tracker = new PppoESessionTracker(16, 60_000_000L, sessions::add);
+
+        tracker.add(discovery(0, BROADCAST, CLIENT, "09", "0000"));
+        tracker.add(discovery(1_000, CLIENT, SERVER, "07", "0000"));
+        tracker.add(discovery(2_000, SERVER, CLIENT, "19", "0000"));
+        // an error PADS carries no session ID
+        Assert.assertTrue(tracker.add(discovery(3_000, CLIENT, SERVER, "65", "0000")));
+        Assert.assertEquals(tracker.size(), 0);
+        Assert.assertEquals(sessions.size(), 1);
+        Assert.assertEquals(sessions.get(0).getMac(), 0x001101000001L);
+        Assert.assertEquals(sessions.get(0).getSessionId(), 0);
+        Assert.assertEquals(sessions.get(0).getEnd(), PppoESessionTracker.End.FAILED);
+    }
+
+    @Test
+    public void testStackedTags() {
+        final List<PppoESessionTracker.Session> sessions = new ArrayList<>();
+        final PppoESessionTracker tracker = new PppoESessionTracker(16, 60_000_000L, sessions::add);
+
+        // an S-tag and a C-tag, as seen on the access side of a BRAS
+        Assert.assertTrue(tracker.add(record(0, SERVER, CLIENT, "88a8006481000024" + "8864",
+                "1100009e0006" + "002145000014")));
+        Assert.assertEquals(tracker.size(), 1);
+        tracker.flush();
+        Assert.assertEquals(sessions.get(0).getMac(), 0x001101000001L);
+        Assert.assertEquals(sessions.get(0).getSessionId(), 0x9e);
+    }
+
+    @Test
+    public void testEviction() {
+        final List<PppoESessionTracker.Session> sessions = new ArrayList<>();
+        final PppoESessionTracker tracker = new PppoESessionTracker(2, 60_000_000L, sessions::add);
+
+        tracker.add(session(1, SERVER, "000000000001", "002145000014"));
+        tracker.add(session(2, SERVER, "000000000002", "002145000014"));
+        tracker.add(session(3, SERVER, "000000000001", "002145000014"));
+        tracker.add(session(4, SERVER, "000000000003", "002145000014"));
+        Assert.assertEquals(tracker.size(), 2);
+        Assert.assertEquals(sessions.size(), 1);
+        Assert.assertEquals(sessions.get(0).getMac(), 2);
+        Assert.assertEquals(sessions.get(0).getEnd(), PppoESessionTracker.End.EVICTED);
+
+        tracker.flush();
+        Assert.assertEquals(tracker.size(), 0);
+        Assert.assertEquals(sessions.size(), 3);
+        Assert.assertEquals(sessions.get(2).getEnd(), PppoESessionTracker.End.FLUSHED);
+    }
+
+    @Test
+    public void testExpire() {
+        final List<PppoESessionTracker.Session> sessions = new ArrayList<>();
+        final PppoESessionTracker tracker = new PppoESessionTracker(4, 1_000L, sessions::add);
+
+        tracker.add(session(1, SERVER, CLIENT, "002145000014"));
+        Assert.assertFalse(tracker.add(new Record().bytes(stringToBytes("01005e000005001101000001810000240800"))));
+        Assert.assertEquals(tracker.expire(2_000_000L), 1);
+        Assert.assertEquals(sessions.get(0).getEnd(), PppoESessionTracker.End.IDLE);
+        Assert.assertEquals(sessions.get(0).getDiscoveryLatency(), -1);
+        Assert.assertNull(sessions.get(0).getAuthProtocol());
+    }
+}
@@ -0,0 +1,108 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class ProtocolHierarchyTest {
+
+    private static final String DHCP = "FFFFFFFFFFFF00000000000208004500002000010000401100000000000" + "0FFFFFFFF" +
+            "00440043000C000001010600";
+    private static final String BGP = "00000000000100000000000208004500002D00010000400600000A0000010A000002" +
+            "00B3C35000000000000000005018000000000000" + "FFFFFFFFFF";
+    private static final String ARP = "FFFFFFFFFFFF0000000000020806000108000604000100000000000200000000";
+
+    @Test
+    public void testAddAll() throws Exception {
+        final ProtocolHierarchy hierarchy = new ProtocolHierarchy();
+        try (final Parser parser = new Parser(stringToBytes(ParserTest.PCAP))) {
+            Assert.assertEquals(hierarchy.addAll(parser), 3);
+        }
+        Assert.assertEquals(hierarchy.getRoot().getPackets(), 3);
+        Assert.assertEquals(hierarchy.getNode("eth").getPackets(), 3);
+        Assert.assertEquals(hierarchy.getNode("eth", "vlan", "pppoes", "ipv4").getPackets(), 2);
+        Assert.assertEquals(hierarchy.getNode("eth", "mpls").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getNode("eth", "vlan").getBytes(),
+                hierarchy.getNode("eth", "vlan", "pppoes").getBytes());
+        Assert.assertEquals(hierarchy.getVlans().get(101).getPackets(), 2);
+        Assert.assertNull(hierarchy.getNode("eth", "ipv6"));
+        Assert.assertTrue(hierarchy.toString().startsWith("frame"));
+    }
+
+    @Test
+    public void testMalformed() {
+        final ProtocolHierarchy hierarchy = new ProtocolHierarchy();
+        // the TCP data offset exceeds the segment
+        hierarchy.add(new Record().orig_len(100).bytes(stringToBytes(BGP.replace("5018", "F018"))));
+        // the IHL exceeds the packet
+        hierarchy.add(new Record().orig_len(100).bytes(stringToBytes(BGP.replace("08004500", "08004F00"))));
+        // the IPv4 header is cut short
+        hierarchy.add(new Record().orig_len(100).bytes(stringToBytes(BGP.substring(0, 40))));
+
+        Assert.assertEquals(hierarchy.getNode("eth", "ipv4", "tcp", "malformed").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getNode("eth", "ipv4", "malformed").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getNode("eth", "malformed").getPackets(), 1);
+    }
+
+    @Test
+    public void testQinQ() {
+        final ProtocolHierarchy hierarchy = new ProtocolHierarchy();
+        hierarchy.add(new Record().orig_len(DHCP.length() / 2 + 8)
+                .bytes(stringToBytes(DHCP.substring(0, 24) + "88A8006481002024" + DHCP.substring(24))));
+        Assert.assertEquals(hierarchy.getNode("eth", "vlan", "vlan", "ipv4", "udp", "dhcp").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getVlans().get(100).getPackets(), 1);
+        Assert.assertEquals(hierarchy.getVlans().get(100).getChild("36").getPackets(), 1);
+        Assert.assertNull(hierarchy.getVlans().get(36));
+    }
+
+    @Test
+    public void testApplications() {
+        final ProtocolHierarchy hierarchy = new ProtocolHierarchy();
+        hierarchy.add(new Record().orig_len(300).bytes(stringToBytes(DHCP)));
+        hierarchy.add(new Record().orig_len(100).bytes(stringToBytes(BGP)));
+        hierarchy.add(new Record().orig_len(60).bytes(stringToBytes(ARP)));
+        hierarchy.add(new Record().orig_len(10).bytes(stringToBytes("0000000000010000000000020800")));
+
+        Assert.assertEquals(hierarchy.getNode("eth", "ipv4", "udp", "dhcp").getBytes(), 300);
+        Assert.assertEquals(hierarchy.getNode("eth", "ipv4", "tcp", "bgp").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getNode("eth", "ethertype-0x0806").getBytes(), 60);
+        Assert.assertEquals(hierarchy.getNode("eth", "malformed").getPackets(), 1);
+        Assert.assertEquals(hierarchy.getNode("eth").getChildren().get(0).getName(), "ipv4");
+        Assert.assertEquals(hierarchy.getRoot().getBytes(), 470);
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final ProtocolHierarchy hierarchy = new ProtocolHierarchy();
+        final byte[] bytes = stringToBytes(DHCP);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        hierarchy.add(new Record().orig_len(1).bytes(bytes));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(hierarchy.getNode("eth", "ipv4", "udp", "dhcp").getPackets(), 40_000);
+        Assert.assertEquals(hierarchy.getRoot().getBytes(), 40_000);
+    }
+}
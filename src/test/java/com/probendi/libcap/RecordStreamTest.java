@@ -0,0 +1,117 @@
+package com.probendi.libcap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RecordStreamTest {
+
+    /**
+     * An input stream returning at most one octet per read, like a slow pipe.
+     */
+    private static class TrickleInputStream extends InputStream {
+        private final ByteArrayInputStream in;
+
+        TrickleInputStream(final byte[] bytes) {
+            in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            return in.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    @Test
+    public void testPartialReads() throws Exception {
+        try (final Parser parser = new Parser(Channels.newChannel(new TrickleInputStream(ParserTest.capture(50,
+                100))))) {
+            int n = 0;
+            Record record;
+            while ((record = parser.readRecord()) != null) {
+                Assert.assertEquals(record.getBytes().length, 100);
+                n++;
+            }
+            Assert.assertEquals(n, 50);
+        }
+    }
+
+    @Test
+    public void testTake() throws Exception {
+        final byte[] bytes = ParserTest.capture(2000, 200);
+        final PipedOutputStream out = new PipedOutputStream();
+        final PipedInputStream in = new PipedInputStream(out, 4096);
+        final Thread writer = new Thread(() -> {
+            try (out) {
+                for (int i = 0; i < bytes.length; i += 1000) {
+                    out.write(bytes, i, Math.min(1000, bytes.length - i));
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        try (final RecordStream stream = new RecordStream(new Parser(in), 16, 1024)) {
+            int n = 0;
+            Record record;
+            while ((record = stream.take()) != null) {
+                Assert.assertEquals(record.getFrame(), ++n);
+                // the consumer is slow, the queue stays bounded
+                Assert.assertTrue(stream.size() <= 16);
+                if (n % 100 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            Assert.assertEquals(n, 2000);
+            Assert.assertNull(stream.take());
+        }
+        writer.join();
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "invalid incl_len .*")
+    public void testTakeError() throws Exception {
+        final byte[] bytes = ParserTest.capture(3, 64);
+        bytes[Parser.HEADER_LENGTH + 2 * (Record.HEADER_LENGTH + 64) + 11] = 0x7f;
+        try (final RecordStream stream = new RecordStream(new Parser(new ByteArrayInputStream(bytes)))) {
+            Assert.assertNotNull(stream.take());
+            Assert.assertNotNull(stream.take());
+            stream.take();
+        }
+    }
+
+    @Test(expectedExceptions = OutOfMemoryError.class, expectedExceptionsMessageRegExp = "huge record")
+    public void testTakeFatalError() throws Exception {
+        final byte[] bytes = ParserTest.capture(3, 64);
+        final int limit = Parser.HEADER_LENGTH + Record.HEADER_LENGTH + 64;
+        // fails after the first record
+        final InputStream in = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                if (pos >= limit) {
+                    throw new OutOfMemoryError("huge record");
+                }
+                return super.read(b, off, Math.min(len, limit - pos));
+            }
+        };
+        try (final RecordStream stream = new RecordStream(new Parser(in))) {
+            Assert.assertNotNull(stream.take());
+            stream.take();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "parser is not set")
+    public void testNullParser() {
+        new RecordStream(null);
+    }
+}
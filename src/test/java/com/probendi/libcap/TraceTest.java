@@ -0,0 +1,65 @@
+package com.probendi.libcap;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class TraceTest {
+
+    @Test
+    public void testDump() throws Exception {
+        Trace.clear();
+        try (final Parser parser = new Parser(ParserTest.stringToBytes(ParserTest.PCAP))) {
+            while (parser.readRecord() != null) {
+                // read all the records
+            }
+        }
+        final List<String> entries = Trace.dump();
+        if (Trace.isEnabled()) {
+            Assert.assertTrue(entries.get(0).contains("global header"));
+            Assert.assertTrue(entries.get(1).contains("record frame: 1 a: 0x5a006b81"));
+        } else {
+            Assert.assertTrue(entries.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRing() {
+        final Trace.Ring ring = new Trace.Ring(3);
+        Assert.assertTrue(ring.dump().isEmpty());
+        ring.record(Trace.GLOBAL_HEADER, 0, 0xa1b2c3d4, 0xffff, 1, 0);
+        ring.record(Trace.RECORD, 1, 10, 20, 60, 100);
+        List<String> entries = ring.dump();
+        Assert.assertEquals(entries.size(), 2);
+        Assert.assertTrue(entries.get(0).endsWith(" global header frame: 0 a: 0xa1b2c3d4 b: 0xffff c: 0x1 d: 0x0"));
+        Assert.assertTrue(entries.get(1).endsWith(" record frame: 1 a: 0xa b: 0x14 c: 0x3c d: 0x64"));
+
+        // the oldest entries are overwritten
+        ring.record(Trace.RECORD, 2, 11, 0, 60, 100);
+        ring.record(Trace.TRUNCATED, 3, 12, 0, 60, 10);
+        ring.record(42, 4, 0, 0, 0, 0);
+        entries = ring.dump();
+        Assert.assertEquals(entries.size(), 3);
+        Assert.assertTrue(entries.get(0).contains(" record frame: 2 a: 0xb "));
+        Assert.assertTrue(entries.get(1).endsWith(" truncated frame: 3 a: 0xc b: 0x0 c: 0x3c d: 0xa"));
+        Assert.assertTrue(entries.get(2).contains(" 42 frame: 4 "));
+        final long first = Long.parseLong(entries.get(0).substring(0, entries.get(0).indexOf(' ')));
+        final long last = Long.parseLong(entries.get(2).substring(0, entries.get(2).indexOf(' ')));
+        Assert.assertTrue(first <= last);
+
+        ring.clear();
+        Assert.assertTrue(ring.dump().isEmpty());
+    }
+
+    @Test
+    public void testDisabledRing() {
+        final Trace.Ring ring = new Trace.Ring(0);
+        ring.record(Trace.RECORD, 1, 0, 0, 0, 0);
+        Assert.assertTrue(ring.dump().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.probendi.libcap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class TrafficSeriesTest {
+
+    private static final String ETHERNET = "0000000000010000000000020800";
+    private static final String IPV4 = "4500001400010000401100000A0000";
+
+    private static Record record(final int sec, final int usec, final int length, final int source) {
+        return new Record().ts_sec(sec).ts_usec(usec).orig_len(length)
+                .bytes(stringToBytes(ETHERNET + IPV4 + String.format("%02X", source) + "0A000063"));
+    }
+
+    @Test
+    public void testAdd() {
+        final List<TrafficSeries.Bin> bins = new ArrayList<>();
+        final TrafficSeries series = new TrafficSeries(1000, 2, bins::add);
+        // a microburst in the first millisecond
+        for (int i = 0; i < 100; i++) {
+            series.add(record(10, i, 1000, i % 10 == 0 ? 1 : 2 + i % 5));
+        }
+        series.add(record(10, 1500, 100, 7));
+        series.add(record(10, 3999, 100, 7));
+        series.flush();
+
+        Assert.assertEquals(bins.size(), 4);
+        final TrafficSeries.Bin burst = bins.get(0);
+        Assert.assertEquals(burst.getStart(), 10_000_000L);
+        Assert.assertEquals(burst.getPackets(), 100);
+        Assert.assertEquals(burst.getBytes(), 100_000);
+        Assert.assertEquals(burst.getBitsPerSecond(), 800_000_000.0, 0.1);
+        Assert.assertEquals(burst.getSources(), 6);
+        Assert.assertEquals(burst.getTalkers().size(), 2);
+        Assert.assertEquals(burst.getTalkers().get(0).getBytes(), 20_000);
+        Assert.assertEquals(burst.getTalkers().get(0).getAddress().substring(0, 7), "10.0.0.");
+
+        Assert.assertEquals(bins.get(1).getPackets(), 1);
+        Assert.assertEquals(bins.get(1).getTalkers().get(0).getAddress(), "10.0.0.7");
+        Assert.assertEquals(bins.get(2).getPackets(), 0);
+        Assert.assertEquals(bins.get(2).getStart(), 10_002_000L);
+        Assert.assertEquals(bins.get(3).getBytes(), 100);
+    }
+
+    @Test
+    public void testLateRecord() {
+        final List<TrafficSeries.Bin> bins = new ArrayList<>();
+        final TrafficSeries series = new TrafficSeries(1_000_000, 1, bins::add);
+        series.add(record(10, 0, 100, 1));
+        series.add(record(9, 0, 100, 1));
+        series.flush();
+        Assert.assertEquals(bins.size(), 1);
+        Assert.assertEquals(bins.get(0).getPackets(), 2);
+        Assert.assertEquals(bins.get(0).getSources(), 1);
+    }
+
+    @Test
+    public void testJump() {
+        final List<TrafficSeries.Bin> bins = new ArrayList<>();
+        final TrafficSeries series = new TrafficSeries(1_000_000, 1, bins::add);
+        series.add(record(10, 0, 100, 1));
+        // a corrupt timestamp about 2^31 bins later
+        series.add(record(Integer.MAX_VALUE, 0, 100, 1));
+        series.flush();
+        Assert.assertEquals(series.getJumps(), 1);
+        Assert.assertEquals(bins.size(), 3);
+        Assert.assertEquals(bins.get(0).getPackets(), 1);
+        Assert.assertEquals(bins.get(1).getStart(), 11_000_000L);
+        Assert.assertEquals(bins.get(1).getInterval(), (Integer.MAX_VALUE - 11) * 1_000_000L);
+        Assert.assertEquals(bins.get(1).getPackets(), 0);
+        Assert.assertEquals(bins.get(2).getStart(), Integer.MAX_VALUE * 1_000_000L);
+        Assert.assertEquals(bins.get(2).getPackets(), 1);
+
+        // a gap up to the maximum is passed as empty bins
+        bins.clear();
+        final TrafficSeries gap = new TrafficSeries(1_000_000, 1, bins::add);
+        gap.add(record(10, 0, 100, 1));
+        gap.add(record(11 + TrafficSeries.MAX_GAP, 0, 100, 1));
+        Assert.assertEquals(gap.getJumps(), 0);
+        Assert.assertEquals(bins.size(), 1 + TrafficSeries.MAX_GAP);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "listener is not set")
+    public void testNullListener() {
+        new TrafficSeries(1000, 1, null);
+    }
+}
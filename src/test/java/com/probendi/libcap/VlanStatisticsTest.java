@@ -0,0 +1,68 @@
+package com.probendi.libcap;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.probendi.libcap.ParserTest.stringToBytes;
+
+/**
+ * @author Daniele Di Salvo
+ * @since 1.0
+ */
+public class VlanStatisticsTest {
+
+    private static final String ETHERNET = "01005e000005001101000001";
+    private static final String Q_IN_Q = ETHERNET + "88A80064" + "81000024" + "0800";
+    private static final String DOT1Q = ETHERNET + "81000024" + "0800";
+
+    private static int add(final VlanStatistics statistics, final Frame frame, final String bytes, final long length) {
+        frame.decode(stringToBytes(bytes));
+        return statistics.add(frame, length);
+    }
+
+    @Test
+    public void testAdd() {
+        final VlanStatistics statistics = new VlanStatistics();
+        final Frame frame = new Frame();
+        Assert.assertEquals(add(statistics, frame, Q_IN_Q, 100), 2);
+        Assert.assertEquals(add(statistics, frame, Q_IN_Q, 200), 2);
+        Assert.assertEquals(add(statistics, frame, DOT1Q, 60), 1);
+        Assert.assertEquals(add(statistics, frame, ETHERNET + "0800", 60), 0);
+
+        Assert.assertEquals(statistics.getRecords(), 3);
+        Assert.assertEquals(statistics.getPackets(100, 36), 2);
+        Assert.assertEquals(statistics.getBytes(100, 36), 300);
+        Assert.assertEquals(statistics.getPackets(36, -1), 1);
+        Assert.assertEquals(statistics.getBytes(36, -1), 60);
+        Assert.assertEquals(statistics.getPackets(100, -1), 0);
+
+        final long[] pairs = statistics.getPairs();
+        Arrays.sort(pairs);
+        Assert.assertEquals(pairs.length, 2);
+        Assert.assertEquals(VlanStatistics.outer(pairs[0]), 36);
+        Assert.assertEquals(VlanStatistics.inner(pairs[0]), -1);
+        Assert.assertEquals(VlanStatistics.outer(pairs[1]), 100);
+        Assert.assertEquals(VlanStatistics.inner(pairs[1]), 36);
+
+        final long[] depth = statistics.getDepthDistribution();
+        Assert.assertEquals(depth[1], 1);
+        Assert.assertEquals(depth[2], 2);
+    }
+
+    @Test
+    public void testManyPairs() {
+        final VlanStatistics statistics = new VlanStatistics();
+        final int[] tags = new int[2];
+        for (int outer = 0; outer < 64; outer++) {
+            for (int inner = 0; inner < 64; inner++) {
+                tags[0] = 0x88a80000 | outer;
+                tags[1] = 0x81000000 | inner;
+                statistics.add(tags, 2, 64);
+            }
+        }
+        Assert.assertEquals(statistics.getPairs().length, 64 * 64);
+        Assert.assertEquals(statistics.getBytes(63, 63), 64);
+    }
+}